@@ -0,0 +1,75 @@
+package com.tidal.refactoring.playlist;
+
+import com.google.inject.Injector;
+import com.tidal.refactoring.playlist.data.PlayListTrack;
+import com.tidal.refactoring.playlist.data.Track;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adding a single track to a playlist through PlaylistBusinessBean.addTracks.
+ *
+ * Every invocation removes the added track again, so the playlist keeps its size for the whole run. Every thread
+ * works on its own playlist.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class AddTracksBenchmark {
+
+	public enum Position {
+		HEAD, MIDDLE, TAIL
+	}
+
+	// at most 499, so there is room for the added track below the 500 tracks cap
+	@Param({ "10", "100", "250", "499" })
+	int playlistSize;
+
+	@Param({ "false", "true" })
+	boolean columnar;
+
+	@Param({ "HEAD", "MIDDLE", "TAIL" })
+	Position position;
+
+	private PlaylistBusinessBean playlistBusinessBean;
+	private String uuid;
+	private List<Track> tracksToAdd;
+	private int toIndex;
+	private List<Integer> indexesToRemove;
+
+	@Setup
+	public void setUp() {
+		Injector injector = BenchmarkSupport.injector(playlistSize, columnar);
+		playlistBusinessBean = injector.getInstance(PlaylistBusinessBean.class);
+
+		uuid = UUID.randomUUID().toString();
+		tracksToAdd = Collections.singletonList(BenchmarkSupport.track(0));
+		toIndex = position == Position.HEAD ? 0 : position == Position.MIDDLE ? playlistSize / 2 : playlistSize;
+		indexesToRemove = Collections.singletonList(toIndex);
+	}
+
+	@Benchmark
+	public List<PlayListTrack> addTrackAndRemoveIt() {
+		playlistBusinessBean.addTracks(uuid, tracksToAdd, toIndex);
+
+		return playlistBusinessBean.removeTracks(uuid, indexesToRemove);
+	}
+}
@@ -0,0 +1,47 @@
+package com.tidal.refactoring.playlist;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Singleton;
+import com.google.inject.name.Names;
+import com.tidal.refactoring.playlist.dao.PlaylistDao;
+import com.tidal.refactoring.playlist.dao.PlaylistDaoBean;
+import com.tidal.refactoring.playlist.data.Track;
+
+/**
+ * Wiring shared by the benchmarks, the same as the test module but with the default playlist size as parameter
+ */
+final class BenchmarkSupport {
+
+	private BenchmarkSupport() {
+	}
+
+	static Injector injector(int defaultPlaylistTrackSize) {
+		return injector(defaultPlaylistTrackSize, false);
+	}
+
+	static Injector injector(int defaultPlaylistTrackSize, boolean columnarPlaylists) {
+		return Guice.createInjector(new AbstractModule() {
+			@Override
+			protected void configure() {
+				bindConstant().annotatedWith(Names.named("defaultPlaylistTrackSize")).to(defaultPlaylistTrackSize);
+				bindConstant().annotatedWith(Names.named("columnarPlaylists")).to(columnarPlaylists);
+				bind(PlaylistDaoBean.class).in(Singleton.class);
+				bind(PlaylistDao.class).to(PlaylistDaoBean.class);
+				bind(PlaylistBusinessBean.class).in(Singleton.class);
+			}
+		});
+	}
+
+	// ids above the ones of the generated playlists, so they are never filtered as existing tracks
+	static Track track(int id) {
+		Track track = new Track();
+		track.setArtistId(id % 10000);
+		track.setDuration(60 * 3);
+		track.setTitle("Benchmark track " + id);
+		track.setId(1000000 + id);
+
+		return track;
+	}
+}
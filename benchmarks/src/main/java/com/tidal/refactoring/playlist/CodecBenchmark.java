@@ -0,0 +1,118 @@
+package com.tidal.refactoring.playlist;
+
+import com.tidal.refactoring.playlist.dao.PlaylistDaoBean;
+import com.tidal.refactoring.playlist.data.PlayList;
+import com.tidal.refactoring.playlist.data.PlayListTrack;
+import com.tidal.refactoring.playlist.data.PlaylistCodec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding the tracks of one playlist with PlaylistCodec against Java serialization. The encoded sizes
+ * are listed in the README.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class CodecBenchmark {
+
+	@Param({ "10", "100", "500" })
+	int playlistSize;
+
+	private PlayList playlist;
+	private ByteBuffer buffer;
+	private ByteBuffer encoded;
+	private ByteBuffer encodedTrackIds;
+	private byte[] serialized;
+
+	@Setup
+	public void setUp() throws IOException {
+		playlist = BenchmarkSupport.injector(playlistSize).getInstance(PlaylistDaoBean.class)
+				.getPlaylistByUUID(UUID.randomUUID().toString());
+
+		buffer = ByteBuffer.allocate(PlaylistCodec.encodedSize(playlist, PlaylistCodec.Mode.FULL));
+		encoded = encode(PlaylistCodec.Mode.FULL);
+		encodedTrackIds = encode(PlaylistCodec.Mode.TRACK_IDS);
+		serialized = serialize();
+	}
+
+	@Benchmark
+	public ByteBuffer encodeFull() {
+		buffer.clear();
+		PlaylistCodec.encode(buffer, playlist, PlaylistCodec.Mode.FULL);
+
+		return buffer;
+	}
+
+	@Benchmark
+	public ByteBuffer encodeTrackIds() {
+		buffer.clear();
+		PlaylistCodec.encode(buffer, playlist, PlaylistCodec.Mode.TRACK_IDS);
+
+		return buffer;
+	}
+
+	@Benchmark
+	public byte[] encodeJavaSerialization() throws IOException {
+		return serialize();
+	}
+
+	@Benchmark
+	public PlayList decodeFull() {
+		return PlaylistCodec.decodePlayList(encoded.duplicate());
+	}
+
+	@Benchmark
+	public PlayList decodeTrackIds() {
+		return PlaylistCodec.decodePlayList(encodedTrackIds.duplicate());
+	}
+
+	@Benchmark
+	public Object decodeJavaSerialization() throws IOException, ClassNotFoundException {
+		try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serialized))) {
+			return in.readObject();
+		}
+	}
+
+	private ByteBuffer encode(PlaylistCodec.Mode mode) {
+		ByteBuffer result = ByteBuffer.allocate(PlaylistCodec.encodedSize(playlist, mode));
+		PlaylistCodec.encode(result, playlist, mode);
+		result.flip();
+
+		return result;
+	}
+
+	// PlayList itself is not serializable, so the baseline serializes its tracks
+	private byte[] serialize() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(new ArrayList<PlayListTrack>(playlist.getPlayListTracks()));
+		}
+
+		return bytes.toByteArray();
+	}
+}
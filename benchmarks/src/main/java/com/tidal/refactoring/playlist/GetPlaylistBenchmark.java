@@ -0,0 +1,76 @@
+package com.tidal.refactoring.playlist;
+
+import com.tidal.refactoring.playlist.dao.PlaylistDaoBean;
+import com.tidal.refactoring.playlist.data.PlayList;
+import com.tidal.refactoring.playlist.data.PlayListTrack;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading playlists from one PlaylistDaoBean shared by all threads
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GetPlaylistBenchmark {
+
+	private static final int PLAYLISTS = 1000;
+	private static final int PAGE_SIZE = 20;
+
+	@Param({ "10", "100", "500" })
+	int playlistSize;
+
+	@Param({ "false", "true" })
+	boolean columnar;
+
+	private PlaylistDaoBean playlistDaoBean;
+	private String[] uuids;
+
+	@Setup
+	public void setUp() {
+		playlistDaoBean = BenchmarkSupport.injector(playlistSize, columnar).getInstance(PlaylistDaoBean.class);
+
+		uuids = new String[PLAYLISTS];
+		for (int i = 0; i < PLAYLISTS; i++) {
+			uuids[i] = UUID.randomUUID().toString();
+			playlistDaoBean.getPlaylistByUUID(uuids[i]);
+		}
+	}
+
+	@Benchmark
+	public PlayList getPlaylistByUUID() {
+		return playlistDaoBean.getPlaylistByUUID(randomUuid());
+	}
+
+	@Benchmark
+	public List<PlayListTrack> getPlaylistTracks() {
+		return playlistDaoBean.getPlaylistTracks(randomUuid());
+	}
+
+	@Benchmark
+	public List<PlayListTrack> getFirstPageOfTracks() {
+		return playlistDaoBean.getPlaylistTracks(randomUuid(), 0, PAGE_SIZE);
+	}
+
+	private String randomUuid() {
+		return uuids[ThreadLocalRandom.current().nextInt(PLAYLISTS)];
+	}
+}
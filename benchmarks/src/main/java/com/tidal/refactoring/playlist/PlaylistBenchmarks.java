@@ -0,0 +1,30 @@
+package com.tidal.refactoring.playlist;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the playlist benchmarks with 1, 2, 4, ... threads up to the number of processors, with the GC profiler so the
+ * allocation rate is reported next to throughput and latency.
+ *
+ * Usage: java -jar benchmarks/target/benchmarks.jar [benchmark regex] [max threads]
+ */
+public class PlaylistBenchmarks {
+
+	public static void main(String[] args) throws RunnerException {
+		String include = args.length > 0 ? args[0] : PlaylistBenchmarks.class.getPackage().getName() + ".*Benchmark";
+		int maxThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+		for (int threads = 1; threads <= maxThreads; threads *= 2) {
+			ChainedOptionsBuilder options = new OptionsBuilder()
+					.include(include)
+					.threads(threads)
+					.addProfiler(GCProfiler.class);
+
+			new Runner(options.build()).run();
+		}
+	}
+}
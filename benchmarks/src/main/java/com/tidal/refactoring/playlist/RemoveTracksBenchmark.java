@@ -0,0 +1,94 @@
+package com.tidal.refactoring.playlist;
+
+import com.google.inject.Injector;
+import com.tidal.refactoring.playlist.data.PlayListTrack;
+import com.tidal.refactoring.playlist.data.PlaylistEdit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Removing ten tracks from a playlist through PlaylistBusinessBean.removeTracks, either spread over the whole playlist
+ * or as one contiguous run in the middle.
+ *
+ * Before every invocation new tracks are added at the removed indexes again in one batch, outside the measured time,
+ * so the playlist keeps its size for the whole run. Every thread works on its own playlist.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class RemoveTracksBenchmark {
+
+	private static final int TRACKS_TO_REMOVE = 10;
+
+	public enum Pattern {
+		SCATTERED, CONTIGUOUS
+	}
+
+	@Param({ "10", "100", "250", "500" })
+	int playlistSize;
+
+	@Param({ "SCATTERED", "CONTIGUOUS" })
+	Pattern pattern;
+
+	private PlaylistBusinessBean playlistBusinessBean;
+	private String uuid;
+	private List<Integer> indexesToRemove;
+	private int nextTrackId;
+	private boolean removed; // by the last invocation, the playlist is full before the first one
+
+	@Setup
+	public void setUp() {
+		Injector injector = BenchmarkSupport.injector(playlistSize);
+		playlistBusinessBean = injector.getInstance(PlaylistBusinessBean.class);
+
+		uuid = UUID.randomUUID().toString();
+		indexesToRemove = new ArrayList<>(TRACKS_TO_REMOVE);
+
+		int step = pattern == Pattern.SCATTERED ? playlistSize / TRACKS_TO_REMOVE : 1;
+		int first = pattern == Pattern.SCATTERED ? 0 : (playlistSize - TRACKS_TO_REMOVE) / 2;
+		for (int i = 0; i < TRACKS_TO_REMOVE; i++) {
+			indexesToRemove.add(first + i * step);
+		}
+	}
+
+	@Setup(Level.Invocation)
+	public void restoreTracks() {
+		if (!removed) {
+			return;
+		}
+
+		List<PlaylistEdit> restore = new ArrayList<>(TRACKS_TO_REMOVE);
+		for (int index : indexesToRemove) {
+			restore.add(PlaylistEdit.add(Collections.singletonList(BenchmarkSupport.track(nextTrackId++)), index));
+		}
+		playlistBusinessBean.applyEdits(uuid, restore);
+		removed = false;
+	}
+
+	@Benchmark
+	public List<PlayListTrack> removeTracks() {
+		removed = true;
+
+		return playlistBusinessBean.removeTracks(uuid, indexesToRemove);
+	}
+}
@@ -0,0 +1,70 @@
+package com.tidal.refactoring.playlist;
+
+import com.google.inject.Injector;
+import com.tidal.refactoring.playlist.dao.PlaylistDaoBean;
+import com.tidal.refactoring.playlist.data.PlayListTrack;
+import com.tidal.refactoring.playlist.data.Track;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adding and removing a single track on playlists beyond the 500 tracks cap, by going to PlaylistDaoBean directly.
+ * Shows how the add and remove paths scale with the playlist size.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class UncappedPlaylistBenchmark {
+
+	@Param({ "1000", "10000", "100000" })
+	int playlistSize;
+
+	@Param({ "HEAD", "MIDDLE", "TAIL" })
+	AddTracksBenchmark.Position position;
+
+	private PlaylistDaoBean playlistDaoBean;
+	private String uuid;
+	private List<Track> tracksToAdd;
+	private int toIndex;
+	private Set<Integer> indexesToRemove;
+
+	@Setup
+	public void setUp() {
+		Injector injector = BenchmarkSupport.injector(playlistSize);
+		playlistDaoBean = injector.getInstance(PlaylistDaoBean.class);
+
+		uuid = UUID.randomUUID().toString();
+		playlistDaoBean.getPlaylistByUUID(uuid);
+
+		tracksToAdd = Collections.singletonList(BenchmarkSupport.track(0));
+		toIndex = position == AddTracksBenchmark.Position.HEAD ? 0
+				: position == AddTracksBenchmark.Position.MIDDLE ? playlistSize / 2 : playlistSize;
+		indexesToRemove = Collections.singleton(toIndex);
+	}
+
+	@Benchmark
+	public List<PlayListTrack> addTrackAndRemoveIt() {
+		playlistDaoBean.addTracksToPlaylist(uuid, toIndex, tracksToAdd);
+
+		return playlistDaoBean.removeTracksFromPlaylist(uuid, indexesToRemove);
+	}
+}
@@ -0,0 +1,350 @@
+package com.tidal.refactoring.playlist;
+
+import com.google.inject.Inject;
+import com.tidal.refactoring.playlist.data.PlayListTrack;
+import com.tidal.refactoring.playlist.data.PlaylistEdit;
+import com.tidal.refactoring.playlist.data.PlaylistEditResult;
+import com.tidal.refactoring.playlist.data.Track;
+import com.tidal.refactoring.playlist.exception.PlaylistException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Non blocking access to PlaylistBusinessBean: every operation returns at once with a future of its result.
+ *
+ * Each playlist has a mailbox, its operations run one at a time in the order they were submitted, on a shared executor.
+ * Operations on different playlists run in parallel. A mailbox only exists while it has operations queued, and gives
+ * up its thread after a batch of them so a busy playlist cannot hold on to it.
+ *
+ * Adds, removes and batches of edits waiting in a mailbox are coalesced: up to maxCoalesced of them in a row are
+ * applied as one change, with one version and one write to the store, and every caller gets the result of its own
+ * edits. Each of them is validated on its own, one that is rejected, for example for exceeding the track limit, fails
+ * without affecting the others. A window gives the edits of a mailbox that just became active the time to gather.
+ *
+ * The operations still take the lock of their playlist, which is uncontended unless the playlist is also changed
+ * through PlaylistBusinessBean directly.
+ */
+public class AsyncPlaylistBusinessBean {
+
+	// operations run before the mailbox lets other mailboxes have the thread
+	private static final int BATCH_SIZE = 32;
+	private static final int DEFAULT_MAX_COALESCED = 32;
+
+	private final PlaylistBusinessBean playlistBusinessBean;
+	private final Executor executor;
+	private final int maxCoalesced;
+	private final long windowMicros;
+
+	private final ConcurrentMap<String, Mailbox> mailboxes = new ConcurrentHashMap<>();
+
+	private final LongAdder completed = new LongAdder();
+	private final LongAdder totalQueueTime = new LongAdder();
+	private final LongAdder coalescedChanges = new LongAdder();
+	private final LongAdder coalescedRequests = new LongAdder();
+
+	@Inject
+	public AsyncPlaylistBusinessBean(PlaylistBusinessBean playlistBusinessBean) {
+		this(playlistBusinessBean, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * @param executor runs the mailboxes, it should not reject tasks
+	 */
+	public AsyncPlaylistBusinessBean(PlaylistBusinessBean playlistBusinessBean, Executor executor) {
+		this(playlistBusinessBean, executor, DEFAULT_MAX_COALESCED, 0);
+	}
+
+	/**
+	 * @param executor runs the mailboxes, it has to be a ScheduledExecutorService for a window
+	 * @param maxCoalesced most edits applied as one change
+	 * @param windowMicros time a mailbox that just became active waits for more edits, 0 to start at once
+	 */
+	public AsyncPlaylistBusinessBean(PlaylistBusinessBean playlistBusinessBean, Executor executor, int maxCoalesced,
+			long windowMicros) {
+		if (windowMicros > 0 && !(executor instanceof ScheduledExecutorService)) {
+			throw new IllegalArgumentException("A window needs a ScheduledExecutorService");
+		}
+
+		this.playlistBusinessBean = playlistBusinessBean;
+		this.executor = executor;
+		this.maxCoalesced = maxCoalesced;
+		this.windowMicros = windowMicros;
+	}
+
+	/**
+	 * Coalesced with the other edits waiting for the playlist
+	 */
+	public CompletableFuture<List<PlayListTrack>> addTracks(String uuid, List<Track> tracksToAdd, int toIndex) {
+		// the same answer as PlaylistBusinessBean.addTracks for nothing to add, anything else is validated the same way
+		if (tracksToAdd == null || tracksToAdd.isEmpty()) {
+			return CompletableFuture.completedFuture(Collections.emptyList());
+		}
+
+		return submitEdits(uuid, Collections.singletonList(PlaylistEdit.add(tracksToAdd, toIndex)),
+				PlaylistEditResult::getAdded);
+	}
+
+	/**
+	 * Coalesced with the other edits waiting for the playlist
+	 */
+	public CompletableFuture<List<PlayListTrack>> removeTracks(String uuid, List<Integer> indexes) {
+		if (indexes == null || indexes.isEmpty()) {
+			return CompletableFuture.completedFuture(Collections.emptyList());
+		}
+
+		return submitEdits(uuid, Collections.singletonList(PlaylistEdit.remove(indexes)),
+				PlaylistEditResult::getRemoved);
+	}
+
+	public CompletableFuture<List<PlayListTrack>> moveTracks(String uuid, List<Integer> fromIndexes, int toIndex) {
+		return submit(uuid, () -> playlistBusinessBean.moveTracks(uuid, fromIndexes, toIndex));
+	}
+
+	/**
+	 * Coalesced with the other edits waiting for the playlist, the result only covers these edits. The version and
+	 * size are the ones after the whole coalesced change.
+	 */
+	public CompletableFuture<PlaylistEditResult> applyEdits(String uuid, List<PlaylistEdit> edits) {
+		if (edits == null || edits.isEmpty()) {
+			return submit(uuid, () -> playlistBusinessBean.applyEdits(uuid, edits));
+		}
+
+		return submitEdits(uuid, edits, Function.identity());
+	}
+
+	/**
+	 * Read in order with the changes, so it sees every change submitted before it
+	 */
+	public CompletableFuture<List<PlayListTrack>> getTracks(String uuid, int offset, int limit) {
+		return submit(uuid, () -> playlistBusinessBean.getTracks(uuid, offset, limit));
+	}
+
+	/**
+	 * Operations queued for the playlist, the one running included
+	 */
+	public int getBacklog(String uuid) {
+		Mailbox mailbox = mailboxes.get(uuid);
+
+		return mailbox == null ? 0 : mailbox.backlog;
+	}
+
+	/**
+	 * Playlists with operations queued
+	 */
+	public int getActivePlaylistCount() {
+		return mailboxes.size();
+	}
+
+	public long getCompletedCount() {
+		return completed.sum();
+	}
+
+	/**
+	 * Time the completed operations waited in their mailbox before running, in nanoseconds
+	 */
+	public long getTotalQueueTime() {
+		return totalQueueTime.sum();
+	}
+
+	public double getAverageQueueTime() {
+		long completedCount = completed.sum();
+
+		return completedCount == 0 ? 0 : (double) totalQueueTime.sum() / completedCount;
+	}
+
+	/**
+	 * Changes that applied coalesced edits
+	 */
+	public long getCoalescedChangeCount() {
+		return coalescedChanges.sum();
+	}
+
+	/**
+	 * Edits per coalesced change
+	 */
+	public double getAverageCoalescedSize() {
+		long changes = coalescedChanges.sum();
+
+		return changes == 0 ? 0 : (double) coalescedRequests.sum() / changes;
+	}
+
+	private <T> CompletableFuture<T> submit(String uuid, Operation<T> operation) {
+		CompletableFuture<T> result = new CompletableFuture<>();
+		enqueue(uuid, new Task(operation, null, null, result));
+
+		return result;
+	}
+
+	private <T> CompletableFuture<T> submitEdits(String uuid, List<PlaylistEdit> edits,
+			Function<PlaylistEditResult, T> resultOfEdits) {
+		CompletableFuture<T> result = new CompletableFuture<>();
+		enqueue(uuid, new Task(null, new PlaylistEditRequest(edits), resultOfEdits, result));
+
+		return result;
+	}
+
+	private void enqueue(String uuid, Task task) {
+		// the backlog only changes inside compute, so a mailbox is never dropped while an operation is added to it
+		Mailbox[] scheduled = new Mailbox[1];
+		mailboxes.compute(uuid, (key, mailbox) -> {
+			if (mailbox == null) {
+				mailbox = new Mailbox(uuid);
+			}
+			mailbox.tasks.add(task);
+			if (mailbox.backlog++ == 0) {
+				scheduled[0] = mailbox;
+			}
+
+			return mailbox;
+		});
+
+		if (scheduled[0] == null) {
+			return;
+		}
+		if (windowMicros > 0) {
+			((ScheduledExecutorService) executor).schedule(scheduled[0]::run, windowMicros, TimeUnit.MICROSECONDS);
+		} else {
+			executor.execute(scheduled[0]::run);
+		}
+	}
+
+	private final class Mailbox {
+		private final String uuid;
+		private final Queue<Task> tasks = new ConcurrentLinkedQueue<>();
+		private volatile int backlog;
+
+		private Mailbox(String uuid) {
+			this.uuid = uuid;
+		}
+
+		// the operations fail through their futures, even with an Error, so every task taken is counted off the
+		// backlog. Whatever else goes wrong, the mailbox is scheduled again while it has tasks.
+		private void run() {
+			boolean empty = false;
+			try {
+				for (int ran = 0; ran < BATCH_SIZE && !empty;) {
+					int count;
+					if (tasks.peek().request == null) {
+						tasks.poll().run();
+						count = 1;
+					} else {
+						count = runEdits();
+					}
+					ran += count;
+					empty = ran(count);
+				}
+			} finally {
+				if (!empty && !tasks.isEmpty()) {
+					executor.execute(this::run);
+				}
+			}
+		}
+
+		// @return whether the mailbox is empty and dropped
+		private boolean ran(int count) {
+			boolean[] empty = new boolean[1];
+			mailboxes.computeIfPresent(uuid, (key, mailbox) -> {
+				mailbox.backlog -= count;
+				empty[0] = mailbox.backlog == 0;
+				return empty[0] ? null : mailbox;
+			});
+
+			return empty[0];
+		}
+
+		// the edits at the head of the mailbox as one change
+		private int runEdits() {
+			List<Task> edits = new ArrayList<>();
+			List<PlaylistEditRequest> requests = new ArrayList<>();
+
+			while (edits.size() < maxCoalesced && tasks.peek() != null && tasks.peek().request != null) {
+				Task task = tasks.poll();
+				task.started();
+				edits.add(task);
+				requests.add(task.request);
+			}
+
+			// counted first, so the stats already include the change when its callers get their results
+			coalescedChanges.increment();
+			coalescedRequests.add(edits.size());
+
+			try {
+				playlistBusinessBean.applyEditRequests(uuid, requests);
+			} catch (Throwable e) {
+				// an Error is passed on by applyEditRequests, the requests it did not complete fail with it
+				requests.forEach(request -> request.getResult().completeExceptionally(e));
+			}
+			edits.forEach(Task::editsApplied);
+
+			return edits.size();
+		}
+	}
+
+	// either an operation, or a request of edits that can be coalesced with others
+	private final class Task {
+		private final Operation<?> operation;
+		private final PlaylistEditRequest request;
+		private final Function<PlaylistEditResult, ?> resultOfEdits;
+		private final CompletableFuture<?> result;
+		private final long queued = System.nanoTime();
+
+		private <T> Task(Operation<T> operation, PlaylistEditRequest request,
+				Function<PlaylistEditResult, T> resultOfEdits, CompletableFuture<T> result) {
+			this.operation = operation;
+			this.request = request;
+			this.resultOfEdits = resultOfEdits;
+			this.result = result;
+		}
+
+		private void started() {
+			totalQueueTime.add(System.nanoTime() - queued);
+		}
+
+		@SuppressWarnings("unchecked")
+		private void run() {
+			started();
+
+			Object value;
+			try {
+				value = operation.run();
+			} catch (Throwable e) {
+				// reported through the future, the mailbox goes on with the next operation
+				completed.increment();
+				result.completeExceptionally(e);
+				return;
+			}
+			// counted first, so the stats already include the operation when its caller gets the result
+			completed.increment();
+			((CompletableFuture<Object>) result).complete(value);
+		}
+
+		@SuppressWarnings("unchecked")
+		private void editsApplied() {
+			completed.increment();
+			request.getResult().whenComplete((editResult, e) -> {
+				if (e != null) {
+					result.completeExceptionally(e);
+				} else {
+					((CompletableFuture<Object>) result).complete(resultOfEdits.apply(editResult));
+				}
+			});
+		}
+	}
+
+	private interface Operation<T> {
+		T run() throws PlaylistException;
+	}
+}
@@ -0,0 +1,161 @@
+package com.tidal.refactoring.playlist;
+
+import com.tidal.refactoring.playlist.data.PlayList;
+import com.tidal.refactoring.playlist.data.PlaylistEdit;
+import com.tidal.refactoring.playlist.data.Track;
+import com.tidal.refactoring.playlist.util.IntMultiset;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A playlist as the validated edits of a batch or a coalesced change leave it, before any of them is applied. Knows
+ * its size, which tracks it contains and which track is at an index, so every edit can be validated against the state
+ * the edits before it leave the playlist in.
+ *
+ * Only used under the lock or a claim of the playlist, so its published version is its current state.
+ */
+final class EditedPlaylist {
+
+	private final PlayList playlist;
+	private final List<PlaylistEdit> edits = new ArrayList<>(); // validated, in order
+	private final List<int[]> removedTrackIdsByEdit = new ArrayList<>(); // by edit, null for an add or a move
+	private final IntMultiset addedTrackIds = new IntMultiset();
+	private final IntMultiset removedTrackIds = new IntMultiset();
+	private int size;
+
+	EditedPlaylist(PlayList playlist) {
+		this.playlist = playlist;
+		this.size = playlist.getNrOfTracks();
+	}
+
+	PlayList getPlaylist() {
+		return playlist;
+	}
+
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Whether a track with the id is in the playlist after the edits, counting the tracks they added and removed
+	 */
+	boolean containsTrack(int trackId) {
+		return playlist.countTrack(trackId) + addedTrackIds.count(trackId) - removedTrackIds.count(trackId) > 0;
+	}
+
+	/**
+	 * Number of validated edits, to roll back to
+	 */
+	int getEditCount() {
+		return edits.size();
+	}
+
+	/**
+	 * The validated edits from the given count on, with the indexes of the adds resolved
+	 */
+	List<PlaylistEdit> getEdits(int fromCount) {
+		return new ArrayList<>(edits.subList(fromCount, edits.size()));
+	}
+
+	// a validated add, with only the tracks really added and the index resolved
+	void add(PlaylistEdit add) {
+		edits.add(add);
+		removedTrackIdsByEdit.add(null);
+		add.getTracks().forEach(track -> addedTrackIds.add(track.getId()));
+		size += add.getTracks().size();
+	}
+
+	void remove(Set<Integer> indexes) {
+		List<Integer> sortedIndexes = sorted(indexes);
+		int[] trackIds = new int[sortedIndexes.size()];
+		for (int i = 0; i < trackIds.length; i++) {
+			trackIds[i] = trackIdAt(sortedIndexes.get(i));
+		}
+
+		edits.add(PlaylistEdit.remove(sortedIndexes));
+		removedTrackIdsByEdit.add(trackIds);
+		for (int trackId : trackIds) {
+			removedTrackIds.add(trackId);
+		}
+		size -= trackIds.length;
+	}
+
+	void move(Set<Integer> fromIndexes, int toIndex) {
+		edits.add(PlaylistEdit.move(sorted(fromIndexes), toIndex));
+		removedTrackIdsByEdit.add(null);
+	}
+
+	/**
+	 * Drop the edits validated after the given count, those of a rejected request
+	 */
+	void rollback(int toCount) {
+		while (edits.size() > toCount) {
+			PlaylistEdit edit = edits.remove(edits.size() - 1);
+			int[] trackIds = removedTrackIdsByEdit.remove(removedTrackIdsByEdit.size() - 1);
+
+			if (edit.getType() == PlaylistEdit.Type.ADD) {
+				edit.getTracks().forEach(track -> addedTrackIds.remove(track.getId()));
+				size -= edit.getTracks().size();
+			} else if (edit.getType() == PlaylistEdit.Type.REMOVE) {
+				for (int trackId : trackIds) {
+					removedTrackIds.remove(trackId);
+				}
+				size += trackIds.length;
+			}
+		}
+	}
+
+	// the track at the index after the edits, followed back through them to the add that put it there or to its index
+	// in the playlist
+	private int trackIdAt(int index) {
+		for (int i = edits.size() - 1; i >= 0; i--) {
+			PlaylistEdit edit = edits.get(i);
+
+			switch (edit.getType()) {
+			case ADD:
+				List<Track> added = edit.getTracks();
+				if (index >= edit.getToIndex() + added.size()) {
+					index -= added.size();
+				} else if (index >= edit.getToIndex()) {
+					return added.get(index - edit.getToIndex()).getId();
+				}
+				break;
+			case REMOVE:
+				index = indexBeforeRemoval(edit.getIndexes(), index);
+				break;
+			case MOVE:
+				List<Integer> moved = edit.getIndexes();
+				if (index >= edit.getToIndex() && index < edit.getToIndex() + moved.size()) {
+					index = moved.get(index - edit.getToIndex());
+				} else {
+					index = indexBeforeRemoval(moved, index < edit.getToIndex() ? index : index - moved.size());
+				}
+				break;
+			}
+		}
+
+		return playlist.getSnapshot().getTrack(index).getId();
+	}
+
+	// the index a track had before the tracks at the ascending indexes were taken out
+	private static int indexBeforeRemoval(List<Integer> sortedIndexes, int index) {
+		for (int removed : sortedIndexes) {
+			if (removed > index) {
+				break;
+			}
+			index++;
+		}
+
+		return index;
+	}
+
+	private static List<Integer> sorted(Set<Integer> indexes) {
+		List<Integer> sortedIndexes = new ArrayList<>(indexes);
+		Collections.sort(sortedIndexes);
+
+		return sortedIndexes;
+	}
+}
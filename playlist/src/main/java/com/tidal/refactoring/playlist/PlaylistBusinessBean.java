@@ -0,0 +1,597 @@
+package com.tidal.refactoring.playlist;
+
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+import com.tidal.refactoring.playlist.dao.PlaylistDao;
+import com.tidal.refactoring.playlist.data.PlayList;
+import com.tidal.refactoring.playlist.data.PlayListTrack;
+import com.tidal.refactoring.playlist.data.PlaylistAddResult;
+import com.tidal.refactoring.playlist.data.PlaylistChanges;
+import com.tidal.refactoring.playlist.data.PlaylistEdit;
+import com.tidal.refactoring.playlist.data.PlaylistCursor;
+import com.tidal.refactoring.playlist.data.PlaylistEditResult;
+import com.tidal.refactoring.playlist.data.PlaylistPage;
+import com.tidal.refactoring.playlist.data.PlaylistSnapshot;
+import com.tidal.refactoring.playlist.data.Track;
+import com.tidal.refactoring.playlist.exception.PlaylistConflictException;
+import com.tidal.refactoring.playlist.exception.PlaylistException;
+import com.tidal.refactoring.playlist.exception.PlaylistRejectedException;
+import com.tidal.refactoring.playlist.exception.PlaylistRejectedException.Reason;
+import com.tidal.refactoring.playlist.util.IntMultiset;
+import com.tidal.refactoring.playlist.util.MetricsRegistry;
+import com.tidal.refactoring.playlist.util.Utils;
+
+import java.util.*;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+public class PlaylistBusinessBean {
+
+	// most tracks a playlist can have
+	static final int MAX_TRACKS = 500;
+	private static final int DEFAULT_LARGE_PLAYLIST_MAX_TRACKS = 100000;
+
+	private PlaylistDao playlistDao;
+	private final PlaylistMetrics metrics;
+
+	// most tracks a segmented playlist can have, those are meant for large collections
+	@Inject(optional = true)
+	@Named("largePlaylistMaxTracks")
+	private int largePlaylistMaxTracks = DEFAULT_LARGE_PLAYLIST_MAX_TRACKS;
+
+	public PlaylistBusinessBean(PlaylistDao playlistDao) {
+		this(playlistDao, new MetricsRegistry());
+	}
+
+	@Inject
+	public PlaylistBusinessBean(PlaylistDao playlistDao, MetricsRegistry metricsRegistry) {
+		this.playlistDao = playlistDao;
+		this.metrics = new PlaylistMetrics(metricsRegistry);
+	}
+
+	/**
+	 * Add tracks to the index
+	 */
+	List<PlayListTrack> addTracks(String uuid, List<Track> tracksToAdd, int toIndex) throws PlaylistException {
+		return measured(metrics.add,
+				() -> withWriteLock(uuid, playlist -> addTracks(playlist, tracksToAdd, toIndex)));
+	}
+
+	/**
+	 * Add tracks to the index, only if the playlist is still at the expected version
+	 *
+	 * @throws PlaylistConflictException if the playlist was changed since the expected version
+	 */
+	List<PlayListTrack> addTracks(String uuid, List<Track> tracksToAdd, int toIndex, long expectedVersion)
+			throws PlaylistException {
+		return addTracks(uuid, tracksToAdd, toIndex, expectedVersion, 0);
+	}
+
+	/**
+	 * Add tracks to the index, based on the expected version of the playlist. When the playlist was changed since,
+	 * the tracks are added to the latest version instead, at most maxRetries times: after the track that was before
+	 * the index in the expected version.
+	 *
+	 * @throws PlaylistConflictException if the playlist kept changing for all retries, or the index cannot be found
+	 * in the latest version
+	 */
+	List<PlayListTrack> addTracks(String uuid, List<Track> tracksToAdd, int toIndex, long expectedVersion,
+			int maxRetries) throws PlaylistException {
+		return measured(metrics.add, () -> withExpectedVersion(uuid, expectedVersion, maxRetries,
+				playlist -> addTracks(playlist, tracksToAdd, resolveIndex(playlist, expectedVersion, toIndex))));
+	}
+
+	/**
+	 * Add the same tracks to every playlist, each validated like a single add. A rejected playlist is left unchanged
+	 * without affecting the others. Runs in parallel for the playlists of different shards, see
+	 * ShardedPlaylistDao.
+	 *
+	 * @return the outcome for every playlist, in the order of the uuids
+	 */
+	Map<String, PlaylistAddResult> addTracksToPlaylists(Collection<String> uuids, List<Track> tracksToAdd,
+			int toIndex) throws PlaylistException {
+		return playlistDao.forEachPlaylist(uuids, uuid -> {
+			try {
+				return PlaylistAddResult.added(addTracks(uuid, tracksToAdd, toIndex));
+			} catch (PlaylistRejectedException e) {
+				return PlaylistAddResult.rejected(e);
+			}
+		});
+	}
+
+	private List<PlayListTrack> addTracks(PlayList playlist, List<Track> tracksToAdd, int toIndex) {
+		// check if nothing to update, then no need to go through the rest
+		// or warning/error can be thrown
+		if (Utils.isCollectionEmpty(tracksToAdd)) {
+			return Collections.emptyList();
+		}
+
+		// the same checks as an add in a batch of edits
+		PlaylistEdit add = validateAdd(new EditedPlaylist(playlist), PlaylistEdit.add(tracksToAdd, toIndex));
+
+		int rankRebalances = playlist.getRankRebalances();
+		List<PlayListTrack> added = playlistDao.addTracksToPlaylist(playlist.getUuid(), add.getToIndex(),
+				add.getTracks());
+		changed(playlist, rankRebalances, added.size());
+
+		return added;
+	}
+
+	/**
+	 * Remove the tracks from the playlist located at the sent indexes
+	 */
+	List<PlayListTrack> removeTracks(String uuid, List<Integer> indexes) throws PlaylistException {
+		// avoid going through the rest of the logic if nothing to update
+		// or warning/error can be thrown
+		if (Utils.isCollectionEmpty(indexes)) {
+			return Collections.emptyList();
+		}
+
+		return measured(metrics.remove, () -> withWriteLock(uuid, playlist -> removeTracks(playlist, indexes)));
+	}
+
+	/**
+	 * Remove the tracks at the sent indexes, only if the playlist is still at the expected version
+	 *
+	 * @throws PlaylistConflictException if the playlist was changed since the expected version
+	 */
+	List<PlayListTrack> removeTracks(String uuid, List<Integer> indexes, long expectedVersion)
+			throws PlaylistException {
+		return removeTracks(uuid, indexes, expectedVersion, 0);
+	}
+
+	/**
+	 * Remove the tracks at the sent indexes, based on the expected version of the playlist. When the playlist was
+	 * changed since, the same tracks are removed from the latest version instead, at most maxRetries times. Tracks
+	 * removed since are left out.
+	 *
+	 * @throws PlaylistConflictException if the playlist kept changing for all retries, or a track cannot be found in
+	 * the latest version
+	 */
+	List<PlayListTrack> removeTracks(String uuid, List<Integer> indexes, long expectedVersion, int maxRetries)
+			throws PlaylistException {
+		if (Utils.isCollectionEmpty(indexes)) {
+			return Collections.emptyList();
+		}
+
+		return measured(metrics.remove, () -> withExpectedVersion(uuid, expectedVersion, maxRetries, playlist -> {
+			List<Integer> resolved = resolveIndexes(playlist, expectedVersion, indexes);
+			return resolved.isEmpty() ? Collections.<PlayListTrack>emptyList() : removeTracks(playlist, resolved);
+		}));
+	}
+
+	private List<PlayListTrack> removeTracks(PlayList playlist, List<Integer> indexes) {
+		List<PlayListTrack> removed = playlistDao.removeTracksFromPlaylist(playlist.getUuid(),
+				validIndexes(indexes, playlist.getNrOfTracks()));
+		changed(playlist, playlist.getRankRebalances(), 0);
+
+		return removed;
+	}
+
+	/**
+	 * Move the tracks at the sent indexes so the first of them ends up at toIndex, keeping their order. The toIndex is
+	 * a position in the playlist without the moved tracks.
+	 */
+	List<PlayListTrack> moveTracks(String uuid, List<Integer> fromIndexes, int toIndex) throws PlaylistException {
+		if (Utils.isCollectionEmpty(fromIndexes)) {
+			return Collections.emptyList();
+		}
+
+		return measured(metrics.move,
+				() -> withWriteLock(uuid, playlist -> moveTracks(playlist, fromIndexes, toIndex)));
+	}
+
+	private List<PlayListTrack> moveTracks(PlayList playlist, List<Integer> fromIndexes, int toIndex) {
+		Set<Integer> indexes = validMoveIndexes(fromIndexes, toIndex, playlist.getNrOfTracks());
+
+		int rankRebalances = playlist.getRankRebalances();
+		List<PlayListTrack> moved = playlistDao.moveTracksInPlaylist(playlist.getUuid(), indexes, toIndex);
+		changed(playlist, rankRebalances, moved.size());
+
+		return moved;
+	}
+
+	/**
+	 * Apply a batch of add, remove and move edits in order, as one change of the playlist. Every edit is validated
+	 * against the state the earlier edits leave the playlist in before anything is changed, so either all edits are
+	 * applied or none.
+	 */
+	PlaylistEditResult applyEdits(String uuid, List<PlaylistEdit> edits) throws PlaylistException {
+		return measured(metrics.edit, () -> withWriteLock(uuid, playlist -> applyEdits(playlist, edits)));
+	}
+
+	private PlaylistEditResult applyEdits(PlayList playlist, List<PlaylistEdit> edits) {
+		if (Utils.isCollectionEmpty(edits)) {
+			return new PlaylistEditResult(Collections.emptyList(), Collections.emptyList(), playlist.getNrOfTracks(),
+					playlist.getVersion());
+		}
+
+		EditedPlaylist edited = new EditedPlaylist(playlist);
+		validateEdits(edited, edits);
+		List<PlaylistEdit> validatedEdits = edited.getEdits(0);
+
+		int rankRebalances = playlist.getRankRebalances();
+		PlaylistEditResult result = playlistDao.applyEdits(playlist.getUuid(), validatedEdits);
+		changed(playlist, rankRebalances, tracksRanked(validatedEdits));
+
+		return result;
+	}
+
+	/**
+	 * Apply the edits of several requests to the playlist as one change, with one version and one write to the store.
+	 * Every request is validated against the state the accepted requests before it leave the playlist in, a rejected
+	 * request is left out without affecting the others. Every request is completed, with its own result or rejection.
+	 */
+	void applyEditRequests(String uuid, List<PlaylistEditRequest> requests) {
+		long start = System.nanoTime();
+		try {
+			withWriteLock(uuid, playlist -> {
+				List<PlaylistEditRequest> accepted = new ArrayList<>(requests.size());
+				List<List<PlaylistEdit>> batches = new ArrayList<>(requests.size());
+				// the accepted requests so far, a rejected one is rolled back
+				EditedPlaylist edited = new EditedPlaylist(playlist);
+
+				for (PlaylistEditRequest request : requests) {
+					int editCount = edited.getEditCount();
+					try {
+						validateEdits(edited, request.getEdits());
+					} catch (PlaylistRejectedException e) {
+						edited.rollback(editCount);
+						metrics.edit.rejected(e.getReason());
+						request.getResult().completeExceptionally(e);
+						continue;
+					}
+
+					accepted.add(request);
+					batches.add(edited.getEdits(editCount));
+				}
+
+				if (!batches.isEmpty()) {
+					int rankRebalances = playlist.getRankRebalances();
+					List<PlaylistEditResult> results = playlistDao.applyEditBatches(uuid, batches);
+					changed(playlist, rankRebalances, batches.stream().mapToInt(this::tracksRanked).sum());
+
+					for (int i = 0; i < accepted.size(); i++) {
+						accepted.get(i).getResult().complete(results.get(i));
+					}
+				}
+
+				return null;
+			});
+		} catch (RuntimeException e) {
+			metrics.edit.errors.increment();
+			PlaylistException error = new PlaylistException("Generic error", e);
+			requests.forEach(request -> request.getResult().completeExceptionally(error));
+		} finally {
+			metrics.edit.latency.record(System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Validate the edits against the state the earlier edits leave the playlist in, and add them to it. Tracks in the
+	 * playlist at that point are left out of an add, tracks removed by the earlier edits can be added again.
+	 */
+	private void validateEdits(EditedPlaylist edited, List<PlaylistEdit> edits) {
+		for (PlaylistEdit edit : edits) {
+			switch (edit.getType()) {
+			case ADD:
+				edited.add(validateAdd(edited, edit));
+				break;
+			case REMOVE:
+				edited.remove(validIndexes(edit.getIndexes(), edited.size()));
+				break;
+			case MOVE:
+				edited.move(validMoveIndexes(edit.getIndexes(), edit.getToIndex(), edited.size()), edit.getToIndex());
+				break;
+			}
+		}
+	}
+
+	/**
+	 * The add with only the tracks that will really be added, so the sizes after it are exact: duplicates and tracks
+	 * in the playlist as the earlier edits leave it are left out. The index is one in the playlist, -1 or an index
+	 * past the end adds at the end.
+	 *
+	 * @throws PlaylistRejectedException if the playlist would get too many tracks, or for a negative index
+	 */
+	private PlaylistEdit validateAdd(EditedPlaylist edited, PlaylistEdit edit) {
+		PlayList playlist = edited.getPlaylist();
+		int size = edited.size();
+
+		List<Track> tracksToAdd = new ArrayList<>();
+		IntMultiset newTrackIds = new IntMultiset();
+		for (Track track : edit.getTracks()) {
+			if (!edited.containsTrack(track.getId()) && newTrackIds.add(track.getId())) {
+				tracksToAdd.add(track);
+			}
+		}
+
+		// We do not allow > 500 tracks in new playlists, unless they are segmented
+		if (size + tracksToAdd.size() > maxTracks(playlist)) {
+			throw new PlaylistRejectedException(Reason.TRACK_LIMIT_EXCEEDED,
+					"Playlist cannot have more than " + maxTracks(playlist) + " tracks");
+		}
+
+		// The index is out of bounds, put it in the end of the list.
+		int toIndex = (edit.getToIndex() > size || edit.getToIndex() == -1) ? size : edit.getToIndex();
+		if (!isValidIndex(toIndex, size)) {
+			throw new PlaylistRejectedException(Reason.INVALID_INDEX,
+					"Cannot add tracks at invalid index " + edit.getToIndex());
+		}
+
+		return PlaylistEdit.add(tracksToAdd, toIndex);
+	}
+
+	/**
+	 * At most limit tracks from the offset on, in index order. Only the requested tracks are read, so the cost does not
+	 * depend on the size of the playlist.
+	 */
+	List<PlayListTrack> getTracks(String uuid, int offset, int limit) throws PlaylistException {
+		return measured(metrics.read, () -> {
+			if (offset < 0 || limit < 0) {
+				throw new PlaylistRejectedException(Reason.INVALID_PAGE,
+						"Invalid page offset " + offset + " or limit " + limit);
+			}
+
+			return playlistDao.getPlaylistTracks(uuid, offset, limit);
+		});
+	}
+
+	/**
+	 * At most limit tracks after the cursor, or from the start for a null cursor, in index order. Unlike an offset,
+	 * the cursor does not skip or repeat tracks when tracks before it are added or removed between pages.
+	 */
+	PlaylistPage getTracks(String uuid, PlaylistCursor cursor, int limit) throws PlaylistException {
+		return measured(metrics.read, () -> {
+			if (limit <= 0) {
+				throw new PlaylistRejectedException(Reason.INVALID_PAGE, "Invalid page limit " + limit);
+			}
+
+			return playlistDao.getPlaylistTracks(uuid, cursor, limit);
+		});
+	}
+
+	/**
+	 * Undo the changes after the version, as a new change of the playlist. Only the last few versions are kept.
+	 *
+	 * @throws PlaylistRejectedException if the version is no longer kept
+	 */
+	PlaylistEditResult revertTracks(String uuid, long version) throws PlaylistException {
+		return measured(metrics.edit, () -> withWriteLock(uuid, playlist -> {
+			int rankRebalances = playlist.getRankRebalances();
+			PlaylistEditResult result = playlistDao.revertPlaylist(uuid, version);
+			if (result == null) {
+				throw new PlaylistRejectedException(Reason.VERSION_NOT_KEPT,
+						"Version " + version + " of playlist " + uuid + " is no longer kept");
+			}
+			changed(playlist, rankRebalances, result.getAdded().size());
+
+			return result;
+		}));
+	}
+
+	/**
+	 * What changed since the version the client has: the deltas to apply, or a snapshot of all tracks when the deltas
+	 * are no longer all kept
+	 */
+	PlaylistChanges getChangesSince(String uuid, long version) throws PlaylistException {
+		return measured(metrics.read, () -> playlistDao.getChangesSince(uuid, version));
+	}
+
+	/**
+	 * All tracks in index order, read lazily a page at a time. The playlist is only locked while a page is read, so
+	 * changes made meanwhile show up in later pages.
+	 */
+	Iterator<PlayListTrack> iterateTracks(String uuid, int pageSize) throws PlaylistException {
+		if (pageSize <= 0) {
+			throw new PlaylistRejectedException(Reason.INVALID_PAGE, "Invalid page size " + pageSize);
+		}
+
+		return new Iterator<PlayListTrack>() {
+			private PlaylistPage page = playlistDao.getPlaylistTracks(uuid, null, pageSize);
+			private Iterator<PlayListTrack> tracks = page.getTracks().iterator();
+
+			@Override
+			public boolean hasNext() {
+				while (!tracks.hasNext() && page.getNext() != null) {
+					page = playlistDao.getPlaylistTracks(uuid, page.getNext(), pageSize);
+					tracks = page.getTracks().iterator();
+				}
+
+				return tracks.hasNext();
+			}
+
+			@Override
+			public PlayListTrack next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+
+				return tracks.next();
+			}
+		};
+	}
+
+	// throw exception if trying to delete track(s) from empty playlist or delete an out-of-bound index
+	private Set<Integer> validIndexes(List<Integer> indexes, int size) {
+		boolean isAnyIndexInvalid = indexes.stream()
+				.filter(index -> index == null || !isValidIndex(index, size - 1))
+				.findAny()
+				.isPresent();
+
+		if (size == 0 || isAnyIndexInvalid) {
+			throw new PlaylistRejectedException(Reason.INVALID_INDEX, "Cannot remove tracks at invalid index(es)");
+		}
+
+		return new HashSet<>(indexes);
+	}
+
+	private Set<Integer> validMoveIndexes(List<Integer> fromIndexes, int toIndex, int size) {
+		Set<Integer> indexes = validIndexes(fromIndexes, size);
+
+		if (!isValidIndex(toIndex, size - indexes.size())) {
+			throw new PlaylistRejectedException(Reason.INVALID_INDEX, "Cannot move tracks to invalid index " + toIndex);
+		}
+
+		return indexes;
+	}
+
+	// validate and change the playlist under the same lock, so concurrent changes cannot invalidate the checks.
+	// A playlist evicted from the cache between getting and locking it is got again.
+	private <T> T withWriteLock(String uuid, Function<PlayList, T> change) {
+		while (true) {
+			PlayList playlist = playlistDao.getPlaylistByUUID(uuid);
+
+			Lock lock = playlist.getLock().writeLock();
+			lock.lock();
+			try {
+				if (!playlist.isEvicted()) {
+					return change.apply(playlist);
+				}
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	// optimistic: the change claims the playlist by a compare-and-set on its published version and takes no lock. Only
+	// when the playlist is locked or claimed by another change is the version compared under the lock instead. The
+	// change resolves the positions of the expected version in the version it is applied to.
+	private <T> T withExpectedVersion(String uuid, long expectedVersion, int maxRetries,
+			Function<PlayList, T> change) {
+		long version = expectedVersion;
+		for (int attempt = 0;; attempt++) {
+			PlayList playlist = playlistDao.getPlaylistByUUID(uuid);
+
+			if (playlist.getVersion() == version) {
+				if (playlist.tryClaim(version)) {
+					try {
+						return change.apply(playlist);
+					} finally {
+						playlist.releaseClaim();
+					}
+				}
+
+				long basedOn = version;
+				// null marks a conflict under the lock, the changes themselves never return null
+				T result = withWriteLock(uuid, p -> p.getVersion() == basedOn ? change.apply(p) : null);
+				if (result != null) {
+					return result;
+				}
+			}
+
+			long actualVersion = playlistDao.getPlaylistByUUID(uuid).getVersion();
+			if (attempt >= maxRetries) {
+				throw new PlaylistConflictException(uuid, version, actualVersion);
+			}
+			version = actualVersion;
+		}
+	}
+
+	// the index of an add based on the expected version, in the current one: after the track it was to follow
+	private int resolveIndex(PlayList playlist, long expectedVersion, int toIndex) {
+		PlaylistSnapshot current = playlist.getSnapshot();
+		PlaylistSnapshot expected = expectedSnapshot(playlist, expectedVersion);
+		if (expected == current || toIndex <= 0) {
+			// invalid indexes are rejected as they are
+			return toIndex;
+		}
+		if (toIndex >= expected.getNrOfTracks()) {
+			return -1;
+		}
+
+		return current.indexAfterRank(expected.getPlayListTracks().get(toIndex - 1).getRank());
+	}
+
+	// the indexes of a remove based on the expected version, in the current one. The tracks are found by their rank,
+	// tracks no longer in the playlist are left out.
+	private List<Integer> resolveIndexes(PlayList playlist, long expectedVersion, List<Integer> indexes) {
+		PlaylistSnapshot current = playlist.getSnapshot();
+		PlaylistSnapshot expected = expectedSnapshot(playlist, expectedVersion);
+		if (expected == current) {
+			return indexes;
+		}
+
+		List<Integer> resolved = new ArrayList<>(indexes.size());
+		for (Integer index : validIndexes(indexes, expected.getNrOfTracks())) {
+			PlayListTrack playListTrack = expected.getPlayListTracks().get(index);
+
+			int currentIndex = current.indexAfterRank(playListTrack.getRank()) - 1;
+			if (currentIndex >= 0 && current.getPlayListTracks().get(currentIndex).getRank() == playListTrack.getRank()
+					&& current.getTrack(currentIndex).getId() == playListTrack.getTrackId()) {
+				resolved.add(currentIndex);
+			} else if (playlist.containsTrack(playListTrack.getTrackId())) {
+				// moved since, which gave it a new rank
+				throw new PlaylistConflictException(playlist.getUuid(), expectedVersion, current.getVersion());
+			}
+		}
+
+		return resolved;
+	}
+
+	// the kept version the positions were taken from. Its ranks still order the tracks of the current version, unless
+	// the ranks were spread again since.
+	private PlaylistSnapshot expectedSnapshot(PlayList playlist, long expectedVersion) {
+		PlaylistSnapshot current = playlist.getSnapshot();
+		PlaylistSnapshot expected = playlist.getSnapshot(expectedVersion);
+
+		if (expected == null || expected.getRankRebalances() != current.getRankRebalances()) {
+			throw new PlaylistConflictException(playlist.getUuid(), expectedVersion, current.getVersion());
+		}
+
+		return expected;
+	}
+
+	// the tracks given a rank by the edits, the added and the moved ones
+	private int tracksRanked(List<PlaylistEdit> edits) {
+		int tracks = 0;
+
+		for (PlaylistEdit edit : edits) {
+			if (edit.getType() == PlaylistEdit.Type.ADD) {
+				tracks += edit.getTracks().size();
+			} else if (edit.getType() == PlaylistEdit.Type.MOVE) {
+				tracks += edit.getIndexes().size();
+			}
+		}
+
+		return tracks;
+	}
+
+	// only the tracks given a rank are renumbered, unless the ranks of all tracks were spread again
+	private void changed(PlayList playlist, int rankRebalancesBefore, int tracksRanked) {
+		boolean rebalanced = playlist.getRankRebalances() != rankRebalancesBefore;
+
+		metrics.tracksRenumbered.record(rebalanced ? playlist.getNrOfTracks() : tracksRanked);
+		metrics.playlistSize.record(playlist.getNrOfTracks());
+	}
+
+	// expected rejections are counted and passed on as they are, anything else is wrapped without printing it
+	private <T> T measured(PlaylistMetrics.Operation operation, Supplier<T> call) {
+		long start = System.nanoTime();
+		try {
+			return call.get();
+		} catch (PlaylistRejectedException e) {
+			operation.rejected(e.getReason());
+			throw e;
+		} catch (PlaylistException e) {
+			throw e;
+		} catch (RuntimeException e) {
+			operation.errors.increment();
+			throw new PlaylistException("Generic error", e);
+		} finally {
+			operation.latency.record(System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Most tracks the playlist can have, higher for a segmented playlist
+	 */
+	int maxTracks(PlayList playlist) {
+		return playlist.isSegmented() ? largePlaylistMaxTracks : MAX_TRACKS;
+	}
+
+	private boolean isValidIndex(int toIndex, int length) {
+		return toIndex >= 0 && toIndex <= length;
+	}
+}
@@ -0,0 +1,29 @@
+package com.tidal.refactoring.playlist;
+
+import com.tidal.refactoring.playlist.data.PlaylistEdit;
+import com.tidal.refactoring.playlist.data.PlaylistEditResult;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The edits of one caller in a coalesced change, completed with the result of its own edits or with the reason they
+ * were rejected
+ */
+final class PlaylistEditRequest {
+
+	private final List<PlaylistEdit> edits;
+	private final CompletableFuture<PlaylistEditResult> result = new CompletableFuture<>();
+
+	PlaylistEditRequest(List<PlaylistEdit> edits) {
+		this.edits = edits;
+	}
+
+	List<PlaylistEdit> getEdits() {
+		return edits;
+	}
+
+	CompletableFuture<PlaylistEditResult> getResult() {
+		return result;
+	}
+}
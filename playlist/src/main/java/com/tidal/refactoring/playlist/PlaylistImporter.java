@@ -0,0 +1,161 @@
+package com.tidal.refactoring.playlist;
+
+import com.google.inject.Inject;
+import com.tidal.refactoring.playlist.dao.PlaylistDao;
+import com.tidal.refactoring.playlist.data.PlayList;
+import com.tidal.refactoring.playlist.data.PlayListTrack;
+import com.tidal.refactoring.playlist.data.PlaylistImportResult;
+import com.tidal.refactoring.playlist.data.Track;
+import com.tidal.refactoring.playlist.exception.PlaylistException;
+import com.tidal.refactoring.playlist.exception.PlaylistRejectedException;
+import com.tidal.refactoring.playlist.util.IntMultiset;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Imports tracks into a playlist from a CSV or JSON lines file or stream, see TrackReader for the formats.
+ *
+ * The input is streamed: tracks are read one at a time and added to the end of the playlist in chunks, each a change
+ * of its own, so memory does not depend on the size of the input. Duplicates are skipped as they are read, and
+ * reading stops as soon as the playlist is full. The chunks already added stay when the import fails half way.
+ */
+public class PlaylistImporter {
+
+	private static final int DEFAULT_CHUNK_SIZE = 100;
+
+	public enum Format {
+		CSV, JSON_LINES;
+
+		/**
+		 * The format of a file by its extension, .csv, or .jsonl and .ndjson for JSON lines
+		 */
+		public static Format of(Path file) {
+			String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+			if (name.endsWith(".csv")) {
+				return CSV;
+			}
+			if (name.endsWith(".jsonl") || name.endsWith(".ndjson")) {
+				return JSON_LINES;
+			}
+
+			throw new IllegalArgumentException("Unknown track file format of " + file);
+		}
+	}
+
+	private final PlaylistBusinessBean playlistBusinessBean;
+	private final PlaylistDao playlistDao;
+	private final int chunkSize;
+
+	@Inject
+	public PlaylistImporter(PlaylistBusinessBean playlistBusinessBean, PlaylistDao playlistDao) {
+		this(playlistBusinessBean, playlistDao, DEFAULT_CHUNK_SIZE);
+	}
+
+	/**
+	 * @param chunkSize most tracks added in one change
+	 */
+	public PlaylistImporter(PlaylistBusinessBean playlistBusinessBean, PlaylistDao playlistDao, int chunkSize) {
+		this.playlistBusinessBean = playlistBusinessBean;
+		this.playlistDao = playlistDao;
+		this.chunkSize = chunkSize;
+	}
+
+	public PlaylistImportResult importTracks(String uuid, Path file) throws IOException, PlaylistException {
+		try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			return importTracks(uuid, reader, Format.of(file));
+		}
+	}
+
+	/**
+	 * @param in UTF-8 encoded, it is not closed
+	 */
+	public PlaylistImportResult importTracks(String uuid, InputStream in, Format format)
+			throws IOException, PlaylistException {
+		return importTracks(uuid, new InputStreamReader(in, StandardCharsets.UTF_8), format);
+	}
+
+	private PlaylistImportResult importTracks(String uuid, Reader in, Format format) throws IOException {
+		long start = System.nanoTime();
+		TrackReader reader = TrackReader.of(format, in);
+
+		// only the ids of tracks taken for the playlist, so at most the track limit of them
+		IntMultiset taken = new IntMultiset();
+		List<Track> chunk = new ArrayList<>(chunkSize);
+		int read = 0;
+		int imported = 0;
+		int duplicates = 0;
+		int chunks = 0;
+
+		boolean full = false;
+		int room = room(uuid);
+		Track track;
+		while (!full && room > 0 && (track = reader.next()) != null) {
+			read++;
+			if (!taken.add(track.getId())) {
+				duplicates++;
+				continue;
+			}
+
+			chunk.add(track);
+			room--;
+			if (chunk.size() == chunkSize || room == 0) {
+				int added = addChunk(uuid, chunk);
+				full = added < 0;
+				if (!full) {
+					imported += added;
+					duplicates += chunk.size() - added;
+					chunks++;
+					chunk.clear();
+					room = room(uuid);
+				}
+			}
+		}
+
+		if (!full && !chunk.isEmpty()) {
+			int added = addChunk(uuid, chunk);
+			full = added < 0;
+			if (!full) {
+				imported += added;
+				duplicates += chunk.size() - added;
+				chunks++;
+			}
+		}
+
+		// a chunk that did not fit, or input left once the playlist is full
+		boolean truncated = full || reader.next() != null;
+
+		return new PlaylistImportResult(read, imported, duplicates, reader.getInvalidLines(), chunks, truncated,
+				System.nanoTime() - start);
+	}
+
+	// @return the number of tracks added, the ones already in the playlist are not, or -1 if the playlist is full
+	private int addChunk(String uuid, List<Track> chunk) {
+		try {
+			List<PlayListTrack> added = playlistBusinessBean.addTracks(uuid, chunk, -1);
+
+			return added.size();
+		} catch (PlaylistRejectedException e) {
+			// filled up by other changes meanwhile
+			if (e.getReason() == PlaylistRejectedException.Reason.TRACK_LIMIT_EXCEEDED) {
+				return -1;
+			}
+			throw e;
+		}
+	}
+
+	// tracks the playlist still has room for, it may be changed meanwhile
+	private int room(String uuid) {
+		PlayList playlist = playlistDao.getPlaylistByUUID(uuid);
+
+		return playlistBusinessBean.maxTracks(playlist) - playlist.getNrOfTracks();
+	}
+}
@@ -0,0 +1,58 @@
+package com.tidal.refactoring.playlist;
+
+import com.tidal.refactoring.playlist.exception.PlaylistRejectedException;
+import com.tidal.refactoring.playlist.util.Histogram;
+import com.tidal.refactoring.playlist.util.MetricsRegistry;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The metrics of PlaylistBusinessBean, looked up once from the registry:
+ *
+ * playlist.[operation].latency in nanoseconds, playlist.[operation].rejected.[reason] and playlist.[operation].errors
+ * for the add, remove, move, edit and read operations. playlist.tracksRenumbered is the number of tracks given a new
+ * rank by a change, and playlist.size the number of tracks after a change.
+ */
+final class PlaylistMetrics {
+
+	final Operation add;
+	final Operation remove;
+	final Operation move;
+	final Operation edit;
+	final Operation read;
+
+	final Histogram tracksRenumbered;
+	final Histogram playlistSize;
+
+	PlaylistMetrics(MetricsRegistry registry) {
+		add = new Operation(registry, "add");
+		remove = new Operation(registry, "remove");
+		move = new Operation(registry, "move");
+		edit = new Operation(registry, "edit");
+		read = new Operation(registry, "read");
+
+		tracksRenumbered = registry.histogram("playlist.tracksRenumbered");
+		playlistSize = registry.histogram("playlist.size");
+	}
+
+	static final class Operation {
+		final Histogram latency;
+		final LongAdder errors;
+		private final LongAdder[] rejections = new LongAdder[PlaylistRejectedException.Reason.values().length];
+
+		private Operation(MetricsRegistry registry, String name) {
+			latency = registry.histogram("playlist." + name + ".latency");
+			errors = registry.counter("playlist." + name + ".errors");
+
+			for (PlaylistRejectedException.Reason reason : PlaylistRejectedException.Reason.values()) {
+				rejections[reason.ordinal()] = registry.counter(
+						"playlist." + name + ".rejected." + reason.name().toLowerCase(Locale.ROOT));
+			}
+		}
+
+		void rejected(PlaylistRejectedException.Reason reason) {
+			rejections[reason.ordinal()].increment();
+		}
+	}
+}
@@ -0,0 +1,284 @@
+package com.tidal.refactoring.playlist;
+
+import com.tidal.refactoring.playlist.data.Track;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads tracks one line at a time, so only the current line is held in memory however large the input is.
+ *
+ * Both formats have the fields id, title, artistId and duration, of which only id is required:
+ * CSV with a header line naming the columns, in any order, and JSON lines with one flat object per line.
+ * Lines that cannot be read as a track are skipped and counted.
+ */
+abstract class TrackReader implements Closeable {
+
+	// returned by parse for a line that holds no track but is valid, like a header
+	private static final Map<String, String> NO_TRACK = Collections.emptyMap();
+
+	private final BufferedReader lines;
+	private int invalidLines;
+
+	private TrackReader(Reader reader) {
+		this.lines = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+	}
+
+	static TrackReader of(PlaylistImporter.Format format, Reader reader) {
+		return format == PlaylistImporter.Format.CSV ? new Csv(reader) : new JsonLines(reader);
+	}
+
+	/**
+	 * The next track, or null at the end of the input
+	 */
+	Track next() throws IOException {
+		String line;
+		while ((line = lines.readLine()) != null) {
+			if (line.trim().isEmpty()) {
+				continue;
+			}
+
+			Map<String, String> fields = parse(line);
+			if (fields == NO_TRACK) {
+				continue;
+			}
+			Track track = fields == null ? null : toTrack(fields);
+			if (track != null) {
+				return track;
+			}
+			invalidLines++;
+		}
+
+		return null;
+	}
+
+	int getInvalidLines() {
+		return invalidLines;
+	}
+
+	@Override
+	public void close() throws IOException {
+		lines.close();
+	}
+
+	// the fields of the line by name, null if it is not a valid line
+	abstract Map<String, String> parse(String line);
+
+	private static Track toTrack(Map<String, String> fields) {
+		try {
+			String id = fields.get("id");
+			if (id == null) {
+				return null;
+			}
+
+			Track track = new Track();
+			track.setId(Integer.parseInt(id.trim()));
+			track.setTitle(fields.get("title"));
+			if (fields.get("artistId") != null) {
+				track.setArtistId(Integer.parseInt(fields.get("artistId").trim()));
+			}
+			if (fields.get("duration") != null) {
+				track.setDuration(Float.parseFloat(fields.get("duration").trim()));
+			}
+
+			return track;
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	// comma separated, a field may be quoted with double quotes, a double quote in it written twice
+	private static final class Csv extends TrackReader {
+		private List<String> columns;
+
+		private Csv(Reader reader) {
+			super(reader);
+		}
+
+		@Override
+		Map<String, String> parse(String line) {
+			List<String> values = split(line);
+			if (values == null) {
+				return null;
+			}
+			if (columns == null) {
+				columns = new ArrayList<>();
+				values.forEach(column -> columns.add(column.trim()));
+				return NO_TRACK;
+			}
+			if (values.size() != columns.size()) {
+				return null;
+			}
+
+			Map<String, String> fields = new HashMap<>();
+			for (int i = 0; i < values.size(); i++) {
+				fields.put(columns.get(i), values.get(i).isEmpty() ? null : values.get(i));
+			}
+
+			return fields;
+		}
+
+		private static List<String> split(String line) {
+			List<String> values = new ArrayList<>();
+			StringBuilder value = new StringBuilder();
+			boolean quoted = false;
+
+			for (int i = 0; i < line.length(); i++) {
+				char c = line.charAt(i);
+
+				if (quoted) {
+					if (c != '"') {
+						value.append(c);
+					} else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+						value.append('"');
+						i++;
+					} else {
+						quoted = false;
+					}
+				} else if (c == '"') {
+					quoted = true;
+				} else if (c == ',') {
+					values.add(value.toString());
+					value.setLength(0);
+				} else {
+					value.append(c);
+				}
+			}
+			values.add(value.toString());
+
+			// a quote left open, fields spanning lines are not supported
+			return quoted ? null : values;
+		}
+	}
+
+	// a flat object of string, number, boolean and null values per line
+	private static final class JsonLines extends TrackReader {
+		private String line;
+		private int position;
+
+		private JsonLines(Reader reader) {
+			super(reader);
+		}
+
+		@Override
+		Map<String, String> parse(String line) {
+			this.line = line;
+			this.position = 0;
+
+			try {
+				Map<String, String> fields = new HashMap<>();
+				expect('{');
+				if (peek() == '}') {
+					position++;
+				} else {
+					do {
+						String name = string();
+						expect(':');
+						fields.put(name, value());
+					} while (next(',', '}') == ',');
+				}
+
+				return peek() == 0 ? fields : null;
+			} catch (IllegalArgumentException e) {
+				return null;
+			}
+		}
+
+		private String value() {
+			char c = peek();
+			if (c == '"') {
+				return string();
+			}
+
+			int start = position;
+			while (position < line.length() && ",} \t".indexOf(line.charAt(position)) < 0) {
+				position++;
+			}
+			String value = line.substring(start, position);
+			if (value.isEmpty() || value.charAt(0) == '{' || value.charAt(0) == '[') {
+				throw new IllegalArgumentException("Unsupported value at " + start);
+			}
+
+			return value.equals("null") ? null : value;
+		}
+
+		private String string() {
+			expect('"');
+			StringBuilder value = new StringBuilder();
+
+			while (position < line.length()) {
+				char c = line.charAt(position++);
+				if (c == '"') {
+					return value.toString();
+				}
+				if (c != '\\') {
+					value.append(c);
+					continue;
+				}
+
+				char escaped = position < line.length() ? line.charAt(position++) : 0;
+				switch (escaped) {
+				case 'n':
+					value.append('\n');
+					break;
+				case 't':
+					value.append('\t');
+					break;
+				case 'r':
+					value.append('\r');
+					break;
+				case 'b':
+					value.append('\b');
+					break;
+				case 'f':
+					value.append('\f');
+					break;
+				case 'u':
+					if (position + 4 > line.length()) {
+						throw new IllegalArgumentException("Incomplete escape at " + position);
+					}
+					value.append((char) Integer.parseInt(line.substring(position, position + 4), 16));
+					position += 4;
+					break;
+				default:
+					value.append(escaped);
+				}
+			}
+
+			throw new IllegalArgumentException("Unterminated string");
+		}
+
+		private void expect(char expected) {
+			if (peek() != expected) {
+				throw new IllegalArgumentException("Expected " + expected + " at " + position);
+			}
+			position++;
+		}
+
+		private char next(char first, char second) {
+			char c = peek();
+			if (c != first && c != second) {
+				throw new IllegalArgumentException("Expected " + first + " or " + second + " at " + position);
+			}
+			position++;
+
+			return c;
+		}
+
+		// the next character that is not white space, 0 at the end of the line
+		private char peek() {
+			while (position < line.length() && Character.isWhitespace(line.charAt(position))) {
+				position++;
+			}
+
+			return position < line.length() ? line.charAt(position) : 0;
+		}
+	}
+}
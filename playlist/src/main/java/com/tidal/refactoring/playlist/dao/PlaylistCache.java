@@ -0,0 +1,621 @@
+package com.tidal.refactoring.playlist.dao;
+
+import com.tidal.refactoring.playlist.data.PlayList;
+import com.tidal.refactoring.playlist.data.PlayListTrackColumns;
+import com.tidal.refactoring.playlist.data.PlaylistDeltaRing;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * The resident playlists of the data layer, bounded by their number and by their estimated size in bytes. Playlists
+ * not accessed for the expiry time are dropped as well.
+ *
+ * A playlist is only evicted when nobody holds its lock. It is marked evicted under its write lock, so a user that got
+ * the playlist just before gets it again after taking the lock, see PlayList.isEvicted. Changes are made to the cached
+ * playlist and passed to the change listeners, the store, before its write lock is released, so an evicted playlist
+ * has nothing left to write.
+ *
+ * A missing playlist is loaded once, however many threads ask for it at the same time, the others wait for that load.
+ */
+public class PlaylistCache {
+
+	public enum Policy {
+		LRU,
+		/**
+		 * A small LRU window for new playlists in front of the main LRU space. A playlist leaving the window only
+		 * replaces the eldest of the main space when it was used more often recently, as counted by a frequency sketch.
+		 */
+		W_TINY_LFU
+	}
+
+	// estimated heap use of a playlist without its tracks, and of a track in each store, tracks themselves are shared
+	private static final long PLAYLIST_BYTES = 512;
+	private static final long TREE_TRACK_BYTES = 144;
+	private static final long COLUMNAR_TRACK_BYTES = 48;
+	// a tree node a change copied, which the kept versions before it still hold
+	private static final long TREE_NODE_BYTES = 56;
+	// of the delta ring, a reference per slot, a delta, and an added track or index, the tracks mostly in the playlist
+	private static final long DELTA_SLOT_BYTES = 8;
+	private static final long DELTA_BYTES = 48;
+	private static final long DELTA_ENTRY_BYTES = 16;
+
+	private static final int WINDOW_PERCENT = 1;
+
+	private final long maxEntries;
+	private final long maxBytes;
+	private final long expireAfterAccessNanos;
+	private final Policy policy;
+	private final LongSupplier ticker;
+
+	private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, CompletableFuture<PlayList>> loads = new ConcurrentHashMap<>();
+	private final List<Consumer<PlayList>> evictionListeners = new CopyOnWriteArrayList<>();
+	private final List<Consumer<PlayList>> removalListeners = new CopyOnWriteArrayList<>();
+
+	// guards the eviction order, the frequency sketch and the weights
+	private final Lock policyLock = new ReentrantLock();
+	private final LinkedHashMap<String, Entry> window = new LinkedHashMap<>(16, 0.75f, true);
+	private final LinkedHashMap<String, Entry> main = new LinkedHashMap<>(16, 0.75f, true);
+	private final FrequencySketch sketch;
+	private long weightedSize;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private final LongAdder expirations = new LongAdder();
+	private final LongAdder loadFailures = new LongAdder();
+	private final LongAdder totalLoadTime = new LongAdder();
+
+	/**
+	 * Unbounded, the playlists are never evicted
+	 */
+	public PlaylistCache() {
+		this(Long.MAX_VALUE, Long.MAX_VALUE, 0, Policy.LRU);
+	}
+
+	/**
+	 * @param maxEntries most playlists to hold
+	 * @param maxBytes most estimated bytes of the held playlists
+	 * @param expireAfterAccessMillis time after the last access a playlist is dropped, 0 for never
+	 */
+	public PlaylistCache(long maxEntries, long maxBytes, long expireAfterAccessMillis, Policy policy) {
+		this(maxEntries, maxBytes, expireAfterAccessMillis, policy, System::nanoTime);
+	}
+
+	PlaylistCache(long maxEntries, long maxBytes, long expireAfterAccessMillis, Policy policy, LongSupplier ticker) {
+		this.maxEntries = maxEntries;
+		this.maxBytes = maxBytes;
+		this.expireAfterAccessNanos = TimeUnit.MILLISECONDS.toNanos(expireAfterAccessMillis);
+		this.policy = policy;
+		this.ticker = ticker;
+		this.sketch = policy == Policy.W_TINY_LFU ? new FrequencySketch(maxEntries) : null;
+	}
+
+	/**
+	 * Called with every evicted playlist, under its write lock and before another thread can load it again
+	 */
+	public void addEvictionListener(Consumer<PlayList> evictionListener) {
+		evictionListeners.add(evictionListener);
+	}
+
+	/**
+	 * Called with every playlist taken out by remove, which is not an eviction, so whatever was kept for the playlist
+	 * by the holder of this cache can be dropped. Under the write lock of the playlist when remove is called under it.
+	 */
+	public void addRemovalListener(Consumer<PlayList> removalListener) {
+		removalListeners.add(removalListener);
+	}
+
+	/**
+	 * The cached playlist, or the one loaded by the loader when it is missing or expired
+	 */
+	public PlayList get(String uuid, Function<String, PlayList> loader) {
+		while (true) {
+			Entry entry = entries.get(uuid);
+
+			if (entry != null) {
+				long now = ticker.getAsLong();
+
+				if (!isExpired(entry, now) || !expire(entry)) {
+					hits.increment();
+					entry.accessed = now;
+					recordAccess(entry);
+
+					return entry.playlist;
+				}
+				continue;
+			}
+
+			CompletableFuture<PlayList> load = new CompletableFuture<>();
+			CompletableFuture<PlayList> running = loads.putIfAbsent(uuid, load);
+			if (running != null) {
+				// the playlist is cached by the time the load completes, counted as a hit when got again
+				join(running);
+				continue;
+			}
+
+			try {
+				// loaded and cached between the lookup and the registration of this load
+				if (entries.containsKey(uuid)) {
+					load.complete(null);
+					continue;
+				}
+
+				misses.increment();
+				PlayList playlist = load(uuid, loader);
+				// a loader may put the playlist itself, to have it cached before it lets go of it elsewhere
+				if (getIfPresent(uuid) != playlist) {
+					add(uuid, playlist);
+				}
+				load.complete(playlist);
+
+				return playlist;
+			} catch (RuntimeException | Error e) {
+				load.completeExceptionally(e);
+				throw e;
+			} finally {
+				loads.remove(uuid, load);
+			}
+		}
+	}
+
+	/**
+	 * Cache the playlist, replacing the one with the same uuid
+	 */
+	public void put(PlayList playlist) {
+		Entry entry = new Entry(playlist.getUuid(), playlist, ticker.getAsLong());
+		Entry replaced = entries.put(entry.uuid, entry);
+
+		policyLock.lock();
+		try {
+			if (replaced != null && queue(replaced).remove(replaced.uuid) != null) {
+				weightedSize -= replaced.weight;
+			}
+			admit(entry);
+		} finally {
+			policyLock.unlock();
+		}
+	}
+
+	/**
+	 * The cached playlist without loading it or counting the access, null when it is not cached
+	 */
+	public PlayList getIfPresent(String uuid) {
+		Entry entry = entries.get(uuid);
+
+		return entry != null ? entry.playlist : null;
+	}
+
+	/**
+	 * Take the playlist out of the cache without evicting it, for another cache to hold it from now on. Users that got
+	 * it before still change the same playlist. Null when it is not cached.
+	 */
+	public PlayList remove(String uuid) {
+		Entry entry;
+		policyLock.lock();
+		try {
+			entry = entries.remove(uuid);
+			if (entry == null) {
+				return null;
+			}
+			if (queue(entry).remove(uuid) != null) {
+				weightedSize -= entry.weight;
+			}
+		} finally {
+			policyLock.unlock();
+		}
+
+		removalListeners.forEach(listener -> listener.accept(entry.playlist));
+
+		return entry.playlist;
+	}
+
+	/**
+	 * Take the new size of a changed playlist into account, which may evict others
+	 */
+	public void written(PlayList playlist) {
+		Entry entry = entries.get(playlist.getUuid());
+		if (entry == null || entry.playlist != playlist) {
+			return;
+		}
+
+		policyLock.lock();
+		try {
+			if (queue(entry).containsKey(entry.uuid)) {
+				long weight = weigh(playlist);
+				weightedSize += weight - entry.weight;
+				entry.weight = weight;
+				evict();
+			}
+		} finally {
+			policyLock.unlock();
+		}
+	}
+
+	/**
+	 * Drop the expired playlists now, instead of when they are got or other playlists are added
+	 */
+	public void cleanUp() {
+		policyLock.lock();
+		try {
+			expireEldest();
+		} finally {
+			policyLock.unlock();
+		}
+	}
+
+	/**
+	 * The cached playlists, at the time of the call
+	 */
+	public Collection<PlayList> values() {
+		List<PlayList> playlists = new ArrayList<>(entries.size());
+		entries.values().forEach(entry -> playlists.add(entry.playlist));
+
+		return playlists;
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Estimated bytes of all cached playlists
+	 */
+	public long getWeightedSize() {
+		policyLock.lock();
+		try {
+			return weightedSize;
+		} finally {
+			policyLock.unlock();
+		}
+	}
+
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+	public double getHitRate() {
+		long hitCount = hits.sum();
+		long requests = hitCount + misses.sum();
+
+		return requests == 0 ? 0 : (double) hitCount / requests;
+	}
+
+	/**
+	 * Evicted playlists, expired ones included
+	 */
+	public long getEvictionCount() {
+		return evictions.sum();
+	}
+
+	public long getExpiredCount() {
+		return expirations.sum();
+	}
+
+	public long getLoadFailureCount() {
+		return loadFailures.sum();
+	}
+
+	/**
+	 * Time spent loading, in nanoseconds
+	 */
+	public long getTotalLoadTime() {
+		return totalLoadTime.sum();
+	}
+
+	/**
+	 * Average time a load took, in nanoseconds
+	 */
+	public double getAverageLoadPenalty() {
+		long loadCount = misses.sum();
+
+		return loadCount == 0 ? 0 : (double) totalLoadTime.sum() / loadCount;
+	}
+
+	private PlayList load(String uuid, Function<String, PlayList> loader) {
+		long start = ticker.getAsLong();
+		try {
+			return loader.apply(uuid);
+		} catch (RuntimeException | Error e) {
+			loadFailures.increment();
+			throw e;
+		} finally {
+			totalLoadTime.add(ticker.getAsLong() - start);
+		}
+	}
+
+	private void add(String uuid, PlayList playlist) {
+		Entry entry = new Entry(uuid, playlist, ticker.getAsLong());
+		entries.put(uuid, entry);
+
+		policyLock.lock();
+		try {
+			if (sketch != null) {
+				sketch.increment(uuid);
+			}
+			admit(entry);
+		} finally {
+			policyLock.unlock();
+		}
+	}
+
+	// a hit only reorders when the policy is free, under contention the access is dropped rather than waited for
+	private void recordAccess(Entry entry) {
+		if (!policyLock.tryLock()) {
+			return;
+		}
+		try {
+			if (sketch != null) {
+				sketch.increment(entry.uuid);
+			}
+			queue(entry).get(entry.uuid);
+		} finally {
+			policyLock.unlock();
+		}
+	}
+
+	private static void join(CompletableFuture<PlayList> load) {
+		try {
+			load.join();
+		} catch (CompletionException e) {
+			// failed for the loading thread, which reported it, this one tries again
+		}
+	}
+
+	private boolean isExpired(Entry entry, long now) {
+		return expireAfterAccessNanos > 0 && now - entry.accessed >= expireAfterAccessNanos;
+	}
+
+	// @return whether the entry was dropped, it is kept while its playlist is in use
+	private boolean expire(Entry entry) {
+		policyLock.lock();
+		try {
+			if (entries.get(entry.uuid) != entry) {
+				return true;
+			}
+			if (!evict(entry)) {
+				return false;
+			}
+			queue(entry).remove(entry.uuid);
+			expirations.increment();
+
+			return true;
+		} finally {
+			policyLock.unlock();
+		}
+	}
+
+	private void admit(Entry entry) {
+		entry.weight = weigh(entry.playlist);
+		weightedSize += entry.weight;
+
+		if (policy == Policy.W_TINY_LFU) {
+			entry.inWindow = true;
+			window.put(entry.uuid, entry);
+		} else {
+			main.put(entry.uuid, entry);
+		}
+
+		expireEldest();
+		evict();
+	}
+
+	private void evict() {
+		if (policy == Policy.W_TINY_LFU) {
+			long windowCapacity = Math.max(1,
+					(maxEntries == Long.MAX_VALUE ? entries.size() : maxEntries) * WINDOW_PERCENT / 100);
+
+			while (window.size() > windowCapacity) {
+				Entry candidate = window.values().iterator().next();
+				window.remove(candidate.uuid);
+				candidate.inWindow = false;
+
+				Entry victim = main.isEmpty() ? null : main.values().iterator().next();
+				main.put(candidate.uuid, candidate);
+
+				// the candidate only takes the place of the victim if it is used more often
+				if (victim != null && isOverCapacity()) {
+					Entry loser = sketch.frequency(candidate.uuid) > sketch.frequency(victim.uuid) ? victim : candidate;
+					if (evict(loser)) {
+						main.remove(loser.uuid);
+					}
+				}
+			}
+		}
+
+		// the least recently used first, skipping the playlists in use
+		evictEldest(main);
+		evictEldest(window);
+	}
+
+	private void evictEldest(LinkedHashMap<String, Entry> queue) {
+		Iterator<Entry> eldest = queue.values().iterator();
+
+		while (isOverCapacity() && eldest.hasNext()) {
+			if (evict(eldest.next())) {
+				eldest.remove();
+			}
+		}
+	}
+
+	private void expireEldest() {
+		if (expireAfterAccessNanos > 0) {
+			long now = ticker.getAsLong();
+			expireEldest(window, now);
+			expireEldest(main, now);
+		}
+	}
+
+	// the queues are in access order, so the expired playlists are at their heads
+	private void expireEldest(LinkedHashMap<String, Entry> queue, long now) {
+		Iterator<Entry> eldest = queue.values().iterator();
+
+		while (eldest.hasNext()) {
+			Entry entry = eldest.next();
+			if (!isExpired(entry, now)) {
+				break;
+			}
+			if (evict(entry)) {
+				eldest.remove();
+				expirations.increment();
+			}
+		}
+	}
+
+	// drop the entry unless its playlist is in use, the caller removes it from its queue
+	private boolean evict(Entry entry) {
+		Lock lock = entry.playlist.getLock().writeLock();
+
+		// reentrant, so held by this thread would not stop the eviction
+		if (entry.playlist.getLock().isWriteLockedByCurrentThread() || !lock.tryLock()) {
+			return false;
+		}
+		try {
+			entry.playlist.markEvicted();
+			evictionListeners.forEach(listener -> listener.accept(entry.playlist));
+			entries.remove(entry.uuid, entry);
+		} finally {
+			lock.unlock();
+		}
+
+		weightedSize -= entry.weight;
+		evictions.increment();
+
+		return true;
+	}
+
+	private boolean isOverCapacity() {
+		return entries.size() > maxEntries || weightedSize > maxBytes;
+	}
+
+	private LinkedHashMap<String, Entry> queue(Entry entry) {
+		return entry.inWindow ? window : main;
+	}
+
+	// the current tracks, the snapshots kept of earlier versions and the delta ring
+	private static long weigh(PlayList playlist) {
+		long weight = PLAYLIST_BYTES;
+
+		PlaylistDeltaRing deltaRing = playlist.getDeltaRing();
+		if (deltaRing != null) {
+			weight += deltaRing.getCapacity() * DELTA_SLOT_BYTES + deltaRing.getDeltaCount() * DELTA_BYTES
+					+ deltaRing.getEntryCount() * DELTA_ENTRY_BYTES;
+		}
+
+		// the tracks of a segmented playlist, of all versions, are held by its PlaylistSegments, which bounds them
+		if (playlist.isSegmented()) {
+			return weight;
+		}
+
+		// a kept version shares all but what a change copied: a chunk of a columnar playlist, a path of a tree one
+		int tracks = playlist.getNrOfTracks();
+		if (playlist.isColumnar()) {
+			long chunk = Math.min(tracks, PlayListTrackColumns.CHUNK_SIZE);
+			return weight + (tracks + playlist.getKeptVersionCount() * chunk) * COLUMNAR_TRACK_BYTES;
+		}
+
+		long path = 2 * (64 - Long.numberOfLeadingZeros(tracks));
+		return weight + tracks * TREE_TRACK_BYTES + playlist.getKeptVersionCount() * path * TREE_NODE_BYTES;
+	}
+
+	private static final class Entry {
+		private final String uuid;
+		private final PlayList playlist;
+		private volatile long accessed;
+		// guarded by the policy lock
+		private long weight;
+		private boolean inWindow;
+
+		private Entry(String uuid, PlayList playlist, long accessed) {
+			this.uuid = uuid;
+			this.playlist = playlist;
+			this.accessed = accessed;
+		}
+	}
+
+	/**
+	 * Count-min sketch of 4 bit counters, all halved once the samples reach ten times the capacity so old popularity
+	 * fades
+	 */
+	private static final class FrequencySketch {
+		private static final int[] SEEDS = { 0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F };
+		private static final int MAX_COUNT = 15;
+
+		private final byte[][] rows = new byte[SEEDS.length][];
+		private final int mask;
+		private final long sampleSize;
+		private long additions;
+
+		private FrequencySketch(long capacity) {
+			int width = Integer.highestOneBit((int) Math.max(16, Math.min(capacity, 1 << 20)) * 2 - 1);
+
+			for (int i = 0; i < rows.length; i++) {
+				rows[i] = new byte[width];
+			}
+			this.mask = width - 1;
+			this.sampleSize = 10L * width;
+		}
+
+		private void increment(String key) {
+			int hash = key.hashCode();
+			boolean added = false;
+
+			for (int i = 0; i < rows.length; i++) {
+				int index = index(hash, i);
+				if (rows[i][index] < MAX_COUNT) {
+					rows[i][index]++;
+					added = true;
+				}
+			}
+
+			if (added && ++additions >= sampleSize) {
+				reset();
+			}
+		}
+
+		private int frequency(String key) {
+			int hash = key.hashCode();
+			int frequency = MAX_COUNT;
+
+			for (int i = 0; i < rows.length; i++) {
+				frequency = Math.min(frequency, rows[i][index(hash, i)]);
+			}
+
+			return frequency;
+		}
+
+		private void reset() {
+			for (byte[] row : rows) {
+				for (int i = 0; i < row.length; i++) {
+					row[i] >>= 1;
+				}
+			}
+			additions /= 2;
+		}
+
+		private int index(int hash, int row) {
+			int h = (hash + SEEDS[row]) * SEEDS[row];
+			return (h ^ (h >>> 16)) & mask;
+		}
+	}
+}
@@ -0,0 +1,58 @@
+package com.tidal.refactoring.playlist.dao;
+
+import com.tidal.refactoring.playlist.data.PlayList;
+import com.tidal.refactoring.playlist.data.PlayListTrack;
+
+import java.util.List;
+
+/**
+ * Notified of every change made through PlaylistDaoBean, while the write lock of the playlist is held or the playlist
+ * is claimed, see PlayList.tryClaim.
+ *
+ * A change starts, consists of one or more adds, removes and moves, and is committed once the version of the
+ * playlist has been increased. A change that fails, or that a listener refuses, before it is committed is aborted
+ * instead.
+ */
+public interface PlaylistChangeListener {
+
+	/**
+	 * A playlist made up, loaded or restored by the data layer, before anybody else can get it. A playlist that was
+	 * evicted is loaded again.
+	 */
+	default void playlistLoaded(PlayList playlist) {
+	}
+
+	default void changeStarted(PlayList playlist) {
+	}
+
+	default void tracksAdded(PlayList playlist, int toIndex, List<PlayListTrack> added) {
+	}
+
+	/**
+	 * @param indexes the removed indexes in ascending order, as they were before the removal
+	 */
+	default void tracksRemoved(PlayList playlist, List<Integer> indexes, List<PlayListTrack> removed) {
+	}
+
+	/**
+	 * @param fromIndexes the moved indexes in ascending order, as they were before the move
+	 */
+	default void tracksMoved(PlayList playlist, List<Integer> fromIndexes, int toIndex, List<PlayListTrack> moved) {
+	}
+
+	/**
+	 * The change is about to be published as the next version. A listener that throws undoes the change, so a store
+	 * can write it before anybody sees it.
+	 */
+	default void changeCommitting(PlayList playlist) {
+	}
+
+	default void changeCommitted(PlayList playlist) {
+	}
+
+	/**
+	 * The change was undone, the tracks are the ones of the current version again
+	 */
+	default void changeAborted(PlayList playlist) {
+	}
+}
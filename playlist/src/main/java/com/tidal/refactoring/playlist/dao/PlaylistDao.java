@@ -0,0 +1,81 @@
+package com.tidal.refactoring.playlist.dao;
+
+import com.tidal.refactoring.playlist.data.PlayList;
+import com.tidal.refactoring.playlist.data.PlayListTrack;
+import com.tidal.refactoring.playlist.data.PlaylistChanges;
+import com.tidal.refactoring.playlist.data.PlaylistEdit;
+import com.tidal.refactoring.playlist.data.PlaylistCursor;
+import com.tidal.refactoring.playlist.data.PlaylistEditResult;
+import com.tidal.refactoring.playlist.data.PlaylistPage;
+import com.tidal.refactoring.playlist.data.Track;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Data layer for playlists. Changes are expected to be validated by the caller already.
+ */
+public interface PlaylistDao {
+
+	/**
+	 * The live playlist, created when it does not exist yet. Its fields are read under its read lock, but reading its
+	 * tracks sets their index and rank, so those are only read under its write lock. Read them from its snapshot instead.
+	 */
+	PlayList getPlaylistByUUID(String uuid);
+
+	/**
+	 * Consistent copy of the tracks of the playlist, ordered by index
+	 */
+	List<PlayListTrack> getPlaylistTracks(String uuid);
+
+	/**
+	 * At most limit tracks from the offset on, ordered by index. An offset past the end gives no tracks.
+	 */
+	List<PlayListTrack> getPlaylistTracks(String uuid, int offset, int limit);
+
+	/**
+	 * At most limit tracks after the cursor, or from the start for a null cursor, ordered by index
+	 */
+	PlaylistPage getPlaylistTracks(String uuid, PlaylistCursor cursor, int limit);
+
+	/**
+	 * The changes of the playlist after the version, as deltas when they are all still known, else as a snapshot
+	 */
+	PlaylistChanges getChangesSince(String uuid, long version);
+
+	List<PlayListTrack> addTracksToPlaylist(String uuid, int toIndex, List<Track> tracksToAdd);
+
+	List<PlayListTrack> removeTracksFromPlaylist(String uuid, Set<Integer> indexes);
+
+	List<PlayListTrack> moveTracksInPlaylist(String uuid, Set<Integer> fromIndexes, int toIndex);
+
+	PlaylistEditResult applyEdits(String uuid, List<PlaylistEdit> edits);
+
+	/**
+	 * Apply the batches in order as one change of the playlist, with one version and one write. Every batch gets its
+	 * own net result, with the size and version after all batches.
+	 */
+	List<PlaylistEditResult> applyEditBatches(String uuid, List<List<PlaylistEdit>> batches);
+
+	/**
+	 * Put back the tracks of an earlier version as a new change, or return null when that version is no longer kept
+	 */
+	PlaylistEditResult revertPlaylist(String uuid, long version);
+
+	/**
+	 * Run the operation for every playlist, one after the other. A dao spread over shards runs the playlists of
+	 * different shards in parallel.
+	 *
+	 * @return the result of every playlist, in the order of the uuids
+	 */
+	default <T> Map<String, T> forEachPlaylist(Collection<String> uuids, Function<String, T> operation) {
+		Map<String, T> results = new LinkedHashMap<>();
+		uuids.forEach(uuid -> results.put(uuid, operation.apply(uuid)));
+
+		return results;
+	}
+}
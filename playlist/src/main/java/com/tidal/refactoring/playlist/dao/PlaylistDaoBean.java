@@ -0,0 +1,603 @@
+package com.tidal.refactoring.playlist.dao;
+
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+import com.tidal.refactoring.playlist.data.PlayList;
+import com.tidal.refactoring.playlist.data.PlayListTrack;
+import com.tidal.refactoring.playlist.data.PlaylistChanges;
+import com.tidal.refactoring.playlist.data.PlaylistDelta;
+import com.tidal.refactoring.playlist.data.PlaylistDeltaRing;
+import com.tidal.refactoring.playlist.data.PlaylistEdit;
+import com.tidal.refactoring.playlist.data.PlaylistCursor;
+import com.tidal.refactoring.playlist.data.PlaylistEditResult;
+import com.tidal.refactoring.playlist.data.PlaylistPage;
+import com.tidal.refactoring.playlist.data.PlaylistSegments;
+import com.tidal.refactoring.playlist.data.PlaylistSnapshot;
+import com.tidal.refactoring.playlist.data.Track;
+
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Function;
+import java.util.function.LongFunction;
+import java.util.stream.Collectors;
+
+/**
+ * Class faking the data layer, and returning fake playlists
+ *
+ * Safe for concurrent use: playlists are created atomically, and every playlist is guarded by its own lock so changes
+ * to different playlists run in parallel.
+ *
+ * The resident playlists are held by a PlaylistCache, unbounded unless one is configured. An evicted playlist is
+ * loaded from the playlist loader of its store, or made up again when no store kept it.
+ *
+ * Every change is also kept as deltas in a ring with the playlist, so clients can sync incrementally through
+ * getChangesSince. A playlist that is evicted and loaded again starts with an empty ring.
+ *
+ * Tracks are read from the snapshot of the playlist, without its lock, so reads never wait for changes. The snapshots
+ * of the last few versions are kept to revert to.
+ *
+ * With segmentedPlaylists new playlists keep their tracks in segments, of which only the recently used ones stay on
+ * the heap, for collections well beyond the usual track limit. Playlists read back by a store are kept the same way.
+ */
+public class PlaylistDaoBean implements PlaylistDao {
+	private static final int DEFAULT_DELTA_RING_SIZE = 64;
+	private static final int DEFAULT_KEPT_VERSIONS = 8;
+
+	// makes it flexible to change the default playlist track size
+	@Inject
+	@Named("defaultPlaylistTrackSize")
+	private int defaultPlaylistTrackSize;
+
+	// keep the tracks of new playlists in primitive columns, for large resident playlist sets
+	@Inject(optional = true)
+	@Named("columnarPlaylists")
+	private boolean columnarPlaylists;
+
+	// split the tracks of new playlists into segments spilled to disk when not used, for very large playlists
+	@Inject(optional = true)
+	@Named("segmentedPlaylists")
+	private boolean segmentedPlaylists;
+
+	// the segments of all segmented playlists, bounding the heap they take
+	private PlaylistSegments segments = new PlaylistSegments();
+
+	// shared by all playlists, so a track in many playlists is held once
+	@Inject
+	private TrackCatalog trackCatalog = new TrackCatalog();
+
+	@Inject(optional = true)
+	private PlaylistCache playlists = new PlaylistCache();
+
+	// deltas kept per playlist for getChangesSince, 0 to keep none
+	@Inject(optional = true)
+	@Named("playlistDeltaRingSize")
+	private int deltaRingSize = DEFAULT_DELTA_RING_SIZE;
+
+	// versions before the current one every playlist keeps a snapshot of, for revertPlaylist
+	@Inject(optional = true)
+	@Named("playlistKeptVersions")
+	private int keptVersions = DEFAULT_KEPT_VERSIONS;
+
+	// playlists kept by a store, null for the ones it does not have
+	private volatile Function<String, PlayList> playlistLoader = uuid -> null;
+
+	private final List<PlaylistChangeListener> changeListeners = new CopyOnWriteArrayList<>();
+
+	public PlaylistDaoBean() {
+		segments.setTrackInterner(this::internTrack);
+	}
+
+	// with a given cache, when not injected
+	PlaylistDaoBean(PlaylistCache playlists) {
+		this();
+		this.playlists = playlists;
+	}
+
+	// spilled segments are read back with the tracks of the catalog
+	@Inject(optional = true)
+	void setSegments(PlaylistSegments segments) {
+		this.segments = segments;
+		segments.setTrackInterner(this::internTrack);
+	}
+
+	public void addChangeListener(PlaylistChangeListener changeListener) {
+		changeListeners.add(changeListener);
+	}
+
+	/**
+	 * The resident playlists, for their statistics and eviction listeners
+	 */
+	public PlaylistCache getPlaylistCache() {
+		return playlists;
+	}
+
+	/**
+	 * The resident playlist, which may get evicted once its lock is released, see PlayList.isEvicted
+	 */
+	@Override
+	public PlayList getPlaylistByUUID(String uuid) {
+		return playlists.get(uuid, this::loadPlayList);
+	}
+
+	// all playlists currently held, for a store that persists them
+	Collection<PlayList> getPlaylists() {
+		return playlists.values();
+	}
+
+	// put back a playlist recovered by a store or moved from another dao, before it is used
+	void restorePlaylist(PlayList playlist) {
+		prepare(playlist);
+		playlists.put(playlist);
+	}
+
+	void setPlaylistLoader(Function<String, PlayList> playlistLoader) {
+		this.playlistLoader = playlistLoader;
+	}
+
+	private PlayList loadPlayList(String uuid) {
+		PlayList playlist = playlistLoader.apply(uuid);
+		// restored by the loader, already prepared
+		if (playlist != null && playlists.getIfPresent(uuid) == playlist) {
+			return playlist;
+		}
+		if (playlist == null) {
+			playlist = createPlayList(uuid);
+		}
+
+		prepare(playlist);
+		return playlist;
+	}
+
+	private void prepare(PlayList playlist) {
+		playlist.internTracks(this::internTrack);
+		playlist.setKeptVersions(keptVersions);
+		changeListeners.forEach(listener -> listener.playlistLoaded(playlist));
+	}
+
+	// the catalog is read on every call, it is injected after the constructor
+	private Track internTrack(Track track) {
+		return trackCatalog.intern(track);
+	}
+
+	@Override
+	public List<PlayListTrack> getPlaylistTracks(String uuid) {
+		return new ArrayList<>(getSnapshot(uuid).getPlayListTracks());
+	}
+
+	/**
+	 * Copies only the requested tracks, starting from the offset in O(log n)
+	 */
+	@Override
+	public List<PlayListTrack> getPlaylistTracks(String uuid, int offset, int limit) {
+		PlaylistSnapshot snapshot = getSnapshot(uuid);
+
+		return readTracks(snapshot, Math.min(offset, snapshot.getNrOfTracks()), limit);
+	}
+
+	@Override
+	public PlaylistPage getPlaylistTracks(String uuid, PlaylistCursor cursor, int limit) {
+		PlaylistSnapshot snapshot = getSnapshot(uuid);
+		int size = snapshot.getNrOfTracks();
+		int fromIndex;
+		if (cursor == null) {
+			fromIndex = 0;
+		} else if (cursor.getRankEpoch() == snapshot.getRankEpoch()
+				&& cursor.getRankRebalances() == snapshot.getRankRebalances()) {
+			fromIndex = snapshot.indexAfterRank(cursor.getRank());
+		} else {
+			fromIndex = Math.min(cursor.getIndex(), size);
+		}
+
+		List<PlayListTrack> tracks = readTracks(snapshot, fromIndex, limit);
+		int nextIndex = fromIndex + tracks.size();
+
+		PlaylistCursor next;
+		if (nextIndex >= size) {
+			next = null;
+		} else if (tracks.isEmpty()) {
+			next = cursor;
+		} else {
+			next = new PlaylistCursor(tracks.get(tracks.size() - 1).getRank(), snapshot.getRankEpoch(),
+					snapshot.getRankRebalances(), nextIndex);
+		}
+
+		return new PlaylistPage(tracks, next);
+	}
+
+	/**
+	 * The latest published version of the playlist, read without its lock. An evicted playlist still has a consistent
+	 * snapshot, so there is no need to get it again.
+	 */
+	public PlaylistSnapshot getSnapshot(String uuid) {
+		return getPlaylistByUUID(uuid).getSnapshot();
+	}
+
+	/**
+	 * The deltas after the version when the ring of the playlist still has all of them, else a snapshot
+	 */
+	@Override
+	public PlaylistChanges getChangesSince(String uuid, long version) {
+		return withReadLock(uuid, playlist -> {
+			PlaylistDeltaRing deltaRing = playlist.getDeltaRing();
+			if (version <= playlist.getVersion() && deltaRing != null && deltaRing.covers(version)) {
+				return PlaylistChanges.deltas(playlist.getVersion(), deltaRing.since(version));
+			}
+
+			// copies of the tracks, the ones of the playlist are only read under its write lock
+			PlaylistSnapshot snapshot = playlist.getSnapshot();
+			return PlaylistChanges.snapshot(snapshot.getVersion(), new ArrayList<>(snapshot.getPlayListTracks()));
+		});
+	}
+
+	private static List<PlayListTrack> readTracks(PlaylistSnapshot snapshot, int fromIndex, int limit) {
+		List<PlayListTrack> tracks = new ArrayList<>(Math.min(limit, snapshot.getNrOfTracks() - fromIndex));
+
+		Iterator<PlayListTrack> iterator = snapshot.getPlayListTracks(fromIndex);
+		while (tracks.size() < limit && iterator.hasNext()) {
+			tracks.add(iterator.next());
+		}
+
+		return tracks;
+	}
+
+	/**
+	 * An empty playlist kept the way this dao is configured to keep them, also for playlists read back by a store
+	 */
+	PlayList newPlayList(String uuid) {
+		return segmentedPlaylists ? new PlayList(uuid, segments) : new PlayList(uuid, columnarPlaylists);
+	}
+
+	private PlayList createPlayList(String uuid) {
+		PlayList trackPlayList = newPlayList(uuid);
+
+		trackPlayList.setDeleted(false);
+		trackPlayList.setId(49834);
+		trackPlayList.setLastUpdated(new Date());
+		trackPlayList.setPlayListName("Collection of great songs");
+		trackPlayList.setPlayListTracks(createPlaylistTracks(uuid, defaultPlaylistTrackSize));
+
+		return trackPlayList;
+	}
+
+	private List<PlayListTrack> createPlaylistTracks(String playlistUuid, int playlistTrackSize) {
+		List<PlayListTrack> playListTracks = new ArrayList<PlayListTrack>(playlistTrackSize);
+
+		for (int i = 0; i < playlistTrackSize; i++) {
+			PlayListTrack playListTrack = new PlayListTrack(i + 1, playlistUuid, i, new Date(),
+					trackCatalog.intern(getTrack()));
+
+			playListTracks.add(playListTrack);
+		}
+
+		return playListTracks;
+	}
+
+	public static Track getTrack() {
+		Random randomGenerator = new Random();
+
+		Track track = new Track();
+		track.setArtistId(randomGenerator.nextInt(10000));
+		track.setDuration(60 * 3);
+
+		int trackNumber = randomGenerator.nextInt(15);
+		track.setTitle("Track no: " + trackNumber);
+		track.setId(trackNumber);
+
+		return track;
+	}
+
+	// extract functionality from PlaylistBusineesBean to keep it's logic clean
+	@Override
+	public List<PlayListTrack> addTracksToPlaylist(String uuid, int toIndex, List<Track> tracksToAdd) {
+		return withWriteLock(uuid, playlist -> {
+			List<PlayListTrack> added = addTracksToPlaylist(playlist, toIndex, tracksToAdd);
+			updatePlaylist(playlist);
+
+			return added;
+		});
+	}
+
+	// remove tracks at the given indexes
+	@Override
+	public List<PlayListTrack> removeTracksFromPlaylist(String uuid, Set<Integer> indexes) {
+		return withWriteLock(uuid, playlist -> {
+			List<PlayListTrack> removed = removeTracksFromPlaylist(playlist, indexes);
+			updatePlaylist(playlist);
+
+			return removed;
+		});
+	}
+
+	/**
+	 * Move the tracks at the given indexes so the first of them ends up at toIndex, keeping their order and identity.
+	 * Only the moved tracks get a new rank, the tracks in between are not written.
+	 */
+	@Override
+	public List<PlayListTrack> moveTracksInPlaylist(String uuid, Set<Integer> fromIndexes, int toIndex) {
+		return withWriteLock(uuid, playlist -> {
+			List<PlayListTrack> moved = moveTracksInPlaylist(playlist, fromIndexes, toIndex);
+			updatePlaylist(playlist);
+
+			return moved;
+		});
+	}
+
+	/**
+	 * Apply all edits in order as one change of the playlist, the edits are expected to be validated already
+	 */
+	@Override
+	public PlaylistEditResult applyEdits(String uuid, List<PlaylistEdit> edits) {
+		return applyEditBatches(uuid, Collections.singletonList(edits)).get(0);
+	}
+
+	@Override
+	public List<PlaylistEditResult> applyEditBatches(String uuid, List<List<PlaylistEdit>> batches) {
+		return withWriteLock(uuid, playlist -> {
+			List<List<PlayListTrack>> added = new ArrayList<>(batches.size());
+			List<List<PlayListTrack>> removed = new ArrayList<>(batches.size());
+
+			for (List<PlaylistEdit> edits : batches) {
+				List<PlayListTrack> removedByBatch = new ArrayList<>();
+				added.add(applyEdits(playlist, edits, removedByBatch));
+				removed.add(removedByBatch);
+			}
+
+			updatePlaylist(playlist);
+
+			List<PlaylistEditResult> results = new ArrayList<>(batches.size());
+			for (int i = 0; i < batches.size(); i++) {
+				results.add(new PlaylistEditResult(added.get(i), removed.get(i), playlist.getNrOfTracks(),
+						playlist.getVersion()));
+			}
+
+			return results;
+		});
+	}
+
+	// @return the net added tracks of the edits, the net removed ones are added to removed
+	private List<PlayListTrack> applyEdits(PlayList playlist, List<PlaylistEdit> edits, List<PlayListTrack> removed) {
+		// by track id, which is unique for added tracks as tracks already in the playlist are not added again.
+		// Not by instance, a columnar playlist returns a copy of a removed track.
+		Map<Integer, PlayListTrack> added = new LinkedHashMap<>();
+
+		for (PlaylistEdit edit : edits) {
+			switch (edit.getType()) {
+			case ADD:
+				addTracksToPlaylist(playlist, edit.getToIndex(), edit.getTracks())
+						.forEach(playListTrack -> added.put(playListTrack.getTrackId(), playListTrack));
+				break;
+			case REMOVE:
+				Set<Integer> indexes = new HashSet<>(edit.getIndexes());
+				for (PlayListTrack playListTrack : removeTracksFromPlaylist(playlist, indexes)) {
+					// a track added earlier in the same batch never existed for the caller
+					if (added.remove(playListTrack.getTrackId()) == null) {
+						removed.add(playListTrack);
+					}
+				}
+				break;
+			case MOVE:
+				moveTracksInPlaylist(playlist, new HashSet<>(edit.getIndexes()), edit.getToIndex());
+				break;
+			}
+		}
+
+		return new ArrayList<>(added.values());
+	}
+
+	private List<PlayListTrack> addTracksToPlaylist(PlayList playlist, int toIndex, List<Track> tracksToAdd) {
+		String uuid = playlist.getUuid();
+
+		// This method can also be avoided depending on how to define that two playlist tracks are equal.
+		tracksToAdd = removeExistingTracks(tracksToAdd, playlist);
+
+		// the following tracks are not renumbered, their index is derived from their position in the playlist
+
+		List<PlayListTrack> added = new ArrayList<>(tracksToAdd.size());
+		int originalSize = playlist.getNrOfTracks();
+
+		for (int i = 0; i < tracksToAdd.size(); i++) {
+			PlayListTrack playlistTrack = new PlayListTrack(originalSize + i, uuid, toIndex + i, new Date(),
+					trackCatalog.intern(tracksToAdd.get(i)));
+			added.add(playlistTrack);
+		}
+
+		playlist.addPlayListTracks(toIndex, added);
+
+		if (!added.isEmpty()) {
+			publish(playlist, version -> PlaylistDelta.added(version, toIndex, added));
+			changeListeners.forEach(listener -> listener.tracksAdded(playlist, toIndex, added));
+		}
+
+		return added;
+	}
+
+	private List<PlayListTrack> removeTracksFromPlaylist(PlayList playlist, Set<Integer> indexes) {
+		List<Integer> sortedIndexes = sorted(indexes);
+		List<PlayListTrack> removed = takeTracks(playlist, sortedIndexes);
+
+		if (!removed.isEmpty()) {
+			publish(playlist, version -> PlaylistDelta.removed(version, sortedIndexes));
+			changeListeners.forEach(listener -> listener.tracksRemoved(playlist, sortedIndexes, removed));
+		}
+
+		return removed;
+	}
+
+	// take the tracks out and insert them again at toIndex, keeping the same playlist track instances
+	private List<PlayListTrack> moveTracksInPlaylist(PlayList playlist, Set<Integer> fromIndexes, int toIndex) {
+		List<Integer> sortedIndexes = sorted(fromIndexes);
+		List<PlayListTrack> moved = takeTracks(playlist, sortedIndexes);
+		playlist.addPlayListTracks(toIndex, moved);
+
+		if (!moved.isEmpty()) {
+			publish(playlist, version -> PlaylistDelta.moved(version, sortedIndexes, toIndex));
+			changeListeners.forEach(listener -> listener.tracksMoved(playlist, sortedIndexes, toIndex, moved));
+		}
+
+		return moved;
+	}
+
+	/**
+	 * Put back the tracks of a kept version, as a new change of the playlist. The result has all tracks of the
+	 * current version as removed and all tracks of the kept version as added, or is null when the version is no
+	 * longer kept.
+	 */
+	@Override
+	public PlaylistEditResult revertPlaylist(String uuid, long version) {
+		return withWriteLock(uuid, playlist -> {
+			PlaylistSnapshot reverted = playlist.getSnapshot(version);
+			if (reverted == null) {
+				return null;
+			}
+
+			List<Integer> indexes = new ArrayList<>(playlist.getNrOfTracks());
+			for (int i = 0; i < playlist.getNrOfTracks(); i++) {
+				indexes.add(i);
+			}
+			List<PlayListTrack> removed = new ArrayList<>(playlist.getSnapshot().getPlayListTracks());
+			if (!removed.isEmpty()) {
+				changeListeners.forEach(listener -> listener.tracksRemoved(playlist, indexes, removed));
+				publish(playlist, deltaVersion -> PlaylistDelta.removed(deltaVersion, indexes));
+			}
+
+			playlist.restoreSnapshot(reverted);
+
+			List<PlayListTrack> added = new ArrayList<>(reverted.getPlayListTracks());
+			if (!added.isEmpty()) {
+				changeListeners.forEach(listener -> listener.tracksAdded(playlist, 0, added));
+				publish(playlist, deltaVersion -> PlaylistDelta.added(deltaVersion, 0, added));
+			}
+			updatePlaylist(playlist);
+
+			return new PlaylistEditResult(added, removed, playlist.getNrOfTracks(), playlist.getVersion());
+		});
+	}
+
+	// remove the tracks at the ascending indexes, returned in the same order
+	private static List<PlayListTrack> takeTracks(PlayList playlist, List<Integer> sortedIndexes) {
+		List<PlayListTrack> taken = new ArrayList<>(sortedIndexes.size());
+
+		// remove from the highest index down, so the indexes still to remove are not shifted
+		for (int i = sortedIndexes.size() - 1; i >= 0; i--) {
+			taken.add(playlist.removePlayListTrack(sortedIndexes.get(i)));
+		}
+		Collections.reverse(taken);
+
+		return taken;
+	}
+
+	private static List<Integer> sorted(Set<Integer> indexes) {
+		List<Integer> sortedIndexes = new ArrayList<>(indexes);
+		Collections.sort(sortedIndexes);
+
+		return sortedIndexes;
+	}
+
+	// a playlist evicted between getting and locking it is got again
+	private <T> T withReadLock(String uuid, Function<PlayList, T> read) {
+		while (true) {
+			PlayList playlist = getPlaylistByUUID(uuid);
+
+			Lock lock = playlist.getLock().readLock();
+			lock.lock();
+			try {
+				if (!playlist.isEvicted()) {
+					return read.apply(playlist);
+				}
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	// a playlist claimed by this thread is changed without the lock, see PlayList.tryClaim
+	private <T> T withWriteLock(String uuid, Function<PlayList, T> change) {
+		while (true) {
+			PlayList playlist = getPlaylistByUUID(uuid);
+			if (playlist.isClaimedByCurrentThread()) {
+				try {
+					return change(playlist, change);
+				} finally {
+					playlists.written(playlist);
+				}
+			}
+
+			Lock lock = playlist.getLock().writeLock();
+			lock.lock();
+			try {
+				if (playlist.isEvicted()) {
+					continue;
+				}
+
+				return change(playlist, change);
+			} finally {
+				lock.unlock();
+				playlists.written(playlist);
+			}
+		}
+	}
+
+	private <T> T change(PlayList playlist, Function<PlayList, T> change) {
+		if (playlist.getDeltaRing() != null) {
+			playlist.getDeltaRing().abort(playlist.getVersion());
+		}
+		long version = playlist.getVersion();
+		Date lastUpdated = playlist.getLastUpdated();
+
+		// a change that fails anywhere before its version is published is undone, whether an edit or a listener
+		// failed, like a store that could not log it
+		try {
+			changeListeners.forEach(listener -> listener.changeStarted(playlist));
+
+			return change.apply(playlist);
+		} catch (RuntimeException | Error e) {
+			if (playlist.getVersion() == version) {
+				undoChange(playlist, lastUpdated);
+			}
+			throw e;
+		}
+	}
+
+	// update all related attributes of the playlist
+	private void updatePlaylist(PlayList playlist) {
+		playlist.setLastUpdated(new Date());
+		changeListeners.forEach(listener -> listener.changeCommitting(playlist));
+
+		playlist.incrementVersion();
+		if (playlist.getDeltaRing() != null) {
+			playlist.getDeltaRing().commit();
+		}
+
+		changeListeners.forEach(listener -> listener.changeCommitted(playlist));
+	}
+
+	// back to the tracks of the published version, which the change did not touch
+	private void undoChange(PlayList playlist, Date lastUpdated) {
+		playlist.restoreSnapshot(playlist.getSnapshot());
+		playlist.setLastUpdated(lastUpdated);
+		if (playlist.getDeltaRing() != null) {
+			playlist.getDeltaRing().abort(playlist.getVersion());
+		}
+
+		changeListeners.forEach(listener -> listener.changeAborted(playlist));
+	}
+
+	// a delta of the change in progress, with the version the change will commit
+	private void publish(PlayList playlist, LongFunction<PlaylistDelta> delta) {
+		if (deltaRingSize == 0) {
+			return;
+		}
+		if (playlist.getDeltaRing() == null) {
+			playlist.setDeltaRing(new PlaylistDeltaRing(deltaRingSize, playlist.getVersion()));
+		}
+
+		playlist.getDeltaRing().add(delta.apply(playlist.getVersion() + 1));
+	}
+
+	// tracks are identified by their id, which the playlist keeps an index of
+	private static List<Track> removeExistingTracks(List<Track> tracksToAdd, PlayList playlist) {
+		return tracksToAdd.stream().filter(track -> !playlist.containsTrack(track.getId()))
+				.collect(Collectors.toList());
+	}
+}
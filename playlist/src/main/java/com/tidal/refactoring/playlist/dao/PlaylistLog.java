@@ -0,0 +1,255 @@
+package com.tidal.refactoring.playlist.dao;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of frames, written through memory-mapped segment files of a fixed size.
+ *
+ * Every frame is its length, a CRC32 of its payload and the payload. Segments are zero filled when created, so a
+ * length of 0 marks the end of the written frames. A frame with a bad length or checksum is the torn tail of a crash,
+ * reading of that segment stops there. Every log opens a new segment, so nothing was written after a torn tail within
+ * the same segment.
+ *
+ * Appending only writes to the mapped memory. Durability is requested with sync, which forces everything appended so
+ * far with one fsync, so writers waiting at the same time share it (group commit).
+ *
+ * Once a segment could not be forced or opened the log fails every later append and sync: frames appended before may
+ * or may not be on disk, and only a replay can tell.
+ */
+class PlaylistLog implements Closeable {
+
+	private static final String SEGMENT_PREFIX = "segment-";
+	private static final String SEGMENT_SUFFIX = ".log";
+	private static final int FRAME_HEADER_SIZE = 8;
+
+	private final Path directory;
+	private final int segmentSize;
+
+	private long segment;
+	private FileChannel channel;
+	private MappedByteBuffer buffer;
+
+	// positions are segment * segmentSize + offset in the segment, so they only grow
+	private final AtomicLong durablePosition = new AtomicLong();
+	private final Object syncLock = new Object();
+
+	private volatile IOException failure; // the first failure to write the log, if any
+
+	/**
+	 * Opens a new segment after the existing ones, the existing segments are only read by replay
+	 */
+	PlaylistLog(Path directory, int segmentSize) throws IOException {
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+
+		Files.createDirectories(directory);
+
+		List<Long> segments = segments();
+		openSegment(segments.isEmpty() ? 0 : segments.get(segments.size() - 1) + 1);
+	}
+
+	/**
+	 * @return the position after the frame, to pass to sync
+	 */
+	synchronized long append(byte[] payload) throws IOException {
+		checkNotFailed();
+
+		int frameSize = FRAME_HEADER_SIZE + payload.length;
+
+		if (frameSize > segmentSize) {
+			throw new IOException("Log frame of " + frameSize + " bytes is larger than a segment");
+		}
+
+		if (buffer.remaining() < frameSize) {
+			roll();
+		}
+
+		CRC32 crc = new CRC32();
+		crc.update(payload, 0, payload.length);
+
+		buffer.putInt(payload.length);
+		buffer.putInt((int) crc.getValue());
+		buffer.put(payload);
+
+		return position();
+	}
+
+	/**
+	 * Wait until everything up to the position is on disk. The first writer to get here forces all frames appended so
+	 * far, writers that arrive meanwhile find their frames already forced.
+	 */
+	void sync(long position) throws IOException {
+		if (durablePosition.get() >= position) {
+			return;
+		}
+
+		synchronized (syncLock) {
+			if (durablePosition.get() >= position) {
+				return;
+			}
+			checkNotFailed();
+
+			MappedByteBuffer toForce;
+			long forcedPosition;
+			synchronized (this) {
+				toForce = buffer;
+				forcedPosition = position();
+			}
+
+			try {
+				toForce.force();
+			} catch (RuntimeException e) {
+				throw failed(new IOException("Could not sync the log", e));
+			}
+			durablePosition.accumulateAndGet(forcedPosition, Math::max);
+		}
+	}
+
+	/**
+	 * Force the current segment and continue in a new one
+	 *
+	 * @return the new segment, which holds every frame appended from now on
+	 */
+	synchronized long roll() throws IOException {
+		checkNotFailed();
+
+		try {
+			buffer.force();
+			durablePosition.accumulateAndGet(position(), Math::max);
+			channel.close();
+
+			openSegment(segment + 1);
+		} catch (IOException e) {
+			throw failed(e);
+		} catch (RuntimeException e) {
+			throw failed(new IOException("Could not roll the log", e));
+		}
+
+		return segment;
+	}
+
+	/**
+	 * Read all valid frames of the segments from the given one on, in order, skipping the torn tail of a segment
+	 */
+	void replay(long fromSegment, Consumer<ByteBuffer> frames) throws IOException {
+		for (long replayed : segments()) {
+			if (replayed < fromSegment || replayed >= segment) {
+				continue;
+			}
+
+			try (FileChannel replayChannel = FileChannel.open(segmentPath(replayed), StandardOpenOption.READ)) {
+				replayFrames(replayChannel.map(FileChannel.MapMode.READ_ONLY, 0, replayChannel.size()), frames);
+			}
+		}
+	}
+
+	private static void replayFrames(ByteBuffer segmentBuffer, Consumer<ByteBuffer> frames) {
+		while (segmentBuffer.remaining() >= FRAME_HEADER_SIZE) {
+			int length = segmentBuffer.getInt();
+			int checksum = segmentBuffer.getInt();
+
+			// the end of the written frames, or a frame that was only partly written
+			if (length <= 0 || length > segmentBuffer.remaining()) {
+				return;
+			}
+
+			ByteBuffer payload = segmentBuffer.slice();
+			payload.limit(length);
+
+			CRC32 crc = new CRC32();
+			crc.update(payload.duplicate());
+			if ((int) crc.getValue() != checksum) {
+				return;
+			}
+
+			frames.accept(payload.asReadOnlyBuffer());
+			segmentBuffer.position(segmentBuffer.position() + length);
+		}
+	}
+
+	/**
+	 * Delete the segments before the given one, once their frames are covered by a snapshot
+	 */
+	void deleteSegmentsBefore(long firstKept) throws IOException {
+		for (long existing : segments()) {
+			if (existing < firstKept) {
+				Files.deleteIfExists(segmentPath(existing));
+			}
+		}
+	}
+
+	synchronized long currentSegment() {
+		return segment;
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		buffer.force();
+		channel.close();
+	}
+
+	private void openSegment(long newSegment) throws IOException {
+		segment = newSegment;
+		channel = FileChannel.open(segmentPath(newSegment), StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+		syncDirectory(directory);
+	}
+
+	/**
+	 * Make the files created, renamed or deleted in the directory durable
+	 */
+	static void syncDirectory(Path directory) throws IOException {
+		try (FileChannel directoryChannel = FileChannel.open(directory, StandardOpenOption.READ)) {
+			directoryChannel.force(true);
+		}
+	}
+
+	private IOException failed(IOException e) {
+		failure = e;
+		return e;
+	}
+
+	private void checkNotFailed() throws IOException {
+		if (failure != null) {
+			throw new IOException("The log failed before, it takes no changes until it is recovered", failure);
+		}
+	}
+
+	private long position() {
+		return segment * segmentSize + buffer.position();
+	}
+
+	private List<Long> segments() throws IOException {
+		List<Long> segments = new ArrayList<>();
+
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+			for (Path file : files) {
+				String name = file.getFileName().toString();
+				segments.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+						name.length() - SEGMENT_SUFFIX.length())));
+			}
+		}
+		Collections.sort(segments);
+
+		return segments;
+	}
+
+	private Path segmentPath(long segmentNumber) {
+		return directory.resolve(String.format("%s%016d%s", SEGMENT_PREFIX, segmentNumber, SEGMENT_SUFFIX));
+	}
+}
@@ -0,0 +1,135 @@
+package com.tidal.refactoring.playlist.dao;
+
+import com.tidal.refactoring.playlist.data.PlayList;
+import com.tidal.refactoring.playlist.data.PlayListTrack;
+import com.tidal.refactoring.playlist.data.PlaylistSnapshot;
+import com.tidal.refactoring.playlist.data.Track;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Encoding of playlists and tracks in the log records and snapshots of WalPlaylistDao
+ */
+final class PlaylistRecords {
+
+	static final byte CREATE = 1;
+	static final byte ADD = 2;
+	static final byte REMOVE = 3;
+	static final byte MOVE = 4;
+
+	private PlaylistRecords() {
+	}
+
+	static void writePlaylist(DataOutput out, PlayList playlist) throws IOException {
+		out.writeUTF(playlist.getUuid());
+		writeNullableInt(out, playlist.getId());
+		writeNullableString(out, playlist.getPlayListName());
+		out.writeBoolean(playlist.isDeleted());
+		out.writeLong(playlist.getRegisteredDate().getTime());
+		out.writeLong(playlist.getLastUpdated().getTime());
+		// from the snapshot, reading the tracks of the playlist itself would write to them
+		PlaylistSnapshot snapshot = playlist.getSnapshot();
+		out.writeLong(snapshot.getVersion());
+
+		writeTracks(out, snapshot.getPlayListTracks());
+	}
+
+	/**
+	 * @param newPlayList creates the empty playlist to read into, for the way its dao keeps the tracks
+	 */
+	static PlayList readPlaylist(DataInput in, Function<String, PlayList> newPlayList) throws IOException {
+		PlayList playlist = newPlayList.apply(in.readUTF());
+
+		playlist.setId(readNullableInt(in));
+		playlist.setPlayListName(readNullableString(in));
+		playlist.setDeleted(in.readBoolean());
+		playlist.setRegisteredDate(new Date(in.readLong()));
+		playlist.setLastUpdated(new Date(in.readLong()));
+		playlist.setVersion(in.readLong());
+		playlist.setPlayListTracks(readTracks(in, playlist.getUuid()));
+
+		return playlist;
+	}
+
+	static void writeTracks(DataOutput out, List<PlayListTrack> playListTracks) throws IOException {
+		out.writeInt(playListTracks.size());
+
+		for (PlayListTrack playListTrack : playListTracks) {
+			writeNullableInt(out, playListTrack.getId());
+			out.writeLong(playListTrack.getDateAdded().getTime());
+
+			Track track = playListTrack.getTrack();
+			out.writeInt(track.getId());
+			out.writeInt(track.getArtistId());
+			writeNullableString(out, track.getTitle());
+			out.writeFloat(track.getDuration());
+		}
+	}
+
+	static List<PlayListTrack> readTracks(DataInput in, String playlistUuid) throws IOException {
+		int size = in.readInt();
+		List<PlayListTrack> playListTracks = new ArrayList<>(size);
+
+		for (int i = 0; i < size; i++) {
+			Integer id = readNullableInt(in);
+			Date dateAdded = new Date(in.readLong());
+
+			Track track = new Track();
+			track.setId(in.readInt());
+			track.setArtistId(in.readInt());
+			track.setTitle(readNullableString(in));
+			track.setDuration(in.readFloat());
+
+			playListTracks.add(new PlayListTrack(id, playlistUuid, i, dateAdded, track));
+		}
+
+		return playListTracks;
+	}
+
+	static void writeIndexes(DataOutput out, List<Integer> indexes) throws IOException {
+		out.writeInt(indexes.size());
+
+		for (int index : indexes) {
+			out.writeInt(index);
+		}
+	}
+
+	static List<Integer> readIndexes(DataInput in) throws IOException {
+		int size = in.readInt();
+		List<Integer> indexes = new ArrayList<>(size);
+
+		for (int i = 0; i < size; i++) {
+			indexes.add(in.readInt());
+		}
+
+		return indexes;
+	}
+
+	private static void writeNullableInt(DataOutput out, Integer value) throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null) {
+			out.writeInt(value);
+		}
+	}
+
+	private static Integer readNullableInt(DataInput in) throws IOException {
+		return in.readBoolean() ? in.readInt() : null;
+	}
+
+	private static void writeNullableString(DataOutput out, String value) throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null) {
+			out.writeUTF(value);
+		}
+	}
+
+	private static String readNullableString(DataInput in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+}
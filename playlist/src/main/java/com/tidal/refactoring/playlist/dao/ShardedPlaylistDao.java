@@ -0,0 +1,330 @@
+package com.tidal.refactoring.playlist.dao;
+
+import com.tidal.refactoring.playlist.data.PlayList;
+import com.tidal.refactoring.playlist.data.PlayListTrack;
+import com.tidal.refactoring.playlist.data.PlaylistChanges;
+import com.tidal.refactoring.playlist.data.PlaylistEdit;
+import com.tidal.refactoring.playlist.data.PlaylistCursor;
+import com.tidal.refactoring.playlist.data.PlaylistEditResult;
+import com.tidal.refactoring.playlist.data.PlaylistPage;
+import com.tidal.refactoring.playlist.data.PlaylistSnapshot;
+import com.tidal.refactoring.playlist.data.Track;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Function;
+
+/**
+ * Playlists partitioned by uuid over several PlaylistDaoBean shards, each holding its own playlists with its own cache
+ * and locks. The shards are in process, standing in for the nodes a playlist service would be spread over.
+ *
+ * A playlist belongs to the shard that follows its hash on a consistent hash ring, on which every shard has a number
+ * of virtual nodes. Adding a shard only moves the playlists whose hash now falls on one of the virtual nodes of the
+ * new shard, about one in every number of shards, the other playlists stay where they are.
+ *
+ * A playlist is moved under its write lock: the new shard holds a copy of it before it is marked evicted and dropped
+ * by its old shard, so it is always held by exactly one shard. A change that got it from its old shard just before
+ * retries on the copy, like after an eviction. Every shard loads a playlist it does not hold from the other shards
+ * before making it up, so a request that still went to the old shard moves it back instead of making it up again.
+ *
+ * Operations on many playlists run on the shards in parallel, one task per shard for its playlists. Changes to many
+ * playlists are made through PlaylistBusinessBean, which validates them for every playlist.
+ */
+public class ShardedPlaylistDao implements PlaylistDao {
+
+	private static final int VIRTUAL_NODES = 64;
+
+	private final List<PlaylistDaoBean> shards = new CopyOnWriteArrayList<>();
+	private final Executor executor;
+	private final List<PlaylistChangeListener> changeListeners = new CopyOnWriteArrayList<>();
+
+	private volatile Ring ring = new Ring(new TreeMap<>());
+
+	public ShardedPlaylistDao(List<PlaylistDaoBean> shards) {
+		this(shards, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * @param executor runs the operations on many playlists, one task per shard
+	 */
+	public ShardedPlaylistDao(List<PlaylistDaoBean> shards, Executor executor) {
+		if (shards.isEmpty()) {
+			throw new IllegalArgumentException("At least one shard is needed");
+		}
+
+		this.executor = executor;
+		shards.forEach(this::join);
+	}
+
+	/**
+	 * Add a shard, and move the playlists it now owns to it from the other shards
+	 *
+	 * @return the number of playlists moved
+	 */
+	public synchronized int addShard(PlaylistDaoBean shard) {
+		join(shard);
+
+		// only the resident playlists, the others are taken over when they are next used
+		int moved = 0;
+		for (PlaylistDaoBean other : shards) {
+			if (other == shard) {
+				continue;
+			}
+			for (PlayList playlist : other.getPlaylists()) {
+				if (shardOf(playlist.getUuid()) == shard) {
+					shard.getPlaylistByUUID(playlist.getUuid());
+					moved++;
+				}
+			}
+		}
+
+		return moved;
+	}
+
+	public int getShardCount() {
+		return shards.size();
+	}
+
+	/**
+	 * The shard owning the playlist
+	 */
+	public PlaylistDaoBean shardOf(String uuid) {
+		return shards.get(ring.shardOf(hash(uuid)));
+	}
+
+	/**
+	 * Called on every change of every shard, including the ones added later
+	 */
+	public void addChangeListener(PlaylistChangeListener changeListener) {
+		changeListeners.add(changeListener);
+		shards.forEach(shard -> shard.addChangeListener(changeListener));
+	}
+
+	private synchronized void join(PlaylistDaoBean shard) {
+		int index = shards.size();
+		shard.setPlaylistLoader(uuid -> takeFromOtherShards(shard, uuid));
+		changeListeners.forEach(shard::addChangeListener);
+		shards.add(shard);
+
+		TreeMap<Long, Integer> nodes = new TreeMap<>(ring.nodes);
+		for (int i = 0; i < VIRTUAL_NODES; i++) {
+			nodes.put(hash("shard-" + index + "-" + i), index);
+		}
+		ring = new Ring(nodes);
+	}
+
+	// a playlist held by another shard, which it moves to this one, or null to make it up
+	private PlayList takeFromOtherShards(PlaylistDaoBean shard, String uuid) {
+		while (true) {
+			PlayList playlist = heldByOtherShard(shard, uuid);
+			if (playlist == null) {
+				return null;
+			}
+
+			Lock lock = playlist.getLock().writeLock();
+			lock.lock();
+			try {
+				// moved or evicted while waiting for the lock, look again
+				if (playlist.isEvicted()) {
+					continue;
+				}
+
+				PlayList moved = copy(shard, playlist);
+				shard.restorePlaylist(moved);
+				playlist.markEvicted();
+				shardHolding(playlist, uuid).getPlaylistCache().remove(uuid);
+
+				return moved;
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	private PlayList heldByOtherShard(PlaylistDaoBean shard, String uuid) {
+		for (PlaylistDaoBean other : shards) {
+			PlayList playlist = other != shard ? other.getPlaylistCache().getIfPresent(uuid) : null;
+			if (playlist != null) {
+				return playlist;
+			}
+		}
+
+		return null;
+	}
+
+	private PlaylistDaoBean shardHolding(PlayList playlist, String uuid) {
+		for (PlaylistDaoBean shard : shards) {
+			if (shard.getPlaylistCache().getIfPresent(uuid) == playlist) {
+				return shard;
+			}
+		}
+
+		throw new IllegalStateException("Playlist " + uuid + " is not held by any shard");
+	}
+
+	// the playlist at its current version, kept the way the shard keeps its playlists. Its deltas and kept versions
+	// stay behind, like for a playlist that is evicted and loaded again.
+	private static PlayList copy(PlaylistDaoBean shard, PlayList playlist) {
+		PlayList copy = shard.newPlayList(playlist.getUuid());
+		PlaylistSnapshot snapshot = playlist.getSnapshot();
+
+		copy.setId(playlist.getId());
+		copy.setPlayListName(playlist.getPlayListName());
+		copy.setDeleted(playlist.isDeleted());
+		copy.setRegisteredDate(playlist.getRegisteredDate());
+		copy.setLastUpdated(playlist.getLastUpdated());
+		copy.setVersion(snapshot.getVersion());
+		copy.setPlayListTracks(snapshot.getPlayListTracks());
+
+		return copy;
+	}
+
+	/**
+	 * Run the operation for every playlist, in parallel for the playlists of different shards and in order for the
+	 * ones of the same shard. When operations fail, the others still run, and the first failure is thrown after.
+	 *
+	 * @return the result of every playlist, in the order of the uuids
+	 */
+	@Override
+	public <T> Map<String, T> forEachPlaylist(Collection<String> uuids, Function<String, T> operation) {
+		Map<PlaylistDaoBean, List<String>> uuidsByShard = new LinkedHashMap<>();
+		uuids.forEach(uuid -> uuidsByShard.computeIfAbsent(shardOf(uuid), shard -> new ArrayList<>()).add(uuid));
+
+		List<CompletableFuture<Map<String, T>>> results = new ArrayList<>(uuidsByShard.size());
+		for (List<String> shardUuids : uuidsByShard.values()) {
+			results.add(CompletableFuture.supplyAsync(() -> {
+				Map<String, T> shardResults = new LinkedHashMap<>();
+				shardUuids.forEach(uuid -> shardResults.put(uuid, operation.apply(uuid)));
+
+				return shardResults;
+			}, executor));
+		}
+
+		Map<String, T> resultsByUuid = new LinkedHashMap<>();
+		RuntimeException failure = null;
+		for (CompletableFuture<Map<String, T>> result : results) {
+			try {
+				resultsByUuid.putAll(result.join());
+			} catch (CompletionException e) {
+				RuntimeException cause = e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+				if (failure == null) {
+					failure = cause;
+				} else {
+					failure.addSuppressed(cause);
+				}
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+
+		Map<String, T> ordered = new LinkedHashMap<>();
+		uuids.forEach(uuid -> ordered.put(uuid, resultsByUuid.get(uuid)));
+
+		return ordered;
+	}
+
+	public Map<String, PlayList> getPlaylistsByUUID(Collection<String> uuids) {
+		return forEachPlaylist(uuids, this::getPlaylistByUUID);
+	}
+
+	@Override
+	public PlayList getPlaylistByUUID(String uuid) {
+		return shardOf(uuid).getPlaylistByUUID(uuid);
+	}
+
+	@Override
+	public List<PlayListTrack> getPlaylistTracks(String uuid) {
+		return shardOf(uuid).getPlaylistTracks(uuid);
+	}
+
+	@Override
+	public List<PlayListTrack> getPlaylistTracks(String uuid, int offset, int limit) {
+		return shardOf(uuid).getPlaylistTracks(uuid, offset, limit);
+	}
+
+	@Override
+	public PlaylistPage getPlaylistTracks(String uuid, PlaylistCursor cursor, int limit) {
+		return shardOf(uuid).getPlaylistTracks(uuid, cursor, limit);
+	}
+
+	@Override
+	public PlaylistChanges getChangesSince(String uuid, long version) {
+		return shardOf(uuid).getChangesSince(uuid, version);
+	}
+
+	@Override
+	public List<PlayListTrack> addTracksToPlaylist(String uuid, int toIndex, List<Track> tracksToAdd) {
+		return shardOf(uuid).addTracksToPlaylist(uuid, toIndex, tracksToAdd);
+	}
+
+	@Override
+	public List<PlayListTrack> removeTracksFromPlaylist(String uuid, Set<Integer> indexes) {
+		return shardOf(uuid).removeTracksFromPlaylist(uuid, indexes);
+	}
+
+	@Override
+	public List<PlayListTrack> moveTracksInPlaylist(String uuid, Set<Integer> fromIndexes, int toIndex) {
+		return shardOf(uuid).moveTracksInPlaylist(uuid, fromIndexes, toIndex);
+	}
+
+	@Override
+	public PlaylistEditResult applyEdits(String uuid, List<PlaylistEdit> edits) {
+		return shardOf(uuid).applyEdits(uuid, edits);
+	}
+
+	@Override
+	public List<PlaylistEditResult> applyEditBatches(String uuid, List<List<PlaylistEdit>> batches) {
+		return shardOf(uuid).applyEditBatches(uuid, batches);
+	}
+
+	@Override
+	public PlaylistEditResult revertPlaylist(String uuid, long version) {
+		return shardOf(uuid).revertPlaylist(uuid, version);
+	}
+
+	// 64 bit FNV-1a of the UTF-8 bytes, with the finalizer of MurmurHash3 to spread similar keys over the ring
+	static long hash(String key) {
+		long hash = 0xcbf29ce484222325L;
+		for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+			hash ^= b & 0xff;
+			hash *= 0x100000001b3L;
+		}
+
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+
+		return hash;
+	}
+
+	// the virtual nodes of the shards by their position on the ring, never changed once published
+	private static final class Ring {
+		private final TreeMap<Long, Integer> nodes;
+
+		private Ring(TreeMap<Long, Integer> nodes) {
+			this.nodes = nodes;
+		}
+
+		// the shard of the first virtual node at or after the hash, wrapping around to the first one
+		private int shardOf(long hash) {
+			Map.Entry<Long, Integer> node = nodes.ceilingEntry(hash);
+
+			return node != null ? node.getValue() : nodes.firstEntry().getValue();
+		}
+	}
+}
@@ -0,0 +1,173 @@
+package com.tidal.refactoring.playlist.dao;
+
+import com.google.inject.Singleton;
+import com.tidal.refactoring.playlist.data.Track;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Tracks by id, shared by all playlists so a track that is in many playlists is held once instead of once per
+ * playlist track.
+ *
+ * The catalog is bounded, the least recently or least frequently used tracks are evicted. Playlist tracks keep the
+ * instance they got, so eviction only means a later add of the same track is not shared with the earlier ones.
+ *
+ * Shared tracks must not be changed once interned. The catalog is split into segments by track id, each with its own
+ * lock, so lookups of different tracks rarely contend.
+ */
+@Singleton
+public class TrackCatalog {
+
+	public enum Policy {
+		LRU,
+		/**
+		 * Approximated: evicts the least used of the oldest few tracks of the segment
+		 */
+		LFU
+	}
+
+	private static final int DEFAULT_CAPACITY = 100000;
+	private static final int SEGMENTS = 16;
+	private static final int LFU_SAMPLE = 8;
+
+	private final Policy policy;
+	private final Segment[] segments = new Segment[SEGMENTS];
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	public TrackCatalog() {
+		this(DEFAULT_CAPACITY, Policy.LRU);
+	}
+
+	public TrackCatalog(int capacity, Policy policy) {
+		this.policy = policy;
+
+		int segmentCapacity = Math.max(1, (capacity + SEGMENTS - 1) / SEGMENTS);
+		for (int i = 0; i < SEGMENTS; i++) {
+			segments[i] = new Segment(segmentCapacity);
+		}
+	}
+
+	/**
+	 * The shared instance of the track: the cataloged one if it is equal, otherwise the given one, which then
+	 * replaces the cataloged one.
+	 */
+	public Track intern(Track track) {
+		Segment segment = segment(track.getId());
+
+		synchronized (segment) {
+			Entry entry = segment.entries.get(track.getId());
+
+			if (entry != null && entry.track.equals(track)) {
+				entry.uses++;
+				hits.increment();
+				return entry.track;
+			}
+
+			misses.increment();
+			segment.entries.put(track.getId(), new Entry(track));
+			evict(segment);
+
+			return track;
+		}
+	}
+
+	/**
+	 * @return the cataloged track, or null if it is not in the catalog
+	 */
+	public Track get(int trackId) {
+		Segment segment = segment(trackId);
+
+		synchronized (segment) {
+			Entry entry = segment.entries.get(trackId);
+
+			if (entry == null) {
+				misses.increment();
+				return null;
+			}
+
+			entry.uses++;
+			hits.increment();
+			return entry.track;
+		}
+	}
+
+	public int size() {
+		int size = 0;
+
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				size += segment.entries.size();
+			}
+		}
+
+		return size;
+	}
+
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+	public long getEvictionCount() {
+		return evictions.sum();
+	}
+
+	public double getHitRate() {
+		long hitCount = hits.sum();
+		long requests = hitCount + misses.sum();
+
+		return requests == 0 ? 0 : (double) hitCount / requests;
+	}
+
+	private void evict(Segment segment) {
+		while (segment.entries.size() > segment.capacity) {
+			Iterator<Entry> oldest = segment.entries.values().iterator();
+			Entry evicted = oldest.next();
+
+			if (policy == Policy.LFU) {
+				for (int i = 1; i < LFU_SAMPLE && oldest.hasNext(); i++) {
+					Entry candidate = oldest.next();
+					if (candidate.uses < evicted.uses) {
+						evicted = candidate;
+					}
+				}
+			}
+
+			segment.entries.remove(evicted.track.getId());
+			evictions.increment();
+		}
+	}
+
+	private Segment segment(int trackId) {
+		int h = trackId * 0x9E3779B9;
+		return segments[(h ^ (h >>> 16)) & (SEGMENTS - 1)];
+	}
+
+	private final class Segment {
+		private final int capacity;
+		// in access order for LRU, in insertion order for LFU
+		private final LinkedHashMap<Integer, Entry> entries;
+
+		private Segment(int capacity) {
+			this.capacity = capacity;
+			this.entries = new LinkedHashMap<>(16, 0.75f, policy == Policy.LRU);
+		}
+	}
+
+	private static final class Entry {
+		private final Track track;
+		private int uses;
+
+		private Entry(Track track) {
+			this.track = track;
+		}
+	}
+}
@@ -0,0 +1,333 @@
+package com.tidal.refactoring.playlist.dao;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.tidal.refactoring.playlist.data.PlayList;
+import com.tidal.refactoring.playlist.data.PlayListTrack;
+import com.tidal.refactoring.playlist.data.PlaylistSnapshot;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Inverted index from track and artist ids to the playlists of a PlaylistDaoBean containing them, for takedowns and
+ * metadata updates that have to find every playlist with a track.
+ *
+ * Kept up to date as a change listener: a playlist is indexed when it is loaded, and the adds and removes of a change
+ * update the postings of its tracks once the change is committed, an aborted change is never posted. Moves do not
+ * change which playlists contain a track, so they cost nothing.
+ *
+ * Only the playlists held by the PlaylistDaoBean are indexed. The postings of an evicted playlist, or of one moved to
+ * another PlaylistDaoBean, are dropped, and posted again from its tracks when it is loaded, so a playlist that comes
+ * back from a store, or is made up again without one, is indexed as it is then. Finding evicted playlists is left to
+ * their store.
+ *
+ * A posting list is a sorted array of playlist ordinals with a count each, as a playlist can hold several tracks of an
+ * artist, about 8 bytes per playlist containing the track. The ordinal of a playlist without posted tracks is reused.
+ */
+@Singleton
+public class TrackIndex implements PlaylistChangeListener {
+
+	private final PlaylistDaoBean playlistDaoBean;
+
+	private final ConcurrentMap<Integer, Postings> playlistsByTrack = new ConcurrentHashMap<>();
+	private final ConcurrentMap<Integer, Postings> playlistsByArtist = new ConcurrentHashMap<>();
+
+	// held playlists whose tracks are posted, changed under the write lock of the playlist
+	private final Set<String> indexed = ConcurrentHashMap.newKeySet();
+	// the tracks added and removed by the running change of a playlist, posted once it is committed
+	private final ConcurrentMap<String, PendingChange> pendingChanges = new ConcurrentHashMap<>();
+
+	// playlists with posted tracks by ordinal, an int instead of their uuid
+	private final ConcurrentMap<String, Integer> ordinals = new ConcurrentHashMap<>();
+	private final List<String> uuids = new ArrayList<>(); // by ordinal, null when free, guarded by itself
+	private final Deque<Integer> freeOrdinals = new ArrayDeque<>();
+	private int[] postedTracks = new int[16]; // by ordinal
+
+	@Inject
+	public TrackIndex(PlaylistDaoBean playlistDaoBean) {
+		this.playlistDaoBean = playlistDaoBean;
+		playlistDaoBean.addChangeListener(this);
+		playlistDaoBean.getPlaylistCache().addEvictionListener(this::playlistDropped);
+		playlistDaoBean.getPlaylistCache().addRemovalListener(this::playlistDropped);
+
+		// the playlists held already, under their lock so a change cannot be indexed twice
+		for (PlayList playlist : playlistDaoBean.getPlaylists()) {
+			Lock lock = playlist.getLock().writeLock();
+			lock.lock();
+			try {
+				if (!playlist.isEvicted()) {
+					index(playlist);
+				}
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Uuids of the held playlists that contain the track
+	 */
+	public List<String> getPlaylistsWithTrack(int trackId) {
+		return uuidsOf(playlistsByTrack.get(trackId));
+	}
+
+	/**
+	 * Uuids of the held playlists that contain a track of the artist
+	 */
+	public List<String> getPlaylistsWithArtist(int artistId) {
+		return uuidsOf(playlistsByArtist.get(artistId));
+	}
+
+	/**
+	 * Indexes of the track in the playlists that contain it, by playlist uuid, as of their current version.
+	 *
+	 * Positions shift with every change before them, so they are not indexed: the tracks of every playlist found are
+	 * scanned, O(n) per playlist, which reads spilled segments of a segmented playlist back from disk.
+	 */
+	public Map<String, List<Integer>> getPositionsOfTrack(int trackId) {
+		Map<String, List<Integer>> positions = new LinkedHashMap<>();
+
+		for (String uuid : getPlaylistsWithTrack(trackId)) {
+			PlaylistSnapshot snapshot = playlistDaoBean.getSnapshot(uuid);
+			List<Integer> indexes = new ArrayList<>(1);
+
+			int index = 0;
+			for (PlayListTrack playListTrack : snapshot.getPlayListTracks()) {
+				if (playListTrack.getTrackId() == trackId) {
+					indexes.add(index);
+				}
+				index++;
+			}
+			// removed since it was looked up
+			if (!indexes.isEmpty()) {
+				positions.put(uuid, indexes);
+			}
+		}
+
+		return positions;
+	}
+
+	/**
+	 * Number of distinct tracks in the indexed playlists
+	 */
+	public int getTrackCount() {
+		return playlistsByTrack.size();
+	}
+
+	/**
+	 * Number of indexed playlists with at least one track
+	 */
+	public int getPlaylistCount() {
+		return ordinals.size();
+	}
+
+	@Override
+	public void playlistLoaded(PlayList playlist) {
+		index(playlist);
+	}
+
+	// a playlist loaded before the index was, indexed as it is before its first change
+	@Override
+	public void changeStarted(PlayList playlist) {
+		index(playlist);
+		pendingChanges.remove(playlist.getUuid());
+	}
+
+	@Override
+	public void tracksAdded(PlayList playlist, int toIndex, List<PlayListTrack> added) {
+		pendingChange(playlist).added.addAll(added);
+	}
+
+	@Override
+	public void tracksRemoved(PlayList playlist, List<Integer> indexes, List<PlayListTrack> removed) {
+		pendingChange(playlist).removed.addAll(removed);
+	}
+
+	@Override
+	public void changeCommitted(PlayList playlist) {
+		PendingChange change = pendingChanges.remove(playlist.getUuid());
+
+		// a change that started before the index was created, the committed tracks already include it
+		if (!indexed.contains(playlist.getUuid())) {
+			index(playlist);
+		} else if (change != null) {
+			post(playlist.getUuid(), change.added, change.removed);
+		}
+	}
+
+	@Override
+	public void changeAborted(PlayList playlist) {
+		pendingChanges.remove(playlist.getUuid());
+	}
+
+	// evicted or moved away, under the write lock of the playlist, with the tracks that were posted for it
+	private void playlistDropped(PlayList playlist) {
+		pendingChanges.remove(playlist.getUuid());
+		if (indexed.remove(playlist.getUuid())) {
+			post(playlist.getUuid(), Collections.emptyList(), playlist.getSnapshot().getPlayListTracks());
+		}
+	}
+
+	private PendingChange pendingChange(PlayList playlist) {
+		return pendingChanges.computeIfAbsent(playlist.getUuid(), uuid -> new PendingChange());
+	}
+
+	// the committed tracks of a playlist not indexed yet
+	private void index(PlayList playlist) {
+		if (indexed.add(playlist.getUuid())) {
+			post(playlist.getUuid(), playlist.getSnapshot().getPlayListTracks(), Collections.emptyList());
+		}
+	}
+
+	// post the added and unpost the removed tracks of a playlist, freeing its ordinal once no track is left
+	private void post(String uuid, List<PlayListTrack> added, List<PlayListTrack> removed) {
+		if (added.isEmpty() && removed.isEmpty()) {
+			return;
+		}
+
+		int ordinal = ordinalOf(uuid);
+		added.forEach(playListTrack -> post(ordinal, playListTrack));
+		removed.forEach(playListTrack -> unpost(ordinal, playListTrack));
+
+		synchronized (uuids) {
+			postedTracks[ordinal] += added.size() - removed.size();
+			if (postedTracks[ordinal] <= 0) {
+				postedTracks[ordinal] = 0;
+				ordinals.remove(uuid);
+				uuids.set(ordinal, null);
+				freeOrdinals.push(ordinal);
+			}
+		}
+	}
+
+	private int ordinalOf(String uuid) {
+		Integer ordinal = ordinals.get(uuid);
+		if (ordinal != null) {
+			return ordinal;
+		}
+
+		synchronized (uuids) {
+			int free = freeOrdinals.isEmpty() ? uuids.size() : freeOrdinals.pop();
+			if (free == uuids.size()) {
+				uuids.add(uuid);
+				if (free == postedTracks.length) {
+					postedTracks = Arrays.copyOf(postedTracks, free * 2);
+				}
+			} else {
+				uuids.set(free, uuid);
+			}
+			ordinals.put(uuid, free);
+
+			return free;
+		}
+	}
+
+	private void post(int ordinal, PlayListTrack playListTrack) {
+		add(playlistsByTrack, playListTrack.getTrackId(), ordinal);
+		if (playListTrack.getTrack() != null) {
+			add(playlistsByArtist, playListTrack.getTrack().getArtistId(), ordinal);
+		}
+	}
+
+	private void unpost(int ordinal, PlayListTrack playListTrack) {
+		remove(playlistsByTrack, playListTrack.getTrackId(), ordinal);
+		if (playListTrack.getTrack() != null) {
+			remove(playlistsByArtist, playListTrack.getTrack().getArtistId(), ordinal);
+		}
+	}
+
+	private static void add(ConcurrentMap<Integer, Postings> index, int key, int ordinal) {
+		index.compute(key, (id, postings) -> {
+			if (postings == null) {
+				postings = new Postings();
+			}
+			postings.add(ordinal);
+
+			return postings;
+		});
+	}
+
+	// a posting list left empty is dropped
+	private static void remove(ConcurrentMap<Integer, Postings> index, int key, int ordinal) {
+		index.computeIfPresent(key, (id, postings) -> postings.remove(ordinal) ? null : postings);
+	}
+
+	private List<String> uuidsOf(Postings postings) {
+		if (postings == null) {
+			return Collections.emptyList();
+		}
+
+		int[] playlistOrdinals = postings.ordinals();
+		List<String> found = new ArrayList<>(playlistOrdinals.length);
+		synchronized (uuids) {
+			for (int ordinal : playlistOrdinals) {
+				// freed since the postings were read
+				String uuid = uuids.get(ordinal);
+				if (uuid != null) {
+					found.add(uuid);
+				}
+			}
+		}
+
+		return found;
+	}
+
+	private static final class PendingChange {
+		private final List<PlayListTrack> added = new ArrayList<>();
+		private final List<PlayListTrack> removed = new ArrayList<>();
+	}
+
+	// ordinals in ascending order, each with the number of times it was added
+	private static final class Postings {
+		private int[] ordinals = new int[2];
+		private int[] counts = new int[2];
+		private int size;
+
+		private synchronized void add(int ordinal) {
+			int position = Arrays.binarySearch(ordinals, 0, size, ordinal);
+			if (position >= 0) {
+				counts[position]++;
+				return;
+			}
+
+			position = -(position + 1);
+			if (size == ordinals.length) {
+				int capacity = size + (size >> 1) + 1;
+				ordinals = Arrays.copyOf(ordinals, capacity);
+				counts = Arrays.copyOf(counts, capacity);
+			}
+			System.arraycopy(ordinals, position, ordinals, position + 1, size - position);
+			System.arraycopy(counts, position, counts, position + 1, size - position);
+			ordinals[position] = ordinal;
+			counts[position] = 1;
+			size++;
+		}
+
+		// @return whether no ordinal is left
+		private synchronized boolean remove(int ordinal) {
+			int position = Arrays.binarySearch(ordinals, 0, size, ordinal);
+			if (position >= 0 && --counts[position] == 0) {
+				System.arraycopy(ordinals, position + 1, ordinals, position, size - position - 1);
+				System.arraycopy(counts, position + 1, counts, position, size - position - 1);
+				size--;
+			}
+
+			return size == 0;
+		}
+
+		private synchronized int[] ordinals() {
+			return Arrays.copyOf(ordinals, size);
+		}
+	}
+}
@@ -0,0 +1,479 @@
+package com.tidal.refactoring.playlist.dao;
+
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+import com.tidal.refactoring.playlist.data.PlayList;
+import com.tidal.refactoring.playlist.data.PlayListTrack;
+import com.tidal.refactoring.playlist.data.PlaylistChanges;
+import com.tidal.refactoring.playlist.data.PlaylistEdit;
+import com.tidal.refactoring.playlist.data.PlaylistCursor;
+import com.tidal.refactoring.playlist.data.PlaylistEditResult;
+import com.tidal.refactoring.playlist.data.PlaylistPage;
+import com.tidal.refactoring.playlist.data.Track;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.zip.CRC32;
+
+/**
+ * Durable playlist store on local disk: the playlists are held by a PlaylistDaoBean, and every change is appended to
+ * a write-ahead log and synced before its version is published. A change that cannot be logged is undone, so the
+ * playlists never get ahead of the log. After a failed write or sync the log refuses any further change, as it can no
+ * longer tell what reached the disk, until it is recovered by a restart.
+ *
+ * A change is logged as one frame with the resulting version, so a batch of edits is recovered completely or not at
+ * all. The first logged change of a playlist also carries its state before the change. On startup the latest snapshot
+ * is loaded and the log after it replayed, frames already covered by the snapshot are recognized by their version.
+ * Calling checkpoint regularly keeps the replayed log, and so the startup time, bounded.
+ *
+ * A logged playlist evicted from the cache of the PlaylistDaoBean is kept in its log record form, which is much smaller
+ * than the playlist, and loaded from it when it is used again.
+ */
+public class WalPlaylistDao implements PlaylistDao, PlaylistChangeListener, Closeable {
+
+	private static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+	private static final String SNAPSHOT_PREFIX = "snapshot-";
+	private static final String SNAPSHOT_SUFFIX = ".dat";
+	private static final int SNAPSHOT_MAGIC = 0x504c5331; // "PLS1"
+
+	private final PlaylistDaoBean playlistDaoBean;
+	private final Path directory;
+	private final PlaylistLog log;
+
+	// playlists that have their state in the log or a snapshot, the others are logged completely on their first change
+	private final Set<String> loggedPlaylists = ConcurrentHashMap.newKeySet();
+	private final Map<String, PendingChange> pendingChanges = new ConcurrentHashMap<>();
+	// logged playlists by uuid, as written by PlaylistRecords when they were evicted. Kept after being loaded again
+	// until the next checkpoint, so a playlist being loaded is always in one of the two places.
+	private final Map<String, byte[]> evictedPlaylists = new HashMap<>();
+
+	@Inject
+	public WalPlaylistDao(PlaylistDaoBean playlistDaoBean, @Named("playlistLogDirectory") String directory)
+			throws IOException {
+		this(playlistDaoBean, Paths.get(directory), DEFAULT_SEGMENT_SIZE);
+	}
+
+	public WalPlaylistDao(PlaylistDaoBean playlistDaoBean, Path directory, int segmentSize) throws IOException {
+		this.playlistDaoBean = playlistDaoBean;
+		this.directory = directory;
+		this.log = new PlaylistLog(directory, segmentSize);
+
+		playlistDaoBean.getPlaylistCache().addEvictionListener(this::playlistEvicted);
+		playlistDaoBean.setPlaylistLoader(this::loadEvictedPlaylist);
+		recover();
+		playlistDaoBean.addChangeListener(this);
+	}
+
+	@Override
+	public PlayList getPlaylistByUUID(String uuid) {
+		return playlistDaoBean.getPlaylistByUUID(uuid);
+	}
+
+	@Override
+	public List<PlayListTrack> getPlaylistTracks(String uuid) {
+		return playlistDaoBean.getPlaylistTracks(uuid);
+	}
+
+	@Override
+	public List<PlayListTrack> getPlaylistTracks(String uuid, int offset, int limit) {
+		return playlistDaoBean.getPlaylistTracks(uuid, offset, limit);
+	}
+
+	@Override
+	public PlaylistPage getPlaylistTracks(String uuid, PlaylistCursor cursor, int limit) {
+		return playlistDaoBean.getPlaylistTracks(uuid, cursor, limit);
+	}
+
+	@Override
+	public PlaylistChanges getChangesSince(String uuid, long version) {
+		return playlistDaoBean.getChangesSince(uuid, version);
+	}
+
+	@Override
+	public List<PlayListTrack> addTracksToPlaylist(String uuid, int toIndex, List<Track> tracksToAdd) {
+		return playlistDaoBean.addTracksToPlaylist(uuid, toIndex, tracksToAdd);
+	}
+
+	@Override
+	public List<PlayListTrack> removeTracksFromPlaylist(String uuid, Set<Integer> indexes) {
+		return playlistDaoBean.removeTracksFromPlaylist(uuid, indexes);
+	}
+
+	@Override
+	public List<PlayListTrack> moveTracksInPlaylist(String uuid, Set<Integer> fromIndexes, int toIndex) {
+		return playlistDaoBean.moveTracksInPlaylist(uuid, fromIndexes, toIndex);
+	}
+
+	@Override
+	public PlaylistEditResult applyEdits(String uuid, List<PlaylistEdit> edits) {
+		return playlistDaoBean.applyEdits(uuid, edits);
+	}
+
+	@Override
+	public List<PlaylistEditResult> applyEditBatches(String uuid, List<List<PlaylistEdit>> batches) {
+		return playlistDaoBean.applyEditBatches(uuid, batches);
+	}
+
+	@Override
+	public PlaylistEditResult revertPlaylist(String uuid, long version) {
+		return playlistDaoBean.revertPlaylist(uuid, version);
+	}
+
+	/**
+	 * Write every logged playlist, evicted ones included, into one compact snapshot and delete the log it replaces
+	 */
+	public synchronized void checkpoint() throws IOException {
+		// every change committed before the roll is in memory already, later changes are replayed on top by version
+		long fromSegment = log.roll();
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(SNAPSHOT_MAGIC);
+		out.writeLong(fromSegment);
+
+		List<PlayList> playlists = new ArrayList<>();
+		List<byte[]> evicted;
+		synchronized (evictedPlaylists) {
+			for (PlayList playlist : playlistDaoBean.getPlaylists()) {
+				if (loggedPlaylists.contains(playlist.getUuid())) {
+					playlists.add(playlist);
+					// resident again, the evicted state is older
+					if (!playlist.isEvicted()) {
+						evictedPlaylists.remove(playlist.getUuid());
+					}
+				}
+			}
+			evicted = new ArrayList<>(evictedPlaylists.values());
+		}
+
+		// evicted first, a playlist that is also resident is then recovered from its resident state
+		out.writeInt(evicted.size() + playlists.size());
+		for (byte[] playlist : evicted) {
+			out.write(playlist);
+		}
+		for (PlayList playlist : playlists) {
+			Lock lock = playlist.getLock().readLock();
+			lock.lock();
+			try {
+				PlaylistRecords.writePlaylist(out, playlist);
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		CRC32 crc = new CRC32();
+		crc.update(bytes.toByteArray());
+		out.writeInt((int) crc.getValue());
+
+		Path snapshot = snapshotPath(fromSegment);
+		Path temporary = directory.resolve(snapshot.getFileName() + ".tmp");
+		try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			channel.write(ByteBuffer.wrap(bytes.toByteArray()));
+			channel.force(true);
+		}
+		Files.move(temporary, snapshot, StandardCopyOption.ATOMIC_MOVE);
+		// the rename is only durable once the directory is, the segments it replaces are deleted after
+		PlaylistLog.syncDirectory(directory);
+
+		for (long older : snapshots()) {
+			if (older < fromSegment) {
+				Files.deleteIfExists(snapshotPath(older));
+			}
+		}
+		log.deleteSegmentsBefore(fromSegment);
+	}
+
+	@Override
+	public void close() throws IOException {
+		log.close();
+	}
+
+	@Override
+	public void changeStarted(PlayList playlist) {
+		PendingChange change = new PendingChange();
+
+		if (!loggedPlaylists.contains(playlist.getUuid())) {
+			change.write(out -> {
+				out.writeByte(PlaylistRecords.CREATE);
+				PlaylistRecords.writePlaylist(out, playlist);
+			});
+		}
+
+		pendingChanges.put(playlist.getUuid(), change);
+	}
+
+	@Override
+	public void tracksAdded(PlayList playlist, int toIndex, List<PlayListTrack> added) {
+		pendingChanges.get(playlist.getUuid()).write(out -> {
+			out.writeByte(PlaylistRecords.ADD);
+			out.writeInt(toIndex);
+			PlaylistRecords.writeTracks(out, added);
+		});
+	}
+
+	@Override
+	public void tracksRemoved(PlayList playlist, List<Integer> indexes, List<PlayListTrack> removed) {
+		pendingChanges.get(playlist.getUuid()).write(out -> {
+			out.writeByte(PlaylistRecords.REMOVE);
+			PlaylistRecords.writeIndexes(out, indexes);
+		});
+	}
+
+	@Override
+	public void tracksMoved(PlayList playlist, List<Integer> fromIndexes, int toIndex, List<PlayListTrack> moved) {
+		pendingChanges.get(playlist.getUuid()).write(out -> {
+			out.writeByte(PlaylistRecords.MOVE);
+			PlaylistRecords.writeIndexes(out, fromIndexes);
+			out.writeInt(toIndex);
+		});
+	}
+
+	// logged with the version it is about to be published as. The playlist counts as logged from before its first
+	// frame is appended, a checkpoint rolling the log past that frame has to write its state.
+	@Override
+	public void changeCommitting(PlayList playlist) {
+		PendingChange change = pendingChanges.remove(playlist.getUuid());
+		boolean created = loggedPlaylists.add(playlist.getUuid());
+		boolean logged = false;
+
+		try {
+			ByteArrayOutputStream frame = new ByteArrayOutputStream(change.operations.size() + 64);
+			DataOutputStream out = new DataOutputStream(frame);
+			out.writeUTF(playlist.getUuid());
+			out.writeLong(playlist.getVersion() + 1);
+			out.writeLong(playlist.getLastUpdated().getTime());
+			out.writeInt(change.count);
+			change.operations.writeTo(out);
+
+			log.sync(log.append(frame.toByteArray()));
+			logged = true;
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not log change of playlist " + playlist.getUuid(), e);
+		} finally {
+			if (created && !logged) {
+				loggedPlaylists.remove(playlist.getUuid());
+			}
+		}
+	}
+
+	@Override
+	public void changeAborted(PlayList playlist) {
+		pendingChanges.remove(playlist.getUuid());
+	}
+
+	// under the write lock of the playlist, before it can be loaded again
+	private void playlistEvicted(PlayList playlist) {
+		if (!loggedPlaylists.contains(playlist.getUuid())) {
+			return;
+		}
+
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			PlaylistRecords.writePlaylist(new DataOutputStream(bytes), playlist);
+
+			synchronized (evictedPlaylists) {
+				evictedPlaylists.put(playlist.getUuid(), bytes.toByteArray());
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not keep evicted playlist " + playlist.getUuid(), e);
+		}
+	}
+
+	private PlayList loadEvictedPlaylist(String uuid) {
+		byte[] bytes;
+		synchronized (evictedPlaylists) {
+			bytes = evictedPlaylists.get(uuid);
+		}
+		if (bytes == null) {
+			return null;
+		}
+
+		try {
+			return PlaylistRecords.readPlaylist(new DataInputStream(new ByteArrayInputStream(bytes)),
+					playlistDaoBean::newPlayList);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not load evicted playlist " + uuid, e);
+		}
+	}
+
+	private void recover() throws IOException {
+		Map<String, PlayList> playlists = new HashMap<>();
+		long fromSegment = loadSnapshot(playlists);
+
+		IOException[] replayFailure = new IOException[1];
+		log.replay(fromSegment, frame -> {
+			try {
+				replay(frame, playlists);
+			} catch (IOException e) {
+				replayFailure[0] = e;
+			}
+		});
+		if (replayFailure[0] != null) {
+			throw replayFailure[0];
+		}
+
+		// logged before restored, restoring may already evict some of them
+		for (PlayList playlist : playlists.values()) {
+			loggedPlaylists.add(playlist.getUuid());
+			playlistDaoBean.restorePlaylist(playlist);
+		}
+	}
+
+	// @return the first segment that is not covered by the snapshot
+	private long loadSnapshot(Map<String, PlayList> playlists) throws IOException {
+		List<Long> snapshots = snapshots();
+
+		// the latest complete snapshot, an incomplete one cannot exist because they are written by rename
+		for (int i = snapshots.size() - 1; i >= 0; i--) {
+			byte[] bytes = Files.readAllBytes(snapshotPath(snapshots.get(i)));
+
+			if (bytes.length < 16) {
+				continue;
+			}
+			CRC32 crc = new CRC32();
+			crc.update(bytes, 0, bytes.length - 4);
+			if ((int) crc.getValue() != ByteBuffer.wrap(bytes, bytes.length - 4, 4).getInt()) {
+				continue;
+			}
+
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, 0, bytes.length - 4));
+			if (in.readInt() != SNAPSHOT_MAGIC) {
+				continue;
+			}
+
+			long fromSegment = in.readLong();
+			int size = in.readInt();
+			for (int j = 0; j < size; j++) {
+				PlayList playlist = PlaylistRecords.readPlaylist(in, playlistDaoBean::newPlayList);
+				playlists.put(playlist.getUuid(), playlist);
+			}
+
+			return fromSegment;
+		}
+
+		return 0;
+	}
+
+	private void replay(ByteBuffer frame, Map<String, PlayList> playlists) throws IOException {
+		byte[] bytes = new byte[frame.remaining()];
+		frame.get(bytes);
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+
+		String uuid = in.readUTF();
+		long version = in.readLong();
+		Date lastUpdated = new Date(in.readLong());
+		int count = in.readInt();
+
+		PlayList playlist = playlists.get(uuid);
+		if (playlist != null && playlist.getVersion() >= version) {
+			return; // already in the snapshot
+		}
+
+		for (int i = 0; i < count; i++) {
+			byte operation = in.readByte();
+
+			if (operation == PlaylistRecords.CREATE) {
+				playlist = PlaylistRecords.readPlaylist(in, playlistDaoBean::newPlayList);
+				continue;
+			}
+			if (playlist == null) {
+				throw new IOException("Log record for playlist " + uuid + " without its state");
+			}
+
+			switch (operation) {
+			case PlaylistRecords.ADD:
+				int toIndex = in.readInt();
+				playlist.addPlayListTracks(toIndex, PlaylistRecords.readTracks(in, uuid));
+				break;
+			case PlaylistRecords.REMOVE:
+				takeTracks(playlist, PlaylistRecords.readIndexes(in));
+				break;
+			case PlaylistRecords.MOVE:
+				List<PlayListTrack> moved = takeTracks(playlist, PlaylistRecords.readIndexes(in));
+				playlist.addPlayListTracks(in.readInt(), moved);
+				break;
+			default:
+				throw new IOException("Unknown log operation " + operation + " for playlist " + uuid);
+			}
+		}
+
+		playlist.setVersion(version);
+		playlist.setLastUpdated(lastUpdated);
+		playlists.put(uuid, playlist);
+	}
+
+	// the same removal as PlaylistDaoBean: from the highest index down, returned in ascending order
+	private static List<PlayListTrack> takeTracks(PlayList playlist, List<Integer> sortedIndexes) {
+		List<PlayListTrack> taken = new ArrayList<>(sortedIndexes.size());
+
+		for (int i = sortedIndexes.size() - 1; i >= 0; i--) {
+			taken.add(playlist.removePlayListTrack(sortedIndexes.get(i)));
+		}
+		Collections.reverse(taken);
+
+		return taken;
+	}
+
+	private List<Long> snapshots() throws IOException {
+		List<Long> snapshots = new ArrayList<>();
+
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory,
+				SNAPSHOT_PREFIX + "*" + SNAPSHOT_SUFFIX)) {
+			for (Path file : files) {
+				String name = file.getFileName().toString();
+				snapshots.add(Long.parseLong(name.substring(SNAPSHOT_PREFIX.length(),
+						name.length() - SNAPSHOT_SUFFIX.length())));
+			}
+		}
+		Collections.sort(snapshots);
+
+		return snapshots;
+	}
+
+	private Path snapshotPath(long fromSegment) {
+		return directory.resolve(String.format("%s%016d%s", SNAPSHOT_PREFIX, fromSegment, SNAPSHOT_SUFFIX));
+	}
+
+	// operations of a change in progress, only used by the thread holding the write lock of the playlist
+	private static final class PendingChange {
+		private final ByteArrayOutputStream operations = new ByteArrayOutputStream();
+		private final DataOutputStream out = new DataOutputStream(operations);
+		private int count;
+
+		private void write(Operation operation) {
+			try {
+				operation.writeTo(out);
+				count++;
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+
+	private interface Operation {
+		void writeTo(DataOutputStream out) throws IOException;
+	}
+}
@@ -0,0 +1,555 @@
+package com.tidal.refactoring.playlist.data;
+
+import com.tidal.refactoring.playlist.util.IntMultiset;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.UnaryOperator;
+
+/**
+ * A very simplified version of TrackPlaylist
+ *
+ * Not thread safe by itself, concurrent access is guarded by the lock of the playlist: reads of the fields under the
+ * read lock and changes under the write lock. Reading the tracks of a tree playlist sets their index and rank, so the
+ * tracks themselves are only read under the write lock.
+ *
+ * A change can also claim the playlist without the lock, see tryClaim, which keeps out the holders of the lock as well
+ * as any other change until it is released.
+ *
+ * Every new version also publishes a PlaylistSnapshot of the tracks, which is read without any lock and gives copies
+ * of the tracks. The last few snapshots are kept, so the playlist can be reverted to one of those versions.
+ */
+public class PlayList {
+
+	// distance between the ranks of neighbouring tracks after a rebalance, leaves room for 32 halvings
+	static final long RANK_GAP = 1L << 32;
+	// how long a holder of the lock sleeps between checks for a claimed change to finish
+	private static final long CLAIM_WAIT_NANOS = 10_000;
+	private static final AtomicReferenceFieldUpdater<PlayList, Thread> CLAIMED_BY = AtomicReferenceFieldUpdater
+			.newUpdater(PlayList.class, Thread.class, "claimedBy");
+
+	private Integer id;
+	private String playListName;
+	private final PlayListTrackStore playListTracks; // ordered by index
+	private final IntMultiset trackIds = new IntMultiset(); // ids of the tracks in the playlist, for membership checks
+	private Date registeredDate;
+	private Date lastUpdated;
+	private volatile long version; // increased by one on every change, under the write lock
+	private final String uuid; // a playlist is created with a uuid, and cannot be modified
+	private volatile int nrOfTracks;
+	private boolean deleted;
+	private volatile float duration; // of all tracks, kept up to date by every change of the tracks
+	private int rankRebalances;
+	// drawn for every instance, the ranks a reloaded playlist spreads anew are not those of cursors handed out before
+	private final long rankEpoch = ThreadLocalRandom.current().nextLong();
+	private final ReentrantReadWriteLock lock = new PlaylistLock();
+	private volatile Thread claimedBy; // the thread changing the playlist without the lock, see tryClaim
+	private volatile boolean evicted; // dropped from the cache that held it, changes to it would be lost
+	private volatile PlaylistDeltaRing deltaRing; // the latest changes, once the playlist is changed
+	private volatile PlaylistSnapshot snapshot; // the tracks at the current version
+	private final Deque<PlaylistSnapshot> previousSnapshots = new ArrayDeque<>(); // latest first
+	// the number of previous snapshots and of their tracks, to estimate the heap they take without the lock
+	private volatile int previousVersions;
+	private volatile long previousTracks;
+	private int keptVersions;
+
+	public PlayList(String uuid) {
+		this(uuid, false);
+	}
+
+	/**
+	 * @param columnar whether to keep the tracks in primitive columns, see PlayListTrackColumns, instead of as objects
+	 */
+	public PlayList(String uuid, boolean columnar) {
+		this(uuid, columnar ? new PlayListTrackColumns(uuid) : new PlayListTrackTree());
+	}
+
+	/**
+	 * A large playlist, with its tracks split into segments that are spilled to disk when not used, see
+	 * PlayListTrackSegments
+	 */
+	public PlayList(String uuid, PlaylistSegments segments) {
+		this(uuid, new PlayListTrackSegments(uuid, segments));
+	}
+
+	private PlayList(String uuid, PlayListTrackStore playListTracks) {
+		this.uuid = uuid;
+		this.playListTracks = playListTracks;
+		Date d = new Date();
+		this.registeredDate = d;
+		this.lastUpdated = d;
+		publishSnapshot();
+	}
+
+	public ReentrantReadWriteLock getLock() {
+		return lock;
+	}
+
+	/**
+	 * Claim the playlist for a change without taking its lock, by a compare-and-set that only succeeds while nothing
+	 * else holds the playlist and its published version is the expected one. Holders of the lock that come after wait
+	 * for the change to finish, so an uncontended change takes no lock at all. Changes through the dao made by the
+	 * claiming thread skip the lock, which it must not take itself. Released with releaseClaim.
+	 *
+	 * @return false when the playlist changed since the expected version, is locked or claimed, or was evicted
+	 */
+	public boolean tryClaim(long expectedVersion) {
+		if (version != expectedVersion || !CLAIMED_BY.compareAndSet(this, null, Thread.currentThread())) {
+			return false;
+		}
+
+		// the lock is checked after claiming, so a holder either shows here or waits for the claim. The version and
+		// eviction are checked after the lock, as they are written before it is released.
+		if (lock.isWriteLocked() || lock.getReadLockCount() > 0 || evicted || version != expectedVersion) {
+			claimedBy = null;
+			return false;
+		}
+
+		return true;
+	}
+
+	public void releaseClaim() {
+		claimedBy = null;
+	}
+
+	public boolean isClaimedByCurrentThread() {
+		return claimedBy == Thread.currentThread();
+	}
+
+	// a holder of the lock waits for a change of another thread that claimed the playlist
+	private void awaitClaim() {
+		Thread claiming;
+		while ((claiming = claimedBy) != null && claiming != Thread.currentThread()) {
+			LockSupport.parkNanos(CLAIM_WAIT_NANOS);
+		}
+	}
+
+	// a try to lock fails for any claimed playlist, also one claimed by this thread, as that one is being changed
+	private boolean unlessClaimed(Lock acquired) {
+		if (claimedBy != null) {
+			acquired.unlock();
+			return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Whether the playlist was evicted from the cache that held it. Users check this after taking the lock of the
+	 * playlist, and get the playlist again when it was evicted.
+	 */
+	public boolean isEvicted() {
+		return evicted;
+	}
+
+	// only for the cache, under the write lock
+	public void markEvicted() {
+		this.evicted = true;
+	}
+
+	public boolean isColumnar() {
+		return playListTracks instanceof PlayListTrackColumns;
+	}
+
+	public boolean isSegmented() {
+		return playListTracks instanceof PlayListTrackSegments;
+	}
+
+	public Integer getId() {
+		return id;
+	}
+
+	public void setId(Integer id) {
+		this.id = id;
+	}
+
+	public String getPlayListName() {
+		return playListName;
+	}
+
+	public void setPlayListName(String playListName) {
+		this.playListName = playListName;
+	}
+
+	/**
+	 * Read only view of the tracks, ordered by index
+	 */
+	public List<PlayListTrack> getPlayListTracks() {
+		return Collections.unmodifiableList(playListTracks);
+	}
+
+	/**
+	 * Replace the tracks, which are expected to be ordered by index
+	 */
+	public void setPlayListTracks(Collection<PlayListTrack> playListTracks) {
+		this.playListTracks.clear();
+		this.trackIds.clear();
+
+		if (playListTracks != null) {
+			this.playListTracks.addAll(playListTracks);
+			playListTracks.forEach(playListTrack -> trackIds.add(playListTrack.getTrackId()));
+		}
+		rebalanceRanks();
+
+		// keep the nrOfTracks and duration in sync when changing the track list
+		tracksChanged();
+		publishSnapshot();
+	}
+
+	/**
+	 * Tracks from the given index to the end, in index order
+	 */
+	public Iterator<PlayListTrack> getPlayListTracks(int fromIndex) {
+		return playListTracks.iterator(fromIndex);
+	}
+
+	public PlayListTrack getPlayListTrack(int index) {
+		return playListTracks.get(index);
+	}
+
+	/**
+	 * Whether a track with the given id is in the playlist, in O(1)
+	 */
+	public boolean containsTrack(int trackId) {
+		return trackIds.contains(trackId);
+	}
+
+	/**
+	 * Number of tracks with the given id in the playlist, in O(1)
+	 */
+	public int countTrack(int trackId) {
+		return trackIds.count(trackId);
+	}
+
+	/**
+	 * Index of the track in this playlist, derived from its rank in O(log n), or -1 if it is not in the playlist
+	 */
+	public int indexOf(PlayListTrack playListTrack) {
+		int index = playListTracks.indexOfRank(playListTrack.getRank());
+
+		return playListTracks.isAt(index, playListTrack) ? index : -1;
+	}
+
+	/**
+	 * Index of the first track ranked after the given rank, in O(log n)
+	 */
+	public int indexAfterRank(long rank) {
+		return playListTracks.indexAfterRank(rank);
+	}
+
+	/**
+	 * Insert the tracks at the given index, in O(log n) for the tree plus the number of inserted tracks.
+	 *
+	 * Only the inserted tracks get a rank, taken from the gap between their neighbours. The ranks of the whole
+	 * playlist are only rewritten when that gap is used up.
+	 */
+	public void addPlayListTracks(int index, Collection<PlayListTrack> playListTracksToAdd) {
+		long lowerRank = index > 0 ? playListTracks.get(index - 1).getRank() : 0;
+		long upperRank = index < playListTracks.size() ? playListTracks.get(index).getRank()
+				: lowerRank + RANK_GAP * (playListTracksToAdd.size() + 1);
+
+		// ranked before they are added, as a columnar playlist copies the tracks
+		long step = (upperRank - lowerRank) / (playListTracksToAdd.size() + 1);
+		long rank = lowerRank;
+		for (PlayListTrack playListTrack : playListTracksToAdd) {
+			rank += step;
+			playListTrack.setRank(rank);
+		}
+
+		playListTracks.addAll(index, playListTracksToAdd);
+		playListTracksToAdd.forEach(playListTrack -> trackIds.add(playListTrack.getTrackId()));
+		tracksChanged();
+
+		if (step == 0) {
+			rebalanceRanks();
+			rankRebalances++;
+		}
+	}
+
+	public PlayListTrack removePlayListTrack(int index) {
+		PlayListTrack removed = playListTracks.remove(index);
+		trackIds.remove(removed.getTrackId());
+		tracksChanged();
+
+		return removed;
+	}
+
+	/**
+	 * Time the track at the index starts, in seconds from the start of the playlist, in O(log n). The index may be
+	 * the number of tracks, for the end of the playlist.
+	 */
+	public float getDurationBefore(int index) {
+		return (float) playListTracks.getDurationBefore(index);
+	}
+
+	/**
+	 * Time left from the start of the track at the index to the end of the playlist, in O(log n)
+	 */
+	public float getRemainingDuration(int index) {
+		return (float) (playListTracks.getTotalDuration() - playListTracks.getDurationBefore(index));
+	}
+
+	/**
+	 * Index of the track playing at the given number of seconds from the start, or -1 if that is outside the
+	 * playlist, in O(log n)
+	 */
+	public int getIndexAt(float offset) {
+		return playListTracks.indexAt(offset);
+	}
+
+	// the counts derived from the tracks, kept in fields so they can be read without the lock
+	private void tracksChanged() {
+		this.nrOfTracks = playListTracks.size();
+		this.duration = (float) playListTracks.getTotalDuration();
+	}
+
+	public int getRankRebalances() {
+		return rankRebalances;
+	}
+
+	public long getRankEpoch() {
+		return rankEpoch;
+	}
+
+	// spread the ranks evenly again, writes every track so should only happen when a gap has run out
+	private void rebalanceRanks() {
+		playListTracks.spreadRanks(RANK_GAP);
+	}
+
+	/**
+	 * The latest changes of the playlist, null until it is changed. Guarded by the lock like the tracks.
+	 */
+	public PlaylistDeltaRing getDeltaRing() {
+		return deltaRing;
+	}
+
+	public void setDeltaRing(PlaylistDeltaRing deltaRing) {
+		this.deltaRing = deltaRing;
+	}
+
+	public long getVersion() {
+		return version;
+	}
+
+	// only for restoring a stored playlist, changes should use incrementVersion
+	public void setVersion(long version) {
+		this.version = version;
+		publishSnapshot();
+	}
+
+	/**
+	 * Commit the changes made to the tracks as a new version, and publish its snapshot
+	 */
+	public long incrementVersion() {
+		long incremented = ++version;
+		publishSnapshot();
+
+		return incremented;
+	}
+
+	/**
+	 * The tracks at the current version, readable without the lock
+	 */
+	public PlaylistSnapshot getSnapshot() {
+		return snapshot;
+	}
+
+	/**
+	 * The tracks at the version, if it is the current or one of the kept versions, else null. Under the lock, or a
+	 * claim of the playlist.
+	 */
+	public PlaylistSnapshot getSnapshot(long version) {
+		if (snapshot.getVersion() == version) {
+			return snapshot;
+		}
+
+		for (PlaylistSnapshot previous : previousSnapshots) {
+			if (previous.getVersion() == version) {
+				return previous;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * How many versions before the current one to keep snapshots of. As the snapshots of a tree playlist share all
+	 * unchanged tracks, a kept version costs about the tracks changed since.
+	 */
+	public void setKeptVersions(int keptVersions) {
+		this.keptVersions = keptVersions;
+		trimPreviousSnapshots();
+	}
+
+	/**
+	 * Replace the tracks by the ones of a snapshot of this playlist, as a change to commit with incrementVersion
+	 */
+	public void restoreSnapshot(PlaylistSnapshot restored) {
+		playListTracks.restore(restored.getStore());
+
+		trackIds.clear();
+		playListTracks.forEach(playListTrack -> trackIds.add(playListTrack.getTrackId()));
+		tracksChanged();
+
+		// the ranks are the ones of the restored version, cursors handed out since fall back to their index
+		rankRebalances++;
+	}
+
+	/**
+	 * Share the Track objects through the interner, a track catalog, before the playlist is used. Keeps the version,
+	 * the snapshot is published again with the interned tracks.
+	 */
+	public void internTracks(UnaryOperator<Track> interner) {
+		playListTracks.internTracks(interner);
+		publishSnapshot();
+	}
+
+	/**
+	 * Number of versions before the current one with a kept snapshot, readable without the lock
+	 */
+	public int getKeptVersionCount() {
+		return previousVersions;
+	}
+
+	/**
+	 * Tracks of all kept snapshots before the current one together, readable without the lock
+	 */
+	public long getKeptTrackCount() {
+		return previousTracks;
+	}
+
+	private void publishSnapshot() {
+		PlaylistSnapshot previous = snapshot;
+		if (previous != null && previous.getVersion() != version) {
+			previousSnapshots.addFirst(previous);
+			previousTracks += previous.getNrOfTracks();
+			previousVersions++;
+			trimPreviousSnapshots();
+		}
+
+		snapshot = new PlaylistSnapshot(version, playListTracks.snapshot(), rankEpoch, rankRebalances);
+	}
+
+	private void trimPreviousSnapshots() {
+		while (previousSnapshots.size() > keptVersions) {
+			previousTracks -= previousSnapshots.removeLast().getNrOfTracks();
+			previousVersions--;
+		}
+	}
+
+	public Date getRegisteredDate() {
+		return registeredDate;
+	}
+
+	public void setRegisteredDate(Date registeredDate) {
+		this.registeredDate = registeredDate;
+	}
+
+	public Date getLastUpdated() {
+		return lastUpdated;
+	}
+
+	public void setLastUpdated(Date lastUpdated) {
+		this.lastUpdated = lastUpdated;
+	}
+
+	public String getUuid() {
+		return uuid;
+	}
+
+	public boolean isDeleted() {
+		return deleted;
+	}
+
+	public void setDeleted(boolean deleted) {
+		this.deleted = deleted;
+	}
+
+	public int getNrOfTracks() {
+		return nrOfTracks;
+	}
+
+	public void setNrOfTracks(int nrOfTracks) {
+		this.nrOfTracks = nrOfTracks;
+	}
+
+	/**
+	 * Sum of the durations of the tracks
+	 */
+	public float getDuration() {
+		return duration;
+	}
+
+	// the lock of the playlist, which also keeps its holders out of a change made under a claim, see tryClaim
+	private class PlaylistLock extends ReentrantReadWriteLock {
+
+		private final ReadLock readLock = new ReadLock(this) {
+			@Override
+			public void lock() {
+				super.lock();
+				awaitClaim();
+			}
+
+			@Override
+			public void lockInterruptibly() throws InterruptedException {
+				super.lockInterruptibly();
+				awaitClaim();
+			}
+
+			@Override
+			public boolean tryLock() {
+				return super.tryLock() && unlessClaimed(this);
+			}
+
+			@Override
+			public boolean tryLock(long timeout, TimeUnit unit) throws InterruptedException {
+				return super.tryLock(timeout, unit) && unlessClaimed(this);
+			}
+		};
+
+		private final WriteLock writeLock = new WriteLock(this) {
+			@Override
+			public void lock() {
+				super.lock();
+				awaitClaim();
+			}
+
+			@Override
+			public void lockInterruptibly() throws InterruptedException {
+				super.lockInterruptibly();
+				awaitClaim();
+			}
+
+			@Override
+			public boolean tryLock() {
+				return super.tryLock() && unlessClaimed(this);
+			}
+
+			@Override
+			public boolean tryLock(long timeout, TimeUnit unit) throws InterruptedException {
+				return super.tryLock(timeout, unit) && unlessClaimed(this);
+			}
+		};
+
+		@Override
+		public ReadLock readLock() {
+			return readLock;
+		}
+
+		@Override
+		public WriteLock writeLock() {
+			return writeLock;
+		}
+	}
+}
@@ -9,7 +9,8 @@ public class PlayListTrack implements Serializable, Comparable<PlayListTrack> {
 
 	private Integer id;
 	private String playlistUuid;  // only a reference to the actual playlist is needed
-	private int index;
+	private transient int index; // derived from the position in the playlist, see PlayListTrackTree
+	private long rank; // sparse ordering key, only written when the track is added or ranks are rebalanced
 	private Date dateAdded;
 	private int trackId; // maybe removed? since it can be fetched from the track below
 	private Track track;
@@ -66,6 +67,14 @@ public class PlayListTrack implements Serializable, Comparable<PlayListTrack> {
 		this.index = index;
 	}
 
+	public long getRank() {
+		return rank;
+	}
+
+	public void setRank(long rank) {
+		this.rank = rank;
+	}
+
 	public Date getDateAdded() {
 		return dateAdded;
 	}
@@ -0,0 +1,738 @@
+package com.tidal.refactoring.playlist.data;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.UnaryOperator;
+
+/**
+ * Position indexed list of playlist tracks, stored as parallel primitive columns instead of PlayListTrack objects.
+ *
+ * A track takes about 32 bytes in the columns, against well over 100 for a PlayListTrack with its Integer id, Date and
+ * tree node. Scans run over plain arrays, and changes only copy array ranges, so they allocate nothing until the
+ * arrays grow.
+ *
+ * The columns are split into chunks of consecutive tracks, of CHUNK_SIZE tracks or a little more. A chunk that grows
+ * to twice that is split, one left empty is dropped. Finding the chunk of an index, rank or time takes O(log n) over
+ * the start and duration before every chunk, which a change recomputes from its chunk on.
+ *
+ * Time queries use a Fenwick tree of the durations of every chunk, answering in O(log n). It is updated with every
+ * change: as an insert or remove shifts the positions after it, only the nodes from the changed position to the end of
+ * the chunk are recomputed, at about the cost of shifting the columns themselves. Reads never write to it.
+ *
+ * The Track objects are kept by reference only, they are expected to be shared through the TrackCatalog. Reading a
+ * track creates a short lived PlayListTrack from the columns, detached from the store: changing it does not change
+ * the store, and it keeps its values when the store changes. Scans that should not allocate per track read the
+ * columns through a TrackView instead.
+ *
+ * A snapshot shares all chunks, so it costs O(number of chunks). A change copies the chunk it touches, once per
+ * version, and leaves the others as they are, so kept versions only hold the chunks changed since.
+ */
+public class PlayListTrackColumns extends AbstractList<PlayListTrack> implements PlayListTrackStore {
+
+	/**
+	 * Tracks in a chunk, which a change copies when the chunk is shared with a snapshot
+	 */
+	public static final int CHUNK_SIZE = 512;
+
+	private static final int DEFAULT_CAPACITY = 16;
+	private static final int NO_ID = Integer.MIN_VALUE; // marks a null playlist track id
+	private static final long NO_DATE = Long.MIN_VALUE; // marks a null date added
+
+	private final String playlistUuid;
+
+	private List<Chunk> chunks;
+	private int[] starts; // index of the first track of every chunk, followed by the size
+	private double[] durationsBefore; // of the tracks before every chunk, followed by the total
+
+	public PlayListTrackColumns(String playlistUuid) {
+		this.playlistUuid = playlistUuid;
+
+		chunks = new ArrayList<>();
+		chunksChanged(0);
+	}
+
+	// a snapshot, sharing the published chunks
+	private PlayListTrackColumns(PlayListTrackColumns columns) {
+		this.playlistUuid = columns.playlistUuid;
+
+		copyChunks(columns);
+	}
+
+	// a copy of a range of the columns, in chunks of its own
+	private PlayListTrackColumns(PlayListTrackColumns columns, int from, int to, int capacity) {
+		this.playlistUuid = columns.playlistUuid;
+
+		// the room asked for is left in the last chunk, where the tracks are added
+		int room = capacity - (to - from);
+
+		chunks = new ArrayList<>();
+		for (int chunk = from < to ? chunkOf(columns.starts, columns.chunks.size(), from) : 0; from < to; chunk++) {
+			int start = columns.starts[chunk];
+			int end = Math.min(to, columns.starts[chunk + 1]);
+
+			chunks.add(columns.chunks.get(chunk).copy(from - start, end - start, end == to ? room : 0));
+			from = end;
+		}
+		chunksChanged(0);
+	}
+
+	/**
+	 * Number of chunks the tracks are split into
+	 */
+	public int getChunkCount() {
+		return chunks.size();
+	}
+
+	@Override
+	public int size() {
+		return starts[chunks.size()];
+	}
+
+	@Override
+	public PlayListTrack get(int index) {
+		checkIndex(index, size());
+
+		int chunk = chunkOf(index);
+
+		return playListTrack(chunks.get(chunk), index - starts[chunk], index);
+	}
+
+	public int getTrackId(int index) {
+		checkIndex(index, size());
+
+		int chunk = chunkOf(index);
+
+		return chunks.get(chunk).trackIds[index - starts[chunk]];
+	}
+
+	public float getDuration(int index) {
+		checkIndex(index, size());
+
+		int chunk = chunkOf(index);
+
+		return chunks.get(chunk).durations[index - starts[chunk]];
+	}
+
+	public long getRank(int index) {
+		checkIndex(index, size());
+
+		int chunk = chunkOf(index);
+
+		return chunks.get(chunk).ranks[index - starts[chunk]];
+	}
+
+	@Override
+	public Track getTrack(int index) {
+		checkIndex(index, size());
+
+		int chunk = chunkOf(index);
+
+		return chunks.get(chunk).tracks[index - starts[chunk]];
+	}
+
+	/**
+	 * A view of the track at the index, to be moved over the columns without allocating a PlayListTrack per track
+	 */
+	public TrackView view(int index) {
+		return new TrackView().moveTo(index);
+	}
+
+	@Override
+	public double getTotalDuration() {
+		return durationsBefore[chunks.size()];
+	}
+
+	@Override
+	public double getDurationBefore(int index) {
+		checkIndex(index, size() + 1);
+
+		if (index == size()) {
+			return getTotalDuration();
+		}
+
+		int chunk = chunkOf(index);
+
+		return durationsBefore[chunk] + chunks.get(chunk).durationBefore(index - starts[chunk]);
+	}
+
+	@Override
+	public int indexAt(double offset) {
+		if (offset < 0 || offset >= getTotalDuration()) {
+			return -1;
+		}
+
+		// the last chunk starting at or before the offset, which ends after it
+		int chunk = chunkAt(offset);
+
+		return starts[chunk] + chunks.get(chunk).indexAt(offset - durationsBefore[chunk]);
+	}
+
+	@Override
+	public int indexOfRank(long rank) {
+		int chunk = firstEndingAtOrAfter(rank);
+		if (chunk == chunks.size()) {
+			return -1;
+		}
+
+		Chunk found = chunks.get(chunk);
+		int index = Arrays.binarySearch(found.ranks, 0, found.size, rank);
+
+		return index >= 0 ? starts[chunk] + index : -1;
+	}
+
+	@Override
+	public int indexAfterRank(long rank) {
+		int chunk = firstEndingAtOrAfter(rank);
+		if (chunk == chunks.size()) {
+			return size();
+		}
+
+		Chunk found = chunks.get(chunk);
+		int index = Arrays.binarySearch(found.ranks, 0, found.size, rank);
+
+		return starts[chunk] + (index >= 0 ? index + 1 : -(index + 1));
+	}
+
+	@Override
+	public boolean isAt(int index, PlayListTrack playListTrack) {
+		if (index < 0 || index >= size()) {
+			return false;
+		}
+
+		int chunk = chunkOf(index);
+		Chunk found = chunks.get(chunk);
+		int offset = index - starts[chunk];
+
+		return found.ranks[offset] == playListTrack.getRank() && found.trackIds[offset] == playListTrack.getTrackId()
+				&& found.ids[offset] == (playListTrack.getId() == null ? NO_ID : playListTrack.getId());
+	}
+
+	@Override
+	public void spreadRanks(long gap) {
+		spreadRanks(0, gap);
+	}
+
+	// the ranks rank + gap, rank + 2 * gap and so on, for columns that continue after a track of the given rank
+	void spreadRanks(long rank, long gap) {
+		for (int chunk = 0; chunk < chunks.size(); chunk++) {
+			Chunk written = writable(chunk);
+
+			for (int i = 0; i < written.size; i++) {
+				rank += gap;
+				written.ranks[i] = rank;
+			}
+		}
+	}
+
+	@Override
+	public PlayListTrackStore snapshot() {
+		chunks.forEach(chunk -> chunk.published = true);
+
+		return new PlayListTrackColumns(this);
+	}
+
+	/**
+	 * The tracks from one index up to another as new columns, with room for at least the given number of tracks.
+	 * Like a snapshot the copy can be read by any number of threads until it is changed.
+	 */
+	PlayListTrackColumns copyOfRange(int from, int to, int capacity) {
+		checkIndex(from, size() + 1);
+		checkIndex(to, size() + 1);
+
+		return new PlayListTrackColumns(this, from, to, Math.max(capacity, to - from));
+	}
+
+	@Override
+	public void restore(PlayListTrackStore snapshot) {
+		PlayListTrackColumns columns = (PlayListTrackColumns) snapshot;
+
+		// shared with the snapshot from now on, whether it was published or not
+		columns.chunks.forEach(chunk -> chunk.published = true);
+		copyChunks(columns);
+		modCount++;
+	}
+
+	// only the chunks holding a track the interner replaces are copied
+	@Override
+	public void internTracks(UnaryOperator<Track> interner) {
+		for (int chunk = 0; chunk < chunks.size(); chunk++) {
+			Track[] tracks = chunks.get(chunk).tracks;
+
+			for (int i = 0; i < chunks.get(chunk).size; i++) {
+				Track interned = interner.apply(tracks[i]);
+				if (interned != tracks[i]) {
+					tracks = writable(chunk).tracks;
+					tracks[i] = interned;
+				}
+			}
+		}
+	}
+
+	private void copyChunks(PlayListTrackColumns columns) {
+		chunks = new ArrayList<>(columns.chunks);
+		starts = columns.starts.clone();
+		durationsBefore = columns.durationsBefore.clone();
+	}
+
+	@Override
+	public PlayListTrack set(int index, PlayListTrack playListTrack) {
+		checkIndex(index, size());
+
+		int chunk = chunkOf(index);
+		int offset = index - starts[chunk];
+		Chunk written = writable(chunk);
+
+		PlayListTrack previous = playListTrack(written, offset, index);
+		float duration = written.durations[offset];
+		written.write(offset, playListTrack);
+		playListTrack.setIndex(index);
+
+		// no track moved, only the nodes covering this one change
+		for (int i = offset; i < written.size; i |= i + 1) {
+			written.durationSums[i] += written.durations[offset] - duration;
+		}
+		chunksChanged(chunk);
+
+		return previous;
+	}
+
+	@Override
+	public void add(int index, PlayListTrack playListTrack) {
+		addAll(index, Collections.singletonList(playListTrack));
+	}
+
+	@Override
+	public boolean addAll(int index, Collection<? extends PlayListTrack> playListTracks) {
+		checkIndex(index, size() + 1);
+
+		if (playListTracks.isEmpty()) {
+			return false;
+		}
+
+		int chunk;
+		if (chunks.isEmpty()) {
+			chunks.add(new Chunk(Math.max(playListTracks.size(), DEFAULT_CAPACITY)));
+			chunk = 0;
+		} else {
+			// at the end of a chunk rather than the start of the next, so appends only touch the last one
+			chunk = index == size() ? chunks.size() - 1 : chunkOf(index);
+		}
+
+		// shift the tail of the chunk once for all added tracks
+		Chunk written = writable(chunk);
+		int offset = index - starts[chunk];
+		written.open(offset, playListTracks.size());
+		for (PlayListTrack playListTrack : playListTracks) {
+			written.write(offset++, playListTrack);
+			playListTrack.setIndex(index++);
+		}
+		written.durationsChanged(offset - playListTracks.size());
+
+		split(chunk);
+		modCount++;
+
+		return true;
+	}
+
+	@Override
+	public boolean addAll(Collection<? extends PlayListTrack> playListTracks) {
+		return addAll(size(), playListTracks);
+	}
+
+	@Override
+	public PlayListTrack remove(int index) {
+		checkIndex(index, size());
+
+		int chunk = chunkOf(index);
+		int offset = index - starts[chunk];
+		Chunk written = writable(chunk);
+
+		PlayListTrack removed = playListTrack(written, offset, index);
+		written.remove(offset);
+
+		if (written.size == 0) {
+			chunks.remove(chunk);
+		}
+		chunksChanged(chunk);
+		modCount++;
+
+		return removed;
+	}
+
+	@Override
+	public void clear() {
+		chunks = new ArrayList<>();
+		chunksChanged(0);
+		modCount++;
+	}
+
+	@Override
+	public Iterator<PlayListTrack> iterator() {
+		return iterator(0);
+	}
+
+	@Override
+	public Iterator<PlayListTrack> iterator(int fromIndex) {
+		checkIndex(fromIndex, size() + 1);
+
+		return new Iterator<PlayListTrack>() {
+			private final int expectedModCount = modCount;
+			private int nextIndex = fromIndex;
+			private int chunk = fromIndex == size() ? chunks.size() : chunkOf(fromIndex);
+
+			@Override
+			public boolean hasNext() {
+				return nextIndex < size();
+			}
+
+			@Override
+			public PlayListTrack next() {
+				if (modCount != expectedModCount) {
+					throw new ConcurrentModificationException();
+				}
+				if (nextIndex >= size()) {
+					throw new NoSuchElementException();
+				}
+
+				if (nextIndex == starts[chunk + 1]) {
+					chunk++;
+				}
+
+				PlayListTrack playListTrack = playListTrack(chunks.get(chunk), nextIndex - starts[chunk], nextIndex);
+				nextIndex++;
+
+				return playListTrack;
+			}
+		};
+	}
+
+	private PlayListTrack playListTrack(Chunk chunk, int offset, int index) {
+		PlayListTrack playListTrack = new PlayListTrack(chunk.ids[offset] == NO_ID ? null : chunk.ids[offset],
+				playlistUuid, index, chunk.datesAdded[offset] == NO_DATE ? null : new Date(chunk.datesAdded[offset]),
+				chunk.tracks[offset]);
+
+		if (chunk.datesAdded[offset] == NO_DATE) {
+			playListTrack.setDateAdded(null); // the constructor replaces null by now
+		}
+		playListTrack.setTrackId(chunk.trackIds[offset]);
+		playListTrack.setRank(chunk.ranks[offset]);
+
+		return playListTrack;
+	}
+
+	// the chunk to change, copied first when a snapshot shares it
+	private Chunk writable(int chunk) {
+		Chunk current = chunks.get(chunk);
+		if (!current.published) {
+			return current;
+		}
+
+		Chunk copy = current.copy(0, current.size, 0);
+		chunks.set(chunk, copy);
+
+		return copy;
+	}
+
+	// a chunk grown to twice the chunk size is split into chunks of the chunk size
+	private void split(int chunk) {
+		Chunk grown = chunks.get(chunk);
+
+		if (grown.size < 2 * CHUNK_SIZE) {
+			chunksChanged(chunk);
+			return;
+		}
+
+		List<Chunk> split = new ArrayList<>();
+		for (int from = 0; from < grown.size; from += CHUNK_SIZE) {
+			split.add(grown.copy(from, Math.min(from + CHUNK_SIZE, grown.size), 0));
+		}
+
+		chunks.remove(chunk);
+		chunks.addAll(chunk, split);
+		chunksChanged(chunk);
+	}
+
+	// the start and duration before every chunk after the given one, which changed, was added or was dropped
+	private void chunksChanged(int from) {
+		int count = chunks.size();
+		if (starts == null || starts.length != count + 1) {
+			starts = Arrays.copyOf(starts == null ? new int[1] : starts, count + 1);
+			durationsBefore = Arrays.copyOf(durationsBefore == null ? new double[1] : durationsBefore, count + 1);
+		}
+
+		for (int i = from; i < count; i++) {
+			starts[i + 1] = starts[i] + chunks.get(i).size;
+			durationsBefore[i + 1] = durationsBefore[i] + chunks.get(i).totalDuration;
+		}
+	}
+
+	private int chunkOf(int index) {
+		return chunkOf(starts, chunks.size(), index);
+	}
+
+	// the chunk holding the track at the index
+	private static int chunkOf(int[] starts, int count, int index) {
+		int low = 0;
+		int high = count - 1;
+
+		while (low < high) {
+			int middle = (low + high + 1) >>> 1;
+			if (starts[middle] <= index) {
+				low = middle;
+			} else {
+				high = middle - 1;
+			}
+		}
+
+		return low;
+	}
+
+	// the first chunk whose last rank is not below the rank, or the number of chunks if there is none
+	private int firstEndingAtOrAfter(long rank) {
+		int low = 0;
+		int high = chunks.size();
+
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			Chunk chunk = chunks.get(middle);
+			if (chunk.ranks[chunk.size - 1] < rank) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+
+		return low;
+	}
+
+	// the last chunk whose tracks before it end at or before the offset
+	private int chunkAt(double offset) {
+		int low = 0;
+		int high = chunks.size() - 1;
+
+		while (low < high) {
+			int middle = (low + high + 1) >>> 1;
+			if (durationsBefore[middle] <= offset) {
+				low = middle;
+			} else {
+				high = middle - 1;
+			}
+		}
+
+		return low;
+	}
+
+	private static void checkIndex(int index, int length) {
+		if (index < 0 || index >= length) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Length: " + length);
+		}
+	}
+
+	/**
+	 * A flyweight of the track at an index of the columns, read from the chunk holding it on every call. A chunk a
+	 * later change copies is not seen, so it is meant for scans of a snapshot or under the lock of the playlist.
+	 */
+	public final class TrackView {
+		private int index;
+		private Chunk chunk;
+		private int offset;
+
+		private TrackView() {
+		}
+
+		public TrackView moveTo(int index) {
+			checkIndex(index, size());
+
+			int found = chunkOf(index);
+			this.index = index;
+			this.chunk = chunks.get(found);
+			this.offset = index - starts[found];
+
+			return this;
+		}
+
+		public int getIndex() {
+			return index;
+		}
+
+		public int getTrackId() {
+			return chunk.trackIds[offset];
+		}
+
+		public Track getTrack() {
+			return chunk.tracks[offset];
+		}
+
+		public long getRank() {
+			return chunk.ranks[offset];
+		}
+
+		public float getDuration() {
+			return chunk.durations[offset];
+		}
+	}
+
+	/**
+	 * A run of consecutive tracks, with a Fenwick tree of their durations. Never changed once published, a change
+	 * copies it instead.
+	 */
+	private static final class Chunk {
+		private int[] ids;
+		private int[] trackIds;
+		private long[] datesAdded; // epoch millis
+		private long[] ranks;
+		private float[] durations;
+		private Track[] tracks;
+		private int size;
+
+		private double totalDuration;
+		// Fenwick tree over the durations, the node at an index sums the tracks from index & (index + 1) up to it
+		private double[] durationSums;
+
+		// shared with a snapshot, guarded by the lock of the playlist
+		private boolean published;
+
+		private Chunk(int capacity) {
+			ids = new int[capacity];
+			trackIds = new int[capacity];
+			datesAdded = new long[capacity];
+			ranks = new long[capacity];
+			durations = new float[capacity];
+			tracks = new Track[capacity];
+			durationSums = new double[capacity];
+		}
+
+		// the tracks from one offset up to another, with room for the given number of tracks more
+		private Chunk copy(int from, int to, int room) {
+			int capacity = Math.max(to - from + Math.max(room, 0), DEFAULT_CAPACITY);
+			Chunk copy = new Chunk(0);
+
+			copy.ids = Arrays.copyOfRange(ids, from, from + capacity);
+			copy.trackIds = Arrays.copyOfRange(trackIds, from, from + capacity);
+			copy.datesAdded = Arrays.copyOfRange(datesAdded, from, from + capacity);
+			copy.ranks = Arrays.copyOfRange(ranks, from, from + capacity);
+			copy.durations = Arrays.copyOfRange(durations, from, from + capacity);
+			copy.tracks = Arrays.copyOfRange(tracks, from, from + capacity);
+			copy.size = to - from;
+			// the room past the copied range may hold the tracks after it, which are not part of the copy
+			Arrays.fill(copy.durations, copy.size, capacity, 0);
+			Arrays.fill(copy.tracks, copy.size, capacity, null);
+
+			if (from == 0 && to == size) {
+				copy.totalDuration = totalDuration;
+			} else {
+				for (int i = 0; i < copy.size; i++) {
+					copy.totalDuration += copy.durations[i];
+				}
+			}
+
+			// the nodes of a range from the start sum the same tracks, the nodes of any other range do not
+			copy.durationSums = Arrays.copyOfRange(durationSums, from, from + capacity);
+			if (from > 0) {
+				copy.durationsChanged(0);
+			}
+
+			return copy;
+		}
+
+		private double durationBefore(int offset) {
+			double before = 0;
+
+			for (int i = offset - 1; i >= 0; i = (i & (i + 1)) - 1) {
+				before += durationSums[i];
+			}
+
+			return before;
+		}
+
+		// the track playing at the offset from the start of the chunk, which is before its end
+		private int indexAt(double offset) {
+			int index = 0;
+
+			// the number of tracks that end at or before the offset, found by descending the Fenwick tree
+			for (int step = Integer.highestOneBit(size); step > 0; step >>= 1) {
+				if (index + step <= size && durationSums[index + step - 1] <= offset) {
+					offset -= durationSums[index + step - 1];
+					index += step;
+				}
+			}
+
+			// an offset rounded past the end of the chunk is in its last track
+			return Math.min(index, size - 1);
+		}
+
+		private void write(int offset, PlayListTrack playListTrack) {
+			totalDuration += playListTrack.getTrack().getDuration() - durations[offset];
+
+			ids[offset] = playListTrack.getId() == null ? NO_ID : playListTrack.getId();
+			trackIds[offset] = playListTrack.getTrackId();
+			datesAdded[offset] = playListTrack.getDateAdded() == null ? NO_DATE
+					: playListTrack.getDateAdded().getTime();
+			ranks[offset] = playListTrack.getRank();
+			durations[offset] = playListTrack.getTrack().getDuration();
+			tracks[offset] = playListTrack.getTrack();
+		}
+
+		// make room for count tracks at the offset, by moving the tail up
+		private void open(int offset, int count) {
+			if (size + count > ids.length) {
+				int capacity = Math.max(size + count, ids.length + (ids.length >> 1));
+
+				ids = Arrays.copyOf(ids, capacity);
+				trackIds = Arrays.copyOf(trackIds, capacity);
+				datesAdded = Arrays.copyOf(datesAdded, capacity);
+				ranks = Arrays.copyOf(ranks, capacity);
+				durations = Arrays.copyOf(durations, capacity);
+				tracks = Arrays.copyOf(tracks, capacity);
+				durationSums = Arrays.copyOf(durationSums, capacity);
+			}
+
+			int tail = size - offset;
+			System.arraycopy(ids, offset, ids, offset + count, tail);
+			System.arraycopy(trackIds, offset, trackIds, offset + count, tail);
+			System.arraycopy(datesAdded, offset, datesAdded, offset + count, tail);
+			System.arraycopy(ranks, offset, ranks, offset + count, tail);
+			System.arraycopy(durations, offset, durations, offset + count, tail);
+			System.arraycopy(tracks, offset, tracks, offset + count, tail);
+			Arrays.fill(durations, offset, offset + count, 0);
+			size += count;
+		}
+
+		private void remove(int offset) {
+			totalDuration -= durations[offset];
+
+			int tail = size - offset - 1;
+			System.arraycopy(ids, offset + 1, ids, offset, tail);
+			System.arraycopy(trackIds, offset + 1, trackIds, offset, tail);
+			System.arraycopy(datesAdded, offset + 1, datesAdded, offset, tail);
+			System.arraycopy(ranks, offset + 1, ranks, offset, tail);
+			System.arraycopy(durations, offset + 1, durations, offset, tail);
+			System.arraycopy(tracks, offset + 1, tracks, offset, tail);
+			tracks[--size] = null;
+			durationsChanged(offset);
+		}
+
+		// recompute the Fenwick tree nodes from the offset on, after the durations from there changed or moved. A node
+		// is the duration of its track plus the nodes below it that it covers, which are valid or just recomputed, so
+		// this takes O(size - offset + log n).
+		private void durationsChanged(int from) {
+			for (int i = from; i < size; i++) {
+				double sum = durations[i];
+				int first = i & (i + 1);
+
+				for (int covered = i - 1; covered >= first; covered = (covered & (covered + 1)) - 1) {
+					sum += durationSums[covered];
+				}
+				durationSums[i] = sum;
+			}
+		}
+	}
+}
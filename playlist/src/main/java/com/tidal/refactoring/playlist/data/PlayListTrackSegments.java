@@ -0,0 +1,432 @@
+package com.tidal.refactoring.playlist.data;
+
+import com.tidal.refactoring.playlist.data.PlaylistSegments.Segment;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.UnaryOperator;
+
+/**
+ * Position indexed list of playlist tracks split into segments of consecutive tracks, for very large playlists. Each
+ * segment holds its tracks in PlayListTrackColumns, and is either hot on the heap or spilled to disk, as decided by the
+ * PlaylistSegments shared by all segmented playlists.
+ *
+ * Finding the segment of an index, rank or time only takes what is kept of every segment on the heap, so only the
+ * segments a read or change really touches are read back from disk. A change copies the segment it touches, once per
+ * version, and leaves the others as they are. A segment that grows to twice the segment size is split, one left
+ * empty is dropped.
+ *
+ * A snapshot shares all segments, so it costs O(number of segments). The tracks read from it are detached, as for
+ * PlayListTrackColumns.
+ */
+public class PlayListTrackSegments extends AbstractList<PlayListTrack> implements PlayListTrackStore {
+
+	private final String playlistUuid;
+	private final PlaylistSegments segments;
+
+	private List<Segment> segmentList;
+	private int[] starts; // index of the first track of every segment, followed by the size
+	private double[] durationsBefore; // of the tracks before every segment, followed by the total
+
+	public PlayListTrackSegments(String playlistUuid, PlaylistSegments segments) {
+		this.playlistUuid = playlistUuid;
+		this.segments = segments;
+
+		segmentList = new ArrayList<>();
+		segmentsChanged();
+	}
+
+	// a snapshot, sharing the published segments
+	private PlayListTrackSegments(PlayListTrackSegments store) {
+		this.playlistUuid = store.playlistUuid;
+		this.segments = store.segments;
+
+		copySegments(store);
+	}
+
+	/**
+	 * Number of segments the tracks are split into
+	 */
+	public int getSegmentCount() {
+		return segmentList.size();
+	}
+
+	@Override
+	public int size() {
+		return starts[segmentList.size()];
+	}
+
+	@Override
+	public PlayListTrack get(int index) {
+		checkIndex(index, size());
+
+		int segment = segmentOf(index);
+		PlayListTrack playListTrack = columns(segment).get(index - starts[segment]);
+		playListTrack.setIndex(index);
+
+		return playListTrack;
+	}
+
+	@Override
+	public Track getTrack(int index) {
+		checkIndex(index, size());
+
+		int segment = segmentOf(index);
+		return columns(segment).getTrack(index - starts[segment]);
+	}
+
+	@Override
+	public double getTotalDuration() {
+		return durationsBefore[segmentList.size()];
+	}
+
+	@Override
+	public double getDurationBefore(int index) {
+		checkIndex(index, size() + 1);
+
+		if (index == size()) {
+			return getTotalDuration();
+		}
+
+		int segment = segmentOf(index);
+		int offset = index - starts[segment];
+
+		return durationsBefore[segment] + (offset == 0 ? 0 : columns(segment).getDurationBefore(offset));
+	}
+
+	@Override
+	public int indexAt(double offset) {
+		if (offset < 0 || offset >= getTotalDuration()) {
+			return -1;
+		}
+
+		// the last segment starting at or before the offset, which ends after it
+		int segment = segmentAt(offset);
+
+		PlayListTrackColumns columns = columns(segment);
+		int index = columns.indexAt(offset - durationsBefore[segment]);
+
+		// an offset rounded past the end of the segment is in its last track
+		return starts[segment] + (index < 0 ? columns.size() - 1 : index);
+	}
+
+	@Override
+	public int indexOfRank(long rank) {
+		int segment = firstEndingAtOrAfter(rank);
+		if (segment == segmentList.size() || segmentList.get(segment).getFirstRank() > rank) {
+			return -1;
+		}
+
+		int index = columns(segment).indexOfRank(rank);
+
+		return index < 0 ? -1 : starts[segment] + index;
+	}
+
+	@Override
+	public int indexAfterRank(long rank) {
+		int segment = firstEndingAtOrAfter(rank);
+		if (segment == segmentList.size()) {
+			return size();
+		}
+		if (segmentList.get(segment).getFirstRank() > rank) {
+			return starts[segment];
+		}
+
+		return starts[segment] + columns(segment).indexAfterRank(rank);
+	}
+
+	@Override
+	public boolean isAt(int index, PlayListTrack playListTrack) {
+		if (index < 0 || index >= size()) {
+			return false;
+		}
+
+		int segment = segmentOf(index);
+
+		return columns(segment).isAt(index - starts[segment], playListTrack);
+	}
+
+	@Override
+	public void spreadRanks(long gap) {
+		long rank = 0;
+
+		for (int i = 0; i < segmentList.size(); i++) {
+			PlayListTrackColumns columns = writable(i, 0);
+			columns.spreadRanks(rank, gap);
+			rank += gap * columns.size();
+			segmentList.get(i).changed();
+		}
+		modCount++;
+	}
+
+	@Override
+	public PlayListTrackStore snapshot() {
+		segmentList.forEach(segments::publish);
+
+		return new PlayListTrackSegments(this);
+	}
+
+	@Override
+	public void restore(PlayListTrackStore snapshot) {
+		copySegments((PlayListTrackSegments) snapshot);
+		modCount++;
+	}
+
+	/**
+	 * Only the segments on the heap, the spilled ones are interned by PlaylistSegments when they are read back
+	 */
+	@Override
+	public void internTracks(UnaryOperator<Track> interner) {
+		segmentList.forEach(segment -> segments.internTracks(segment, interner));
+	}
+
+	private void copySegments(PlayListTrackSegments store) {
+		segmentList = new ArrayList<>(store.segmentList);
+		starts = store.starts.clone();
+		durationsBefore = store.durationsBefore.clone();
+	}
+
+	@Override
+	public PlayListTrack set(int index, PlayListTrack playListTrack) {
+		checkIndex(index, size());
+
+		int segment = segmentOf(index);
+		PlayListTrack previous = writable(segment, 0).set(index - starts[segment], playListTrack);
+		previous.setIndex(index);
+		playListTrack.setIndex(index);
+		changed(segment);
+
+		return previous;
+	}
+
+	@Override
+	public void add(int index, PlayListTrack playListTrack) {
+		addAll(index, Collections.singletonList(playListTrack));
+	}
+
+	@Override
+	public boolean addAll(int index, Collection<? extends PlayListTrack> playListTracks) {
+		checkIndex(index, size() + 1);
+
+		if (playListTracks.isEmpty()) {
+			return false;
+		}
+
+		int segment;
+		if (segmentList.isEmpty()) {
+			segmentList.add(segments.segment(playlistUuid, new PlayListTrackColumns(playlistUuid)));
+			segment = 0;
+		} else {
+			// at the end of a segment rather than the start of the next, so appends only touch the last one
+			segment = index == size() ? segmentList.size() - 1 : segmentOf(index);
+		}
+
+		int offset = index - starts[segment];
+		writable(segment, playListTracks.size()).addAll(offset, playListTracks);
+		for (PlayListTrack playListTrack : playListTracks) {
+			playListTrack.setIndex(index++);
+		}
+
+		split(segment);
+		modCount++;
+
+		return true;
+	}
+
+	@Override
+	public boolean addAll(Collection<? extends PlayListTrack> playListTracks) {
+		return addAll(size(), playListTracks);
+	}
+
+	@Override
+	public PlayListTrack remove(int index) {
+		checkIndex(index, size());
+
+		int segment = segmentOf(index);
+		PlayListTrackColumns columns = writable(segment, 0);
+		PlayListTrack removed = columns.remove(index - starts[segment]);
+		removed.setIndex(index);
+
+		if (columns.isEmpty()) {
+			segmentList.remove(segment);
+			segmentsChanged();
+		} else {
+			changed(segment);
+		}
+		modCount++;
+
+		return removed;
+	}
+
+	@Override
+	public void clear() {
+		segmentList = new ArrayList<>();
+		segmentsChanged();
+		modCount++;
+	}
+
+	@Override
+	public Iterator<PlayListTrack> iterator() {
+		return iterator(0);
+	}
+
+	@Override
+	public Iterator<PlayListTrack> iterator(int fromIndex) {
+		checkIndex(fromIndex, size() + 1);
+
+		return new Iterator<PlayListTrack>() {
+			private final int expectedModCount = modCount;
+			private int nextIndex = fromIndex;
+			private int segment = fromIndex == size() ? segmentList.size() : segmentOf(fromIndex);
+			private Iterator<PlayListTrack> tracks;
+
+			@Override
+			public boolean hasNext() {
+				return nextIndex < size();
+			}
+
+			@Override
+			public PlayListTrack next() {
+				if (modCount != expectedModCount) {
+					throw new ConcurrentModificationException();
+				}
+				if (nextIndex >= size()) {
+					throw new NoSuchElementException();
+				}
+
+				// a segment is only read back once the iteration reaches it
+				if (tracks == null || !tracks.hasNext()) {
+					if (tracks != null) {
+						segment++;
+					}
+					tracks = columns(segment).iterator(nextIndex - starts[segment]);
+				}
+
+				PlayListTrack playListTrack = tracks.next();
+				playListTrack.setIndex(nextIndex++);
+
+				return playListTrack;
+			}
+		};
+	}
+
+	private PlayListTrackColumns columns(int segment) {
+		return segments.columns(segmentList.get(segment));
+	}
+
+	/**
+	 * The columns of the segment to change, copied with room for the added tracks when the segment was published
+	 */
+	private PlayListTrackColumns writable(int segment, int added) {
+		Segment current = segmentList.get(segment);
+		if (!current.isPublished()) {
+			return segments.columns(current);
+		}
+
+		PlayListTrackColumns columns = segments.columns(current);
+		Segment copy = segments.segment(playlistUuid, columns.copyOfRange(0, columns.size(), columns.size() + added));
+		segmentList.set(segment, copy);
+
+		return segments.columns(copy);
+	}
+
+	// a segment grown to twice the segment size is split into segments of the segment size
+	private void split(int segment) {
+		PlayListTrackColumns columns = segments.columns(segmentList.get(segment));
+		int segmentSize = segments.getSegmentSize();
+
+		if (columns.size() < 2 * segmentSize) {
+			changed(segment);
+			return;
+		}
+
+		List<Segment> split = new ArrayList<>();
+		for (int from = 0; from < columns.size(); from += segmentSize) {
+			int to = Math.min(from + segmentSize, columns.size());
+			split.add(segments.segment(playlistUuid, columns.copyOfRange(from, to, to - from)));
+		}
+
+		segmentList.remove(segment);
+		segmentList.addAll(segment, split);
+		segmentsChanged();
+	}
+
+	private void changed(int segment) {
+		segmentList.get(segment).changed();
+		segmentsChanged();
+	}
+
+	private void segmentsChanged() {
+		int count = segmentList.size();
+		starts = new int[count + 1];
+		durationsBefore = new double[count + 1];
+
+		for (int i = 0; i < count; i++) {
+			starts[i + 1] = starts[i] + segmentList.get(i).size();
+			durationsBefore[i + 1] = durationsBefore[i] + segmentList.get(i).getDuration();
+		}
+	}
+
+	// the segment holding the track at the index
+	private int segmentOf(int index) {
+		int low = 0;
+		int high = segmentList.size() - 1;
+
+		while (low < high) {
+			int middle = (low + high + 1) >>> 1;
+			if (starts[middle] <= index) {
+				low = middle;
+			} else {
+				high = middle - 1;
+			}
+		}
+
+		return low;
+	}
+
+	// the first segment whose last rank is not below the rank, or the number of segments if there is none
+	private int firstEndingAtOrAfter(long rank) {
+		int low = 0;
+		int high = segmentList.size();
+
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (segmentList.get(middle).getLastRank() < rank) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+
+		return low;
+	}
+
+	// the last segment whose tracks before it end at or before the offset
+	private int segmentAt(double offset) {
+		int low = 0;
+		int high = segmentList.size() - 1;
+
+		while (low < high) {
+			int middle = (low + high + 1) >>> 1;
+			if (durationsBefore[middle] <= offset) {
+				low = middle;
+			} else {
+				high = middle - 1;
+			}
+		}
+
+		return low;
+	}
+
+	private static void checkIndex(int index, int length) {
+		if (index < 0 || index >= length) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Length: " + length);
+		}
+	}
+}
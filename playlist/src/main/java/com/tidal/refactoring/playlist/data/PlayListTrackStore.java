@@ -0,0 +1,73 @@
+package com.tidal.refactoring.playlist.data;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+/**
+ * The ordered tracks of a playlist, as kept by PlayList. The tracks are ordered by rank as well as by index.
+ */
+interface PlayListTrackStore extends List<PlayListTrack> {
+
+	/**
+	 * Tracks from the given index to the end, in index order
+	 */
+	Iterator<PlayListTrack> iterator(int fromIndex);
+
+	/**
+	 * The Track of the track at the index, read without copying the track or setting its index
+	 */
+	Track getTrack(int index);
+
+	/**
+	 * Index of the track with the given rank, or -1 if there is none
+	 */
+	int indexOfRank(long rank);
+
+	/**
+	 * Number of tracks with a rank up to the given one, which is the index of the first track ranked after it
+	 */
+	int indexAfterRank(long rank);
+
+	/**
+	 * Sum of the durations of all tracks, in seconds
+	 */
+	double getTotalDuration();
+
+	/**
+	 * Sum of the durations of the tracks before the index, which is the time the track at the index starts
+	 */
+	double getDurationBefore(int index);
+
+	/**
+	 * Index of the track playing at the given time from the start, or -1 if the time is outside the playlist
+	 */
+	int indexAt(double offset);
+
+	/**
+	 * Whether the track, as read from this store, is still the one at the index
+	 */
+	boolean isAt(int index, PlayListTrack playListTrack);
+
+	/**
+	 * Give the tracks the ranks gap, 2 * gap, 3 * gap and so on, in index order
+	 */
+	void spreadRanks(long gap);
+
+	/**
+	 * The tracks as they are now, not affected by later changes of this store. The tracks read from it are detached
+	 * from this store as well, so it can be read by any number of threads without a lock.
+	 */
+	PlayListTrackStore snapshot();
+
+	/**
+	 * Replace the tracks by the ones of a snapshot of this store
+	 */
+	void restore(PlayListTrackStore snapshot);
+
+	/**
+	 * Replace the Track of every track by the one the interner gives for it, the shared one of a track catalog. Changes
+	 * the tracks in place, so only before the playlist is used by other threads.
+	 */
+	void internTracks(UnaryOperator<Track> interner);
+}
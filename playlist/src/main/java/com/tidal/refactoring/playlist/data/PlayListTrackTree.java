@@ -0,0 +1,457 @@
+package com.tidal.refactoring.playlist.data;
+
+import java.util.AbstractList;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.UnaryOperator;
+
+/**
+ * Position indexed list of playlist tracks.
+ *
+ * Backed by an implicit treap (a randomized balanced tree ordered by position, where every node knows the size of
+ * its subtree), so get, insert and remove by index are O(log n) and no sorting or rehashing is needed on changes.
+ *
+ * The index of a track is its position in the tree and is never stored: it is set on the track whenever the track is
+ * read, added or removed through the tree, so shifting the tail of the playlist costs no writes. The tracks are also
+ * expected to be ordered by their rank, which allows finding the index of a track in O(log n).
+ *
+ * Every node also knows the total duration of its subtree, so the start time of a track and the track playing at a
+ * time are found in O(log n) as well.
+ *
+ * The nodes are never changed once built: a change copies the O(log n) nodes on its path and shares the rest, so a
+ * snapshot is only the current root. The rank of a track is kept in its node for the same reason, and set on the
+ * track like its index. A snapshot gives copies of its tracks, so readers of different versions never share them.
+ */
+public class PlayListTrackTree extends AbstractList<PlayListTrack> implements PlayListTrackStore {
+
+	private Node root;
+	// a snapshot, which reads copies of its tracks
+	private final boolean detached;
+
+	public PlayListTrackTree() {
+		this.detached = false;
+	}
+
+	public PlayListTrackTree(Collection<PlayListTrack> playListTracks) {
+		this();
+		addAll(playListTracks);
+	}
+
+	private PlayListTrackTree(Node root) {
+		this.root = root;
+		this.detached = true;
+	}
+
+	@Override
+	public int size() {
+		return size(root);
+	}
+
+	@Override
+	public PlayListTrack get(int index) {
+		checkIndex(index, size());
+
+		return withIndex(nodeAt(index), index);
+	}
+
+	@Override
+	public Track getTrack(int index) {
+		checkIndex(index, size());
+
+		return nodeAt(index).track.getTrack();
+	}
+
+	@Override
+	public int indexOfRank(long rank) {
+		Node node = root;
+		int index = 0;
+
+		while (node != null) {
+			long nodeRank = node.rank;
+
+			if (rank < nodeRank) {
+				node = node.left;
+			} else if (rank == nodeRank) {
+				return index + size(node.left);
+			} else {
+				index += size(node.left) + 1;
+				node = node.right;
+			}
+		}
+
+		return -1;
+	}
+
+	@Override
+	public int indexAfterRank(long rank) {
+		Node node = root;
+		int index = 0;
+
+		while (node != null) {
+			if (node.rank <= rank) {
+				index += size(node.left) + 1;
+				node = node.right;
+			} else {
+				node = node.left;
+			}
+		}
+
+		return index;
+	}
+
+	@Override
+	public double getTotalDuration() {
+		return duration(root);
+	}
+
+	@Override
+	public double getDurationBefore(int index) {
+		checkIndex(index, size() + 1);
+
+		Node node = root;
+		double before = 0;
+
+		while (node != null) {
+			int leftSize = size(node.left);
+
+			if (index <= leftSize) {
+				node = node.left;
+			} else {
+				before += duration(node.left) + node.track.getTrack().getDuration();
+				index -= leftSize + 1;
+				node = node.right;
+			}
+		}
+
+		return before;
+	}
+
+	@Override
+	public int indexAt(double offset) {
+		if (offset < 0 || offset >= getTotalDuration()) {
+			return -1;
+		}
+
+		Node node = root;
+		int index = 0;
+
+		while (node != null) {
+			double leftDuration = duration(node.left);
+
+			if (offset < leftDuration) {
+				node = node.left;
+				continue;
+			}
+
+			offset -= leftDuration;
+			double trackDuration = node.track.getTrack().getDuration();
+			if (offset < trackDuration || node.right == null) {
+				return index + size(node.left);
+			}
+
+			offset -= trackDuration;
+			index += size(node.left) + 1;
+			node = node.right;
+		}
+
+		return -1;
+	}
+
+	@Override
+	public boolean isAt(int index, PlayListTrack playListTrack) {
+		return index >= 0 && index < size() && nodeAt(index).track == playListTrack;
+	}
+
+	@Override
+	public void spreadRanks(long gap) {
+		// the same shape with new nodes, the snapshots keep the old ranks
+		root = spreadRanks(root, new long[1], gap);
+		modCount++;
+	}
+
+	private static Node spreadRanks(Node node, long[] rank, long gap) {
+		if (node == null) {
+			return null;
+		}
+
+		Node left = spreadRanks(node.left, rank, gap);
+		rank[0] += gap;
+		long nodeRank = rank[0];
+
+		return new Node(node.priority, node.track, nodeRank, left, spreadRanks(node.right, rank, gap));
+	}
+
+	@Override
+	public PlayListTrackStore snapshot() {
+		return new PlayListTrackTree(root);
+	}
+
+	@Override
+	public void restore(PlayListTrackStore snapshot) {
+		root = ((PlayListTrackTree) snapshot).root;
+		modCount++;
+	}
+
+	@Override
+	public void internTracks(UnaryOperator<Track> interner) {
+		internTracks(root, interner);
+	}
+
+	private static void internTracks(Node node, UnaryOperator<Track> interner) {
+		if (node != null) {
+			internTracks(node.left, interner);
+			node.track.setTrack(interner.apply(node.track.getTrack()));
+			internTracks(node.right, interner);
+		}
+	}
+
+	@Override
+	public PlayListTrack set(int index, PlayListTrack playListTrack) {
+		checkIndex(index, size());
+
+		// split the node out and merge a new one in, so the durations on its path are updated
+		Node[] parts = split(root, index);
+		Node[] rest = split(parts[1], 1);
+		Node replaced = rest[0];
+		Node node = new Node(replaced.priority, playListTrack, playListTrack.getRank(), null, null);
+		root = merge(merge(parts[0], node), rest[1]);
+
+		withIndex(node, index);
+		return replaced.track;
+	}
+
+	@Override
+	public void add(int index, PlayListTrack playListTrack) {
+		checkIndex(index, size() + 1);
+
+		Node[] parts = split(root, index);
+		Node node = new Node(playListTrack);
+		root = merge(merge(parts[0], node), parts[1]);
+		withIndex(node, index);
+		modCount++;
+	}
+
+	@Override
+	public boolean addAll(int index, Collection<? extends PlayListTrack> playListTracks) {
+		checkIndex(index, size() + 1);
+
+		if (playListTracks.isEmpty()) {
+			return false;
+		}
+
+		// build the new tracks as a subtree first, so the existing tree is only split and merged once
+		Node added = null;
+		int addedIndex = index;
+		for (PlayListTrack playListTrack : playListTracks) {
+			Node node = new Node(playListTrack);
+			added = merge(added, node);
+			withIndex(node, addedIndex++);
+		}
+
+		Node[] parts = split(root, index);
+		root = merge(merge(parts[0], added), parts[1]);
+		modCount++;
+
+		return true;
+	}
+
+	@Override
+	public boolean addAll(Collection<? extends PlayListTrack> playListTracks) {
+		return addAll(size(), playListTracks);
+	}
+
+	@Override
+	public PlayListTrack remove(int index) {
+		checkIndex(index, size());
+
+		Node[] parts = split(root, index);
+		Node[] rest = split(parts[1], 1);
+		root = merge(parts[0], rest[1]);
+		modCount++;
+
+		return withIndex(rest[0], index);
+	}
+
+	@Override
+	public void clear() {
+		root = null;
+		modCount++;
+	}
+
+	@Override
+	public Iterator<PlayListTrack> iterator() {
+		return iterator(0);
+	}
+
+	/**
+	 * In-order iterator starting at the given index, O(log n) to position and O(1) amortized per track
+	 */
+	@Override
+	public Iterator<PlayListTrack> iterator(int fromIndex) {
+		checkIndex(fromIndex, size() + 1);
+
+		return new TreeIterator(fromIndex);
+	}
+
+	private Node nodeAt(int index) {
+		Node node = root;
+
+		while (true) {
+			int leftSize = size(node.left);
+
+			if (index < leftSize) {
+				node = node.left;
+			} else if (index == leftSize) {
+				return node;
+			} else {
+				index -= leftSize + 1;
+				node = node.right;
+			}
+		}
+	}
+
+	// splits the tree into the first 'count' nodes and the rest, copying the nodes on the path
+	private static Node[] split(Node node, int count) {
+		if (node == null) {
+			return new Node[2];
+		}
+
+		Node[] parts;
+		if (size(node.left) >= count) {
+			parts = split(node.left, count);
+			parts[1] = node.withChildren(parts[1], node.right);
+		} else {
+			parts = split(node.right, count - size(node.left) - 1);
+			parts[0] = node.withChildren(node.left, parts[0]);
+		}
+
+		return parts;
+	}
+
+	// concatenates two trees, all nodes of 'left' come before the nodes of 'right', copying the nodes on the path
+	private static Node merge(Node left, Node right) {
+		if (left == null) {
+			return right;
+		}
+		if (right == null) {
+			return left;
+		}
+
+		if (left.priority > right.priority) {
+			return left.withChildren(left.left, merge(left.right, right));
+		}
+
+		return right.withChildren(merge(left, right.left), right.right);
+	}
+
+	// the track of the node with its position, a copy when read from a snapshot
+	private PlayListTrack withIndex(Node node, int index) {
+		PlayListTrack playListTrack = node.track;
+		if (detached) {
+			playListTrack = new PlayListTrack(playListTrack.getId(), playListTrack.getTrackPlayListUuid(), index,
+					playListTrack.getDateAdded(), playListTrack.getTrack());
+		}
+
+		playListTrack.setIndex(index);
+		playListTrack.setRank(node.rank);
+
+		return playListTrack;
+	}
+
+	private static int size(Node node) {
+		return node == null ? 0 : node.size;
+	}
+
+	private static double duration(Node node) {
+		return node == null ? 0 : node.duration;
+	}
+
+	private static void checkIndex(int index, int length) {
+		if (index < 0 || index >= length) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Length: " + length);
+		}
+	}
+
+	private static final class Node {
+		private final int priority;
+		private final PlayListTrack track;
+		private final long rank;
+		private final int size;
+		private final double duration; // of the whole subtree
+		private final Node left;
+		private final Node right;
+
+		private Node(PlayListTrack track) {
+			this(ThreadLocalRandom.current().nextInt(), track, track.getRank(), null, null);
+		}
+
+		private Node(int priority, PlayListTrack track, long rank, Node left, Node right) {
+			this.priority = priority;
+			this.track = track;
+			this.rank = rank;
+			this.left = left;
+			this.right = right;
+			this.size = 1 + PlayListTrackTree.size(left) + PlayListTrackTree.size(right);
+			this.duration = track.getTrack().getDuration() + PlayListTrackTree.duration(left)
+					+ PlayListTrackTree.duration(right);
+		}
+
+		private Node withChildren(Node left, Node right) {
+			return left == this.left && right == this.right ? this : new Node(priority, track, rank, left, right);
+		}
+	}
+
+	private final class TreeIterator implements Iterator<PlayListTrack> {
+		// nodes still to visit, the next one on top
+		private final Deque<Node> stack = new ArrayDeque<>();
+		private final int expectedModCount = modCount;
+		private int nextIndex;
+
+		private TreeIterator(int fromIndex) {
+			Node node = root;
+			nextIndex = fromIndex;
+
+			while (node != null) {
+				int leftSize = size(node.left);
+
+				if (fromIndex < leftSize) {
+					stack.push(node);
+					node = node.left;
+				} else if (fromIndex == leftSize) {
+					stack.push(node);
+					break;
+				} else {
+					fromIndex -= leftSize + 1;
+					node = node.right;
+				}
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			return !stack.isEmpty();
+		}
+
+		@Override
+		public PlayListTrack next() {
+			if (modCount != expectedModCount) {
+				throw new ConcurrentModificationException();
+			}
+			if (stack.isEmpty()) {
+				throw new NoSuchElementException();
+			}
+
+			Node node = stack.pop();
+			for (Node next = node.right; next != null; next = next.left) {
+				stack.push(next);
+			}
+
+			return withIndex(node, nextIndex++);
+		}
+	}
+}
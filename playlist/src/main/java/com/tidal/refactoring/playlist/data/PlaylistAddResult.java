@@ -0,0 +1,51 @@
+package com.tidal.refactoring.playlist.data;
+
+import com.tidal.refactoring.playlist.exception.PlaylistRejectedException;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of adding tracks to one of several playlists: the tracks added, or why the add was rejected
+ */
+public class PlaylistAddResult {
+
+	private final List<PlayListTrack> added;
+	private final PlaylistRejectedException rejection;
+
+	private PlaylistAddResult(List<PlayListTrack> added, PlaylistRejectedException rejection) {
+		this.added = added;
+		this.rejection = rejection;
+	}
+
+	public static PlaylistAddResult added(List<PlayListTrack> added) {
+		return new PlaylistAddResult(added, null);
+	}
+
+	public static PlaylistAddResult rejected(PlaylistRejectedException rejection) {
+		return new PlaylistAddResult(Collections.emptyList(), rejection);
+	}
+
+	/**
+	 * Tracks added to the playlist, none when it was rejected
+	 */
+	public List<PlayListTrack> getAdded() {
+		return added;
+	}
+
+	public boolean isRejected() {
+		return rejection != null;
+	}
+
+	/**
+	 * Why the playlist was left unchanged, null when the tracks were added
+	 */
+	public PlaylistRejectedException getRejection() {
+		return rejection;
+	}
+
+	public String toString() {
+		return rejection != null ? "PlaylistAddResult rejected[" + rejection.getReason() + "]"
+				: "PlaylistAddResult added[" + added.size() + "]";
+	}
+}
@@ -0,0 +1,53 @@
+package com.tidal.refactoring.playlist.data;
+
+import java.util.List;
+
+/**
+ * What changed in a playlist since a version a client has: either the deltas to apply to it, or when those are no
+ * longer all known, a snapshot of all tracks to replace it with.
+ */
+public class PlaylistChanges {
+
+	private final long version;
+	private final List<PlaylistDelta> deltas;
+	private final List<PlayListTrack> tracks;
+
+	private PlaylistChanges(long version, List<PlaylistDelta> deltas, List<PlayListTrack> tracks) {
+		this.version = version;
+		this.deltas = deltas;
+		this.tracks = tracks;
+	}
+
+	public static PlaylistChanges deltas(long version, List<PlaylistDelta> deltas) {
+		return new PlaylistChanges(version, deltas, null);
+	}
+
+	public static PlaylistChanges snapshot(long version, List<PlayListTrack> tracks) {
+		return new PlaylistChanges(version, null, tracks);
+	}
+
+	/**
+	 * The current version of the playlist, which the changes lead to
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	public boolean isSnapshot() {
+		return tracks != null;
+	}
+
+	/**
+	 * The deltas in order, null for a snapshot
+	 */
+	public List<PlaylistDelta> getDeltas() {
+		return deltas;
+	}
+
+	/**
+	 * All tracks in index order, null unless this is a snapshot
+	 */
+	public List<PlayListTrack> getTracks() {
+		return tracks;
+	}
+}
@@ -0,0 +1,361 @@
+package com.tidal.refactoring.playlist.data;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Compact binary encoding of playlists, playlist tracks and tracks, written to and read from a ByteBuffer in place.
+ *
+ * Ids and counts are varints, timestamps are varint epoch millis and strings are their varint UTF-8 length followed
+ * by the bytes, with length 0 for null. Every playlist track is encoded on its own, so a single one can be decoded at
+ * its offset without reading the tracks before it.
+ *
+ * In TRACK_IDS mode a playlist track only holds the id of its track, the decoded Track has nothing but that id set and
+ * is expected to be resolved from the track catalog.
+ *
+ * Encoding into a buffer that is too small throws BufferOverflowException, encodedSize gives the size to allocate.
+ */
+public final class PlaylistCodec {
+
+	public enum Mode {
+		FULL, TRACK_IDS
+	}
+
+	private static final int HAS_ID = 1;
+	private static final int HAS_DATE_ADDED = 2;
+	private static final int DELETED = 4;
+	private static final int HAS_REGISTERED_DATE = 8;
+	private static final int HAS_LAST_UPDATED = 16;
+
+	private PlaylistCodec() {
+	}
+
+	public static int encodedSize(PlayList playlist, Mode mode) {
+		int size = 1 + 1 + stringSize(playlist.getUuid()) + nullableIntSize(playlist.getId())
+				+ stringSize(playlist.getPlayListName()) + dateSize(playlist.getRegisteredDate())
+				+ dateSize(playlist.getLastUpdated()) + varLongSize(playlist.getVersion());
+
+		List<PlayListTrack> playListTracks = playlist.getSnapshot().getPlayListTracks();
+		size += varIntSize(playListTracks.size());
+		for (PlayListTrack playListTrack : playListTracks) {
+			size += encodedSize(playListTrack, mode);
+		}
+
+		return size;
+	}
+
+	/**
+	 * Expects the read lock of the playlist to be held, so the version and tracks are the ones its size was computed
+	 * for. The tracks are read from the snapshot of the playlist, as readers do not write to it.
+	 */
+	public static void encode(ByteBuffer buffer, PlayList playlist, Mode mode) {
+		int flags = (playlist.getId() != null ? HAS_ID : 0) | (playlist.isDeleted() ? DELETED : 0)
+				| (playlist.getRegisteredDate() != null ? HAS_REGISTERED_DATE : 0)
+				| (playlist.getLastUpdated() != null ? HAS_LAST_UPDATED : 0);
+
+		buffer.put((byte) mode.ordinal());
+		buffer.put((byte) flags);
+		putString(buffer, playlist.getUuid());
+		if (playlist.getId() != null) {
+			putVarInt(buffer, playlist.getId());
+		}
+		putString(buffer, playlist.getPlayListName());
+		if (playlist.getRegisteredDate() != null) {
+			putVarLong(buffer, playlist.getRegisteredDate().getTime());
+		}
+		if (playlist.getLastUpdated() != null) {
+			putVarLong(buffer, playlist.getLastUpdated().getTime());
+		}
+		putVarLong(buffer, playlist.getVersion());
+
+		List<PlayListTrack> playListTracks = playlist.getSnapshot().getPlayListTracks();
+		putVarInt(buffer, playListTracks.size());
+		for (PlayListTrack playListTrack : playListTracks) {
+			encode(buffer, playListTrack, mode);
+		}
+	}
+
+	public static PlayList decodePlayList(ByteBuffer buffer) {
+		return decodePlayList(buffer, PlayList::new);
+	}
+
+	/**
+	 * @param newPlayList creates the empty playlist to decode into, columnar or segmented like the other playlists of
+	 * its user, as the encoding does not keep how the tracks were held
+	 */
+	public static PlayList decodePlayList(ByteBuffer buffer, Function<String, PlayList> newPlayList) {
+		Mode mode = Mode.values()[buffer.get()];
+		int flags = buffer.get();
+
+		PlayList playlist = newPlayList.apply(getString(buffer));
+		playlist.setId((flags & HAS_ID) != 0 ? getVarInt(buffer) : null);
+		playlist.setPlayListName(getString(buffer));
+		playlist.setDeleted((flags & DELETED) != 0);
+		playlist.setRegisteredDate((flags & HAS_REGISTERED_DATE) != 0 ? new Date(getVarLong(buffer)) : null);
+		playlist.setLastUpdated((flags & HAS_LAST_UPDATED) != 0 ? new Date(getVarLong(buffer)) : null);
+		playlist.setVersion(getVarLong(buffer));
+
+		int size = getVarInt(buffer);
+		List<PlayListTrack> playListTracks = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			PlayListTrack playListTrack = decodePlayListTrack(buffer, playlist.getUuid(), mode);
+			playListTrack.setIndex(i);
+			playListTracks.add(playListTrack);
+		}
+		playlist.setPlayListTracks(playListTracks);
+
+		return playlist;
+	}
+
+	public static int encodedSize(PlayListTrack playListTrack, Mode mode) {
+		int size = 1 + nullableIntSize(playListTrack.getId()) + dateSize(playListTrack.getDateAdded());
+
+		return size + (mode == Mode.FULL ? encodedSize(playListTrack.getTrack()) : varIntSize(playListTrack.getTrackId()));
+	}
+
+	public static void encode(ByteBuffer buffer, PlayListTrack playListTrack, Mode mode) {
+		int flags = (playListTrack.getId() != null ? HAS_ID : 0)
+				| (playListTrack.getDateAdded() != null ? HAS_DATE_ADDED : 0);
+
+		buffer.put((byte) flags);
+		if (playListTrack.getId() != null) {
+			putVarInt(buffer, playListTrack.getId());
+		}
+		if (playListTrack.getDateAdded() != null) {
+			putVarLong(buffer, playListTrack.getDateAdded().getTime());
+		}
+
+		if (mode == Mode.FULL) {
+			encode(buffer, playListTrack.getTrack());
+		} else {
+			putVarInt(buffer, playListTrack.getTrackId());
+		}
+	}
+
+	/**
+	 * Decode the playlist track at the position of the buffer, and move the position past it
+	 */
+	public static PlayListTrack decodePlayListTrack(ByteBuffer buffer, String playlistUuid, Mode mode) {
+		int flags = buffer.get();
+
+		Integer id = (flags & HAS_ID) != 0 ? getVarInt(buffer) : null;
+		Date dateAdded = (flags & HAS_DATE_ADDED) != 0 ? new Date(getVarLong(buffer)) : null;
+
+		Track track;
+		if (mode == Mode.FULL) {
+			track = decodeTrack(buffer);
+		} else {
+			track = new Track();
+			track.setId(getVarInt(buffer));
+		}
+
+		PlayListTrack playListTrack = new PlayListTrack(id, playlistUuid, 0, dateAdded, track);
+		playListTrack.setDateAdded(dateAdded); // the constructor replaces null by now
+
+		return playListTrack;
+	}
+
+	/**
+	 * Decode the playlist track at the given offset, without moving the position of the buffer
+	 */
+	public static PlayListTrack decodePlayListTrack(ByteBuffer buffer, int offset, String playlistUuid, Mode mode) {
+		ByteBuffer view = buffer.duplicate();
+		view.position(offset);
+
+		return decodePlayListTrack(view, playlistUuid, mode);
+	}
+
+	public static int encodedSize(Track track) {
+		return varIntSize(track.getId()) + varIntSize(track.getArtistId()) + stringSize(track.getTitle()) + 4;
+	}
+
+	public static void encode(ByteBuffer buffer, Track track) {
+		putVarInt(buffer, track.getId());
+		putVarInt(buffer, track.getArtistId());
+		putString(buffer, track.getTitle());
+		buffer.putFloat(track.getDuration());
+	}
+
+	public static Track decodeTrack(ByteBuffer buffer) {
+		Track track = new Track();
+
+		track.setId(getVarInt(buffer));
+		track.setArtistId(getVarInt(buffer));
+		track.setTitle(getString(buffer));
+		track.setDuration(buffer.getFloat());
+
+		return track;
+	}
+
+	// ints are written unsigned, 7 bits per byte with the high bit set on all but the last byte
+
+	static void putVarInt(ByteBuffer buffer, int value) {
+		while ((value & ~0x7f) != 0) {
+			buffer.put((byte) ((value & 0x7f) | 0x80));
+			value >>>= 7;
+		}
+		buffer.put((byte) value);
+	}
+
+	static int getVarInt(ByteBuffer buffer) {
+		int value = 0;
+
+		for (int shift = 0; shift < 32; shift += 7) {
+			byte b = buffer.get();
+			value |= (b & 0x7f) << shift;
+
+			if (b >= 0) {
+				return value;
+			}
+		}
+
+		throw new IllegalArgumentException("Malformed varint at " + (buffer.position() - 5));
+	}
+
+	static int varIntSize(int value) {
+		int size = 1;
+
+		while ((value & ~0x7f) != 0) {
+			value >>>= 7;
+			size++;
+		}
+
+		return size;
+	}
+
+	static void putVarLong(ByteBuffer buffer, long value) {
+		while ((value & ~0x7fL) != 0) {
+			buffer.put((byte) ((value & 0x7f) | 0x80));
+			value >>>= 7;
+		}
+		buffer.put((byte) value);
+	}
+
+	static long getVarLong(ByteBuffer buffer) {
+		long value = 0;
+
+		for (int shift = 0; shift < 64; shift += 7) {
+			byte b = buffer.get();
+			value |= (long) (b & 0x7f) << shift;
+
+			if (b >= 0) {
+				return value;
+			}
+		}
+
+		throw new IllegalArgumentException("Malformed varlong at " + (buffer.position() - 10));
+	}
+
+	static int varLongSize(long value) {
+		int size = 1;
+
+		while ((value & ~0x7fL) != 0) {
+			value >>>= 7;
+			size++;
+		}
+
+		return size;
+	}
+
+	private static int nullableIntSize(Integer value) {
+		return value != null ? varIntSize(value) : 0;
+	}
+
+	private static int dateSize(Date date) {
+		return date != null ? varLongSize(date.getTime()) : 0;
+	}
+
+	// the UTF-8 length plus one, so 0 can mark null
+
+	private static int stringSize(String value) {
+		if (value == null) {
+			return 1;
+		}
+
+		int length = utf8Length(value);
+		return varIntSize(length + 1) + length;
+	}
+
+	// encodes the characters straight into the buffer, without an intermediate byte array
+	private static void putString(ByteBuffer buffer, String value) {
+		if (value == null) {
+			buffer.put((byte) 0);
+			return;
+		}
+
+		putVarInt(buffer, utf8Length(value) + 1);
+
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+
+			if (c < 0x80) {
+				buffer.put((byte) c);
+			} else if (c < 0x800) {
+				buffer.put((byte) (0xc0 | c >> 6));
+				buffer.put((byte) (0x80 | c & 0x3f));
+			} else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+					&& Character.isLowSurrogate(value.charAt(i + 1))) {
+				int codePoint = Character.toCodePoint(c, value.charAt(++i));
+				buffer.put((byte) (0xf0 | codePoint >> 18));
+				buffer.put((byte) (0x80 | codePoint >> 12 & 0x3f));
+				buffer.put((byte) (0x80 | codePoint >> 6 & 0x3f));
+				buffer.put((byte) (0x80 | codePoint & 0x3f));
+			} else if (Character.isSurrogate(c)) {
+				buffer.put((byte) '?'); // unpaired surrogate, replaced like String.getBytes does
+			} else {
+				buffer.put((byte) (0xe0 | c >> 12));
+				buffer.put((byte) (0x80 | c >> 6 & 0x3f));
+				buffer.put((byte) (0x80 | c & 0x3f));
+			}
+		}
+	}
+
+	private static String getString(ByteBuffer buffer) {
+		int length = getVarInt(buffer) - 1;
+		if (length < 0) {
+			return null;
+		}
+
+		String value;
+		if (buffer.hasArray()) {
+			value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length,
+					StandardCharsets.UTF_8);
+		} else {
+			// a direct buffer can only be read through a copy
+			byte[] bytes = new byte[length];
+			buffer.duplicate().get(bytes);
+			value = new String(bytes, StandardCharsets.UTF_8);
+		}
+		buffer.position(buffer.position() + length);
+
+		return value;
+	}
+
+	private static int utf8Length(String value) {
+		int length = 0;
+
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+
+			if (c < 0x80) {
+				length++;
+			} else if (c < 0x800) {
+				length += 2;
+			} else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+					&& Character.isLowSurrogate(value.charAt(i + 1))) {
+				length += 4;
+				i++;
+			} else if (Character.isSurrogate(c)) {
+				length++;
+			} else {
+				length += 3;
+			}
+		}
+
+		return length;
+	}
+}
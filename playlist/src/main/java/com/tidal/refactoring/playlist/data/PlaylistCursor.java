@@ -0,0 +1,47 @@
+package com.tidal.refactoring.playlist.data;
+
+/**
+ * Position after the last track of a page, to continue reading a playlist from there.
+ *
+ * The position is the rank of that track, so tracks added or removed before it do not make the next page skip or
+ * repeat tracks. Only when the ranks of the playlist were rebalanced since, or the playlist was loaded again with new
+ * ranks, reading continues at the index instead.
+ */
+public class PlaylistCursor {
+
+	private final long rank;
+	private final long rankEpoch;
+	private final int rankRebalances;
+	private final int index;
+
+	public PlaylistCursor(long rank, long rankEpoch, int rankRebalances, int index) {
+		this.rank = rank;
+		this.rankEpoch = rankEpoch;
+		this.rankRebalances = rankRebalances;
+		this.index = index;
+	}
+
+	public long getRank() {
+		return rank;
+	}
+
+	public long getRankEpoch() {
+		return rankEpoch;
+	}
+
+	public int getRankRebalances() {
+		return rankRebalances;
+	}
+
+	/**
+	 * Index of the next track, when the page was read
+	 */
+	public int getIndex() {
+		return index;
+	}
+
+	@Override
+	public String toString() {
+		return "PlaylistCursor rank[" + rank + "], index[" + index + "]";
+	}
+}
@@ -0,0 +1,75 @@
+package com.tidal.refactoring.playlist.data;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One add, remove or move as it was applied to a playlist, with the version of the change it was part of. Applying the
+ * deltas of a version in order to the tracks of the version before gives the tracks of the version.
+ */
+public class PlaylistDelta {
+
+	private final PlaylistEdit.Type type;
+	private final long version;
+	private final List<PlayListTrack> tracks;
+	private final List<Integer> indexes;
+	private final int toIndex;
+
+	private PlaylistDelta(PlaylistEdit.Type type, long version, List<PlayListTrack> tracks, List<Integer> indexes,
+			int toIndex) {
+		this.type = type;
+		this.version = version;
+		this.tracks = tracks == null ? Collections.emptyList() : tracks;
+		this.indexes = indexes == null ? Collections.emptyList() : indexes;
+		this.toIndex = toIndex;
+	}
+
+	/**
+	 * The tracks were inserted at the index
+	 */
+	public static PlaylistDelta added(long version, int toIndex, List<PlayListTrack> tracks) {
+		return new PlaylistDelta(PlaylistEdit.Type.ADD, version, tracks, null, toIndex);
+	}
+
+	/**
+	 * The tracks at the ascending indexes were removed
+	 */
+	public static PlaylistDelta removed(long version, List<Integer> indexes) {
+		return new PlaylistDelta(PlaylistEdit.Type.REMOVE, version, null, indexes, -1);
+	}
+
+	/**
+	 * The tracks at the ascending indexes were moved so the first of them is at toIndex, see PlaylistEdit.move
+	 */
+	public static PlaylistDelta moved(long version, List<Integer> fromIndexes, int toIndex) {
+		return new PlaylistDelta(PlaylistEdit.Type.MOVE, version, null, fromIndexes, toIndex);
+	}
+
+	public PlaylistEdit.Type getType() {
+		return type;
+	}
+
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * The added tracks, empty for a remove or move
+	 */
+	public List<PlayListTrack> getTracks() {
+		return tracks;
+	}
+
+	public List<Integer> getIndexes() {
+		return indexes;
+	}
+
+	public int getToIndex() {
+		return toIndex;
+	}
+
+	public String toString() {
+		return "PlaylistDelta type[" + type + "], version[" + version + "], tracks[" + tracks.size() + "], indexes"
+				+ indexes + ", toIndex[" + toIndex + "]";
+	}
+}
@@ -0,0 +1,117 @@
+package com.tidal.refactoring.playlist.data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The latest deltas of a playlist in a ring of fixed capacity, the oldest ones are overwritten. Kept with the playlist,
+ * written under its write lock and read under its read lock.
+ *
+ * The deltas of a change are only added once the change is committed, so readers never see part of a change.
+ */
+public class PlaylistDeltaRing {
+
+	private final PlaylistDelta[] deltas;
+	private long written;
+	// every change after this version has all its deltas in the ring
+	private long fromVersion;
+	// deltas of the change in progress
+	private final List<PlaylistDelta> pending = new ArrayList<>();
+	// of the deltas in the ring, to estimate the heap they take without the lock
+	private volatile int deltaCount;
+	private volatile long entryCount;
+
+	/**
+	 * @param version the version of the playlist when the ring starts
+	 */
+	public PlaylistDeltaRing(int capacity, long version) {
+		this.deltas = new PlaylistDelta[capacity];
+		this.fromVersion = version;
+	}
+
+	public void add(PlaylistDelta delta) {
+		pending.add(delta);
+	}
+
+	/**
+	 * Make the deltas of the change visible
+	 */
+	public void commit() {
+		for (PlaylistDelta delta : pending) {
+			int slot = (int) (written++ % deltas.length);
+			if (deltas[slot] != null) {
+				fromVersion = Math.max(fromVersion, deltas[slot].getVersion());
+				entryCount -= entries(deltas[slot]);
+			} else {
+				deltaCount++;
+			}
+			deltas[slot] = delta;
+			entryCount += entries(delta);
+		}
+		pending.clear();
+	}
+
+	public int getCapacity() {
+		return deltas.length;
+	}
+
+	/**
+	 * Number of committed deltas in the ring, readable without the lock
+	 */
+	public int getDeltaCount() {
+		return deltaCount;
+	}
+
+	/**
+	 * Added tracks and indexes of the committed deltas in the ring together, readable without the lock
+	 */
+	public long getEntryCount() {
+		return entryCount;
+	}
+
+	private static int entries(PlaylistDelta delta) {
+		return delta.getTracks().size() + delta.getIndexes().size();
+	}
+
+	/**
+	 * Drop the deltas of a change that failed half way. The tracks no longer match the version of the playlist, so
+	 * only the changes after the next version can be told.
+	 */
+	public void abort(long version) {
+		if (!pending.isEmpty()) {
+			pending.clear();
+			fromVersion = version + 1;
+		}
+	}
+
+	/**
+	 * Whether all deltas after the version are still in the ring
+	 */
+	public boolean covers(long version) {
+		return version >= fromVersion;
+	}
+
+	/**
+	 * The deltas of the changes after the version, oldest first. Only complete when covers(version).
+	 */
+	public List<PlaylistDelta> since(long version) {
+		int count = (int) Math.min(written, deltas.length);
+
+		// the deltas are in version order, so the ones after the version are the newest
+		int first = count;
+		while (first > 0 && deltas[slot(written - count + first - 1)].getVersion() > version) {
+			first--;
+		}
+
+		List<PlaylistDelta> since = new ArrayList<>(count - first);
+		for (int i = first; i < count; i++) {
+			since.add(deltas[slot(written - count + i)]);
+		}
+
+		return since;
+	}
+
+	private int slot(long position) {
+		return (int) (position % deltas.length);
+	}
+}
@@ -0,0 +1,69 @@
+package com.tidal.refactoring.playlist.data;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A single add, remove or move operation in a batch of changes to a playlist
+ */
+public class PlaylistEdit {
+
+	public enum Type {
+		ADD, REMOVE, MOVE
+	}
+
+	private final Type type;
+	private final List<Track> tracks;
+	private final List<Integer> indexes;
+	private final int toIndex;
+
+	private PlaylistEdit(Type type, List<Track> tracks, List<Integer> indexes, int toIndex) {
+		this.type = type;
+		this.tracks = tracks == null ? Collections.emptyList() : tracks;
+		this.indexes = indexes == null ? Collections.emptyList() : indexes;
+		this.toIndex = toIndex;
+	}
+
+	/**
+	 * Add the tracks at the index, -1 or an index past the end adds them at the end
+	 */
+	public static PlaylistEdit add(List<Track> tracks, int toIndex) {
+		return new PlaylistEdit(Type.ADD, tracks, null, toIndex);
+	}
+
+	/**
+	 * Remove the tracks at the indexes
+	 */
+	public static PlaylistEdit remove(List<Integer> indexes) {
+		return new PlaylistEdit(Type.REMOVE, null, indexes, -1);
+	}
+
+	/**
+	 * Move the tracks at the indexes, keeping their order, so the first of them ends up at toIndex. The toIndex is a
+	 * position in the playlist without the moved tracks.
+	 */
+	public static PlaylistEdit move(List<Integer> fromIndexes, int toIndex) {
+		return new PlaylistEdit(Type.MOVE, null, fromIndexes, toIndex);
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	public List<Track> getTracks() {
+		return tracks;
+	}
+
+	public List<Integer> getIndexes() {
+		return indexes;
+	}
+
+	public int getToIndex() {
+		return toIndex;
+	}
+
+	public String toString() {
+		return "PlaylistEdit type[" + type + "], tracks[" + tracks.size() + "], indexes" + indexes + ", toIndex["
+				+ toIndex + "]";
+	}
+}
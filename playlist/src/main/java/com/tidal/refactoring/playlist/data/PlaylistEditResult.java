@@ -0,0 +1,37 @@
+package com.tidal.refactoring.playlist.data;
+
+import java.util.List;
+
+/**
+ * Net effect of a batch of changes to a playlist. Tracks added and removed again in the same batch are in neither list.
+ */
+public class PlaylistEditResult {
+
+	private final List<PlayListTrack> added;
+	private final List<PlayListTrack> removed;
+	private final int nrOfTracks;
+	private final long version;
+
+	public PlaylistEditResult(List<PlayListTrack> added, List<PlayListTrack> removed, int nrOfTracks, long version) {
+		this.added = added;
+		this.removed = removed;
+		this.nrOfTracks = nrOfTracks;
+		this.version = version;
+	}
+
+	public List<PlayListTrack> getAdded() {
+		return added;
+	}
+
+	public List<PlayListTrack> getRemoved() {
+		return removed;
+	}
+
+	public int getNrOfTracks() {
+		return nrOfTracks;
+	}
+
+	public long getVersion() {
+		return version;
+	}
+}
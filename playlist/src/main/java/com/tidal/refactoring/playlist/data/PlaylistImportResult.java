@@ -0,0 +1,87 @@
+package com.tidal.refactoring.playlist.data;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Outcome of importing tracks into a playlist
+ */
+public class PlaylistImportResult {
+
+	private final int read;
+	private final int imported;
+	private final int duplicates;
+	private final int invalid;
+	private final int chunks;
+	private final boolean truncated;
+	private final long elapsedNanos;
+
+	public PlaylistImportResult(int read, int imported, int duplicates, int invalid, int chunks, boolean truncated,
+			long elapsedNanos) {
+		this.read = read;
+		this.imported = imported;
+		this.duplicates = duplicates;
+		this.invalid = invalid;
+		this.chunks = chunks;
+		this.truncated = truncated;
+		this.elapsedNanos = elapsedNanos;
+	}
+
+	/**
+	 * Tracks read from the input, duplicates included
+	 */
+	public int getRead() {
+		return read;
+	}
+
+	/**
+	 * Tracks added to the playlist
+	 */
+	public int getImported() {
+		return imported;
+	}
+
+	/**
+	 * Tracks skipped as they were already read before or already in the playlist
+	 */
+	public int getDuplicates() {
+		return duplicates;
+	}
+
+	/**
+	 * Lines of the input skipped as they could not be read as a track
+	 */
+	public int getInvalid() {
+		return invalid;
+	}
+
+	/**
+	 * Changes the tracks were added to the playlist in
+	 */
+	public int getChunks() {
+		return chunks;
+	}
+
+	/**
+	 * Whether the import stopped at the track limit of the playlist before the end of the input
+	 */
+	public boolean isTruncated() {
+		return truncated;
+	}
+
+	public long getElapsedNanos() {
+		return elapsedNanos;
+	}
+
+	/**
+	 * Tracks read per second
+	 */
+	public double getTracksPerSecond() {
+		return elapsedNanos == 0 ? 0 : read * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+	}
+
+	public String toString() {
+		return "PlaylistImportResult read[" + read + "], imported[" + imported + "], duplicates[" + duplicates
+				+ "], invalid[" + invalid + "], chunks[" + chunks + "], truncated[" + truncated + "], tracksPerSecond["
+				+ Math.round(getTracksPerSecond()) + "]";
+	}
+}
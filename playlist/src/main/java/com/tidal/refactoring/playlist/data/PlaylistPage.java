@@ -0,0 +1,28 @@
+package com.tidal.refactoring.playlist.data;
+
+import java.util.List;
+
+/**
+ * Tracks of a playlist read in index order, with the cursor to read the next page
+ */
+public class PlaylistPage {
+
+	private final List<PlayListTrack> tracks;
+	private final PlaylistCursor next;
+
+	public PlaylistPage(List<PlayListTrack> tracks, PlaylistCursor next) {
+		this.tracks = tracks;
+		this.next = next;
+	}
+
+	public List<PlayListTrack> getTracks() {
+		return tracks;
+	}
+
+	/**
+	 * @return the cursor after the last track of the page, or null if the page ends the playlist
+	 */
+	public PlaylistCursor getNext() {
+		return next;
+	}
+}
@@ -0,0 +1,395 @@
+package com.tidal.refactoring.playlist.data;
+
+import com.google.inject.Singleton;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.UnaryOperator;
+
+/**
+ * The segments of all segmented playlists, see PlayListTrackSegments. Shared by the playlists, so the heap their tracks
+ * take is bounded by the number of hot segments, however many large playlists there are.
+ *
+ * The most recently used segments are hot and held on the heap. A segment that falls out of them is spilled to a file
+ * of its own in the directory and read back on its next access. Published segments never change, so a segment is
+ * written at most once. Its file is deleted once the segment is garbage collected, when no version of any playlist
+ * has it any more.
+ *
+ * Spilled tracks are read back with the Track objects the track interner gives, so a playlist that shares its tracks
+ * through a track catalog keeps sharing them after a spill.
+ *
+ * Closing deletes the files of all spilled segments, and the temporary directory if one was created, which is also
+ * done on shutdown. The segments must not be used after that.
+ */
+@Singleton
+public class PlaylistSegments implements Closeable {
+
+	private static final int DEFAULT_SEGMENT_SIZE = 1024;
+	private static final int DEFAULT_HOT_SEGMENTS = 256;
+
+	private final int segmentSize;
+	private final int hotSegments;
+	private volatile Path directory; // a temporary one is created on the first spill when none was given
+	private boolean temporaryDirectory;
+	private volatile boolean closed;
+
+	// guarded by this, in access order
+	private final LinkedHashMap<SegmentReference, Boolean> hot = new LinkedHashMap<>(16, 0.75f, true);
+	// the references of spilled segments stay reachable until their segment is collected, to delete the file then
+	private final Set<SegmentReference> spilled = ConcurrentHashMap.newKeySet();
+	private final ReferenceQueue<Segment> collected = new ReferenceQueue<>();
+	private final AtomicLong nextFile = new AtomicLong();
+
+	private volatile UnaryOperator<Track> trackInterner = UnaryOperator.identity();
+
+	private final LongAdder spills = new LongAdder();
+	private final LongAdder loads = new LongAdder();
+
+	public PlaylistSegments() {
+		this(null, DEFAULT_SEGMENT_SIZE, DEFAULT_HOT_SEGMENTS);
+	}
+
+	/**
+	 * @param directory for the spilled segments, a temporary directory when null
+	 * @param segmentSize tracks in a segment, one that grows to twice that is split
+	 * @param hotSegments segments held on the heap
+	 */
+	public PlaylistSegments(Path directory, int segmentSize, int hotSegments) {
+		if (segmentSize < 1 || hotSegments < 1) {
+			throw new IllegalArgumentException("Segments need a size and at least one hot segment");
+		}
+
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		this.hotSegments = hotSegments;
+	}
+
+	/**
+	 * Gives the Track objects of the tracks read back from disk, the shared ones of a track catalog
+	 */
+	public void setTrackInterner(UnaryOperator<Track> trackInterner) {
+		this.trackInterner = trackInterner;
+	}
+
+	public int getSegmentSize() {
+		return segmentSize;
+	}
+
+	public synchronized int getHotSegmentCount() {
+		return hot.size();
+	}
+
+	/**
+	 * Segments with a file, including those of versions no longer used whose file is not deleted yet
+	 */
+	public int getSpilledSegmentCount() {
+		return spilled.size();
+	}
+
+	/**
+	 * Segments written to disk
+	 */
+	public long getSpillCount() {
+		return spills.sum();
+	}
+
+	/**
+	 * Segments read back from disk
+	 */
+	public long getLoadCount() {
+		return loads.sum();
+	}
+
+	/**
+	 * A segment of the tracks, private to the playlist that is changing it until it is published
+	 */
+	Segment segment(String playlistUuid, PlayListTrackColumns columns) {
+		return new Segment(playlistUuid, columns);
+	}
+
+	/**
+	 * Make the segment part of a version of its playlist, after which it never changes, and count it as used
+	 */
+	void publish(Segment segment) {
+		if (segment.reference != null) {
+			return;
+		}
+
+		segment.reference = new SegmentReference(segment, collected);
+		touch(segment.reference);
+	}
+
+	/**
+	 * The tracks of the segment, read back from its file when it was spilled
+	 */
+	PlayListTrackColumns columns(Segment segment) {
+		PlayListTrackColumns columns = segment.columns;
+		if (segment.reference == null) {
+			return columns;
+		}
+
+		if (columns == null) {
+			columns = load(segment);
+		}
+		touch(segment.reference);
+
+		return columns;
+	}
+
+	// the tracks of a segment on the heap, a spilled one gets the interned tracks when it is read back
+	void internTracks(Segment segment, UnaryOperator<Track> interner) {
+		synchronized (segment) {
+			if (segment.columns != null) {
+				segment.columns.internTracks(interner);
+			}
+		}
+	}
+
+	private PlayListTrackColumns load(Segment segment) {
+		synchronized (segment) {
+			if (segment.columns == null) {
+				segment.columns = read(segment);
+				loads.increment();
+			}
+
+			return segment.columns;
+		}
+	}
+
+	private void touch(SegmentReference reference) {
+		List<SegmentReference> cooled = new ArrayList<>();
+
+		synchronized (this) {
+			hot.put(reference, Boolean.TRUE);
+
+			Iterator<SegmentReference> eldest = hot.keySet().iterator();
+			while (hot.size() > hotSegments) {
+				cooled.add(eldest.next());
+				eldest.remove();
+			}
+		}
+
+		// written outside the lock, a segment used again meanwhile is read back on its next access
+		cooled.forEach(this::spill);
+		expunge();
+	}
+
+	private void spill(SegmentReference reference) {
+		Segment segment = reference.get();
+		if (segment == null) {
+			return;
+		}
+
+		synchronized (segment) {
+			// once closed no more files are written, the segment stays on the heap
+			if (segment.columns == null || closed) {
+				return;
+			}
+			if (reference.file == null) {
+				reference.file = write(segment);
+				spilled.add(reference);
+				spills.increment();
+			}
+			segment.columns = null;
+		}
+	}
+
+	// delete the files of the collected segments
+	private void expunge() {
+		Reference<? extends Segment> reference;
+		while ((reference = collected.poll()) != null) {
+			SegmentReference segmentReference = (SegmentReference) reference;
+			synchronized (this) {
+				hot.remove(segmentReference);
+			}
+
+			if (spilled.contains(segmentReference)) {
+				delete(segmentReference);
+			}
+		}
+	}
+
+	// the rank and the playlist track of every track, see PlaylistCodec
+	private Path write(Segment segment) {
+		PlayListTrackColumns columns = segment.columns;
+
+		int size = PlaylistCodec.varIntSize(columns.size());
+		for (PlayListTrack playListTrack : columns) {
+			size += PlaylistCodec.varLongSize(playListTrack.getRank())
+					+ PlaylistCodec.encodedSize(playListTrack, PlaylistCodec.Mode.FULL);
+		}
+
+		ByteBuffer buffer = ByteBuffer.allocate(size);
+		PlaylistCodec.putVarInt(buffer, columns.size());
+		for (PlayListTrack playListTrack : columns) {
+			PlaylistCodec.putVarLong(buffer, playListTrack.getRank());
+			PlaylistCodec.encode(buffer, playListTrack, PlaylistCodec.Mode.FULL);
+		}
+
+		try {
+			Path file = directory().resolve("segment-" + nextFile.incrementAndGet() + ".bin");
+			Files.write(file, buffer.array());
+
+			return file;
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not spill segment of playlist " + segment.playlistUuid, e);
+		}
+	}
+
+	private PlayListTrackColumns read(Segment segment) {
+		SegmentReference reference = segment.reference;
+
+		ByteBuffer buffer;
+		try {
+			buffer = ByteBuffer.wrap(Files.readAllBytes(reference.file));
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not load segment of playlist " + segment.playlistUuid, e);
+		}
+
+		int size = PlaylistCodec.getVarInt(buffer);
+		List<PlayListTrack> playListTracks = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			long rank = PlaylistCodec.getVarLong(buffer);
+			PlayListTrack playListTrack = PlaylistCodec.decodePlayListTrack(buffer, segment.playlistUuid,
+					PlaylistCodec.Mode.FULL);
+			playListTrack.setRank(rank);
+			playListTrack.setTrack(trackInterner.apply(playListTrack.getTrack()));
+			playListTracks.add(playListTrack);
+		}
+
+		PlayListTrackColumns columns = new PlayListTrackColumns(segment.playlistUuid);
+		columns.addAll(playListTracks);
+
+		return columns;
+	}
+
+	private Path directory() throws IOException {
+		if (directory == null) {
+			synchronized (this) {
+				if (directory == null) {
+					directory = Files.createTempDirectory("playlist-segments");
+					temporaryDirectory = true;
+					// deleteOnExit would only remove the directory once it is empty
+					Runtime.getRuntime().addShutdownHook(new Thread(this::close, "playlist-segments-cleanup"));
+				}
+			}
+		}
+
+		return directory;
+	}
+
+	/**
+	 * Delete the files of the spilled segments, and the directory when it was a temporary one
+	 */
+	@Override
+	public void close() {
+		closed = true;
+
+		for (SegmentReference reference : spilled) {
+			// under the segment, so a spill in progress finishes writing before its file is deleted
+			Segment segment = reference.get();
+			if (segment != null) {
+				synchronized (segment) {
+					delete(reference);
+				}
+			} else {
+				delete(reference);
+			}
+		}
+
+		synchronized (this) {
+			hot.clear();
+			if (temporaryDirectory) {
+				try {
+					Files.deleteIfExists(directory);
+				} catch (IOException e) {
+					throw new UncheckedIOException("Could not delete segment directory " + directory, e);
+				}
+			}
+		}
+	}
+
+	private void delete(SegmentReference reference) {
+		spilled.remove(reference);
+		try {
+			Files.deleteIfExists(reference.file);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not delete spilled segment " + reference.file, e);
+		}
+	}
+
+	/**
+	 * A run of consecutive tracks of a playlist. What a playlist needs to find a track, the number of tracks, their
+	 * ranks and durations, is kept with the segment so it does not have to be read back for that.
+	 */
+	static final class Segment {
+		private final String playlistUuid;
+		private volatile PlayListTrackColumns columns; // null while spilled
+		private SegmentReference reference; // set once published
+
+		private int size;
+		private long firstRank;
+		private long lastRank;
+		private double duration;
+
+		private Segment(String playlistUuid, PlayListTrackColumns columns) {
+			this.playlistUuid = playlistUuid;
+			this.columns = columns;
+			changed();
+		}
+
+		boolean isPublished() {
+			return reference != null;
+		}
+
+		/**
+		 * Update what is kept of the tracks after a change, only while the segment is not published
+		 */
+		void changed() {
+			size = columns.size();
+			firstRank = size > 0 ? columns.getRank(0) : 0;
+			lastRank = size > 0 ? columns.getRank(size - 1) : 0;
+			duration = columns.getTotalDuration();
+		}
+
+		int size() {
+			return size;
+		}
+
+		long getFirstRank() {
+			return firstRank;
+		}
+
+		long getLastRank() {
+			return lastRank;
+		}
+
+		double getDuration() {
+			return duration;
+		}
+	}
+
+	// lets the file of a segment be deleted once the segment is collected
+	private static final class SegmentReference extends WeakReference<Segment> {
+		private volatile Path file;
+
+		private SegmentReference(Segment segment, ReferenceQueue<Segment> queue) {
+			super(segment, queue);
+		}
+	}
+}
@@ -0,0 +1,233 @@
+package com.tidal.refactoring.playlist.data;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * The tracks of a playlist version in a pseudo-random order given by a seed, without copying or shuffling them. The
+ * order is computed from the indexes and the artists read from the snapshot, the only track copied is the one next
+ * returns. Players that only need the index use nextIndex, which copies no track at all.
+ *
+ * The order is a permutation of the indexes computed one position at a time by a Feistel network keyed by the seed,
+ * over the smallest even number of bits that holds every index. Values past the last index are walked through the
+ * network again until one falls inside, which takes less than four rounds on average. A session is resumed from its
+ * seed and position alone, on the same version of the playlist; another version has another number of tracks and so
+ * another order.
+ *
+ * Spreading artists avoids playing two tracks of the same artist in a row. The order is taken in windows of a few
+ * positions, of which the last track stays in place and the others are picked greedily so their artist differs from
+ * the one of the track before, taking the artists with the most tracks left first. A window only depends on the last
+ * track of the window before, so resuming still takes a single window. When one artist has most of a window, some of
+ * its tracks still follow each other.
+ */
+public class PlaylistShuffle implements Iterator<PlayListTrack> {
+
+	private static final int ROUNDS = 4;
+	private static final int WINDOW = 16;
+	private static final int NO_ARTIST = Integer.MIN_VALUE;
+
+	private final PlaylistSnapshot snapshot;
+	private final int size;
+	private final long seed;
+	private final boolean spreadArtists;
+
+	private final int halfBits;
+	private final int halfMask;
+	private final int[] keys = new int[ROUNDS];
+
+	// indexes of the window being played when spreading artists, in the order they are played
+	private final int[] window;
+	private final int[] artists;
+	private int windowStart = -1;
+
+	private int position;
+
+	public PlaylistShuffle(PlaylistSnapshot snapshot, long seed) {
+		this(snapshot, seed, 0, false);
+	}
+
+	/**
+	 * @param position number of tracks already played in this order, to resume a session
+	 * @param spreadArtists avoid tracks of the same artist in a row
+	 */
+	public PlaylistShuffle(PlaylistSnapshot snapshot, long seed, int position, boolean spreadArtists) {
+		this.snapshot = snapshot;
+		this.size = snapshot.getNrOfTracks();
+		this.seed = seed;
+		this.spreadArtists = spreadArtists;
+		this.position = Math.max(0, Math.min(position, size));
+
+		int bits = Math.max(2, 32 - Integer.numberOfLeadingZeros(Math.max(size - 1, 1)));
+		halfBits = (bits + 1) / 2;
+		halfMask = (1 << halfBits) - 1;
+
+		long state = seed;
+		for (int i = 0; i < ROUNDS; i++) {
+			state += 0x9e3779b97f4a7c15L;
+			keys[i] = (int) mix(state);
+		}
+
+		window = spreadArtists ? new int[WINDOW] : null;
+		artists = spreadArtists ? new int[WINDOW] : null;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * Number of tracks played so far, with the seed all it takes to resume
+	 */
+	public int getPosition() {
+		return position;
+	}
+
+	@Override
+	public boolean hasNext() {
+		return position < size;
+	}
+
+	/**
+	 * A copy of the next track, see nextIndex to play without copying
+	 */
+	@Override
+	public PlayListTrack next() {
+		return snapshot.getPlayListTracks().get(nextIndex());
+	}
+
+	/**
+	 * Index in the playlist of the next track
+	 */
+	public int nextIndex() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+
+		return indexAt(position++);
+	}
+
+	/**
+	 * Index in the playlist of the track played at the position
+	 */
+	public int indexAt(int position) {
+		if (position < 0 || position >= size) {
+			throw new IndexOutOfBoundsException("Position " + position + " of " + size + " tracks");
+		}
+		if (!spreadArtists) {
+			return permute(position);
+		}
+
+		int start = position - position % WINDOW;
+		if (start != windowStart) {
+			fillWindow(start);
+		}
+
+		return window[position - start];
+	}
+
+	// the index at the position in the order of the seed, walking values past the last index through again
+	int permute(int position) {
+		int value = position;
+		do {
+			value = encrypt(value);
+		} while (Integer.compareUnsigned(value, size) >= 0); // the top half can reach the sign bit
+
+		return value;
+	}
+
+	private int encrypt(int value) {
+		int left = value >>> halfBits;
+		int right = value & halfMask;
+
+		for (int key : keys) {
+			int next = left ^ ((int) mix(right ^ ((long) key << 32)) & halfMask);
+			left = right;
+			right = next;
+		}
+
+		return (left << halfBits) | right;
+	}
+
+	// the window starting at the position, its last track in place and the others picked to spread artists
+	private void fillWindow(int start) {
+		int count = Math.min(WINDOW, size - start);
+		for (int i = 0; i < count; i++) {
+			window[i] = permute(start + i);
+			artists[i] = artistOf(window[i]);
+		}
+
+		int previous = start > 0 ? artistOf(permute(start - 1)) : NO_ARTIST;
+		int last = artists[count - 1];
+
+		for (int slot = 0; slot < count - 1; slot++) {
+			swap(slot, pick(slot, count - 1, previous, last));
+			previous = artists[slot];
+		}
+
+		windowStart = start;
+	}
+
+	// of the tracks from the slot to the end whose artist differs from the one before, the first one of the artist with
+	// the most tracks left, so no artist is left over at the end of the window, else the slot itself
+	private int pick(int slot, int end, int previous, int last) {
+		// with two left, the one played second also has to differ from the last track of the window
+		if (end - slot == 2) {
+			if (!sameArtist(artists[slot], previous) && !sameArtist(artists[slot + 1], last)) {
+				return slot;
+			}
+			if (!sameArtist(artists[slot + 1], previous) && !sameArtist(artists[slot], last)) {
+				return slot + 1;
+			}
+		}
+
+		int picked = slot;
+		int pickedLeft = 0;
+		for (int i = slot; i < end; i++) {
+			if (sameArtist(artists[i], previous)) {
+				continue;
+			}
+
+			int left = sameArtist(artists[i], last) ? 1 : 0;
+			for (int j = slot; j < end; j++) {
+				left += sameArtist(artists[i], artists[j]) ? 1 : 0;
+			}
+			if (left > pickedLeft) {
+				picked = i;
+				pickedLeft = left;
+			}
+		}
+
+		return picked;
+	}
+
+	private int artistOf(int index) {
+		Track track = snapshot.getTrack(index);
+
+		return track != null ? track.getArtistId() : NO_ARTIST;
+	}
+
+	private void swap(int i, int j) {
+		int index = window[i];
+		window[i] = window[j];
+		window[j] = index;
+
+		int artist = artists[i];
+		artists[i] = artists[j];
+		artists[j] = artist;
+	}
+
+	private static boolean sameArtist(int artist, int other) {
+		return artist == other && artist != NO_ARTIST;
+	}
+
+	// finalizer of MurmurHash3
+	private static long mix(long value) {
+		value ^= value >>> 33;
+		value *= 0xff51afd7ed558ccdL;
+		value ^= value >>> 33;
+		value *= 0xc4ceb9fe1a85ec53L;
+		value ^= value >>> 33;
+
+		return value;
+	}
+}
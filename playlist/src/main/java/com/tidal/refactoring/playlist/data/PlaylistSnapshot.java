@@ -0,0 +1,79 @@
+package com.tidal.refactoring.playlist.data;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * The tracks of a playlist at one version, never changed once published. It can be read without the lock of the
+ * playlist, and the tracks read from it are copies that later changes do not affect.
+ */
+public class PlaylistSnapshot {
+
+	private final long version;
+	private final PlayListTrackStore playListTracks;
+	private final long rankEpoch;
+	private final int rankRebalances;
+
+	PlaylistSnapshot(long version, PlayListTrackStore playListTracks, long rankEpoch, int rankRebalances) {
+		this.version = version;
+		this.playListTracks = playListTracks;
+		this.rankEpoch = rankEpoch;
+		this.rankRebalances = rankRebalances;
+	}
+
+	public long getVersion() {
+		return version;
+	}
+
+	public int getNrOfTracks() {
+		return playListTracks.size();
+	}
+
+	/**
+	 * Read only view of the tracks, ordered by index
+	 */
+	public List<PlayListTrack> getPlayListTracks() {
+		return Collections.unmodifiableList(playListTracks);
+	}
+
+	/**
+	 * Tracks from the given index to the end, in index order
+	 */
+	public Iterator<PlayListTrack> getPlayListTracks(int fromIndex) {
+		return playListTracks.iterator(fromIndex);
+	}
+
+	/**
+	 * The Track of the track at the index, without copying the track
+	 */
+	public Track getTrack(int index) {
+		return playListTracks.getTrack(index);
+	}
+
+	/**
+	 * Index of the first track ranked after the given rank, in O(log n)
+	 */
+	public int indexAfterRank(long rank) {
+		return playListTracks.indexAfterRank(rank);
+	}
+
+	/**
+	 * Drawn anew whenever the playlist is loaded, ranks only compare within one epoch
+	 */
+	public long getRankEpoch() {
+		return rankEpoch;
+	}
+
+	public int getRankRebalances() {
+		return rankRebalances;
+	}
+
+	public float getDuration() {
+		return (float) playListTracks.getTotalDuration();
+	}
+
+	PlayListTrackStore getStore() {
+		return playListTracks;
+	}
+}
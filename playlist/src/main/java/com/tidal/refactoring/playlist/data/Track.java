@@ -1,7 +1,10 @@
 package com.tidal.refactoring.playlist.data;
 
+import java.io.Serializable;
 
-public class Track {
+public class Track implements Serializable {
+
+    private static final long serialVersionUID = -2270218420513453427L;
 
     private String title;
     private float duration;
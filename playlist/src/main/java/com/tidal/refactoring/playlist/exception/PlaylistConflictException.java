@@ -0,0 +1,27 @@
+package com.tidal.refactoring.playlist.exception;
+
+/**
+ * Thrown when a playlist was changed by someone else since the version the change was based on. Expected under
+ * concurrent changes, so it has no stack trace.
+ */
+public class PlaylistConflictException extends PlaylistException {
+
+	private static final long serialVersionUID = -2950410913650364384L;
+
+	private final long expectedVersion;
+	private final long actualVersion;
+
+	public PlaylistConflictException(String uuid, long expectedVersion, long actualVersion) {
+		super("Playlist " + uuid + " is at version " + actualVersion + ", expected version " + expectedVersion, false);
+		this.expectedVersion = expectedVersion;
+		this.actualVersion = actualVersion;
+	}
+
+	public long getExpectedVersion() {
+		return expectedVersion;
+	}
+
+	public long getActualVersion() {
+		return actualVersion;
+	}
+}
@@ -0,0 +1,21 @@
+package com.tidal.refactoring.playlist.exception;
+
+public class PlaylistException extends RuntimeException {
+
+	private static final long serialVersionUID = 759495431208011733L;
+
+	public PlaylistException(String s) {
+        super(s);
+    }
+
+	public PlaylistException(String message, Throwable cause) {
+		super(message, cause);
+	}
+
+	/**
+	 * @param writableStackTrace false for expected failures, which are cheaper to throw without a stack trace
+	 */
+	protected PlaylistException(String message, boolean writableStackTrace) {
+		super(message, null, false, writableStackTrace);
+	}
+}
@@ -0,0 +1,24 @@
+package com.tidal.refactoring.playlist.exception;
+
+/**
+ * Thrown when a request is invalid for the playlist it is made on. These are expected, so they have no stack trace.
+ */
+public class PlaylistRejectedException extends PlaylistException {
+
+	private static final long serialVersionUID = -4830155327218349371L;
+
+	public enum Reason {
+		TRACK_LIMIT_EXCEEDED, INVALID_INDEX, INVALID_PAGE, VERSION_NOT_KEPT
+	}
+
+	private final Reason reason;
+
+	public PlaylistRejectedException(Reason reason, String message) {
+		super(message, false);
+		this.reason = reason;
+	}
+
+	public Reason getReason() {
+		return reason;
+	}
+}
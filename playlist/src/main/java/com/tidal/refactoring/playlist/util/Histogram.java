@@ -0,0 +1,94 @@
+package com.tidal.refactoring.playlist.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Distribution of non negative values, such as latencies in nanoseconds or sizes. Every power of two is split into 4
+ * buckets, so a percentile is within 25% of the real value. Recording is lock free and allocation free.
+ */
+public class Histogram {
+
+	private static final int SUB_BUCKET_BITS = 2;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(64 * SUB_BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+	/**
+	 * Record the value, a negative one is recorded as 0
+	 */
+	public void record(long value) {
+		value = Math.max(0, value);
+
+		buckets.incrementAndGet(bucket(value));
+		count.increment();
+		sum.add(value);
+		max.accumulate(value);
+	}
+
+	public long getCount() {
+		return count.sum();
+	}
+
+	public long getSum() {
+		return sum.sum();
+	}
+
+	public long getMax() {
+		return max.get();
+	}
+
+	public double getMean() {
+		long countNow = count.sum();
+
+		return countNow == 0 ? 0 : (double) sum.sum() / countNow;
+	}
+
+	/**
+	 * Upper bound of the bucket of the value at the percentile, at most the max, 0 when nothing was recorded
+	 */
+	public long getPercentile(double percentile) {
+		long total = 0;
+		for (int i = 0; i < buckets.length(); i++) {
+			total += buckets.get(i);
+		}
+		long target = (long) Math.ceil(percentile / 100 * total);
+
+		long seen = 0;
+		for (int i = 0; i < buckets.length(); i++) {
+			seen += buckets.get(i);
+			if (seen >= target && seen > 0) {
+				return Math.min(upperBound(i), getMax());
+			}
+		}
+
+		return 0;
+	}
+
+	// values below SUB_BUCKETS have a bucket each, every power of two above is split in SUB_BUCKETS
+	static int bucket(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+	}
+
+	static long upperBound(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+
+		int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		long width = 1L << (exponent - SUB_BUCKET_BITS);
+
+		return (1L << exponent) + (bucket % SUB_BUCKETS + 1) * width - 1;
+	}
+}
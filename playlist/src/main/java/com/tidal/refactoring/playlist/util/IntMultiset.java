@@ -0,0 +1,154 @@
+package com.tidal.refactoring.playlist.util;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash multiset of primitive ints, so membership checks on track ids need no boxing.
+ *
+ * Every value keeps a count, so a value added twice is only gone after it has been removed twice.
+ */
+public class IntMultiset {
+
+	private static final int DEFAULT_CAPACITY = 16;
+
+	private int[] values;
+	private int[] counts; // 0 marks an empty slot
+	private int size;
+
+	public IntMultiset() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	public IntMultiset(int expectedSize) {
+		int capacity = Integer.highestOneBit(Math.max(DEFAULT_CAPACITY, expectedSize * 2) - 1) << 1;
+
+		values = new int[capacity];
+		counts = new int[capacity];
+	}
+
+	/**
+	 * Number of distinct values
+	 */
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public boolean contains(int value) {
+		return counts[slot(value)] > 0;
+	}
+
+	public int count(int value) {
+		return counts[slot(value)];
+	}
+
+	/**
+	 * @return true if the value was not present before
+	 */
+	public boolean add(int value) {
+		int slot = slot(value);
+
+		if (counts[slot] > 0) {
+			counts[slot]++;
+			return false;
+		}
+
+		values[slot] = value;
+		counts[slot] = 1;
+		size++;
+
+		// keep the load factor at most 1/2, so probe sequences stay short
+		if (size * 2 > values.length) {
+			resize(values.length * 2);
+		}
+
+		return true;
+	}
+
+	/**
+	 * Remove one occurrence of the value
+	 *
+	 * @return true if this was the last occurrence of the value
+	 */
+	public boolean remove(int value) {
+		int slot = slot(value);
+
+		if (counts[slot] == 0) {
+			return false;
+		}
+
+		if (--counts[slot] > 0) {
+			return false;
+		}
+
+		size--;
+		closeGap(slot);
+
+		return true;
+	}
+
+	public void clear() {
+		Arrays.fill(counts, 0);
+		size = 0;
+	}
+
+	// slot holding the value, or the empty slot where it would be inserted
+	private int slot(int value) {
+		int mask = values.length - 1;
+		int slot = hash(value) & mask;
+
+		while (counts[slot] > 0 && values[slot] != value) {
+			slot = (slot + 1) & mask;
+		}
+
+		return slot;
+	}
+
+	// backward shift deletion, moves later entries of the probe sequence into the freed slot
+	private void closeGap(int freed) {
+		int mask = values.length - 1;
+		int slot = freed;
+
+		while (true) {
+			slot = (slot + 1) & mask;
+
+			if (counts[slot] == 0) {
+				return;
+			}
+
+			int home = hash(values[slot]) & mask;
+			boolean movable = freed <= slot ? (home <= freed || home > slot) : (home <= freed && home > slot);
+
+			if (movable) {
+				values[freed] = values[slot];
+				counts[freed] = counts[slot];
+				counts[slot] = 0;
+				freed = slot;
+			}
+		}
+	}
+
+	private void resize(int capacity) {
+		int[] oldValues = values;
+		int[] oldCounts = counts;
+
+		values = new int[capacity];
+		counts = new int[capacity];
+
+		for (int i = 0; i < oldValues.length; i++) {
+			if (oldCounts[i] > 0) {
+				int slot = slot(oldValues[i]);
+				values[slot] = oldValues[i];
+				counts[slot] = oldCounts[i];
+			}
+		}
+	}
+
+	private static int hash(int value) {
+		int h = value * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+}
@@ -0,0 +1,59 @@
+package com.tidal.refactoring.playlist.util;
+
+import com.google.inject.Singleton;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In process counters and histograms by name, shared by everything that records metrics. Users look their metrics up
+ * once and keep them, recording is then only an addition.
+ */
+@Singleton
+public class MetricsRegistry {
+
+	private final ConcurrentMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, Histogram> histograms = new ConcurrentHashMap<>();
+
+	/**
+	 * The counter with the name, created at its first use
+	 */
+	public LongAdder counter(String name) {
+		return counters.computeIfAbsent(name, key -> new LongAdder());
+	}
+
+	/**
+	 * The histogram with the name, created at its first use
+	 */
+	public Histogram histogram(String name) {
+		return histograms.computeIfAbsent(name, key -> new Histogram());
+	}
+
+	/**
+	 * All current values by name, for exporting. A histogram is exported as name.count, name.sum, name.max and its
+	 * name.p50, name.p90, name.p99 and name.p999 percentiles.
+	 */
+	public SortedMap<String, Long> snapshot() {
+		SortedMap<String, Long> snapshot = new TreeMap<>();
+
+		counters.forEach((name, counter) -> snapshot.put(name, counter.sum()));
+		for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+			String name = entry.getKey();
+			Histogram histogram = entry.getValue();
+
+			snapshot.put(name + ".count", histogram.getCount());
+			snapshot.put(name + ".sum", histogram.getSum());
+			snapshot.put(name + ".max", histogram.getMax());
+			snapshot.put(name + ".p50", histogram.getPercentile(50));
+			snapshot.put(name + ".p90", histogram.getPercentile(90));
+			snapshot.put(name + ".p99", histogram.getPercentile(99));
+			snapshot.put(name + ".p999", histogram.getPercentile(99.9));
+		}
+
+		return snapshot;
+	}
+}
@@ -0,0 +1,312 @@
+package com.tidal.refactoring.playlist;
+
+import com.google.common.collect.Lists;
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+import com.tidal.refactoring.playlist.dao.PlaylistDaoBean;
+import com.tidal.refactoring.playlist.data.PlayListTrack;
+import com.tidal.refactoring.playlist.data.PlaylistEdit;
+import com.tidal.refactoring.playlist.data.PlaylistEditResult;
+import com.tidal.refactoring.playlist.data.Track;
+import com.tidal.refactoring.playlist.exception.PlaylistException;
+import com.tidal.refactoring.playlist.exception.PlaylistRejectedException;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Guice;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+@Guice(modules = TestBusinessModule.class)
+public class AsyncPlaylistBusinessBeanTest {
+
+	@Inject
+	PlaylistBusinessBean playlistBusinessBean;
+
+	@Inject
+	PlaylistDaoBean playlistDaoBean;
+
+	@Inject
+	@Named("defaultPlaylistTrackSize")
+	int defaultPlaylistTrackSize;
+
+	private ExecutorService executor;
+	private AsyncPlaylistBusinessBean asyncPlaylistBusinessBean;
+
+	@BeforeMethod
+	public void setUp() {
+		executor = Executors.newFixedThreadPool(4);
+		asyncPlaylistBusinessBean = new AsyncPlaylistBusinessBean(playlistBusinessBean, executor);
+	}
+
+	@AfterMethod
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void testChangesOfAPlaylistRunInOrder() throws Exception {
+		List<String> uuids = Lists.newArrayList(UUID.randomUUID().toString(), UUID.randomUUID().toString());
+		List<CompletableFuture<?>> changes = new ArrayList<>();
+
+		// every add appends at the index of the end after the adds before it
+		for (int i = 0; i < 100; i++) {
+			for (String uuid : uuids) {
+				changes.add(asyncPlaylistBusinessBean.addTracks(uuid,
+						Lists.newArrayList(createTrack(100000 + i)), defaultPlaylistTrackSize + i));
+			}
+		}
+		CompletableFuture.allOf(changes.toArray(new CompletableFuture<?>[0])).get(10, TimeUnit.SECONDS);
+
+		for (String uuid : uuids) {
+			List<Integer> trackIds = asyncPlaylistBusinessBean.getTracks(uuid, defaultPlaylistTrackSize, 1000).get()
+					.stream().map(PlayListTrack::getTrackId).collect(Collectors.toList());
+
+			assertEquals(trackIds.size(), 100);
+			for (int i = 0; i < 100; i++) {
+				assertEquals(trackIds.get(i).intValue(), 100000 + i);
+			}
+		}
+
+		assertEquals(asyncPlaylistBusinessBean.getCompletedCount(), 202);
+		assertTrue(asyncPlaylistBusinessBean.getAverageQueueTime() > 0);
+		awaitIdle();
+	}
+
+	@Test
+	public void testBacklogOfABusyPlaylist() throws Exception {
+		ExecutorService singleThread = Executors.newSingleThreadExecutor();
+		try {
+			AsyncPlaylistBusinessBean asyncPlaylistBusinessBean = new AsyncPlaylistBusinessBean(playlistBusinessBean,
+					singleThread);
+			CountDownLatch blocked = block(singleThread);
+
+			String uuid = UUID.randomUUID().toString();
+			asyncPlaylistBusinessBean.addTracks(uuid, Lists.newArrayList(createTrack(1)), 0);
+			asyncPlaylistBusinessBean.removeTracks(uuid, Lists.newArrayList(0));
+			CompletableFuture<List<PlayListTrack>> read = asyncPlaylistBusinessBean.getTracks(uuid, 0, 1);
+
+			assertEquals(asyncPlaylistBusinessBean.getBacklog(uuid), 3);
+			assertEquals(asyncPlaylistBusinessBean.getActivePlaylistCount(), 1);
+
+			blocked.countDown();
+			assertEquals(read.get(10, TimeUnit.SECONDS).get(0).getTrackId(), playlistBusinessBean
+					.getTracks(uuid, 0, 1).get(0).getTrackId());
+		} finally {
+			singleThread.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testFailedChangeDoesNotStopTheMailbox() throws Exception {
+		String uuid = UUID.randomUUID().toString();
+
+		List<Track> tooMany = new ArrayList<>();
+		for (int i = 0; i < 500; i++) {
+			tooMany.add(createTrack(1000 + i));
+		}
+
+		CompletableFuture<List<PlayListTrack>> failed = asyncPlaylistBusinessBean.addTracks(uuid, tooMany, 0);
+		CompletableFuture<List<PlayListTrack>> added = asyncPlaylistBusinessBean.addTracks(uuid,
+				Lists.newArrayList(createTrack(100000)), 0);
+
+		try {
+			failed.get(10, TimeUnit.SECONDS);
+			fail("Expected the change over the track limit to fail");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof PlaylistException);
+		}
+		assertEquals(added.get(10, TimeUnit.SECONDS).size(), 1);
+	}
+
+	@Test
+	public void testErrorDoesNotStopTheMailbox() throws Exception {
+		PlaylistDaoBean failingDao = new PlaylistDaoBean() {
+			@Override
+			public List<PlaylistEditResult> applyEditBatches(String uuid, List<List<PlaylistEdit>> batches) {
+				throw new AssertionError("Failed to apply");
+			}
+		};
+		AsyncPlaylistBusinessBean asyncPlaylistBusinessBean = new AsyncPlaylistBusinessBean(
+				new PlaylistBusinessBean(failingDao), executor);
+		String uuid = UUID.randomUUID().toString();
+
+		CompletableFuture<List<PlayListTrack>> failed = asyncPlaylistBusinessBean.addTracks(uuid,
+				Lists.newArrayList(createTrack(100000)), 0);
+		CompletableFuture<List<PlayListTrack>> read = asyncPlaylistBusinessBean.getTracks(uuid, 0, 10);
+
+		try {
+			failed.get(10, TimeUnit.SECONDS);
+			fail("Expected the change to fail with the error");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof AssertionError);
+		}
+		assertTrue(read.get(10, TimeUnit.SECONDS).isEmpty());
+		for (int i = 0; i < 100 && asyncPlaylistBusinessBean.getActivePlaylistCount() > 0; i++) {
+			Thread.sleep(10);
+		}
+		assertEquals(asyncPlaylistBusinessBean.getActivePlaylistCount(), 0);
+	}
+
+	@Test
+	public void testAddValidatedLikeTheSyncAdd() throws Exception {
+		String uuid = UUID.randomUUID().toString();
+
+		try {
+			asyncPlaylistBusinessBean.addTracks(uuid, Lists.newArrayList(createTrack(100000)), -2)
+					.get(10, TimeUnit.SECONDS);
+			fail("Expected the add at a negative index to be rejected");
+		} catch (ExecutionException e) {
+			assertEquals(((PlaylistRejectedException) e.getCause()).getReason(),
+					PlaylistRejectedException.Reason.INVALID_INDEX);
+		}
+		awaitIdle();
+	}
+
+	@Test
+	public void testWaitingEditsAreAppliedAsOneChange() throws Exception {
+		ExecutorService singleThread = Executors.newSingleThreadExecutor();
+		try {
+			AsyncPlaylistBusinessBean asyncPlaylistBusinessBean = new AsyncPlaylistBusinessBean(playlistBusinessBean,
+					singleThread);
+			String uuid = UUID.randomUUID().toString();
+			long version = playlistDaoBean.getPlaylistByUUID(uuid).getVersion();
+			CountDownLatch blocked = block(singleThread);
+
+			List<CompletableFuture<List<PlayListTrack>>> adds = new ArrayList<>();
+			for (int i = 0; i < 10; i++) {
+				adds.add(asyncPlaylistBusinessBean.addTracks(uuid,
+						Lists.newArrayList(createTrack(100000 + 2 * i), createTrack(100001 + 2 * i)), 0));
+			}
+			CompletableFuture<List<PlayListTrack>> removed = asyncPlaylistBusinessBean.removeTracks(uuid,
+					Lists.newArrayList(0));
+			CompletableFuture<PlaylistEditResult> edited = asyncPlaylistBusinessBean.applyEdits(uuid,
+					Lists.newArrayList(PlaylistEdit.add(Lists.newArrayList(createTrack(200000)), -1)));
+			blocked.countDown();
+
+			for (int i = 0; i < 10; i++) {
+				List<PlayListTrack> added = adds.get(i).get(10, TimeUnit.SECONDS);
+				assertEquals(added.size(), 2);
+				assertEquals(added.get(0).getTrackId(), 100000 + 2 * i);
+			}
+			// the last add put its tracks first
+			assertEquals(removed.get(10, TimeUnit.SECONDS).get(0).getTrackId(), 100018);
+
+			PlaylistEditResult result = edited.get(10, TimeUnit.SECONDS);
+			assertEquals(result.getAdded().size(), 1);
+			assertEquals(result.getVersion(), version + 1);
+			assertEquals(result.getNrOfTracks(), defaultPlaylistTrackSize + 20);
+			assertEquals(asyncPlaylistBusinessBean.getCoalescedChangeCount(), 1);
+			assertEquals(asyncPlaylistBusinessBean.getAverageCoalescedSize(), 12.0);
+		} finally {
+			singleThread.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testRejectedEditDoesNotAffectTheOthers() throws Exception {
+		ExecutorService singleThread = Executors.newSingleThreadExecutor();
+		try {
+			AsyncPlaylistBusinessBean asyncPlaylistBusinessBean = new AsyncPlaylistBusinessBean(playlistBusinessBean,
+					singleThread);
+			String uuid = UUID.randomUUID().toString();
+			CountDownLatch blocked = block(singleThread);
+
+			// together over the track limit, only the one that would cross it is rejected
+			CompletableFuture<List<PlayListTrack>> first = asyncPlaylistBusinessBean.addTracks(uuid,
+					createTracks(100000, 100), 0);
+			CompletableFuture<List<PlayListTrack>> second = asyncPlaylistBusinessBean.addTracks(uuid,
+					createTracks(200000, 100), 0);
+			CompletableFuture<List<PlayListTrack>> third = asyncPlaylistBusinessBean.addTracks(uuid,
+					createTracks(300000, 10), 0);
+			blocked.countDown();
+
+			assertEquals(first.get(10, TimeUnit.SECONDS).size(), 100);
+			try {
+				second.get(10, TimeUnit.SECONDS);
+				fail("Expected the add over the track limit to fail");
+			} catch (ExecutionException e) {
+				assertTrue(e.getCause() instanceof PlaylistException);
+			}
+			assertEquals(third.get(10, TimeUnit.SECONDS).size(), 10);
+			assertEquals(playlistBusinessBean.getTracks(uuid, 0, 1000).size(), defaultPlaylistTrackSize + 110);
+		} finally {
+			singleThread.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testWindowGathersEdits() throws Exception {
+		ScheduledExecutorService scheduled = Executors.newScheduledThreadPool(2);
+		try {
+			AsyncPlaylistBusinessBean asyncPlaylistBusinessBean = new AsyncPlaylistBusinessBean(playlistBusinessBean,
+					scheduled, 32, TimeUnit.MILLISECONDS.toMicros(200));
+			String uuid = UUID.randomUUID().toString();
+
+			List<CompletableFuture<List<PlayListTrack>>> adds = new ArrayList<>();
+			for (int i = 0; i < 5; i++) {
+				adds.add(asyncPlaylistBusinessBean.addTracks(uuid, createTracks(100000 + i * 10, 1), -1));
+			}
+			CompletableFuture.allOf(adds.toArray(new CompletableFuture<?>[0])).get(10, TimeUnit.SECONDS);
+
+			assertEquals(asyncPlaylistBusinessBean.getCoalescedChangeCount(), 1);
+		} finally {
+			scheduled.shutdownNow();
+		}
+	}
+
+	// keeps the only thread of the executor busy until counted down
+	private static CountDownLatch block(ExecutorService singleThread) {
+		CountDownLatch blocked = new CountDownLatch(1);
+		singleThread.execute(() -> {
+			try {
+				blocked.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+
+		return blocked;
+	}
+
+	// the futures complete just before their mailbox is dropped
+	private void awaitIdle() throws InterruptedException {
+		for (int i = 0; i < 100 && asyncPlaylistBusinessBean.getActivePlaylistCount() > 0; i++) {
+			Thread.sleep(10);
+		}
+		assertEquals(asyncPlaylistBusinessBean.getActivePlaylistCount(), 0);
+	}
+
+	private static List<Track> createTracks(int firstId, int count) {
+		List<Track> tracks = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			tracks.add(createTrack(firstId + i));
+		}
+
+		return tracks;
+	}
+
+	private static Track createTrack(int id) {
+		Track track = new Track();
+		track.setArtistId(4);
+		track.setTitle("Track " + id);
+		track.setId(id);
+
+		return track;
+	}
+}
@@ -0,0 +1,893 @@
+package com.tidal.refactoring.playlist;
+
+import com.google.common.collect.Lists;
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+import com.google.inject.name.Names;
+import com.tidal.refactoring.playlist.dao.PlaylistCache;
+import com.tidal.refactoring.playlist.dao.PlaylistChangeListener;
+import com.tidal.refactoring.playlist.dao.PlaylistDaoBean;
+import com.tidal.refactoring.playlist.dao.ShardedPlaylistDao;
+import com.tidal.refactoring.playlist.dao.WalPlaylistDao;
+import com.tidal.refactoring.playlist.data.PlayList;
+import com.tidal.refactoring.playlist.data.PlayListTrack;
+import com.tidal.refactoring.playlist.data.PlaylistAddResult;
+import com.tidal.refactoring.playlist.data.PlaylistChanges;
+import com.tidal.refactoring.playlist.data.PlaylistDelta;
+import com.tidal.refactoring.playlist.data.PlaylistEdit;
+import com.tidal.refactoring.playlist.data.PlaylistEditResult;
+import com.tidal.refactoring.playlist.data.PlaylistPage;
+import com.tidal.refactoring.playlist.data.Track;
+import com.tidal.refactoring.playlist.exception.PlaylistConflictException;
+import com.tidal.refactoring.playlist.exception.PlaylistException;
+import com.tidal.refactoring.playlist.exception.PlaylistRejectedException;
+import com.tidal.refactoring.playlist.util.MetricsRegistry;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Guice;
+import org.testng.annotations.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+@Guice(modules = TestBusinessModule.class)
+public class PlaylistBusinessBeanTest {
+
+	@Inject
+	PlaylistBusinessBean playlistBusinessBean;
+
+	@Inject
+	PlaylistDaoBean playlistDaoBean;
+
+	@Inject
+	MetricsRegistry metricsRegistry;
+
+	@Inject
+	@Named("defaultPlaylistTrackSize")
+	int defaultPlaylistTrackSize;
+
+	private String uuid;
+	private List<Track> trackList;
+
+	@BeforeMethod
+	public void setUp() throws Exception {
+		uuid = UUID.randomUUID().toString();
+		trackList = new ArrayList<Track>();
+
+		Track track = createTrack(4, "A brand new track", 76868);
+
+		trackList.add(track);
+	}
+
+	private Track createTrack(int artistId, String title, int id) {
+		Track track = new Track();
+		track.setArtistId(artistId);
+		track.setTitle(title);
+		track.setId(id);
+
+		return track;
+	}
+
+	@AfterMethod
+	public void tearDown() throws Exception {
+
+	}
+
+	@Test
+	public void testAddSingleTrackInMiddle() throws Exception {
+		List<PlayListTrack> playListTracksAdded = playlistBusinessBean.addTracks(uuid, trackList, 5);
+
+		assertEquals(1, playListTracksAdded.size());
+		assertEquals(76868, playListTracksAdded.get(0).getTrackId());
+		assertEquals(uuid, playListTracksAdded.get(0).getTrackPlayListUuid());
+
+		PlayList playlist = playlistDaoBean.getPlaylistByUUID(uuid);
+		List<PlayListTrack> playlistTracks = new ArrayList<>(playlist.getPlayListTracks());
+		assertEquals(defaultPlaylistTrackSize + trackList.size(), playlist.getNrOfTracks());
+		assertEquals(defaultPlaylistTrackSize + trackList.size(), playlistTracks.size());
+
+		Collections.sort(playlistTracks);
+		PlayListTrack playListTrackAdded = playlistTracks.get(5);
+
+		assertEquals(trackList.get(0), playListTrackAdded.getTrack());
+		assertEquals(5, playListTrackAdded.getIndex());
+	}
+
+	@Test
+	public void testAddMultipleTracksAtEnd() throws Exception {
+		trackList.add(createTrack(5, "Another new track", 76869));
+
+		List<PlayListTrack> playListTracksAdded = playlistBusinessBean.addTracks(uuid, trackList,
+				defaultPlaylistTrackSize + 10);
+
+		assertEquals(2, playListTracksAdded.size());
+		assertEquals(76868, playListTracksAdded.get(0).getTrackId());
+		assertEquals(uuid, playListTracksAdded.get(0).getTrackPlayListUuid());
+
+		assertEquals(76869, playListTracksAdded.get(1).getTrackId());
+		assertEquals(uuid, playListTracksAdded.get(1).getTrackPlayListUuid());
+
+		PlayList playlist = playlistDaoBean.getPlaylistByUUID(uuid);
+		List<PlayListTrack> playlistTracks = new ArrayList<>(playlist.getPlayListTracks());
+
+		assertEquals(defaultPlaylistTrackSize + trackList.size(), playlist.getNrOfTracks());
+		assertEquals(defaultPlaylistTrackSize + trackList.size(), playlistTracks.size());
+
+		Collections.sort(playlistTracks);
+		PlayListTrack playListTrackAdded1 = playlistTracks.get(defaultPlaylistTrackSize);
+		PlayListTrack playListTrackAdded2 = playlistTracks.get(defaultPlaylistTrackSize + 1);
+
+		assertEquals(trackList.get(0), playListTrackAdded1.getTrack());
+		assertEquals(defaultPlaylistTrackSize, playListTrackAdded1.getIndex());
+
+		assertEquals(trackList.get(1), playListTrackAdded2.getTrack());
+		assertEquals(defaultPlaylistTrackSize + 1, playListTrackAdded2.getIndex());
+	}
+
+	@Test
+	public void testAddNullTracks() {
+		List<PlayListTrack> playListTracksAdded = playlistBusinessBean.addTracks(uuid, null, defaultPlaylistTrackSize);
+
+		assertEquals(0, playListTracksAdded.size());
+	}
+
+	@Test
+	public void testAddNoTracks() {
+		List<PlayListTrack> playListTracksAdded = playlistBusinessBean.addTracks(uuid, Collections.emptyList(),
+				defaultPlaylistTrackSize);
+
+		assertEquals(0, playListTracksAdded.size());
+	}
+
+	@Test
+	public void testAddAtInvalidIndexIsRejected() {
+		try {
+			playlistBusinessBean.addTracks(uuid, trackList, -2);
+			fail("Expected the add at a negative index to be rejected");
+		} catch (PlaylistRejectedException e) {
+			assertEquals(e.getReason(), PlaylistRejectedException.Reason.INVALID_INDEX);
+		}
+	}
+
+	@Test
+	public void testExistingTracksDoNotCountAgainstTheLimit() {
+		PlayList playlist = playlistDaoBean.getPlaylistByUUID(uuid);
+		List<Track> tracks = new ArrayList<>();
+		playlist.getPlayListTracks().forEach(playListTrack -> tracks.add(playListTrack.getTrack()));
+		for (int i = 0; playlist.getNrOfTracks() + i < PlaylistBusinessBean.MAX_TRACKS; i++) {
+			tracks.add(createTrack(5, "new track " + i, 100000 + i));
+		}
+
+		// as for an add in a batch of edits, only the tracks that are really added are counted
+		List<PlayListTrack> added = playlistBusinessBean.addTracks(uuid, tracks, -1);
+		assertEquals(added.size(), PlaylistBusinessBean.MAX_TRACKS - defaultPlaylistTrackSize);
+		assertEquals(playlist.getNrOfTracks(), PlaylistBusinessBean.MAX_TRACKS);
+	}
+
+	@Test(expectedExceptions = PlaylistException.class)
+	public void testAddingOutOfBoundTracks() {
+		for (int i = 0; i < 150; i++) {
+			trackList.add(createTrack(i, "new track " + i, i));
+		}
+
+		playlistBusinessBean.addTracks(uuid, trackList, defaultPlaylistTrackSize);
+	}
+
+	@Test
+	public void testAddDuplicateTracks() {
+		trackList.add(trackList.get(0));
+
+		List<PlayListTrack> playListTracksAdded = playlistBusinessBean.addTracks(uuid, trackList, 2);
+
+		assertEquals(1, playListTracksAdded.size());
+		assertEquals(76868, playListTracksAdded.get(0).getTrackId());
+		assertEquals(uuid, playListTracksAdded.get(0).getTrackPlayListUuid());
+	}
+
+	@Test
+	public void testAddExistingTracks() {
+		playlistBusinessBean.addTracks(uuid, null, defaultPlaylistTrackSize);
+
+		PlayListTrack playlistTrack = playlistDaoBean.getPlaylistByUUID(uuid).getPlayListTracks().iterator().next();
+		trackList.add(playlistTrack.getTrack());
+		List<PlayListTrack> playListTracksAdded = playlistBusinessBean.addTracks(uuid, trackList,
+				defaultPlaylistTrackSize);
+
+		assertEquals(1, playListTracksAdded.size());
+
+		assertEquals(76868, playListTracksAdded.get(0).getTrackId());
+		assertEquals(uuid, playListTracksAdded.get(0).getTrackPlayListUuid());
+	}
+
+	@Test
+	public void testRemoveIndex() {
+		playlistBusinessBean.addTracks(uuid, null, defaultPlaylistTrackSize);
+		List<PlayListTrack> removedTracks = playlistBusinessBean.removeTracks(uuid, Lists.newArrayList(22));
+
+		assertEquals(1, removedTracks.size());
+		assertEquals(22, removedTracks.get(0).getIndex());
+
+		PlayList playlist = playlistDaoBean.getPlaylistByUUID(uuid);
+		List<PlayListTrack> playlistTracks = new ArrayList<>(playlist.getPlayListTracks());
+		assertEquals(defaultPlaylistTrackSize - removedTracks.size(), playlist.getNrOfTracks());
+		assertEquals(defaultPlaylistTrackSize - removedTracks.size(), playlistTracks.size());
+
+		Collections.sort(playlistTracks);
+
+		assertEquals(defaultPlaylistTrackSize - removedTracks.size() - 1,
+				playlistTracks.get(playlistTracks.size() - 1).getIndex());
+	}
+
+	@Test
+	public void testRemoveNullTracks() {
+		playlistBusinessBean.addTracks(uuid, null, defaultPlaylistTrackSize);
+		List<PlayListTrack> removedTracks = playlistBusinessBean.removeTracks(uuid, null);
+
+		assertEquals(0, removedTracks.size());
+	}
+
+	@Test
+	public void testRemoveNoTracks() {
+		playlistBusinessBean.addTracks(uuid, null, defaultPlaylistTrackSize);
+		List<PlayListTrack> removedTracks = playlistBusinessBean.removeTracks(uuid, Collections.emptyList());
+
+		assertEquals(0, removedTracks.size());
+	}
+
+	@Test(expectedExceptions = PlaylistException.class)
+	public void testRemoveInvalidIndexes() {
+		playlistBusinessBean.addTracks(uuid, null, defaultPlaylistTrackSize);
+		playlistBusinessBean.removeTracks(uuid, Lists.newArrayList(1000));
+	}
+
+	@Test
+	public void testRemoveDuplicateIndexes() {
+		playlistBusinessBean.addTracks(uuid, null, defaultPlaylistTrackSize);
+
+		List<PlayListTrack> removedTracks = playlistBusinessBean.removeTracks(uuid, Lists.newArrayList(0, 0));
+
+		assertEquals(1, removedTracks.size());
+		assertEquals(0, removedTracks.get(0).getIndex());
+
+		PlayList playlist = playlistDaoBean.getPlaylistByUUID(uuid);
+
+		assertEquals(defaultPlaylistTrackSize - 1, playlist.getNrOfTracks());
+		assertEquals(defaultPlaylistTrackSize - 1, playlist.getPlayListTracks().size());
+	}
+
+	@Test
+	public void testRemoveMultipleIndexes() {
+		List<PlayListTrack> originalTracks = new ArrayList<>(playlistDaoBean.getPlaylistByUUID(uuid).getPlayListTracks());
+
+		List<PlayListTrack> removedTracks = playlistBusinessBean.removeTracks(uuid, Lists.newArrayList(40, 3, 17));
+
+		assertEquals(3, removedTracks.size());
+		assertEquals(originalTracks.get(3), removedTracks.get(0));
+		assertEquals(originalTracks.get(17), removedTracks.get(1));
+		assertEquals(originalTracks.get(40), removedTracks.get(2));
+
+		List<PlayListTrack> playlistTracks = playlistDaoBean.getPlaylistByUUID(uuid).getPlayListTracks();
+		assertEquals(defaultPlaylistTrackSize - 3, playlistTracks.size());
+
+		for (int i = 0; i < playlistTracks.size(); i++) {
+			assertEquals(i, playlistTracks.get(i).getIndex());
+		}
+	}
+
+	@Test
+	public void testAddTrackInMiddleOnlyRanksAddedTrack() {
+		PlayList playlist = playlistDaoBean.getPlaylistByUUID(uuid);
+		List<Long> originalRanks = new ArrayList<>();
+		for (PlayListTrack playListTrack : playlist.getPlayListTracks()) {
+			originalRanks.add(playListTrack.getRank());
+		}
+
+		PlayListTrack added = playlistBusinessBean.addTracks(uuid, trackList, 5).get(0);
+
+		List<PlayListTrack> playlistTracks = playlist.getPlayListTracks();
+		assertTrue(originalRanks.get(4) < added.getRank() && added.getRank() < originalRanks.get(5));
+		assertEquals(5, playlist.indexOf(added));
+		assertEquals(0, playlist.getRankRebalances());
+
+		for (int i = 0; i < playlistTracks.size(); i++) {
+			int originalIndex = i < 5 ? i : i - 1;
+			if (i != 5) {
+				assertEquals((long) originalRanks.get(originalIndex), playlistTracks.get(i).getRank());
+			}
+			assertEquals(i, playlistTracks.get(i).getIndex());
+		}
+	}
+
+	@Test
+	public void testAddTracksAtHeadRebalancesRanksWhenGapRunsOut() {
+		PlayList playlist = playlistDaoBean.getPlaylistByUUID(uuid);
+
+		for (int i = 0; i < 40; i++) {
+			playlistBusinessBean.addTracks(uuid, Lists.newArrayList(createTrack(i, "head track " + i, 90000 + i)), 0);
+		}
+
+		assertEquals(1, playlist.getRankRebalances());
+
+		List<PlayListTrack> playlistTracks = playlist.getPlayListTracks();
+		for (int i = 1; i < playlistTracks.size(); i++) {
+			assertTrue(playlistTracks.get(i - 1).getRank() < playlistTracks.get(i).getRank());
+		}
+		assertEquals(90039, playlistTracks.get(0).getTrackId());
+	}
+
+	@Test
+	public void testAddTrackAgainAfterRemovingIt() {
+		playlistBusinessBean.addTracks(uuid, trackList, 0);
+
+		assertEquals(0, playlistBusinessBean.addTracks(uuid, Lists.newArrayList(createTrack(4, "Same id", 76868)), 0)
+				.size());
+
+		playlistBusinessBean.removeTracks(uuid, Lists.newArrayList(0));
+
+		assertEquals(1, playlistBusinessBean.addTracks(uuid, trackList, 0).size());
+	}
+
+	@Test
+	public void testAddTracksAtExpectedVersion() {
+		long version = playlistDaoBean.getPlaylistByUUID(uuid).getVersion();
+
+		List<PlayListTrack> playListTracksAdded = playlistBusinessBean.addTracks(uuid, trackList, 0, version);
+
+		assertEquals(1, playListTracksAdded.size());
+		assertEquals(version + 1, playlistDaoBean.getPlaylistByUUID(uuid).getVersion());
+	}
+
+	@Test(expectedExceptions = PlaylistConflictException.class)
+	public void testRemoveTracksAtStaleVersion() {
+		long version = playlistDaoBean.getPlaylistByUUID(uuid).getVersion();
+		playlistBusinessBean.addTracks(uuid, trackList, 0);
+
+		playlistBusinessBean.removeTracks(uuid, Lists.newArrayList(0), version);
+	}
+
+	@Test
+	public void testRemoveTracksAtStaleVersionWithRetry() {
+		long version = playlistDaoBean.getPlaylistByUUID(uuid).getVersion();
+		PlayListTrack first = playlistDaoBean.getPlaylistTracks(uuid).get(0);
+		playlistBusinessBean.addTracks(uuid, trackList, 0);
+
+		// the track that was at index 0 in the expected version, not the one there now
+		List<PlayListTrack> removedTracks = playlistBusinessBean.removeTracks(uuid, Lists.newArrayList(0), version, 1);
+
+		assertEquals(1, removedTracks.size());
+		assertEquals(first.getId(), removedTracks.get(0).getId());
+		assertEquals(76868, playlistDaoBean.getPlaylistTracks(uuid).get(0).getTrackId());
+		assertEquals(version + 2, playlistDaoBean.getPlaylistByUUID(uuid).getVersion());
+	}
+
+	@Test
+	public void testRetriedRemoveLeavesOutTracksRemovedSince() {
+		playlistBusinessBean.addTracks(uuid, Lists.newArrayList(createTrack(5, "First", 76870),
+				createTrack(5, "Second", 76871)), 0);
+		long version = playlistDaoBean.getPlaylistByUUID(uuid).getVersion();
+		playlistBusinessBean.removeTracks(uuid, Lists.newArrayList(0));
+
+		List<PlayListTrack> removedTracks = playlistBusinessBean.removeTracks(uuid, Lists.newArrayList(0, 1), version,
+				1);
+
+		assertEquals(1, removedTracks.size());
+		assertEquals(76871, removedTracks.get(0).getTrackId());
+		assertEquals(defaultPlaylistTrackSize, playlistDaoBean.getPlaylistByUUID(uuid).getNrOfTracks());
+	}
+
+	@Test(expectedExceptions = PlaylistConflictException.class)
+	public void testRetriedRemoveOfMovedTrackConflicts() {
+		long version = playlistDaoBean.getPlaylistByUUID(uuid).getVersion();
+		playlistBusinessBean.moveTracks(uuid, Lists.newArrayList(0), 5);
+
+		playlistBusinessBean.removeTracks(uuid, Lists.newArrayList(0), version, 1);
+	}
+
+	@Test
+	public void testAddTracksAtStaleVersionWithRetry() {
+		long version = playlistDaoBean.getPlaylistByUUID(uuid).getVersion();
+		PlayListTrack third = playlistDaoBean.getPlaylistTracks(uuid).get(2);
+		playlistBusinessBean.addTracks(uuid, Lists.newArrayList(createTrack(5, "Another new track", 76869)), 0);
+
+		// still added before the track that was at index 2 in the expected version
+		List<PlayListTrack> added = playlistBusinessBean.addTracks(uuid, trackList, 2, version, 1);
+
+		assertEquals(1, added.size());
+		List<PlayListTrack> playlistTracks = playlistDaoBean.getPlaylistTracks(uuid);
+		assertEquals(76868, playlistTracks.get(3).getTrackId());
+		assertEquals(third.getId(), playlistTracks.get(4).getId());
+	}
+
+	@Test
+	public void testUncontendedVersionedChangeTakesNoLock() {
+		PlaylistDaoBean dao = new PlaylistDaoBean();
+		PlaylistBusinessBean businessBean = new PlaylistBusinessBean(dao);
+		List<Boolean> locked = new ArrayList<>();
+		dao.addChangeListener(new PlaylistChangeListener() {
+			@Override
+			public void changeCommitting(PlayList playlist) {
+				locked.add(playlist.getLock().isWriteLocked());
+			}
+		});
+
+		businessBean.addTracks(uuid, trackList, 0, dao.getPlaylistByUUID(uuid).getVersion());
+		businessBean.addTracks(uuid, Lists.newArrayList(createTrack(5, "Another new track", 76869)), 0);
+
+		assertEquals(locked, Lists.newArrayList(false, true));
+		assertEquals(dao.getPlaylistByUUID(uuid).getNrOfTracks(), 2);
+	}
+
+	@Test
+	public void testApplyEdits() {
+		PlayList playlist = playlistDaoBean.getPlaylistByUUID(uuid);
+		long version = playlist.getVersion();
+		List<PlayListTrack> originalTracks = playlistDaoBean.getPlaylistTracks(uuid);
+		Track anotherTrack = createTrack(5, "Another new track", 76869);
+
+		PlaylistEditResult result = playlistBusinessBean.applyEdits(uuid, Lists.newArrayList(
+				PlaylistEdit.add(trackList, 0),
+				PlaylistEdit.add(Lists.newArrayList(anotherTrack), -1),
+				PlaylistEdit.remove(Lists.newArrayList(0, 10)),
+				PlaylistEdit.move(Lists.newArrayList(0), 2)));
+
+		assertEquals(1, result.getAdded().size());
+		assertEquals(76869, result.getAdded().get(0).getTrackId());
+		assertEquals(1, result.getRemoved().size());
+		assertEquals(originalTracks.get(9).getId(), result.getRemoved().get(0).getId());
+		assertEquals(defaultPlaylistTrackSize, result.getNrOfTracks());
+		assertEquals(version + 1, result.getVersion());
+
+		List<PlayListTrack> playlistTracks = playlistDaoBean.getPlaylistTracks(uuid);
+		assertEquals(defaultPlaylistTrackSize, playlist.getNrOfTracks());
+		assertEquals(originalTracks.get(1).getId(), playlistTracks.get(0).getId());
+		assertEquals(originalTracks.get(2).getId(), playlistTracks.get(1).getId());
+		assertEquals(originalTracks.get(0).getId(), playlistTracks.get(2).getId());
+		assertEquals(76869, playlistTracks.get(playlistTracks.size() - 1).getTrackId());
+	}
+
+	@Test
+	public void testApplyEditsIsAllOrNothing() {
+		PlayList playlist = playlistDaoBean.getPlaylistByUUID(uuid);
+		long version = playlist.getVersion();
+
+		try {
+			playlistBusinessBean.applyEdits(uuid, Lists.newArrayList(
+					PlaylistEdit.add(trackList, 0),
+					PlaylistEdit.remove(Lists.newArrayList(defaultPlaylistTrackSize + 1))));
+		} catch (PlaylistException e) {
+			assertEquals(defaultPlaylistTrackSize, playlist.getNrOfTracks());
+			assertEquals(version, playlist.getVersion());
+			return;
+		}
+
+		throw new AssertionError("Expected the invalid remove to reject the whole batch");
+	}
+
+	@Test
+	public void testRemovedTrackCanBeAddedAgainInTheSameBatch() {
+		playlistBusinessBean.addTracks(uuid, trackList, 0);
+		Track track = trackList.get(0);
+
+		PlaylistEditResult result = playlistBusinessBean.applyEdits(uuid, Lists.newArrayList(
+				PlaylistEdit.remove(Lists.newArrayList(0)),
+				PlaylistEdit.add(Lists.newArrayList(track), 5)));
+
+		assertEquals(result.getRemoved().size(), 1);
+		assertEquals(result.getAdded().size(), 1);
+		assertEquals(result.getNrOfTracks(), defaultPlaylistTrackSize + 1);
+		assertEquals(playlistDaoBean.getPlaylistTracks(uuid).get(5).getTrackId(), track.getId());
+	}
+
+	@Test
+	public void testTrackRemovedAfterMovesCanBeAddedAgain() {
+		Track first = createTrack(5, "First", 76870);
+		Track second = createTrack(5, "Second", 76871);
+
+		// the remove is followed back through the add and the move to the track it takes out
+		PlaylistEditResult result = playlistBusinessBean.applyEdits(uuid, Lists.newArrayList(
+				PlaylistEdit.add(Lists.newArrayList(first, second), 0),
+				PlaylistEdit.move(Lists.newArrayList(1), 4),
+				PlaylistEdit.remove(Lists.newArrayList(4)),
+				PlaylistEdit.add(Lists.newArrayList(first, second), -1)));
+
+		assertEquals(result.getNrOfTracks(), defaultPlaylistTrackSize + 2);
+		List<PlayListTrack> playlistTracks = playlistDaoBean.getPlaylistTracks(uuid);
+		assertEquals(playlistTracks.get(0).getTrackId(), 76870);
+		assertEquals(playlistTracks.get(playlistTracks.size() - 1).getTrackId(), 76871);
+	}
+
+	@Test
+	public void testTrackRemovedByAnEarlierRequestCanBeAddedAgain() throws Exception {
+		playlistBusinessBean.addTracks(uuid, trackList, 0);
+		PlaylistEditRequest remove = new PlaylistEditRequest(Lists.newArrayList(
+				PlaylistEdit.remove(Lists.newArrayList(0))));
+		PlaylistEditRequest add = new PlaylistEditRequest(Lists.newArrayList(
+				PlaylistEdit.add(trackList, -1)));
+
+		playlistBusinessBean.applyEditRequests(uuid, Lists.newArrayList(remove, add));
+
+		assertEquals(remove.getResult().get().getRemoved().size(), 1);
+		assertEquals(add.getResult().get().getAdded().size(), 1);
+		assertEquals(playlistDaoBean.getPlaylistByUUID(uuid).getNrOfTracks(), defaultPlaylistTrackSize + 1);
+	}
+
+	@Test
+	public void testRejectedRequestDoesNotAffectTheRemovedTracks() throws Exception {
+		playlistBusinessBean.addTracks(uuid, trackList, 0);
+		PlaylistEditRequest rejected = new PlaylistEditRequest(Lists.newArrayList(
+				PlaylistEdit.remove(Lists.newArrayList(0)),
+				PlaylistEdit.remove(Lists.newArrayList(defaultPlaylistTrackSize + 1))));
+		PlaylistEditRequest add = new PlaylistEditRequest(Lists.newArrayList(
+				PlaylistEdit.add(trackList, -1)));
+
+		playlistBusinessBean.applyEditRequests(uuid, Lists.newArrayList(rejected, add));
+
+		assertTrue(rejected.getResult().isCompletedExceptionally());
+		// the track is still in the playlist, as the remove of the rejected request was not applied
+		assertEquals(add.getResult().get().getAdded().size(), 0);
+		assertEquals(playlistDaoBean.getPlaylistByUUID(uuid).getNrOfTracks(), defaultPlaylistTrackSize + 1);
+	}
+
+	@Test
+	public void testMoveTracks() {
+		List<PlayListTrack> originalTracks = playlistDaoBean.getPlaylistTracks(uuid);
+		long version = playlistDaoBean.getPlaylistByUUID(uuid).getVersion();
+
+		List<PlayListTrack> movedTracks = playlistBusinessBean.moveTracks(uuid, Lists.newArrayList(7, 3), 20);
+
+		assertEquals(2, movedTracks.size());
+		// the same playlist tracks, reads give copies of them
+		assertEquals(originalTracks.get(3).getId(), movedTracks.get(0).getId());
+		assertEquals(originalTracks.get(7).getId(), movedTracks.get(1).getId());
+
+		List<PlayListTrack> playlistTracks = playlistDaoBean.getPlaylistTracks(uuid);
+		assertEquals(defaultPlaylistTrackSize, playlistTracks.size());
+		assertEquals(originalTracks.get(3).getId(), playlistTracks.get(20).getId());
+		assertEquals(originalTracks.get(7).getId(), playlistTracks.get(21).getId());
+		assertEquals(originalTracks.get(4).getId(), playlistTracks.get(3).getId());
+		assertEquals(originalTracks.get(22).getId(), playlistTracks.get(22).getId());
+		assertEquals(20, movedTracks.get(0).getIndex());
+		assertEquals(version + 1, playlistDaoBean.getPlaylistByUUID(uuid).getVersion());
+	}
+
+	@Test(expectedExceptions = PlaylistException.class)
+	public void testMoveTracksToInvalidIndex() {
+		playlistBusinessBean.moveTracks(uuid, Lists.newArrayList(0, 1), defaultPlaylistTrackSize - 1);
+	}
+
+	@Test
+	public void testTracksAreSharedBetweenPlaylists() {
+		String otherUuid = UUID.randomUUID().toString();
+
+		PlayListTrack added = playlistBusinessBean.addTracks(uuid, trackList, 0).get(0);
+		PlayListTrack addedToOther = playlistBusinessBean.addTracks(otherUuid,
+				Lists.newArrayList(createTrack(4, "A brand new track", 76868)), 0).get(0);
+
+		assertSame(addedToOther.getTrack(), added.getTrack());
+	}
+
+	@Test
+	public void testRemoveTracksSubtractsDuration() {
+		PlayList playlist = playlistDaoBean.getPlaylistByUUID(uuid);
+		float duration = playlist.getDuration();
+		float removedDuration = playlist.getPlayListTrack(0).getTrack().getDuration()
+				+ playlist.getPlayListTrack(5).getTrack().getDuration();
+
+		playlistBusinessBean.removeTracks(uuid, Lists.newArrayList(0, 5));
+
+		assertEquals(duration - removedDuration, playlist.getDuration());
+	}
+
+	@Test
+	public void testGetTracksPage() {
+		List<PlayListTrack> originalTracks = playlistDaoBean.getPlaylistTracks(uuid);
+
+		List<PlayListTrack> page = playlistBusinessBean.getTracks(uuid, 100, 20);
+
+		assertEquals(20, page.size());
+		assertEquals(originalTracks.subList(100, 120), page);
+		assertEquals(100, page.get(0).getIndex());
+		assertEquals(6, playlistBusinessBean.getTracks(uuid, defaultPlaylistTrackSize - 6, 20).size());
+		assertTrue(playlistBusinessBean.getTracks(uuid, defaultPlaylistTrackSize + 1, 20).isEmpty());
+	}
+
+	@Test(expectedExceptions = PlaylistException.class)
+	public void testGetTracksAtNegativeOffset() {
+		playlistBusinessBean.getTracks(uuid, -1, 20);
+	}
+
+	@Test
+	public void testCursorPagesSurviveChangesBeforeTheCursor() {
+		List<PlayListTrack> originalTracks = playlistDaoBean.getPlaylistTracks(uuid);
+
+		PlaylistPage first = playlistBusinessBean.getTracks(uuid, null, 50);
+		playlistBusinessBean.addTracks(uuid, trackList, 0);
+		playlistBusinessBean.removeTracks(uuid, Lists.newArrayList(10, 11, 12));
+		PlaylistPage second = playlistBusinessBean.getTracks(uuid, first.getNext(), 50);
+
+		assertEquals(originalTracks.subList(0, 50), first.getTracks());
+		assertEquals(originalTracks.get(50).getTrack(), second.getTracks().get(0).getTrack());
+		assertEquals(originalTracks.get(99).getTrack(), second.getTracks().get(49).getTrack());
+	}
+
+	@Test
+	public void testIterateTracks() {
+		List<PlayListTrack> originalTracks = playlistDaoBean.getPlaylistTracks(uuid);
+
+		List<PlayListTrack> iterated = new ArrayList<>();
+		playlistBusinessBean.iterateTracks(uuid, 50).forEachRemaining(iterated::add);
+
+		assertEquals(originalTracks, iterated);
+	}
+
+	@Test
+	public void testRejectionIsTypedAndCounted() {
+		for (int i = 0; i < 150; i++) {
+			trackList.add(createTrack(i, "new track " + i, i));
+		}
+		long rejected = metricsRegistry.counter("playlist.add.rejected.track_limit_exceeded").sum();
+
+		try {
+			playlistBusinessBean.addTracks(uuid, trackList, defaultPlaylistTrackSize);
+			fail("Expected the add over the track limit to be rejected");
+		} catch (PlaylistRejectedException e) {
+			assertEquals(e.getReason(), PlaylistRejectedException.Reason.TRACK_LIMIT_EXCEEDED);
+			assertEquals(e.getStackTrace().length, 0);
+		}
+
+		assertEquals(metricsRegistry.counter("playlist.add.rejected.track_limit_exceeded").sum(), rejected + 1);
+	}
+
+	@Test
+	public void testChangesAreMeasured() {
+		Map<String, Long> before = metricsRegistry.snapshot();
+
+		playlistBusinessBean.addTracks(uuid, trackList, 0);
+		playlistBusinessBean.moveTracks(uuid, Lists.newArrayList(0), 10);
+		playlistBusinessBean.getTracks(uuid, 0, 10);
+
+		Map<String, Long> after = metricsRegistry.snapshot();
+		assertEquals(after.get("playlist.add.latency.count") - before.get("playlist.add.latency.count"), 1);
+		assertEquals(after.get("playlist.move.latency.count") - before.get("playlist.move.latency.count"), 1);
+		assertEquals(after.get("playlist.read.latency.count") - before.get("playlist.read.latency.count"), 1);
+		assertEquals(after.get("playlist.size.count") - before.get("playlist.size.count"), 2);
+		assertTrue(after.get("playlist.tracksRenumbered.sum") - before.get("playlist.tracksRenumbered.sum") >= 2);
+	}
+
+	@Test
+	public void testChangesSinceAreDeltas() {
+		long version = playlistDaoBean.getPlaylistByUUID(uuid).getVersion();
+		List<Integer> clientTracks = trackIds(playlistDaoBean.getPlaylistTracks(uuid));
+
+		playlistBusinessBean.addTracks(uuid, trackList, 5);
+		playlistBusinessBean.removeTracks(uuid, Lists.newArrayList(0, 7, 100));
+		playlistBusinessBean.moveTracks(uuid, Lists.newArrayList(1, 2), 50);
+		playlistBusinessBean.applyEdits(uuid, Lists.newArrayList(PlaylistEdit.remove(Lists.newArrayList(3)),
+				PlaylistEdit.add(Lists.newArrayList(createTrack(4, "Another new track", 76869)), 0)));
+
+		PlaylistChanges changes = playlistBusinessBean.getChangesSince(uuid, version);
+		assertFalse(changes.isSnapshot());
+		assertEquals(changes.getVersion(), version + 4);
+		assertEquals(changes.getDeltas().size(), 5);
+
+		for (PlaylistDelta delta : changes.getDeltas()) {
+			apply(clientTracks, delta);
+		}
+		assertEquals(clientTracks, trackIds(playlistDaoBean.getPlaylistTracks(uuid)));
+
+		assertTrue(playlistBusinessBean.getChangesSince(uuid, version + 4).getDeltas().isEmpty());
+		assertEquals(playlistBusinessBean.getChangesSince(uuid, version + 3).getDeltas().size(), 2);
+	}
+
+	@Test
+	public void testChangesSinceAWrappedRingAreASnapshot() {
+		long version = playlistDaoBean.getPlaylistByUUID(uuid).getVersion();
+
+		for (int i = 0; i < 100; i++) {
+			playlistBusinessBean.moveTracks(uuid, Lists.newArrayList(0), 10);
+		}
+
+		PlaylistChanges changes = playlistBusinessBean.getChangesSince(uuid, version);
+		assertTrue(changes.isSnapshot());
+		assertEquals(changes.getVersion(), version + 100);
+		assertEquals(changes.getTracks(), playlistDaoBean.getPlaylistTracks(uuid));
+		assertFalse(playlistBusinessBean.getChangesSince(uuid, version + 90).isSnapshot());
+	}
+
+	@Test
+	public void testSnapshotOfChangesIsDetached() {
+		PlayList playlist = playlistDaoBean.getPlaylistByUUID(uuid);
+		PlaylistChanges changes = playlistBusinessBean.getChangesSince(uuid, playlist.getVersion() - 1);
+		assertTrue(changes.isSnapshot());
+
+		// the tracks are copies, changing them leaves the playlist as it is
+		PlayListTrack playListTrack = changes.getTracks().get(3);
+		playListTrack.setIndex(100);
+		assertEquals(playlist.getSnapshot().getPlayListTracks().get(3).getIndex(), 3);
+		playlist.getLock().writeLock().lock();
+		try {
+			assertEquals(playlist.getPlayListTrack(3).getIndex(), 3);
+			assertTrue(playlist.getPlayListTracks().stream().noneMatch(track -> track == playListTrack));
+		} finally {
+			playlist.getLock().writeLock().unlock();
+		}
+	}
+
+	@Test
+	public void testRevertTracks() {
+		long version = playlistDaoBean.getPlaylistByUUID(uuid).getVersion();
+		List<PlayListTrack> originalTracks = playlistDaoBean.getPlaylistTracks(uuid);
+
+		playlistBusinessBean.addTracks(uuid, trackList, 0);
+		playlistBusinessBean.removeTracks(uuid, Lists.newArrayList(5, 6));
+		PlaylistEditResult result = playlistBusinessBean.revertTracks(uuid, version);
+
+		assertEquals(result.getVersion(), version + 3);
+		assertEquals(result.getNrOfTracks(), defaultPlaylistTrackSize);
+		assertEquals(playlistDaoBean.getPlaylistTracks(uuid), originalTracks);
+
+		// the revert is a change like any other, a removal of all tracks and an add of the reverted ones
+		assertEquals(playlistBusinessBean.getChangesSince(uuid, version + 2).getDeltas().size(), 2);
+	}
+
+	@Test
+	public void testRevertToAVersionNoLongerKept() {
+		long version = playlistDaoBean.getPlaylistByUUID(uuid).getVersion();
+
+		for (int i = 0; i < 20; i++) {
+			playlistBusinessBean.moveTracks(uuid, Lists.newArrayList(0), 10);
+		}
+
+		try {
+			playlistBusinessBean.revertTracks(uuid, version);
+			fail("Expected the revert to a version no longer kept to be rejected");
+		} catch (PlaylistRejectedException e) {
+			assertEquals(e.getReason(), PlaylistRejectedException.Reason.VERSION_NOT_KEPT);
+		}
+	}
+
+	// what a client does with a delta to its copy of the playlist
+	private static void apply(List<Integer> trackIds, PlaylistDelta delta) {
+		switch (delta.getType()) {
+		case ADD:
+			trackIds.addAll(delta.getToIndex(), trackIds(delta.getTracks()));
+			break;
+		case REMOVE:
+			take(trackIds, delta.getIndexes());
+			break;
+		case MOVE:
+			trackIds.addAll(delta.getToIndex(), take(trackIds, delta.getIndexes()));
+			break;
+		}
+	}
+
+	private static List<Integer> take(List<Integer> trackIds, List<Integer> sortedIndexes) {
+		List<Integer> taken = new ArrayList<>();
+		for (int i = sortedIndexes.size() - 1; i >= 0; i--) {
+			taken.add(0, trackIds.remove(sortedIndexes.get(i).intValue()));
+		}
+
+		return taken;
+	}
+
+	private static List<Integer> trackIds(List<PlayListTrack> playListTracks) {
+		List<Integer> trackIds = new ArrayList<>();
+		playListTracks.forEach(playListTrack -> trackIds.add(playListTrack.getTrackId()));
+
+		return trackIds;
+	}
+
+	@Test
+	public void testSegmentedPlaylistStaysSegmentedAfterRestartAndEviction() throws Exception {
+		Path directory = Files.createTempDirectory("playlist-log");
+		try {
+			WalPlaylistDao walPlaylistDao = openSegmented(directory);
+			addTracks(walPlaylistDao, 0, 400);
+			walPlaylistDao.checkpoint();
+			addTracks(walPlaylistDao, 1000, 50);
+			walPlaylistDao.close();
+
+			// recovered from the checkpoint and the log, still past the track limit of other playlists
+			walPlaylistDao = openSegmented(directory);
+			assertTrue(walPlaylistDao.getPlaylistByUUID(uuid).isSegmented());
+			addTracks(walPlaylistDao, 2000, 200);
+
+			// loaded from its evicted record
+			PlayList playlist = walPlaylistDao.getPlaylistByUUID(uuid);
+			walPlaylistDao.getPlaylistByUUID(UUID.randomUUID().toString());
+			assertTrue(playlist.isEvicted());
+			assertTrue(walPlaylistDao.getPlaylistByUUID(uuid).isSegmented());
+			addTracks(walPlaylistDao, 3000, 200);
+
+			assertEquals(walPlaylistDao.getPlaylistByUUID(uuid).getNrOfTracks(), 850);
+			assertEquals(walPlaylistDao.getPlaylistTracks(uuid).get(849).getTrackId(), 3199);
+			walPlaylistDao.close();
+		} finally {
+			try (Stream<Path> files = Files.walk(directory)) {
+				for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+					Files.delete(file);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testAddToManyPlaylistsIsValidatedForEveryPlaylist() {
+		ShardedPlaylistDao dao = new ShardedPlaylistDao(
+				Lists.newArrayList(new PlaylistDaoBean(), new PlaylistDaoBean(), new PlaylistDaoBean()));
+		PlaylistBusinessBean businessBean = new PlaylistBusinessBean(dao);
+		List<String> uuids = new ArrayList<>();
+		for (int i = 0; i < 20; i++) {
+			uuids.add("playlist-" + i);
+		}
+
+		// one playlist is full, another has the track already
+		List<Track> fill = new ArrayList<>();
+		for (int i = 0; i < PlaylistBusinessBean.MAX_TRACKS; i++) {
+			fill.add(createTrack(1, "Track " + i, 1000 + i));
+		}
+		businessBean.addTracks("playlist-3", fill, 0);
+		businessBean.addTracks("playlist-7", trackList, 0);
+
+		Map<String, PlaylistAddResult> results = businessBean.addTracksToPlaylists(uuids, trackList, 0);
+
+		assertEquals(new ArrayList<>(results.keySet()), uuids);
+		assertEquals(results.get("playlist-3").getRejection().getReason(),
+				PlaylistRejectedException.Reason.TRACK_LIMIT_EXCEEDED);
+		assertEquals(dao.getPlaylistByUUID("playlist-3").getVersion(), 1);
+		assertFalse(results.get("playlist-7").isRejected());
+		assertTrue(results.get("playlist-7").getAdded().isEmpty());
+		assertEquals(dao.getPlaylistByUUID("playlist-7").getNrOfTracks(), 1);
+		for (String uuid : uuids) {
+			assertEquals(dao.getPlaylistByUUID(uuid).containsTrack(76868), !uuid.equals("playlist-3"));
+			assertEquals(results.get(uuid).isRejected(), uuid.equals("playlist-3"));
+		}
+
+		// an invalid index is rejected before any playlist is changed, the full one is rejected for its size first
+		results = businessBean.addTracksToPlaylists(uuids, Lists.newArrayList(createTrack(1, "Other", 5)), -2);
+		for (String uuid : uuids) {
+			PlaylistRejectedException.Reason reason = uuid.equals("playlist-3")
+					? PlaylistRejectedException.Reason.TRACK_LIMIT_EXCEEDED : PlaylistRejectedException.Reason.INVALID_INDEX;
+			assertEquals(results.get(uuid).getRejection().getReason(), reason);
+			assertFalse(dao.getPlaylistByUUID(uuid).containsTrack(5));
+		}
+	}
+
+	// a store of segmented playlists that holds a single one
+	private static WalPlaylistDao openSegmented(Path directory) throws Exception {
+		PlaylistDaoBean segmentedDao = com.google.inject.Guice.createInjector(binder -> {
+			binder.bindConstant().annotatedWith(Names.named("defaultPlaylistTrackSize")).to(0);
+			binder.bindConstant().annotatedWith(Names.named("segmentedPlaylists")).to(true);
+			binder.bind(PlaylistCache.class)
+					.toInstance(new PlaylistCache(1, Long.MAX_VALUE, 0, PlaylistCache.Policy.LRU));
+		}).getInstance(PlaylistDaoBean.class);
+
+		return new WalPlaylistDao(segmentedDao, directory, 1024 * 1024);
+	}
+
+	// at the end of the playlist, tracks with ids from the first id on
+	private void addTracks(WalPlaylistDao walPlaylistDao, int firstId, int count) throws Exception {
+		List<Track> tracks = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			tracks.add(createTrack(firstId + i, "Track " + (firstId + i), firstId + i));
+		}
+
+		int size = walPlaylistDao.getPlaylistByUUID(uuid).getNrOfTracks();
+		assertEquals(new PlaylistBusinessBean(walPlaylistDao).addTracks(uuid, tracks, size).size(), count);
+	}
+}
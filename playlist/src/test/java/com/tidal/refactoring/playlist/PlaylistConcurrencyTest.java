@@ -0,0 +1,158 @@
+package com.tidal.refactoring.playlist;
+
+import com.google.common.collect.Lists;
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+import com.tidal.refactoring.playlist.dao.PlaylistDaoBean;
+import com.tidal.refactoring.playlist.data.PlayList;
+import com.tidal.refactoring.playlist.data.PlayListTrack;
+import com.tidal.refactoring.playlist.data.PlaylistSnapshot;
+import com.tidal.refactoring.playlist.data.Track;
+import com.tidal.refactoring.playlist.exception.PlaylistException;
+
+import org.testng.annotations.Guice;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+
+import static org.testng.Assert.assertEquals;
+
+@Guice(modules = TestBusinessModule.class)
+public class PlaylistConcurrencyTest {
+
+	private static final int THREADS = 8;
+	private static final int OPERATIONS_PER_THREAD = 2000;
+
+	@Inject
+	PlaylistBusinessBean playlistBusinessBean;
+
+	@Inject
+	PlaylistDaoBean playlistDaoBean;
+
+	@Inject
+	@Named("defaultPlaylistTrackSize")
+	int defaultPlaylistTrackSize;
+
+	private final AtomicInteger trackIds = new AtomicInteger(1000000);
+
+	@Test
+	public void testConcurrentAddAndRemoveKeepIndexesContiguous() throws Exception {
+		List<String> uuids = new ArrayList<>();
+		Map<String, AtomicInteger> expectedSizes = new ConcurrentHashMap<>();
+		for (int i = 0; i < 4; i++) {
+			String uuid = UUID.randomUUID().toString();
+			uuids.add(uuid);
+			expectedSizes.put(uuid, new AtomicInteger(defaultPlaylistTrackSize));
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (int i = 0; i < THREADS; i++) {
+				futures.add(executor.submit(changeRandomly(uuids, expectedSizes)));
+				futures.add(executor.submit(readRandomly(uuids)));
+			}
+
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+
+		for (String uuid : uuids) {
+			PlayList playlist = playlistDaoBean.getPlaylistByUUID(uuid);
+			List<PlayListTrack> playlistTracks = playlistDaoBean.getPlaylistTracks(uuid);
+
+			assertEquals(playlist.getNrOfTracks(), expectedSizes.get(uuid).get());
+			assertEquals(playlistTracks.size(), expectedSizes.get(uuid).get());
+			assertContiguous(playlistTracks);
+		}
+	}
+
+	private Callable<Void> changeRandomly(List<String> uuids, Map<String, AtomicInteger> expectedSizes) {
+		return () -> {
+			ThreadLocalRandom random = ThreadLocalRandom.current();
+
+			for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+				String uuid = uuids.get(random.nextInt(uuids.size()));
+				PlaylistSnapshot snapshot = playlistDaoBean.getSnapshot(uuid);
+				int size = snapshot.getNrOfTracks();
+
+				try {
+					if (size == 0 || random.nextBoolean()) {
+						List<Track> tracks = Lists.newArrayList(createTrack(), createTrack());
+						int added = playlistBusinessBean.addTracks(uuid, tracks, random.nextInt(size + 1)).size();
+						expectedSizes.get(uuid).addAndGet(added);
+					} else if (random.nextBoolean()) {
+						List<Integer> indexes = Lists.newArrayList(random.nextInt(size), random.nextInt(size));
+						int removed = playlistBusinessBean.removeTracks(uuid, indexes).size();
+						expectedSizes.get(uuid).addAndGet(-removed);
+					} else {
+						// claimed without the lock when uncontended
+						List<Integer> indexes = Lists.newArrayList(random.nextInt(size));
+						int removed = playlistBusinessBean.removeTracks(uuid, indexes, snapshot.getVersion(), 2).size();
+						expectedSizes.get(uuid).addAndGet(-removed);
+					}
+				} catch (PlaylistException e) {
+					// the playlist was full, or changed since its size was read
+				}
+			}
+
+			return null;
+		};
+	}
+
+	private Callable<Void> readRandomly(List<String> uuids) {
+		return () -> {
+			ThreadLocalRandom random = ThreadLocalRandom.current();
+
+			for (int i = 0; i < OPERATIONS_PER_THREAD / 10; i++) {
+				PlayList playlist = playlistDaoBean.getPlaylistByUUID(uuids.get(random.nextInt(uuids.size())));
+
+				// the fields under the read lock, the tracks from the snapshot
+				Lock lock = playlist.getLock().readLock();
+				lock.lock();
+				try {
+					assertEquals(playlist.getSnapshot().getNrOfTracks(), playlist.getNrOfTracks());
+				} finally {
+					lock.unlock();
+				}
+
+				PlaylistSnapshot snapshot = playlist.getSnapshot();
+				assertEquals(snapshot.getPlayListTracks().size(), snapshot.getNrOfTracks());
+				assertContiguous(snapshot.getPlayListTracks());
+			}
+
+			return null;
+		};
+	}
+
+	private static void assertContiguous(List<PlayListTrack> playlistTracks) {
+		for (int i = 0; i < playlistTracks.size(); i++) {
+			assertEquals(playlistTracks.get(i).getIndex(), i);
+		}
+	}
+
+	private Track createTrack() {
+		int id = trackIds.incrementAndGet();
+
+		Track track = new Track();
+		track.setArtistId(id % 100);
+		track.setTitle("Concurrent track " + id);
+		track.setId(id);
+
+		return track;
+	}
+}
@@ -0,0 +1,157 @@
+package com.tidal.refactoring.playlist;
+
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+import com.google.inject.name.Names;
+import com.tidal.refactoring.playlist.dao.PlaylistDaoBean;
+import com.tidal.refactoring.playlist.data.PlayListTrack;
+import com.tidal.refactoring.playlist.data.PlaylistImportResult;
+
+import org.testng.annotations.Guice;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+@Guice(modules = TestBusinessModule.class)
+public class PlaylistImporterTest {
+
+	@Inject
+	PlaylistBusinessBean playlistBusinessBean;
+
+	@Inject
+	PlaylistDaoBean playlistDaoBean;
+
+	@Inject
+	PlaylistImporter playlistImporter;
+
+	@Inject
+	@Named("defaultPlaylistTrackSize")
+	int defaultPlaylistTrackSize;
+
+	@Test
+	public void testImportCsv() throws Exception {
+		String uuid = UUID.randomUUID().toString();
+		String csv = "title,id,duration,artistId\n"
+				+ "\"Hello, \"\"world\"\"\",100001,181.5,7\n"
+				+ "Second,100002,200,7\n"
+				+ "\n"
+				+ "Second again,100002,200,7\n"
+				+ "Not a track,abc,1,1\n"
+				+ "Third,100003,,\n";
+
+		PlaylistImportResult result = playlistImporter.importTracks(uuid,
+				new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), PlaylistImporter.Format.CSV);
+
+		assertEquals(result.getRead(), 4);
+		assertEquals(result.getImported(), 3);
+		assertEquals(result.getDuplicates(), 1);
+		assertEquals(result.getInvalid(), 1);
+		assertEquals(result.getChunks(), 1);
+		assertFalse(result.isTruncated());
+		assertTrue(result.getTracksPerSecond() > 0);
+
+		List<PlayListTrack> tracks = playlistDaoBean.getPlaylistTracks(uuid, defaultPlaylistTrackSize, 10);
+		assertEquals(tracks.size(), 3);
+		assertEquals(tracks.get(0).getTrack().getTitle(), "Hello, \"world\"");
+		assertEquals(tracks.get(0).getTrack().getDuration(), 181.5f);
+		assertEquals(tracks.get(2).getTrackId(), 100003);
+	}
+
+	@Test
+	public void testImportJsonLinesFile() throws Exception {
+		String uuid = UUID.randomUUID().toString();
+		Path file = Files.createTempFile("tracks", ".jsonl");
+		try {
+			Files.write(file, Arrays.asList(
+					"{\"id\": 100001, \"title\": \"Caf\\u00e9 \\\"live\\\"\", \"artistId\": 3, \"duration\": 240}",
+					"{\"title\": \"No id\"}",
+					"{\"id\": 100002, \"title\": null, \"explicit\": true}",
+					"{\"id\": 100003, \"album\": {\"id\": 1}}"), StandardCharsets.UTF_8);
+
+			PlaylistImportResult result = playlistImporter.importTracks(uuid, file);
+
+			assertEquals(result.getImported(), 2);
+			assertEquals(result.getInvalid(), 2);
+		} finally {
+			Files.delete(file);
+		}
+
+		List<PlayListTrack> tracks = playlistDaoBean.getPlaylistTracks(uuid, defaultPlaylistTrackSize, 10);
+		assertEquals(tracks.get(0).getTrack().getTitle(), "Café \"live\"");
+		assertEquals(tracks.get(0).getTrack().getArtistId(), 3);
+		assertEquals(tracks.get(1).getTrackId(), 100002);
+	}
+
+	@Test
+	public void testImportStopsAtTheTrackLimit() throws Exception {
+		String uuid = UUID.randomUUID().toString();
+		PlaylistImporter chunked = new PlaylistImporter(playlistBusinessBean, playlistDaoBean, 50);
+		LinesInputStream in = new LinesInputStream(1000000);
+
+		PlaylistImportResult result = chunked.importTracks(uuid, in, PlaylistImporter.Format.JSON_LINES);
+
+		int room = PlaylistBusinessBean.MAX_TRACKS - defaultPlaylistTrackSize;
+		assertEquals(result.getImported(), room);
+		assertEquals(result.getChunks(), (room + 49) / 50);
+		assertTrue(result.isTruncated());
+		assertEquals(playlistDaoBean.getPlaylistByUUID(uuid).getNrOfTracks(), PlaylistBusinessBean.MAX_TRACKS);
+		// only a buffer beyond the tracks that fit was read
+		assertTrue(in.linesServed < 10000);
+	}
+
+	@Test
+	public void testImportIntoSegmentedPlaylistBeyondTheTrackLimit() throws Exception {
+		com.google.inject.Injector injector = com.google.inject.Guice.createInjector(new TestBusinessModule(),
+				binder -> binder.bindConstant().annotatedWith(Names.named("segmentedPlaylists")).to(true));
+		PlaylistImporter importer = injector.getInstance(PlaylistImporter.class);
+		PlaylistDaoBean segmentedDao = injector.getInstance(PlaylistDaoBean.class);
+		String uuid = UUID.randomUUID().toString();
+
+		PlaylistImportResult result = importer.importTracks(uuid, new LinesInputStream(5000),
+				PlaylistImporter.Format.JSON_LINES);
+
+		assertEquals(result.getImported(), 5000);
+		assertFalse(result.isTruncated());
+		assertTrue(segmentedDao.getPlaylistByUUID(uuid).isSegmented());
+		assertEquals(segmentedDao.getPlaylistByUUID(uuid).getNrOfTracks(), defaultPlaylistTrackSize + 5000);
+		assertEquals(segmentedDao.getPlaylistTracks(uuid, defaultPlaylistTrackSize + 4999, 10).get(0).getTrackId(),
+				204999);
+	}
+
+	// a large input made up while it is read
+	private static final class LinesInputStream extends InputStream {
+		private final int lines;
+		private int linesServed;
+		private byte[] line = new byte[0];
+		private int position;
+
+		private LinesInputStream(int lines) {
+			this.lines = lines;
+		}
+
+		@Override
+		public int read() {
+			if (position == line.length) {
+				if (linesServed == lines) {
+					return -1;
+				}
+				line = ("{\"id\": " + (200000 + linesServed++) + ", \"title\": \"Imported\"}\n")
+						.getBytes(StandardCharsets.UTF_8);
+				position = 0;
+			}
+
+			return line[position++];
+		}
+	}
+}
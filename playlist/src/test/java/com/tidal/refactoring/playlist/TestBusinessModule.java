@@ -4,6 +4,7 @@ import com.google.inject.AbstractModule;
 import com.google.inject.Singleton;
 import com.google.inject.name.Names;
 import com.tidal.refactoring.playlist.PlaylistBusinessBean;
+import com.tidal.refactoring.playlist.dao.PlaylistDao;
 import com.tidal.refactoring.playlist.dao.PlaylistDaoBean;
 
 public class TestBusinessModule extends AbstractModule {
@@ -12,6 +13,7 @@ public class TestBusinessModule extends AbstractModule {
 	protected void configure() {
 		bindConstant().annotatedWith(Names.named("defaultPlaylistTrackSize")).to(376);
 		bind(PlaylistDaoBean.class).in(Singleton.class);
+		bind(PlaylistDao.class).to(PlaylistDaoBean.class);
 		bind(PlaylistBusinessBean.class).in(Singleton.class);
 	}
 }
@@ -0,0 +1,239 @@
+package com.tidal.refactoring.playlist.dao;
+
+import com.tidal.refactoring.playlist.data.PlayList;
+import com.tidal.refactoring.playlist.data.PlayListTrack;
+import com.tidal.refactoring.playlist.data.PlaylistDelta;
+import com.tidal.refactoring.playlist.data.PlaylistDeltaRing;
+import com.tidal.refactoring.playlist.data.Track;
+
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+public class PlaylistCacheTest {
+
+	private static final Function<String, PlayList> LOADER = uuid -> createPlaylist(uuid, 0);
+
+	@Test
+	public void testLruEvictsLeastRecentlyUsed() {
+		PlaylistCache cache = new PlaylistCache(3, Long.MAX_VALUE, 0, PlaylistCache.Policy.LRU);
+
+		PlayList first = cache.get("first", LOADER);
+		cache.get("second", LOADER);
+		cache.get("third", LOADER);
+		cache.get("second", LOADER);
+		cache.get("fourth", LOADER);
+
+		assertEquals(cache.size(), 3);
+		assertTrue(first.isEvicted());
+		assertEquals(cache.getEvictionCount(), 1);
+		assertEquals(cache.getHitCount(), 1);
+		assertEquals(cache.getMissCount(), 4);
+		assertEquals(cache.getHitRate(), 0.2);
+		assertNotSame(cache.get("first", LOADER), first);
+	}
+
+	@Test
+	public void testEvictsByEstimatedBytes() {
+		PlaylistCache cache = new PlaylistCache(Long.MAX_VALUE, 64 * 1024, 0, PlaylistCache.Policy.LRU);
+		Function<String, PlayList> loader = uuid -> createPlaylist(uuid, 100);
+
+		for (int i = 0; i < 20; i++) {
+			cache.get("playlist " + i, loader);
+		}
+
+		assertTrue(cache.getWeightedSize() <= 64 * 1024);
+		assertTrue(cache.size() < 20);
+		assertEquals(cache.getEvictionCount(), 20 - cache.size());
+	}
+
+	@Test
+	public void testChangedPlaylistIsWeighedAgain() {
+		PlaylistCache cache = new PlaylistCache(Long.MAX_VALUE, 64 * 1024, 0, PlaylistCache.Policy.LRU);
+		PlayList first = cache.get("first", LOADER);
+		PlayList second = cache.get("second", LOADER);
+
+		// just too large to hold both
+		second.addPlayListTracks(0, createTracks("second", 450));
+		cache.written(second);
+
+		assertTrue(first.isEvicted());
+		assertFalse(second.isEvicted());
+		assertTrue(cache.getWeightedSize() <= 64 * 1024);
+	}
+
+	@Test
+	public void testKeptVersionsAndDeltasAreWeighed() {
+		PlaylistCache cache = new PlaylistCache(Long.MAX_VALUE, Long.MAX_VALUE, 0, PlaylistCache.Policy.LRU);
+		PlayList playlist = new PlayList("columnar", true);
+		playlist.setPlayListTracks(createTracks("columnar", 100));
+		playlist.setKeptVersions(4);
+		cache.put(playlist);
+		long weight = cache.getWeightedSize();
+
+		// every kept version of a columnar playlist is a copy of its tracks
+		playlist.setDeltaRing(new PlaylistDeltaRing(16, playlist.getVersion()));
+		for (int i = 0; i < 6; i++) {
+			playlist.removePlayListTrack(0);
+			playlist.getDeltaRing().add(PlaylistDelta.removed(playlist.getVersion() + 1, Collections.singletonList(0)));
+			playlist.getDeltaRing().commit();
+			playlist.incrementVersion();
+		}
+		cache.written(playlist);
+
+		assertEquals(playlist.getKeptVersionCount(), 4);
+		assertEquals(playlist.getKeptTrackCount(), 98 + 97 + 96 + 95);
+		assertTrue(cache.getWeightedSize() > weight + 4 * 95 * 48, "weighed " + cache.getWeightedSize());
+		assertEquals(playlist.getDeltaRing().getEntryCount(), 6);
+	}
+
+	@Test
+	public void testExpiresAfterAccess() {
+		AtomicLong now = new AtomicLong();
+		PlaylistCache cache = new PlaylistCache(Long.MAX_VALUE, Long.MAX_VALUE, 1000, PlaylistCache.Policy.LRU,
+				now::get);
+
+		PlayList first = cache.get("first", LOADER);
+		now.addAndGet(TimeUnit.MILLISECONDS.toNanos(600));
+		assertSame(cache.get("first", LOADER), first);
+
+		now.addAndGet(TimeUnit.MILLISECONDS.toNanos(600));
+		assertSame(cache.get("first", LOADER), first);
+
+		now.addAndGet(TimeUnit.MILLISECONDS.toNanos(1000));
+		assertNotSame(cache.get("first", LOADER), first);
+		assertEquals(cache.getExpiredCount(), 1);
+
+		now.addAndGet(TimeUnit.MILLISECONDS.toNanos(1000));
+		cache.cleanUp();
+		assertEquals(cache.size(), 0);
+	}
+
+	@Test
+	public void testPlaylistInUseIsNotEvicted() {
+		PlaylistCache cache = new PlaylistCache(1, Long.MAX_VALUE, 0, PlaylistCache.Policy.LRU);
+		PlayList first = cache.get("first", LOADER);
+
+		first.getLock().readLock().lock();
+		try {
+			cache.get("second", LOADER);
+			assertFalse(first.isEvicted());
+		} finally {
+			first.getLock().readLock().unlock();
+		}
+
+		// evicted by the next change of the cache, once no longer in use
+		cache.get("third", LOADER);
+		assertTrue(first.isEvicted());
+	}
+
+	@Test
+	public void testConcurrentMissesLoadOnce() throws Exception {
+		PlaylistCache cache = new PlaylistCache();
+		AtomicInteger loads = new AtomicInteger();
+		CountDownLatch loading = new CountDownLatch(1);
+
+		Function<String, PlayList> slowLoader = uuid -> {
+			loads.incrementAndGet();
+			try {
+				loading.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return createPlaylist(uuid, 0);
+		};
+
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<PlayList>> playlists = new ArrayList<>();
+			for (int i = 0; i < 8; i++) {
+				playlists.add(executor.submit(() -> cache.get("popular", slowLoader)));
+			}
+
+			Thread.sleep(100);
+			loading.countDown();
+
+			for (Future<PlayList> playlist : playlists) {
+				assertSame(playlist.get(), playlists.get(0).get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+
+		assertEquals(loads.get(), 1);
+		assertEquals(cache.getMissCount(), 1);
+	}
+
+	@Test
+	public void testFailedLoadIsNotCached() {
+		PlaylistCache cache = new PlaylistCache();
+
+		try {
+			cache.get("first", uuid -> {
+				throw new IllegalStateException("unavailable");
+			});
+		} catch (IllegalStateException e) {
+			// expected
+		}
+
+		assertEquals(cache.getLoadFailureCount(), 1);
+		assertEquals(cache.size(), 0);
+		assertEquals(cache.get("first", LOADER).getUuid(), "first");
+	}
+
+	@Test
+	public void testTinyLfuKeepsFrequentlyUsedThroughScan() {
+		PlaylistCache cache = new PlaylistCache(100, Long.MAX_VALUE, 0, PlaylistCache.Policy.W_TINY_LFU);
+
+		PlayList popular = cache.get("popular", LOADER);
+		for (int i = 0; i < 10; i++) {
+			cache.get("popular", LOADER);
+		}
+
+		// a scan of playlists used once each, which would flush an LRU cache
+		for (int i = 0; i < 1000; i++) {
+			cache.get("scanned " + i, LOADER);
+		}
+
+		assertFalse(popular.isEvicted());
+		assertSame(cache.get("popular", LOADER), popular);
+		assertEquals(cache.size(), 100);
+	}
+
+	private static PlayList createPlaylist(String uuid, int size) {
+		PlayList playlist = new PlayList(uuid);
+		playlist.setPlayListTracks(createTracks(uuid, size));
+
+		return playlist;
+	}
+
+	private static List<PlayListTrack> createTracks(String uuid, int count) {
+		List<PlayListTrack> playListTracks = new ArrayList<>();
+
+		for (int i = 0; i < count; i++) {
+			Track track = new Track();
+			track.setId(i);
+			track.setDuration(180);
+			playListTracks.add(new PlayListTrack(i, uuid, i, new Date(), track));
+		}
+
+		return playListTracks;
+	}
+}
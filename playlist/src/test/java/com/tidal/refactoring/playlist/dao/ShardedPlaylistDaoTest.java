@@ -0,0 +1,222 @@
+package com.tidal.refactoring.playlist.dao;
+
+import com.tidal.refactoring.playlist.data.PlayList;
+import com.tidal.refactoring.playlist.data.PlayListTrack;
+import com.tidal.refactoring.playlist.data.Track;
+
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+public class ShardedPlaylistDaoTest {
+
+	@Test
+	public void testPlaylistsAreSpreadOverTheShards() {
+		ShardedPlaylistDao dao = new ShardedPlaylistDao(createShards(4));
+
+		Map<PlaylistDaoBean, Integer> counts = new HashMap<>();
+		for (String uuid : createUuids(2000)) {
+			PlayList playlist = dao.getPlaylistByUUID(uuid);
+			PlaylistDaoBean shard = dao.shardOf(uuid);
+
+			assertSame(shard.getPlaylistByUUID(uuid), playlist);
+			counts.merge(shard, 1, Integer::sum);
+		}
+
+		assertEquals(counts.size(), 4);
+		counts.values().forEach(count -> assertTrue(count > 300 && count < 700, "Unbalanced shard of " + count));
+	}
+
+	@Test
+	public void testAddingAShardOnlyMovesTheAffectedPlaylists() {
+		List<PlaylistDaoBean> shards = createShards(3);
+		ShardedPlaylistDao dao = new ShardedPlaylistDao(shards);
+		List<String> uuids = createUuids(1200);
+
+		Map<String, PlaylistDaoBean> owners = new HashMap<>();
+		Map<String, PlayList> playlists = new HashMap<>();
+		for (String uuid : uuids) {
+			dao.addTracksToPlaylist(uuid, 0, Collections.singletonList(createTrack(uuid.hashCode())));
+			owners.put(uuid, dao.shardOf(uuid));
+			playlists.put(uuid, dao.getPlaylistByUUID(uuid));
+		}
+
+		PlaylistDaoBean added = new PlaylistDaoBean();
+		int moved = dao.addShard(added);
+
+		int changedOwner = 0;
+		for (String uuid : uuids) {
+			PlaylistDaoBean owner = dao.shardOf(uuid);
+			if (owner != owners.get(uuid)) {
+				assertSame(owner, added);
+				changedOwner++;
+			}
+			// a moved playlist is a copy, the one left behind is marked evicted so changes to it are retried
+			assertEquals(playlists.get(uuid).isEvicted(), owner != owners.get(uuid));
+			assertEquals(dao.getPlaylistByUUID(uuid).getVersion(), 1);
+			assertEquals(dao.getPlaylistTracks(uuid).get(0).getTrackId(), uuid.hashCode());
+		}
+
+		assertEquals(moved, changedOwner);
+		assertEquals(added.getPlaylistCache().size(), moved);
+		assertTrue(moved > 150 && moved < 450, "Moved " + moved);
+
+		// every playlist is held by one shard only
+		int held = added.getPlaylistCache().size();
+		for (PlaylistDaoBean shard : shards) {
+			held += shard.getPlaylistCache().size();
+		}
+		assertEquals(held, uuids.size());
+	}
+
+	@Test
+	public void testRequestToTheOldShardFindsTheMovedPlaylist() {
+		List<PlaylistDaoBean> shards = createShards(1);
+		ShardedPlaylistDao dao = new ShardedPlaylistDao(shards);
+		List<String> uuids = createUuids(100);
+		uuids.forEach(dao::getPlaylistByUUID);
+
+		PlaylistDaoBean added = new PlaylistDaoBean();
+		dao.addShard(added);
+		String movedUuid = uuids.stream().filter(uuid -> dao.shardOf(uuid) != shards.get(0)).findFirst().get();
+		dao.addTracksToPlaylist(movedUuid, 0, Collections.singletonList(createTrack(6)));
+
+		// a change that was routed before the shard was added takes the playlist back, it is never made up again
+		shards.get(0).addTracksToPlaylist(movedUuid, 0, Collections.singletonList(createTrack(7)));
+
+		assertEquals(added.getPlaylistCache().getIfPresent(movedUuid), null);
+		assertEquals(dao.getPlaylistByUUID(movedUuid).getVersion(), 2);
+		assertEquals(dao.getPlaylistTracks(movedUuid).get(0).getTrackId(), 7);
+		assertEquals(dao.getPlaylistTracks(movedUuid).get(1).getTrackId(), 6);
+		assertEquals(added.getPlaylistCache().size() + shards.get(0).getPlaylistCache().size(), uuids.size());
+	}
+
+	@Test
+	public void testMovedPlaylistIsDroppedFromTheIndexOfItsOldShard() {
+		List<PlaylistDaoBean> shards = createShards(1);
+		ShardedPlaylistDao dao = new ShardedPlaylistDao(shards);
+		TrackIndex oldIndex = new TrackIndex(shards.get(0));
+		List<String> uuids = createUuids(100);
+		uuids.forEach(uuid -> dao.addTracksToPlaylist(uuid, 0, Collections.singletonList(createTrack(6))));
+
+		PlaylistDaoBean added = new PlaylistDaoBean();
+		TrackIndex addedIndex = new TrackIndex(added);
+		int moved = dao.addShard(added);
+
+		// looking the track up in the old shard does not take the moved playlists back
+		assertEquals(oldIndex.getPositionsOfTrack(6).size(), uuids.size() - moved);
+		assertEquals(addedIndex.getPositionsOfTrack(6).size(), moved);
+		assertEquals(added.getPlaylistCache().size(), moved);
+		for (String uuid : oldIndex.getPlaylistsWithTrack(6)) {
+			assertSame(dao.shardOf(uuid), shards.get(0));
+		}
+	}
+
+	@Test
+	public void testOperationsOnManyPlaylistsFanOut() {
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			ShardedPlaylistDao dao = new ShardedPlaylistDao(createShards(4), executor);
+			List<String> uuids = createUuids(200);
+
+			Map<String, List<PlayListTrack>> added = dao.forEachPlaylist(uuids,
+					uuid -> dao.addTracksToPlaylist(uuid, 0, Collections.singletonList(createTrack(42))));
+			Map<String, PlayList> playlists = dao.getPlaylistsByUUID(uuids);
+
+			assertEquals(new ArrayList<>(added.keySet()), uuids);
+			assertEquals(new ArrayList<>(playlists.keySet()), uuids);
+			for (String uuid : uuids) {
+				assertEquals(added.get(uuid).size(), 1);
+				assertTrue(playlists.get(uuid).containsTrack(42));
+				assertSame(playlists.get(uuid), dao.shardOf(uuid).getPlaylistByUUID(uuid));
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testPlaylistsMovedWhileTheyAreChanged() throws Exception {
+		List<PlaylistDaoBean> shards = createShards(3);
+		PlaylistDaoBean first = shards.get(0);
+		ShardedPlaylistDao dao = new ShardedPlaylistDao(shards.subList(0, 1));
+		List<String> uuids = createUuids(50);
+		uuids.forEach(dao::getPlaylistByUUID);
+
+		// half of the changes still go to the first shard, as if routed before the shards were added
+		int threads = 4;
+		int changes = 100;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<?>> writers = new ArrayList<>();
+			for (int t = 0; t < threads; t++) {
+				int thread = t;
+				writers.add(executor.submit(() -> {
+					for (int i = 0; i < changes; i++) {
+						String uuid = uuids.get(i % uuids.size());
+						PlaylistDao target = i % 2 == 0 ? dao : first;
+						Track track = createTrack(thread * changes + i);
+						target.addTracksToPlaylist(uuid, 0, Collections.singletonList(track));
+					}
+				}));
+			}
+			dao.addShard(shards.get(1));
+			dao.addShard(shards.get(2));
+			for (Future<?> writer : writers) {
+				writer.get();
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+
+		// every change is in the one playlist that is held, none was made to a copy that got dropped
+		int tracks = 0;
+		for (String uuid : uuids) {
+			int holders = 0;
+			for (PlaylistDaoBean shard : shards) {
+				holders += shard.getPlaylistCache().getIfPresent(uuid) != null ? 1 : 0;
+			}
+			assertEquals(holders, 1, uuid);
+			assertEquals(dao.getPlaylistByUUID(uuid).getVersion(), dao.getPlaylistTracks(uuid).size());
+			tracks += dao.getPlaylistTracks(uuid).size();
+		}
+		assertEquals(tracks, threads * changes);
+	}
+
+	private static List<PlaylistDaoBean> createShards(int count) {
+		List<PlaylistDaoBean> shards = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			shards.add(new PlaylistDaoBean());
+		}
+
+		return shards;
+	}
+
+	private static List<String> createUuids(int count) {
+		List<String> uuids = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			uuids.add("playlist-" + i);
+		}
+
+		return uuids;
+	}
+
+	private static Track createTrack(int id) {
+		Track track = new Track();
+		track.setId(id);
+		track.setTitle("Track " + id);
+
+		return track;
+	}
+}
@@ -0,0 +1,76 @@
+package com.tidal.refactoring.playlist.dao;
+
+import com.tidal.refactoring.playlist.data.Track;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+
+public class TrackCatalogTest {
+
+	@Test
+	public void testInternSharesEqualTracks() {
+		TrackCatalog trackCatalog = new TrackCatalog();
+
+		Track first = trackCatalog.intern(createTrack(1, "Title"));
+		Track second = trackCatalog.intern(createTrack(1, "Title"));
+
+		assertSame(second, first);
+		assertEquals(trackCatalog.size(), 1);
+		assertEquals(trackCatalog.getHitCount(), 1);
+		assertEquals(trackCatalog.getMissCount(), 1);
+		assertEquals(trackCatalog.getHitRate(), 0.5);
+	}
+
+	@Test
+	public void testInternReplacesChangedTrack() {
+		TrackCatalog trackCatalog = new TrackCatalog();
+		trackCatalog.intern(createTrack(1, "Title"));
+
+		Track renamed = createTrack(1, "New title");
+
+		assertSame(trackCatalog.intern(renamed), renamed);
+		assertSame(trackCatalog.get(1), renamed);
+	}
+
+	@Test
+	public void testLruEvictsLeastRecentlyUsed() {
+		// one track per segment, so every segment holds a single track
+		TrackCatalog trackCatalog = new TrackCatalog(16, TrackCatalog.Policy.LRU);
+
+		for (int i = 0; i < 1000; i++) {
+			trackCatalog.intern(createTrack(i, "Track " + i));
+		}
+
+		assertEquals(trackCatalog.size(), 16);
+		assertEquals(trackCatalog.getEvictionCount(), 1000 - 16);
+		assertNotNull(trackCatalog.get(999));
+		assertNull(trackCatalog.get(0));
+	}
+
+	@Test
+	public void testLfuKeepsFrequentlyUsed() {
+		TrackCatalog trackCatalog = new TrackCatalog(16 * 4, TrackCatalog.Policy.LFU);
+
+		Track popular = trackCatalog.intern(createTrack(0, "Popular"));
+		for (int i = 1; i < 1000; i++) {
+			trackCatalog.intern(createTrack(0, "Popular"));
+			trackCatalog.intern(createTrack(i, "Track " + i));
+		}
+
+		assertSame(trackCatalog.get(0), popular);
+		assertEquals(trackCatalog.size(), 16 * 4);
+	}
+
+	private static Track createTrack(int id, String title) {
+		Track track = new Track();
+		track.setArtistId(id % 10);
+		track.setTitle(title);
+		track.setId(id);
+
+		return track;
+	}
+}
@@ -0,0 +1,155 @@
+package com.tidal.refactoring.playlist.dao;
+
+import com.tidal.refactoring.playlist.data.PlayList;
+import com.tidal.refactoring.playlist.data.PlayListTrack;
+import com.tidal.refactoring.playlist.data.Track;
+
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class TrackIndexTest {
+
+	@Test
+	public void testIndexFollowsChanges() {
+		PlaylistDaoBean dao = new PlaylistDaoBean();
+		TrackIndex index = new TrackIndex(dao);
+
+		dao.addTracksToPlaylist("first", 0, Arrays.asList(createTrack(1, 10), createTrack(2, 10), createTrack(3, 20)));
+		dao.addTracksToPlaylist("second", 0, Arrays.asList(createTrack(2, 10), createTrack(4, 20)));
+
+		assertEquals(new HashSet<>(index.getPlaylistsWithTrack(2)), new HashSet<>(Arrays.asList("first", "second")));
+		assertEquals(index.getPlaylistsWithTrack(1), Collections.singletonList("first"));
+		assertEquals(index.getPlaylistsWithTrack(5), Collections.emptyList());
+		assertEquals(index.getPlaylistsWithArtist(20).size(), 2);
+
+		// one of the two tracks of the artist, the playlist still has the other
+		dao.removeTracksFromPlaylist("first", Collections.singleton(0));
+		assertEquals(index.getPlaylistsWithTrack(1), Collections.emptyList());
+		assertEquals(index.getPlaylistsWithArtist(10).size(), 2);
+
+		dao.moveTracksInPlaylist("first", Collections.singleton(1), 0);
+		assertEquals(index.getPositionsOfTrack(3).get("first"), Collections.singletonList(0));
+		assertEquals(index.getPositionsOfTrack(2).get("first"), Collections.singletonList(1));
+		assertEquals(index.getPositionsOfTrack(2).get("second"), Collections.singletonList(0));
+
+		long version = dao.getPlaylistByUUID("second").getVersion();
+		dao.removeTracksFromPlaylist("second", new HashSet<>(Arrays.asList(0, 1)));
+		assertEquals(index.getPlaylistsWithArtist(20), Collections.singletonList("first"));
+		assertEquals(index.getPlaylistsWithTrack(4), Collections.emptyList());
+
+		dao.revertPlaylist("second", version);
+		assertEquals(index.getPlaylistsWithTrack(4), Collections.singletonList("second"));
+		assertEquals(index.getTrackCount(), 3);
+	}
+
+	@Test
+	public void testPlaylistsHeldOrLoadedAreIndexed() {
+		PlaylistDaoBean dao = new PlaylistDaoBean();
+		dao.restorePlaylist(createPlaylist("held", 100, 101));
+		TrackIndex index = new TrackIndex(dao);
+
+		dao.restorePlaylist(createPlaylist("restored", 101, 102));
+		dao.setPlaylistLoader(uuid -> createPlaylist(uuid, 102));
+		dao.getPlaylistByUUID("loaded");
+
+		assertEquals(index.getPlaylistsWithTrack(100), Collections.singletonList("held"));
+		assertEquals(new HashSet<>(index.getPlaylistsWithTrack(101)),
+				new HashSet<>(Arrays.asList("held", "restored")));
+		assertEquals(new HashSet<>(index.getPlaylistsWithTrack(102)),
+				new HashSet<>(Arrays.asList("restored", "loaded")));
+	}
+
+	@Test
+	public void testManyPlaylists() {
+		PlaylistDaoBean dao = new PlaylistDaoBean();
+		TrackIndex index = new TrackIndex(dao);
+
+		for (int i = 0; i < 10000; i++) {
+			dao.addTracksToPlaylist("playlist-" + i, 0, Arrays.asList(createTrack(i % 100, 1), createTrack(1000 + i, 1)));
+		}
+
+		assertEquals(index.getPlaylistsWithTrack(7).size(), 100);
+		assertEquals(index.getPlaylistsWithArtist(1).size(), 10000);
+		Map<String, List<Integer>> positions = index.getPositionsOfTrack(1005);
+		assertEquals(positions.size(), 1);
+		assertEquals(positions.get("playlist-5"), Collections.singletonList(1));
+		assertTrue(index.getTrackCount() > 10000);
+	}
+
+	@Test
+	public void testAbortedChangeIsNotIndexed() {
+		PlaylistDaoBean dao = new PlaylistDaoBean();
+		TrackIndex index = new TrackIndex(dao);
+		dao.addChangeListener(new PlaylistChangeListener() {
+			@Override
+			public void changeCommitting(PlayList playlist) {
+				if (playlist.containsTrack(2)) {
+					throw new IllegalStateException("Refused");
+				}
+			}
+		});
+
+		dao.addTracksToPlaylist("first", 0, Collections.singletonList(createTrack(1, 10)));
+		try {
+			dao.addTracksToPlaylist("first", 0, Arrays.asList(createTrack(2, 20), createTrack(3, 10)));
+		} catch (IllegalStateException expected) {
+		}
+
+		assertEquals(index.getPlaylistsWithTrack(1), Collections.singletonList("first"));
+		assertEquals(index.getPlaylistsWithTrack(2), Collections.emptyList());
+		assertEquals(index.getPlaylistsWithArtist(20), Collections.emptyList());
+		assertEquals(index.getTrackCount(), 1);
+	}
+
+	@Test
+	public void testEvictedPlaylistsAreDroppedAndIndexedAgainWhenLoaded() {
+		PlaylistDaoBean dao = new PlaylistDaoBean(new PlaylistCache(1, Long.MAX_VALUE, 0, PlaylistCache.Policy.LRU));
+		TrackIndex index = new TrackIndex(dao);
+
+		dao.addTracksToPlaylist("first", 0, Arrays.asList(createTrack(1, 10), createTrack(2, 10)));
+		dao.addTracksToPlaylist("second", 0, Collections.singletonList(createTrack(2, 10)));
+
+		// no store kept the first playlist, its tracks are gone with it
+		assertEquals(index.getPlaylistsWithTrack(1), Collections.emptyList());
+		assertEquals(index.getPlaylistsWithTrack(2), Collections.singletonList("second"));
+		assertEquals(index.getPlaylistCount(), 1);
+
+		dao.setPlaylistLoader(uuid -> createPlaylist(uuid, 3));
+		dao.getPlaylistByUUID("first");
+		assertEquals(index.getPlaylistsWithTrack(3), Collections.singletonList("first"));
+		assertEquals(index.getPlaylistsWithTrack(2), Collections.emptyList());
+		assertEquals(index.getPlaylistsWithArtist(10), Collections.emptyList());
+		assertEquals(index.getPlaylistCount(), 1);
+		assertEquals(index.getTrackCount(), 1);
+	}
+
+	private static PlayList createPlaylist(String uuid, int... trackIds) {
+		PlayList playlist = new PlayList(uuid);
+		List<PlayListTrack> playListTracks = new ArrayList<>();
+		for (int i = 0; i < trackIds.length; i++) {
+			playListTracks.add(new PlayListTrack(i, uuid, i, new Date(), createTrack(trackIds[i], 1)));
+		}
+		playlist.setPlayListTracks(playListTracks);
+
+		return playlist;
+	}
+
+	private static Track createTrack(int id, int artistId) {
+		Track track = new Track();
+		track.setId(id);
+		track.setArtistId(artistId);
+		track.setTitle("Track " + id);
+
+		return track;
+	}
+}
@@ -0,0 +1,371 @@
+package com.tidal.refactoring.playlist.dao;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.tidal.refactoring.playlist.data.PlayList;
+import com.tidal.refactoring.playlist.data.PlayListTrack;
+import com.tidal.refactoring.playlist.data.PlaylistCursor;
+import com.tidal.refactoring.playlist.data.PlaylistEdit;
+import com.tidal.refactoring.playlist.data.PlaylistPage;
+import com.tidal.refactoring.playlist.data.Track;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class WalPlaylistDaoTest {
+
+	private static final int SEGMENT_SIZE = 4096;
+
+	private Path directory;
+	private WalPlaylistDao walPlaylistDao;
+
+	@BeforeMethod
+	public void setUp() throws Exception {
+		directory = Files.createTempDirectory("playlist-log");
+		walPlaylistDao = open();
+	}
+
+	@AfterMethod
+	public void tearDown() throws Exception {
+		walPlaylistDao.close();
+
+		try (Stream<Path> files = Files.walk(directory)) {
+			for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+				Files.delete(file);
+			}
+		}
+	}
+
+	@Test
+	public void testRecoverAfterRestart() throws Exception {
+		walPlaylistDao.addTracksToPlaylist("first", 0, createTracks(1, 5));
+		walPlaylistDao.removeTracksFromPlaylist("first", Sets.newHashSet(1, 3));
+		walPlaylistDao.moveTracksInPlaylist("first", Sets.newHashSet(0), 2);
+		walPlaylistDao.applyEdits("second", Lists.newArrayList(PlaylistEdit.add(createTracks(10, 3), 0),
+				PlaylistEdit.remove(Lists.newArrayList(1))));
+
+		List<Integer> first = trackIds("first");
+		List<Integer> second = trackIds("second");
+		long version = walPlaylistDao.getPlaylistByUUID("first").getVersion();
+
+		restart();
+
+		assertEquals(trackIds("first"), first);
+		assertEquals(trackIds("second"), second);
+		assertEquals(walPlaylistDao.getPlaylistByUUID("first").getVersion(), version);
+		assertContiguous(walPlaylistDao.getPlaylistTracks("first"));
+	}
+
+	@Test
+	public void testRecoverFromCheckpointAndLaterChanges() throws Exception {
+		walPlaylistDao.addTracksToPlaylist("first", 0, createTracks(1, 5));
+		walPlaylistDao.addTracksToPlaylist("second", 0, createTracks(10, 2));
+		walPlaylistDao.checkpoint();
+		walPlaylistDao.removeTracksFromPlaylist("first", Sets.newHashSet(0));
+		walPlaylistDao.addTracksToPlaylist("third", 0, createTracks(20, 1));
+
+		List<Integer> first = trackIds("first");
+		List<Integer> second = trackIds("second");
+		List<Integer> third = trackIds("third");
+
+		restart();
+
+		assertEquals(trackIds("first"), first);
+		assertEquals(trackIds("second"), second);
+		assertEquals(trackIds("third"), third);
+		assertEquals(walPlaylistDao.getPlaylistByUUID("first").getVersion(), 2);
+	}
+
+	@Test
+	public void testCheckpointDeletesReplacedSegments() throws Exception {
+		for (int i = 0; i < 50; i++) {
+			walPlaylistDao.addTracksToPlaylist("first", i, createTracks(i * 10, 5));
+		}
+		List<Integer> first = trackIds("first");
+
+		walPlaylistDao.checkpoint();
+
+		assertEquals(files("segment-*.log").size(), 1);
+		assertEquals(files("snapshot-*.dat").size(), 1);
+
+		restart();
+
+		assertEquals(trackIds("first"), first);
+	}
+
+	@Test
+	public void testRecoverAcrossSegments() throws Exception {
+		// every change of 5 tracks is a few hundred bytes, so the log rolls over several times
+		for (int i = 0; i < 50; i++) {
+			walPlaylistDao.addTracksToPlaylist("first", i, createTracks(i * 10, 5));
+		}
+		List<Integer> first = trackIds("first");
+
+		restart();
+
+		assertEquals(trackIds("first"), first);
+		assertEquals(first.size(), 250);
+	}
+
+	@Test
+	public void testTornTailDropsOnlyTheLastChange() throws Exception {
+		walPlaylistDao.addTracksToPlaylist("first", 0, createTracks(1, 5));
+		List<Integer> first = trackIds("first");
+		walPlaylistDao.addTracksToPlaylist("first", 0, createTracks(10, 5));
+		walPlaylistDao.close();
+
+		// cut the last frame in half, as a crash while writing it would
+		List<Path> segments = files("segment-*.log");
+		Path lastSegment = segments.get(segments.size() - 1);
+		try (FileChannel channel = FileChannel.open(lastSegment, StandardOpenOption.WRITE)) {
+			channel.truncate(lastFrameEnd(lastSegment) - 10);
+		}
+
+		walPlaylistDao = open();
+
+		assertEquals(trackIds("first"), first);
+		assertEquals(walPlaylistDao.getPlaylistByUUID("first").getVersion(), 1);
+	}
+
+	@Test
+	public void testEvictedPlaylistsAreLoadedAndCheckpointed() throws Exception {
+		walPlaylistDao.close();
+		walPlaylistDao = new WalPlaylistDao(
+				new PlaylistDaoBean(new PlaylistCache(2, Long.MAX_VALUE, 0, PlaylistCache.Policy.LRU)), directory,
+				SEGMENT_SIZE);
+
+		walPlaylistDao.addTracksToPlaylist("first", 0, createTracks(1, 5));
+		PlayList first = walPlaylistDao.getPlaylistByUUID("first");
+		walPlaylistDao.addTracksToPlaylist("second", 0, createTracks(10, 2));
+		walPlaylistDao.addTracksToPlaylist("third", 0, createTracks(20, 1));
+
+		assertTrue(first.isEvicted());
+		assertEquals(trackIds("first"), Lists.newArrayList(1, 2, 3, 4, 5));
+		assertEquals(walPlaylistDao.getPlaylistByUUID("first").getVersion(), 1);
+
+		walPlaylistDao.removeTracksFromPlaylist("first", Sets.newHashSet(0));
+		List<Integer> second = trackIds("second");
+		walPlaylistDao.checkpoint();
+		restart();
+
+		assertEquals(trackIds("first"), Lists.newArrayList(2, 3, 4, 5));
+		assertEquals(trackIds("second"), second);
+		assertEquals(trackIds("third"), Lists.newArrayList(20));
+	}
+
+	@Test
+	public void testChangeThatCannotBeLoggedIsUndone() throws Exception {
+		walPlaylistDao.addTracksToPlaylist("first", 0, createTracks(1, 5));
+		PlayList first = walPlaylistDao.getPlaylistByUUID("first");
+		List<Integer> logged = trackIds("first");
+
+		// too large for a log segment, so the change cannot be logged
+		try {
+			walPlaylistDao.addTracksToPlaylist("first", 2, createTracks(100, 200));
+			fail("Change was not logged");
+		} catch (UncheckedIOException e) {
+			assertTrue(e.getMessage().contains("first"));
+		}
+
+		assertEquals(first.getVersion(), 1);
+		assertEquals(trackIds("first"), logged);
+		assertEquals(first.getNrOfTracks(), 5);
+		assertFalse(first.containsTrack(100));
+
+		walPlaylistDao.removeTracksFromPlaylist("first", Sets.newHashSet(0));
+		List<Integer> afterRemove = trackIds("first");
+		restart();
+
+		assertEquals(trackIds("first"), afterRemove);
+		assertEquals(walPlaylistDao.getPlaylistByUUID("first").getVersion(), 2);
+	}
+
+	@Test
+	public void testCheckpointDuringFirstChangeKeepsThePlaylist() throws Exception {
+		walPlaylistDao.close();
+		PlaylistDaoBean playlistDaoBean = new PlaylistDaoBean();
+		walPlaylistDao = new WalPlaylistDao(playlistDaoBean, directory, SEGMENT_SIZE);
+
+		// a checkpoint after the first frame of the playlist is appended, but before its version is published
+		Thread[] checkpoint = new Thread[1];
+		playlistDaoBean.addChangeListener(new PlaylistChangeListener() {
+			@Override
+			public void changeCommitting(PlayList playlist) {
+				if (checkpoint[0] != null) {
+					return;
+				}
+
+				checkpoint[0] = new Thread(() -> {
+					try {
+						walPlaylistDao.checkpoint();
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				});
+				checkpoint[0].start();
+
+				// until the checkpoint waits for the playlist, or is done without it
+				long deadline = System.currentTimeMillis() + 2000;
+				while (checkpoint[0].isAlive() && !playlist.getLock().hasQueuedThreads()
+						&& System.currentTimeMillis() < deadline) {
+					Thread.yield();
+				}
+			}
+		});
+
+		walPlaylistDao.addTracksToPlaylist("first", 0, createTracks(1, 5));
+		checkpoint[0].join();
+		walPlaylistDao.removeTracksFromPlaylist("first", Sets.newHashSet(0));
+		List<Integer> first = trackIds("first");
+		restart();
+
+		assertEquals(trackIds("first"), first);
+		assertEquals(walPlaylistDao.getPlaylistByUUID("first").getVersion(), 2);
+	}
+
+	@Test
+	public void testChangeFailingPartwayIsUndone() throws Exception {
+		walPlaylistDao.close();
+		PlaylistDaoBean playlistDaoBean = new PlaylistDaoBean();
+		walPlaylistDao = new WalPlaylistDao(playlistDaoBean, directory, SEGMENT_SIZE);
+
+		walPlaylistDao.addTracksToPlaylist("first", 0, createTracks(1, 5));
+		PlayList first = walPlaylistDao.getPlaylistByUUID("first");
+		List<Integer> logged = trackIds("first");
+
+		playlistDaoBean.addChangeListener(new PlaylistChangeListener() {
+			@Override
+			public void tracksRemoved(PlayList playlist, List<Integer> indexes, List<PlayListTrack> removed) {
+				throw new IllegalStateException("Remove refused");
+			}
+		});
+
+		// the add is applied before the remove fails
+		try {
+			walPlaylistDao.applyEdits("first", Lists.newArrayList(PlaylistEdit.add(createTracks(100, 2), 0),
+					PlaylistEdit.remove(Lists.newArrayList(3))));
+			fail("Remove was not refused");
+		} catch (IllegalStateException e) {
+			assertEquals(e.getMessage(), "Remove refused");
+		}
+
+		assertEquals(first.getVersion(), 1);
+		assertEquals(trackIds("first"), logged);
+		assertFalse(first.containsTrack(100));
+
+		walPlaylistDao.addTracksToPlaylist("first", 5, createTracks(10, 1));
+		List<Integer> afterAdd = trackIds("first");
+		restart();
+
+		assertEquals(trackIds("first"), afterAdd);
+		assertEquals(walPlaylistDao.getPlaylistByUUID("first").getVersion(), 2);
+	}
+
+	@Test
+	public void testTooShortSnapshotIsSkipped() throws Exception {
+		walPlaylistDao.addTracksToPlaylist("first", 0, createTracks(1, 5));
+		walPlaylistDao.checkpoint();
+		walPlaylistDao.removeTracksFromPlaylist("first", Sets.newHashSet(0));
+		walPlaylistDao.close();
+
+		// a later snapshot that is too short to hold even its checksum
+		Files.write(directory.resolve(String.format("snapshot-%016d.dat", 999)), new byte[] { 1, 2, 3 });
+		walPlaylistDao = open();
+
+		assertEquals(trackIds("first"), Lists.newArrayList(2, 3, 4, 5));
+	}
+
+	@Test
+	public void testCursorContinuesByIndexAfterRecovery() throws Exception {
+		// the inserted tracks are ranked in the gap between their neighbours
+		walPlaylistDao.addTracksToPlaylist("first", 0, createTracks(1, 5));
+		walPlaylistDao.addTracksToPlaylist("first", 2, createTracks(10, 5));
+		PlaylistPage first = walPlaylistDao.getPlaylistTracks("first", (PlaylistCursor) null, 4);
+		List<Integer> tracks = trackIds("first");
+		walPlaylistDao.checkpoint();
+		restart();
+
+		// loaded from the snapshot with its ranks spread anew, the rank of the cursor means nothing to it
+		PlaylistPage second = walPlaylistDao.getPlaylistTracks("first", first.getNext(), 4);
+
+		assertEquals(second.getTracks().stream().map(track -> track.getTrack().getId()).collect(Collectors.toList()),
+				tracks.subList(4, 8));
+	}
+
+	private WalPlaylistDao open() throws IOException {
+		return new WalPlaylistDao(new PlaylistDaoBean(), directory, SEGMENT_SIZE);
+	}
+
+	private void restart() throws IOException {
+		walPlaylistDao.close();
+		walPlaylistDao = open();
+	}
+
+	private List<Integer> trackIds(String uuid) {
+		return walPlaylistDao.getPlaylistTracks(uuid).stream().map(track -> track.getTrack().getId())
+				.collect(Collectors.toList());
+	}
+
+	private List<Path> files(String glob) throws IOException {
+		List<Path> files = new ArrayList<>();
+
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, glob)) {
+			stream.forEach(files::add);
+		}
+		files.sort(Comparator.naturalOrder());
+
+		return files;
+	}
+
+	// segments are zero filled, so the written frames end at the last non-zero byte
+	private static long lastFrameEnd(Path segment) throws IOException {
+		byte[] bytes = Files.readAllBytes(segment);
+		int end = bytes.length;
+
+		while (end > 0 && bytes[end - 1] == 0) {
+			end--;
+		}
+
+		return end;
+	}
+
+	private static List<Track> createTracks(int firstId, int count) {
+		List<Track> tracks = new ArrayList<>();
+
+		for (int i = 0; i < count; i++) {
+			Track track = new Track();
+			track.setArtistId(firstId + i);
+			track.setTitle("Track " + (firstId + i));
+			track.setId(firstId + i);
+			track.setDuration(180);
+			tracks.add(track);
+		}
+
+		return tracks;
+	}
+
+	private static void assertContiguous(List<PlayListTrack> playlistTracks) {
+		for (int i = 0; i < playlistTracks.size(); i++) {
+			assertEquals(playlistTracks.get(i).getIndex(), i);
+		}
+	}
+}
@@ -0,0 +1,109 @@
+package com.tidal.refactoring.playlist.data;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import static org.testng.Assert.assertEquals;
+
+public class PlayListDurationTest {
+
+	@DataProvider
+	public Object[][] stores() {
+		return new Object[][] { { false }, { true } };
+	}
+
+	@Test(dataProvider = "stores")
+	public void testDurationFollowsChanges(boolean columnar) {
+		PlayList playlist = new PlayList("uuid", columnar);
+
+		playlist.addPlayListTracks(0, createTracks(0, 100, 0, 2));
+		playlist.addPlayListTracks(50, createTracks(100, 1, 60));
+		assertEquals(playlist.getDuration(), 160f);
+
+		playlist.removePlayListTrack(0);
+		playlist.removePlayListTrack(49);
+		assertEquals(playlist.getDuration(), 100f);
+
+		playlist.setPlayListTracks(createTracks(200, 3, 10));
+		assertEquals(playlist.getDuration(), 30f);
+
+		playlist.setPlayListTracks(Collections.emptyList());
+		assertEquals(playlist.getDuration(), 0f);
+	}
+
+	@Test(dataProvider = "stores")
+	public void testTimeQueriesMatchLinearScan(boolean columnar) {
+		PlayList playlist = new PlayList("uuid", columnar);
+		Random random = new Random(7);
+
+		for (int i = 0; i < 500; i++) {
+			int size = playlist.getNrOfTracks();
+
+			if (size > 0 && random.nextInt(4) == 0) {
+				playlist.removePlayListTrack(random.nextInt(size));
+			} else {
+				// include tracks without a duration, they never play
+				playlist.addPlayListTracks(random.nextInt(size + 1), createTracks(i, 1, random.nextInt(300)));
+			}
+
+			if (i % 25 == 0) {
+				assertMatchesLinearScan(playlist);
+			}
+		}
+		assertMatchesLinearScan(playlist);
+	}
+
+	@Test(dataProvider = "stores")
+	public void testIndexAtOutsidePlaylist(boolean columnar) {
+		PlayList playlist = new PlayList("uuid", columnar);
+		assertEquals(playlist.getIndexAt(0), -1);
+
+		playlist.addPlayListTracks(0, createTracks(0, 3, 60));
+
+		assertEquals(playlist.getIndexAt(-1), -1);
+		assertEquals(playlist.getIndexAt(0), 0);
+		assertEquals(playlist.getIndexAt(60), 1);
+		assertEquals(playlist.getIndexAt(179.5f), 2);
+		assertEquals(playlist.getIndexAt(180), -1);
+		assertEquals(playlist.getDurationBefore(3), 180f);
+		assertEquals(playlist.getRemainingDuration(1), 120f);
+	}
+
+	private static void assertMatchesLinearScan(PlayList playlist) {
+		float before = 0;
+
+		for (int i = 0; i < playlist.getNrOfTracks(); i++) {
+			float duration = playlist.getPlayListTrack(i).getTrack().getDuration();
+
+			assertEquals(playlist.getDurationBefore(i), before, 0.01);
+			if (duration > 0) {
+				assertEquals(playlist.getIndexAt(before), i);
+				assertEquals(playlist.getIndexAt(before + duration / 2), i);
+			}
+
+			before += duration;
+		}
+
+		assertEquals(playlist.getDuration(), before, 0.01);
+	}
+
+	private static List<PlayListTrack> createTracks(int firstId, int count, float... durations) {
+		List<PlayListTrack> playListTracks = new ArrayList<>();
+
+		for (int i = 0; i < count; i++) {
+			Track track = new Track();
+			track.setId(firstId + i);
+			track.setDuration(durations[i % durations.length]);
+
+			playListTracks.add(new PlayListTrack(firstId + i, "uuid", 0, new Date(), track));
+		}
+
+		return playListTracks;
+	}
+}
@@ -0,0 +1,288 @@
+package com.tidal.refactoring.playlist.data;
+
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+public class PlayListTrackColumnsTest {
+
+	@Test
+	public void testSameTracksAsTreeAfterRandomChanges() {
+		PlayList tree = new PlayList("uuid");
+		PlayList columns = new PlayList("uuid", true);
+		Random random = new Random(42);
+
+		for (int i = 0; i < 2000; i++) {
+			int size = tree.getNrOfTracks();
+
+			if (size == 0 || random.nextInt(3) > 0) {
+				int index = random.nextInt(size + 1);
+				int count = 1 + random.nextInt(3);
+				tree.addPlayListTracks(index, createTracks(i * 10, count));
+				columns.addPlayListTracks(index, createTracks(i * 10, count));
+			} else {
+				int index = random.nextInt(size);
+				assertEquals(columns.removePlayListTrack(index).getTrackId(),
+						tree.removePlayListTrack(index).getTrackId());
+			}
+		}
+
+		assertEquals(columns.getNrOfTracks(), tree.getNrOfTracks());
+		for (int i = 0; i < tree.getNrOfTracks(); i++) {
+			PlayListTrack expected = tree.getPlayListTrack(i);
+			PlayListTrack actual = columns.getPlayListTrack(i);
+
+			assertEquals(actual.getTrackId(), expected.getTrackId());
+			assertEquals(actual.getId(), expected.getId());
+			assertEquals(actual.getDateAdded(), expected.getDateAdded());
+			assertEquals(actual.getIndex(), i);
+			assertEquals(actual.getTrack(), expected.getTrack());
+		}
+		assertEquals(columns.getRankRebalances(), tree.getRankRebalances());
+	}
+
+	@Test
+	public void testIndexOfReadTrack() {
+		PlayList playlist = new PlayList("uuid", true);
+		playlist.addPlayListTracks(0, createTracks(0, 10));
+
+		PlayListTrack playListTrack = playlist.getPlayListTrack(7);
+		assertEquals(playlist.indexOf(playListTrack), 7);
+
+		playlist.addPlayListTracks(0, createTracks(100, 2));
+		assertEquals(playlist.indexOf(playListTrack), 9);
+
+		playlist.removePlayListTrack(9);
+		assertEquals(playlist.indexOf(playListTrack), -1);
+	}
+
+	@Test
+	public void testReadTracksAreDetached() {
+		PlayList playlist = new PlayList("uuid", true);
+		playlist.addPlayListTracks(0, createTracks(0, 3));
+
+		PlayListTrack first = playlist.getPlayListTrack(0);
+		playlist.removePlayListTrack(0);
+
+		assertEquals(first.getTrackId(), 0);
+		assertEquals(first.getIndex(), 0);
+		assertEquals(playlist.getPlayListTrack(0).getTrackId(), 1);
+		assertFalse(playlist.containsTrack(0));
+	}
+
+	@Test
+	public void testNullIdAndDateAdded() {
+		PlayListTrackColumns columns = new PlayListTrackColumns("uuid");
+		PlayListTrack playListTrack = new PlayListTrack(null, "uuid", 0, null, createTrack(1));
+		playListTrack.setDateAdded(null);
+
+		columns.add(0, playListTrack);
+
+		assertNull(columns.get(0).getId());
+		assertNull(columns.get(0).getDateAdded());
+		assertEquals(columns.get(0).getTrackPlayListUuid(), "uuid");
+	}
+
+	@Test
+	public void testColumnScans() {
+		PlayListTrackColumns columns = new PlayListTrackColumns("uuid");
+		columns.addAll(createTracks(0, 100));
+
+		assertEquals(columns.getTotalDuration(), 100 * 180.0);
+		assertEquals(columns.getTrackId(42), 42);
+		assertEquals(columns.getDuration(42), 180f);
+
+		Iterator<PlayListTrack> iterator = columns.iterator(98);
+		assertEquals(iterator.next().getIndex(), 98);
+		assertEquals(iterator.next().getTrackId(), 99);
+		assertFalse(iterator.hasNext());
+	}
+
+	@Test
+	public void testDurationsAfterEveryChange() {
+		PlayListTrackColumns columns = new PlayListTrackColumns("uuid");
+		List<Float> durations = new ArrayList<>();
+		Random random = new Random(3);
+
+		for (int i = 0; i < 500; i++) {
+			int size = durations.size();
+			int index = random.nextInt(size + 1);
+			PlayListTrack playListTrack = createTracks(i, 1).get(0);
+			playListTrack.getTrack().setDuration(1 + random.nextInt(300));
+
+			switch (size == 0 ? 0 : random.nextInt(3)) {
+			case 0:
+				columns.add(index, playListTrack);
+				durations.add(index, playListTrack.getTrack().getDuration());
+				break;
+			case 1:
+				columns.remove(Math.min(index, size - 1));
+				durations.remove(Math.min(index, size - 1));
+				break;
+			default:
+				columns.set(Math.min(index, size - 1), playListTrack);
+				durations.set(Math.min(index, size - 1), playListTrack.getTrack().getDuration());
+			}
+
+			// the Fenwick tree is kept up to date, for the columns and copies of any range of them
+			assertDurations(columns, durations);
+			int from = random.nextInt(durations.size() + 1);
+			assertDurations(columns.copyOfRange(from, durations.size(), 0), durations.subList(from, durations.size()));
+		}
+	}
+
+	@Test
+	public void testChunksAfterRandomChanges() {
+		PlayListTrackColumns columns = new PlayListTrackColumns("uuid");
+		List<PlayListTrack> expected = new ArrayList<>();
+		Random random = new Random(7);
+
+		// ranked in steps, so every index can get a rank between its neighbours
+		List<PlayListTrack> initial = createTracks(0, 3 * PlayListTrackColumns.CHUNK_SIZE);
+		columns.addAll(initial);
+		expected.addAll(initial);
+		columns.spreadRanks(1L << 32);
+
+		for (int i = 0; i < 1000; i++) {
+			int size = expected.size();
+			int index = random.nextInt(size + 1);
+
+			if (random.nextInt(3) > 0) {
+				int count = 1 + random.nextInt(PlayListTrackColumns.CHUNK_SIZE / 4);
+				List<PlayListTrack> added = createTracks(10000 + i * 200, count);
+				columns.addAll(index, added);
+				expected.addAll(index, added);
+			} else {
+				columns.remove(Math.min(index, size - 1));
+				expected.remove(Math.min(index, size - 1));
+			}
+		}
+
+		assertTrue(columns.getChunkCount() > 1);
+		assertEquals(columns.size(), expected.size());
+		double before = 0;
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(columns.getTrackId(i), expected.get(i).getTrackId());
+			assertEquals(columns.get(i).getIndex(), i);
+			assertEquals(columns.getDurationBefore(i), before, 0.001);
+			assertEquals(columns.indexAt(before + 0.5), i);
+			before += expected.get(i).getTrack().getDuration();
+		}
+		assertEquals(columns.getTotalDuration(), before, 0.001);
+
+		columns.spreadRanks(1L << 32);
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(columns.indexOfRank(columns.getRank(i)), i);
+			assertEquals(columns.indexAfterRank(columns.getRank(i) - 1), i);
+		}
+		assertEquals(columns.indexAfterRank(Long.MAX_VALUE), expected.size());
+	}
+
+	@Test
+	public void testSnapshotIsNotChangedByLaterChanges() {
+		PlayListTrackColumns columns = new PlayListTrackColumns("uuid");
+		columns.addAll(createTracks(0, 4 * PlayListTrackColumns.CHUNK_SIZE));
+		List<Integer> before = trackIds(columns);
+
+		PlayListTrackColumns snapshot = (PlayListTrackColumns) columns.snapshot();
+		columns.remove(0);
+		columns.add(columns.size(), createTracks(100000, 1).get(0));
+		columns.set(PlayListTrackColumns.CHUNK_SIZE, createTracks(200000, 1).get(0));
+		List<Integer> after = trackIds(columns);
+
+		// the published chunks were copied before they were changed
+		assertEquals(trackIds(snapshot), before);
+		assertEquals(snapshot.getTotalDuration(), before.size() * 180.0);
+		assertEquals(columns.getChunkCount(), snapshot.getChunkCount());
+
+		columns.restore(snapshot);
+		assertEquals(trackIds(columns), before);
+		columns.remove(0);
+		assertEquals(trackIds(snapshot), before);
+		assertEquals(trackIds(columns), before.subList(1, before.size()));
+		assertEquals(after.get(0), before.get(1));
+	}
+
+	@Test
+	public void testTrackView() {
+		PlayListTrackColumns columns = new PlayListTrackColumns("uuid");
+		columns.addAll(createTracks(0, 10));
+
+		PlayListTrackColumns.TrackView view = columns.view(3);
+		assertEquals(view.getTrackId(), 3);
+		assertEquals(view.getTrack(), columns.get(3).getTrack());
+
+		assertEquals(view.moveTo(7).getIndex(), 7);
+		assertEquals(view.getTrackId(), 7);
+		assertEquals(view.getRank(), columns.getRank(7));
+		assertEquals(view.getDuration(), 180f);
+	}
+
+	@Test
+	public void testRebalanceKeepsRanksOrdered() {
+		PlayList playlist = new PlayList("uuid", true);
+		playlist.addPlayListTracks(0, createTracks(0, 2));
+
+		// always inserting at the head halves the gap before the first track, until it runs out
+		for (int i = 0; i < 40; i++) {
+			playlist.addPlayListTracks(0, createTracks(100 + i, 1));
+		}
+
+		assertTrue(playlist.getRankRebalances() > 0);
+
+		List<Long> ranks = new ArrayList<>();
+		playlist.getPlayListTracks().forEach(playListTrack -> ranks.add(playListTrack.getRank()));
+		List<Long> sorted = new ArrayList<>(ranks);
+		Collections.sort(sorted);
+		assertEquals(ranks, sorted);
+	}
+
+	private static List<PlayListTrack> createTracks(int firstId, int count) {
+		List<PlayListTrack> playListTracks = new ArrayList<>();
+
+		for (int i = 0; i < count; i++) {
+			playListTracks.add(new PlayListTrack(firstId + i, "uuid", 0, new Date(1500000000000L + firstId + i),
+					createTrack(firstId + i)));
+		}
+
+		return playListTracks;
+	}
+
+	private static List<Integer> trackIds(PlayListTrackColumns columns) {
+		List<Integer> trackIds = new ArrayList<>();
+		columns.forEach(playListTrack -> trackIds.add(playListTrack.getTrackId()));
+
+		return trackIds;
+	}
+
+	private static void assertDurations(PlayListTrackColumns columns, List<Float> durations) {
+		double before = 0;
+		for (int i = 0; i < durations.size(); i++) {
+			assertEquals(columns.getDurationBefore(i), before, 0.001);
+			assertEquals(columns.indexAt(before + 0.5), i);
+			before += durations.get(i);
+		}
+		assertEquals(columns.getDurationBefore(durations.size()), before, 0.001);
+		assertEquals(columns.getTotalDuration(), before, 0.001);
+	}
+
+	private static Track createTrack(int id) {
+		Track track = new Track();
+		track.setArtistId(id % 10);
+		track.setTitle("Track " + id);
+		track.setId(id);
+		track.setDuration(180);
+
+		return track;
+	}
+}
@@ -0,0 +1,188 @@
+package com.tidal.refactoring.playlist.data;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+public class PlayListTrackSegmentsTest {
+
+	private Path directory;
+
+	@BeforeMethod
+	public void setUp() throws IOException {
+		directory = Files.createTempDirectory("segments");
+	}
+
+	@AfterMethod
+	public void tearDown() throws IOException {
+		try (Stream<Path> files = Files.walk(directory)) {
+			for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+				Files.delete(file);
+			}
+		}
+	}
+
+	@Test
+	public void testSameTracksAsTreeAfterRandomChanges() {
+		PlaylistSegments segments = new PlaylistSegments(directory, 8, 3);
+		PlayList tree = new PlayList("uuid");
+		PlayList segmented = new PlayList("uuid", segments);
+		Random random = new Random(7);
+
+		for (int i = 0; i < 1000; i++) {
+			int size = tree.getNrOfTracks();
+
+			if (size == 0 || random.nextInt(3) > 0) {
+				int index = random.nextInt(size + 1);
+				int count = 1 + random.nextInt(random.nextInt(10) == 0 ? 40 : 3);
+				tree.addPlayListTracks(index, createTracks(i * 100, count));
+				segmented.addPlayListTracks(index, createTracks(i * 100, count));
+			} else {
+				int index = random.nextInt(size);
+				assertEquals(segmented.removePlayListTrack(index).getTrackId(),
+						tree.removePlayListTrack(index).getTrackId());
+			}
+			segmented.incrementVersion();
+		}
+
+		assertEquals(segmented.getNrOfTracks(), tree.getNrOfTracks());
+		assertEquals(segmented.getDuration(), tree.getDuration());
+		for (int i = 0; i < tree.getNrOfTracks(); i++) {
+			PlayListTrack expected = tree.getPlayListTrack(i);
+			PlayListTrack actual = segmented.getPlayListTrack(i);
+
+			assertEquals(actual.getTrackId(), expected.getTrackId());
+			assertEquals(actual.getId(), expected.getId());
+			assertEquals(actual.getRank(), expected.getRank());
+			assertEquals(actual.getIndex(), i);
+			assertEquals(segmented.indexOf(actual), i);
+			assertEquals(segmented.getDurationBefore(i), tree.getDurationBefore(i), 0.01);
+			assertEquals(segmented.getIndexAt(tree.getDurationBefore(i) + 0.5f), i);
+		}
+
+		// only a few segments are held, the others were read back from disk
+		assertTrue(segments.getSpillCount() > 0);
+		assertTrue(segments.getLoadCount() > 0);
+		assertTrue(segments.getHotSegmentCount() <= 3);
+	}
+
+	@Test
+	public void testSplitIntoSegments() {
+		PlaylistSegments segments = new PlaylistSegments(directory, 100, 4);
+		PlayList playlist = new PlayList("uuid", segments);
+		playlist.setPlayListTracks(createTracks(0, 1000));
+
+		PlayListTrackSegments store = (PlayListTrackSegments) playlist.getSnapshot().getStore();
+		assertEquals(store.getSegmentCount(), 10);
+
+		List<Integer> ids = new ArrayList<>();
+		playlist.getSnapshot().getPlayListTracks(995).forEachRemaining(playListTrack -> ids.add(playListTrack.getId()));
+		assertEquals(ids.toString(), "[995, 996, 997, 998, 999]");
+		assertEquals(playlist.indexAfterRank(playlist.getPlayListTrack(500).getRank()), 501);
+	}
+
+	@Test
+	public void testEditOnlyCopiesItsSegment() {
+		PlaylistSegments segments = new PlaylistSegments(directory, 100, 100);
+		PlayList playlist = new PlayList("uuid", segments);
+		playlist.setPlayListTracks(createTracks(0, 1000));
+		assertEquals(segments.getHotSegmentCount(), 10);
+
+		playlist.removePlayListTrack(450);
+		playlist.removePlayListTrack(420);
+		playlist.addPlayListTracks(430, createTracks(5000, 3));
+		playlist.incrementVersion();
+
+		// one new segment, the one replaced stays hot until it is collected
+		assertEquals(segments.getHotSegmentCount(), 11);
+		assertEquals(segments.getSpillCount(), 0);
+	}
+
+	@Test
+	public void testKeptVersionOfSpilledSegments() {
+		PlaylistSegments segments = new PlaylistSegments(directory, 10, 2);
+		PlayList playlist = new PlayList("uuid", segments);
+		playlist.setKeptVersions(4);
+		playlist.setPlayListTracks(createTracks(0, 100));
+		PlaylistSnapshot first = playlist.getSnapshot();
+
+		for (int i = 0; i < 3; i++) {
+			playlist.removePlayListTrack(i * 30);
+			playlist.incrementVersion();
+		}
+
+		assertEquals(first.getNrOfTracks(), 100);
+		assertEquals(first.getPlayListTracks().get(30).getId().intValue(), 30);
+		assertTrue(segments.getLoadCount() > 0);
+
+		playlist.restoreSnapshot(first);
+		playlist.incrementVersion();
+		assertEquals(playlist.getNrOfTracks(), 100);
+		assertEquals(playlist.getPlayListTrack(60).getId().intValue(), 60);
+		assertEquals(playlist.getDuration(), first.getDuration());
+	}
+
+	@Test
+	public void testInternedTracksOfHotAndSpilledSegments() {
+		PlaylistSegments segments = new PlaylistSegments(directory, 10, 2);
+		Map<Integer, Track> catalog = new HashMap<>();
+		UnaryOperator<Track> interner = track -> catalog.computeIfAbsent(track.getId(), id -> track);
+		segments.setTrackInterner(interner);
+
+		PlayList playlist = new PlayList("uuid", segments);
+		playlist.setPlayListTracks(createTracks(0, 100));
+		createTracks(0, 100).forEach(playListTrack -> interner.apply(playListTrack.getTrack()));
+		playlist.internTracks(interner);
+
+		// the hot segments are interned in place, the spilled ones when they are read back
+		for (int i = 0; i < 100; i++) {
+			assertSame(playlist.getSnapshot().getPlayListTracks().get(i).getTrack(), catalog.get(i));
+		}
+		assertTrue(segments.getLoadCount() > 0);
+	}
+
+	@Test
+	public void testCloseDeletesSpilledSegments() throws IOException {
+		PlaylistSegments segments = new PlaylistSegments(directory, 10, 2);
+		PlayList playlist = new PlayList("uuid", segments);
+		playlist.setPlayListTracks(createTracks(0, 100));
+		assertTrue(segments.getSpilledSegmentCount() > 0);
+
+		segments.close();
+		assertEquals(segments.getSpilledSegmentCount(), 0);
+		try (Stream<Path> files = Files.list(directory)) {
+			assertEquals(files.count(), 0);
+		}
+	}
+
+	private static List<PlayListTrack> createTracks(int firstId, int count) {
+		List<PlayListTrack> playListTracks = new ArrayList<>();
+
+		for (int i = 0; i < count; i++) {
+			Track track = new Track();
+			track.setId(firstId + i);
+			track.setTitle("Track " + (firstId + i));
+			track.setDuration(1 + (firstId + i) % 7);
+			playListTracks.add(new PlayListTrack(firstId + i, "uuid", i, new Date(), track));
+		}
+
+		return playListTracks;
+	}
+}
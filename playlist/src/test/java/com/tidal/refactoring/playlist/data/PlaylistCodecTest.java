@@ -0,0 +1,137 @@
+package com.tidal.refactoring.playlist.data;
+
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+public class PlaylistCodecTest {
+
+	@Test
+	public void testPlaylistRoundTrip() {
+		PlayList playlist = createPlaylist(20);
+
+		ByteBuffer buffer = ByteBuffer.allocate(PlaylistCodec.encodedSize(playlist, PlaylistCodec.Mode.FULL));
+		PlaylistCodec.encode(buffer, playlist, PlaylistCodec.Mode.FULL);
+		assertEquals(buffer.remaining(), 0);
+		buffer.flip();
+
+		PlayList decoded = PlaylistCodec.decodePlayList(buffer);
+
+		assertEquals(decoded.getUuid(), playlist.getUuid());
+		assertEquals(decoded.getId(), playlist.getId());
+		assertEquals(decoded.getPlayListName(), playlist.getPlayListName());
+		assertEquals(decoded.getDuration(), playlist.getDuration());
+		assertEquals(decoded.getRegisteredDate(), playlist.getRegisteredDate());
+		assertEquals(decoded.getLastUpdated(), playlist.getLastUpdated());
+		assertEquals(decoded.getVersion(), playlist.getVersion());
+		assertEquals(decoded.getNrOfTracks(), 20);
+		assertEquals(decoded.getPlayListTracks(), playlist.getPlayListTracks());
+		assertTrue(decoded.containsTrack(playlist.getPlayListTrack(5).getTrackId()));
+	}
+
+	@Test
+	public void testTrackIdsMode() {
+		PlayList playlist = createPlaylist(20);
+
+		ByteBuffer buffer = ByteBuffer.allocate(PlaylistCodec.encodedSize(playlist, PlaylistCodec.Mode.TRACK_IDS));
+		PlaylistCodec.encode(buffer, playlist, PlaylistCodec.Mode.TRACK_IDS);
+		buffer.flip();
+
+		PlayList decoded = PlaylistCodec.decodePlayList(buffer);
+
+		for (int i = 0; i < 20; i++) {
+			PlayListTrack playListTrack = decoded.getPlayListTrack(i);
+			assertEquals(playListTrack.getTrackId(), playlist.getPlayListTrack(i).getTrackId());
+			assertEquals(playListTrack.getDateAdded(), playlist.getPlayListTrack(i).getDateAdded());
+			assertNull(playListTrack.getTrack().getTitle());
+		}
+	}
+
+	@Test
+	public void testDecodeTrackAtOffset() {
+		PlayList playlist = createPlaylist(10);
+		ByteBuffer buffer = ByteBuffer.allocateDirect(1024);
+
+		int[] offsets = new int[10];
+		for (int i = 0; i < 10; i++) {
+			offsets[i] = buffer.position();
+			PlaylistCodec.encode(buffer, playlist.getPlayListTrack(i), PlaylistCodec.Mode.FULL);
+		}
+
+		PlayListTrack decoded = PlaylistCodec.decodePlayListTrack(buffer, offsets[7], playlist.getUuid(),
+				PlaylistCodec.Mode.FULL);
+
+		assertEquals(decoded.getTrack(), playlist.getPlayListTrack(7).getTrack());
+		assertEquals(decoded.getId(), playlist.getPlayListTrack(7).getId());
+		assertEquals(buffer.position(), offsets[9] + PlaylistCodec.encodedSize(playlist.getPlayListTrack(9),
+				PlaylistCodec.Mode.FULL));
+	}
+
+	@Test
+	public void testNullsAndNonAsciiTitles() {
+		Track track = createTrack(Integer.MAX_VALUE, "Sigur Rós á 東京 🎵");
+		track.setArtistId(-1);
+		PlayListTrack playListTrack = new PlayListTrack(null, "uuid", 0, null, track);
+		playListTrack.setDateAdded(null);
+
+		ByteBuffer buffer = ByteBuffer.allocate(PlaylistCodec.encodedSize(playListTrack, PlaylistCodec.Mode.FULL));
+		PlaylistCodec.encode(buffer, playListTrack, PlaylistCodec.Mode.FULL);
+		buffer.flip();
+
+		PlayListTrack decoded = PlaylistCodec.decodePlayListTrack(buffer, "uuid", PlaylistCodec.Mode.FULL);
+
+		assertNull(decoded.getId());
+		assertNull(decoded.getDateAdded());
+		assertEquals(decoded.getTrack(), track);
+	}
+
+	@Test
+	public void testSmallerThanJavaSerialization() throws Exception {
+		PlayList playlist = createPlaylist(100);
+
+		ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(serialized)) {
+			out.writeObject(new ArrayList<>(playlist.getPlayListTracks()));
+		}
+
+		int encoded = PlaylistCodec.encodedSize(playlist, PlaylistCodec.Mode.FULL);
+
+		assertTrue(encoded * 3 < serialized.size(), encoded + " bytes encoded, " + serialized.size() + " serialized");
+		assertTrue(PlaylistCodec.encodedSize(playlist, PlaylistCodec.Mode.TRACK_IDS) < encoded / 2);
+	}
+
+	private static PlayList createPlaylist(int size) {
+		PlayList playlist = new PlayList("a2f7ec5a-6a31-4f07-9c43-5b6f1b2e4c11");
+		playlist.setId(49834);
+		playlist.setPlayListName("Collection of great songs");
+		playlist.setVersion(42);
+
+		List<PlayListTrack> playListTracks = new ArrayList<>();
+		for (int i = 0; i < size; i++) {
+			playListTracks.add(new PlayListTrack(i + 1, playlist.getUuid(), i, new Date(1500000000000L + i * 1000),
+					createTrack(1000 + i, "Track no: " + i)));
+		}
+		playlist.setPlayListTracks(playListTracks);
+
+		return playlist;
+	}
+
+	private static Track createTrack(int id, String title) {
+		Track track = new Track();
+		track.setArtistId(id % 100);
+		track.setTitle(title);
+		track.setId(id);
+		track.setDuration(180);
+
+		return track;
+	}
+}
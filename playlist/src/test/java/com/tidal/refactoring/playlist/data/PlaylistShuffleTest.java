@@ -0,0 +1,145 @@
+package com.tidal.refactoring.playlist.data;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+public class PlaylistShuffleTest {
+
+	@DataProvider
+	public Object[][] sizes() {
+		return new Object[][] { { 0 }, { 1 }, { 2 }, { 17 }, { 1000 }, { 4097 } };
+	}
+
+	@Test(dataProvider = "sizes")
+	public void testEveryTrackIsPlayedOnce(int size) {
+		PlaylistSnapshot snapshot = createPlaylist(size, 5).getSnapshot();
+
+		for (boolean spreadArtists : new boolean[] { false, true }) {
+			PlaylistShuffle shuffle = new PlaylistShuffle(snapshot, 42, 0, spreadArtists);
+			boolean[] played = new boolean[size];
+			int count = 0;
+
+			while (shuffle.hasNext()) {
+				int id = shuffle.next().getId();
+				assertFalse(played[id], "Played twice " + id);
+				played[id] = true;
+				count++;
+			}
+
+			assertEquals(count, size);
+			assertEquals(shuffle.getPosition(), size);
+		}
+	}
+
+	@Test
+	public void testOrderDependsOnSeedOnly() {
+		PlaylistSnapshot snapshot = createPlaylist(500, 5).getSnapshot();
+
+		assertEquals(play(new PlaylistShuffle(snapshot, 7), 500), play(new PlaylistShuffle(snapshot, 7), 500));
+		assertNotEquals(play(new PlaylistShuffle(snapshot, 7), 500), play(new PlaylistShuffle(snapshot, 8), 500));
+
+		// not the order of the playlist, nor close to it
+		List<Integer> ids = play(new PlaylistShuffle(snapshot, 7), 500);
+		int inPlace = 0;
+		for (int i = 0; i < ids.size(); i++) {
+			inPlace += ids.get(i) == i ? 1 : 0;
+		}
+		assertTrue(inPlace < 10, inPlace + " tracks in place");
+	}
+
+	@Test
+	public void testResumeFromSeedAndPosition() {
+		PlaylistSnapshot snapshot = createPlaylist(300, 4).getSnapshot();
+
+		for (boolean spreadArtists : new boolean[] { false, true }) {
+			List<Integer> all = play(new PlaylistShuffle(snapshot, 99, 0, spreadArtists), 300);
+
+			for (int position : Arrays.asList(1, 15, 16, 17, 150, 299)) {
+				PlaylistShuffle resumed = new PlaylistShuffle(snapshot, 99, position, spreadArtists);
+				assertEquals(play(resumed, 300), all.subList(position, 300));
+			}
+		}
+	}
+
+	@Test
+	public void testSpreadArtists() {
+		PlaylistSnapshot snapshot = createPlaylist(2000, 4).getSnapshot();
+
+		int plain = countSameArtistInARow(new PlaylistShuffle(snapshot, 3, 0, false));
+		int spread = countSameArtistInARow(new PlaylistShuffle(snapshot, 3, 0, true));
+
+		assertTrue(plain > 300, plain + " in a row without spreading");
+		assertTrue(spread < 20, spread + " in a row when spreading");
+	}
+
+	@Test
+	public void testNextIndexWithoutCopies() {
+		for (boolean columnar : new boolean[] { false, true }) {
+			PlayList playlist = createPlaylist(300, 4, columnar);
+			PlaylistSnapshot snapshot = playlist.getSnapshot();
+
+			List<Integer> ids = play(new PlaylistShuffle(snapshot, 5, 0, true), 300);
+			PlaylistShuffle shuffle = new PlaylistShuffle(snapshot, 5, 0, true);
+			for (int id : ids) {
+				int index = shuffle.nextIndex();
+				assertEquals(index, id);
+				// the Track held by the playlist, which copied tracks share
+				assertSame(snapshot.getTrack(index), snapshot.getPlayListTracks().get(index).getTrack());
+				assertEquals(snapshot.getTrack(index).getId(), id);
+			}
+			assertFalse(shuffle.hasNext());
+		}
+	}
+
+	private static int countSameArtistInARow(PlaylistShuffle shuffle) {
+		int count = 0;
+		int previous = -1;
+		while (shuffle.hasNext()) {
+			int artist = shuffle.next().getTrack().getArtistId();
+			count += artist == previous ? 1 : 0;
+			previous = artist;
+		}
+
+		return count;
+	}
+
+	private static List<Integer> play(PlaylistShuffle shuffle, int limit) {
+		List<Integer> ids = new ArrayList<>();
+		while (shuffle.hasNext() && ids.size() < limit) {
+			ids.add(shuffle.next().getId());
+		}
+
+		return ids;
+	}
+
+	private static PlayList createPlaylist(int size, int artists) {
+		return createPlaylist(size, artists, false);
+	}
+
+	private static PlayList createPlaylist(int size, int artists, boolean columnar) {
+		List<PlayListTrack> playListTracks = new ArrayList<>();
+		for (int i = 0; i < size; i++) {
+			Track track = new Track();
+			track.setId(i);
+			track.setArtistId(i % artists);
+			track.setTitle("Track " + i);
+			playListTracks.add(new PlayListTrack(i, "uuid", i, new Date(), track));
+		}
+
+		PlayList playlist = new PlayList("uuid", columnar);
+		playlist.setPlayListTracks(playListTracks);
+
+		return playlist;
+	}
+}
@@ -0,0 +1,104 @@
+package com.tidal.refactoring.playlist.data;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+
+public class PlaylistSnapshotTest {
+
+	@DataProvider
+	public Object[][] stores() {
+		return new Object[][] { { false }, { true } };
+	}
+
+	@Test(dataProvider = "stores")
+	public void testSnapshotIsNotChangedByLaterVersions(boolean columnar) {
+		PlayList playlist = new PlayList("uuid", columnar);
+		playlist.setKeptVersions(Integer.MAX_VALUE);
+		Random random = new Random(11);
+
+		List<PlaylistSnapshot> snapshots = new ArrayList<>();
+		List<List<Integer>> expected = new ArrayList<>();
+
+		for (int i = 0; i < 200; i++) {
+			int size = playlist.getNrOfTracks();
+
+			if (size > 0 && random.nextInt(3) == 0) {
+				playlist.removePlayListTrack(random.nextInt(size));
+			} else if (size > 1 && random.nextInt(3) == 0) {
+				// a move, which ranks the same track again
+				List<PlayListTrack> moved = new ArrayList<>();
+				moved.add(playlist.removePlayListTrack(random.nextInt(size)));
+				playlist.addPlayListTracks(random.nextInt(size), moved);
+			} else {
+				playlist.addPlayListTracks(random.nextInt(size + 1), createTracks(i, 1 + random.nextInt(3)));
+			}
+			playlist.incrementVersion();
+
+			snapshots.add(playlist.getSnapshot());
+			expected.add(ids(playlist.getPlayListTracks()));
+		}
+
+		for (int i = 0; i < snapshots.size(); i++) {
+			PlaylistSnapshot snapshot = snapshots.get(i);
+
+			assertEquals(snapshot.getVersion(), i + 1);
+			assertEquals(ids(snapshot.getPlayListTracks()), expected.get(i));
+			assertEquals(playlist.getSnapshot(i + 1), snapshot);
+		}
+	}
+
+	@Test(dataProvider = "stores")
+	public void testRestoreKeptVersion(boolean columnar) {
+		PlayList playlist = new PlayList("uuid", columnar);
+		playlist.setKeptVersions(2);
+		playlist.setPlayListTracks(createTracks(0, 10));
+
+		playlist.removePlayListTrack(0);
+		playlist.incrementVersion();
+		playlist.addPlayListTracks(0, createTracks(100, 5));
+		playlist.incrementVersion();
+		playlist.removePlayListTrack(3);
+		playlist.incrementVersion();
+
+		assertNull(playlist.getSnapshot(0));
+		PlaylistSnapshot kept = playlist.getSnapshot(1);
+		assertNotNull(kept);
+
+		playlist.restoreSnapshot(kept);
+		playlist.incrementVersion();
+
+		assertEquals(ids(playlist.getPlayListTracks()), ids(kept.getPlayListTracks()));
+		assertEquals(playlist.getNrOfTracks(), 9);
+		assertEquals(playlist.getDuration(), kept.getDuration());
+		assertEquals(playlist.getVersion(), 4);
+	}
+
+	private static List<Integer> ids(List<PlayListTrack> playListTracks) {
+		List<Integer> ids = new ArrayList<>();
+		playListTracks.forEach(playListTrack -> ids.add(playListTrack.getId()));
+
+		return ids;
+	}
+
+	private static List<PlayListTrack> createTracks(int firstId, int count) {
+		List<PlayListTrack> playListTracks = new ArrayList<>();
+
+		for (int i = 0; i < count; i++) {
+			Track track = new Track();
+			track.setId(firstId + i);
+			track.setDuration(firstId + i);
+			playListTracks.add(new PlayListTrack(firstId + i, "uuid", i, new Date(), track));
+		}
+
+		return playListTracks;
+	}
+}